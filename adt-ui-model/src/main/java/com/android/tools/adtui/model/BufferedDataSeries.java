@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DataSeries} of long values able to write its data straight into a caller-owned {@link LongSeriesBuffer}, skipping the
+ * {@link SeriesData} allocations of {@link #getDataForXRange(Range)}. Rendering code reuses the same buffer on every frame.
+ */
+public interface BufferedDataSeries extends DataSeries<Long> {
+
+  /**
+   * Clears {@code buffer} and fills it with the same points {@link #getDataForXRange(Range)} would return.
+   */
+  void getDataForXRange(@NotNull Range xRange, @NotNull LongSeriesBuffer buffer);
+
+  /**
+   * Buffer version of {@link #getDataForXRange(Range, int)}. The default implementation returns the full resolution data.
+   */
+  default void getDataForXRange(@NotNull Range xRange, int bucketCount, @NotNull LongSeriesBuffer buffer) {
+    getDataForXRange(xRange, buffer);
+  }
+}
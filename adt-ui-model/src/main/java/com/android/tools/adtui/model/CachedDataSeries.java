@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DataSeries} keeping the data fetched from another, expensive, {@link DataSeries} (e.g. one making an RPC to the datastore on
+ * every call) so that consecutive queries over a sliding range only fetch what is new. While live, the view range moves forward by a few
+ * milliseconds every frame: only the data after the last cached point is requested, and the data that scrolled out of
+ * {@code retainedRange} is dropped.
+ * <p>
+ * The delegate is assumed to only get new data after the last point it returned, which is the case of data sampled in order. Data arriving
+ * late is picked up if the delegate pads its queries, like the datastore backed series do: the points returned before the last cached one
+ * are compared with the cache, and the cache is invalidated from the first one missing. Owners that know data was inserted further back
+ * should call {@link #invalidate(long)}.
+ */
+public class CachedDataSeries<E> implements DataSeries<E> {
+  @NotNull private final DataSeries<E> myDelegate;
+
+  /**
+   * Range of the data to keep between queries, typically the view range of the chart the series is drawn in.
+   */
+  @NotNull private final Range myRetainedRange;
+
+  /**
+   * Cached data, sorted by x. It contains everything the delegate returned for [myCoveredMin, myCoveredMax], plus the points just outside.
+   */
+  @NotNull private final ArrayList<SeriesData<E>> myData = new ArrayList<>();
+
+  private boolean myHasCoverage;
+  private double myCoveredMin;
+  private double myCoveredMax;
+
+  // Number of calls made to the delegate, for testing.
+  private int myFetchCount;
+
+  public CachedDataSeries(@NotNull DataSeries<E> delegate, @NotNull Range retainedRange) {
+    myDelegate = delegate;
+    myRetainedRange = retainedRange;
+  }
+
+  @NotNull
+  public DataSeries<E> getDelegate() {
+    return myDelegate;
+  }
+
+  @Override
+  public synchronized List<SeriesData<E>> getDataForXRange(Range xRange) {
+    List<SeriesData<E>> result = new ArrayList<>(fetchSlice(xRange));
+    evictOutsideRetainedRange();
+    return result;
+  }
+
+  /**
+   * Fetches the data of {@code xRange} missing from the cache, and returns the cached points within {@code xRange} plus the closest point
+   * on each side. The returned list is a view of the cache, only valid until {@link #evictOutsideRetainedRange()}. Both are meant to be
+   * called while holding the lock of this series.
+   */
+  @NotNull
+  protected final List<SeriesData<E>> fetchSlice(@NotNull Range xRange) {
+    double min = xRange.getMin();
+    double max = xRange.getMax();
+    if (!myHasCoverage || max < myCoveredMin || min > myCoveredMax) {
+      // Nothing to reuse.
+      myData.clear();
+      myData.addAll(fetch(min, max));
+      myHasCoverage = true;
+      myCoveredMin = min;
+      myCoveredMax = max;
+    }
+    else {
+      if (min < myCoveredMin) {
+        fetchHead(min);
+      }
+      if (max > myCoveredMax) {
+        fetchTail(max);
+      }
+    }
+
+    return getSlice(min, max);
+  }
+
+  protected final void evictOutsideRetainedRange() {
+    evictOutside(myRetainedRange.getMin(), myRetainedRange.getMax());
+  }
+
+  /**
+   * Answered from the cache at full resolution, values of an arbitrary type can't be aggregated. {@link CachedLongDataSeries} keeps the
+   * min and max of each bucket.
+   */
+  @Override
+  public List<SeriesData<E>> getDataForXRange(Range xRange, int bucketCount) {
+    return getDataForXRange(xRange);
+  }
+
+  /**
+   * Drops the cached data at or after {@code fromX}, so that it is fetched again by the next query. To be called when data arrives with
+   * a timestamp older than the newest point already in the series.
+   */
+  public synchronized void invalidate(long fromX) {
+    if (!myHasCoverage) {
+      return;
+    }
+    myData.subList(indexOfFirstAtOrAfter(fromX), myData.size()).clear();
+    if (myData.isEmpty()) {
+      myHasCoverage = false;
+      return;
+    }
+    myCoveredMax = Math.min(myCoveredMax, myData.get(myData.size() - 1).x);
+    myCoveredMin = Math.min(myCoveredMin, myCoveredMax);
+  }
+
+  /**
+   * Drops all the cached data.
+   */
+  public synchronized void invalidate() {
+    myData.clear();
+    myHasCoverage = false;
+  }
+
+  synchronized int getCachedSize() {
+    return myData.size();
+  }
+
+  synchronized int getFetchCount() {
+    return myFetchCount;
+  }
+
+  private void fetchHead(double min) {
+    long firstX = myData.isEmpty() ? (long)myCoveredMin : myData.get(0).x;
+    myCoveredMin = min;
+    if (!myData.isEmpty() && firstX <= min) {
+      // Already have the point before min.
+      return;
+    }
+    List<SeriesData<E>> head = new ArrayList<>();
+    for (SeriesData<E> data : fetch(min, firstX)) {
+      if (myData.isEmpty() || data.x < firstX) {
+        head.add(data);
+      }
+    }
+    myData.addAll(0, head);
+  }
+
+  private void fetchTail(double max) {
+    // Refetch from the last point rather than the end of the covered range, in case data arrived for the gap in between since.
+    long lastX = myData.isEmpty() ? (long)myCoveredMax : myData.get(myData.size() - 1).x;
+    boolean wasEmpty = myData.isEmpty();
+    myCoveredMax = max;
+    if (!wasEmpty && lastX >= max) {
+      // Already have the point after max.
+      return;
+    }
+    List<SeriesData<E>> tail = fetch(lastX, max);
+    if (!wasEmpty) {
+      Long lateX = findLateX(tail, lastX);
+      if (lateX != null) {
+        // The tail holds everything the delegate has after its first point, so it replaces the cache from the late point.
+        invalidate(lateX);
+        myCoveredMax = max;
+        lastX = lateX - 1;
+      }
+    }
+    for (SeriesData<E> data : tail) {
+      if (wasEmpty || data.x > lastX) {
+        myData.add(data);
+      }
+    }
+  }
+
+  /**
+   * Returns the x of the first point of {@code fetched}, up to {@code lastX}, which is missing from the cached range, or null if the cache
+   * has all of them.
+   */
+  @Nullable
+  private Long findLateX(@NotNull List<SeriesData<E>> fetched, long lastX) {
+    long firstX = myData.get(0).x;
+    for (SeriesData<E> data : fetched) {
+      if (data.x > lastX) {
+        break;
+      }
+      if (data.x < firstX) {
+        continue;
+      }
+      int index = indexOfFirstAtOrAfter(data.x);
+      if (index == myData.size() || myData.get(index).x != data.x) {
+        return data.x;
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private List<SeriesData<E>> fetch(double min, double max) {
+    myFetchCount++;
+    return myDelegate.getDataForXRange(new Range(min, max));
+  }
+
+  /**
+   * Returns the cached points within [min, max], plus the closest point on each side so the caller can interpolate up to the edges.
+   */
+  @NotNull
+  private List<SeriesData<E>> getSlice(double min, double max) {
+    if (myData.isEmpty()) {
+      return myData;
+    }
+    int from = Math.max(0, indexOfFirstAtOrAfter((long)Math.ceil(min)) - 1);
+    int to = Math.min(myData.size(), indexOfFirstAtOrAfter((long)Math.floor(max) + 1) + 1);
+    return myData.subList(from, Math.max(from, to));
+  }
+
+  private void evictOutside(double min, double max) {
+    if (myData.isEmpty() || max < myCoveredMin || min > myCoveredMax) {
+      // The retained range is elsewhere (e.g. the query was for a tooltip outside of the view), keep what we have.
+      return;
+    }
+
+    int to = Math.min(myData.size(), indexOfFirstAtOrAfter((long)Math.floor(max) + 1) + 1);
+    if (to < myData.size()) {
+      myData.subList(to, myData.size()).clear();
+      myCoveredMax = Math.max(max, myData.get(myData.size() - 1).x);
+    }
+    int from = Math.max(0, indexOfFirstAtOrAfter((long)Math.ceil(min)) - 1);
+    if (from > 0) {
+      myData.subList(0, from).clear();
+      myCoveredMin = Math.min(min, myData.get(0).x);
+    }
+  }
+
+  private int indexOfFirstAtOrAfter(long x) {
+    int low = 0;
+    int high = myData.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myData.get(mid).x < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
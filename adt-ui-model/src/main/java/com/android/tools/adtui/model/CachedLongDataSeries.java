@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A {@link CachedDataSeries} of long values, copying the cached data straight into the caller's {@link LongSeriesBuffer} so that charts
+ * redrawing it every frame don't allocate a list of the visible points. Bucketed queries are answered from the cache too, keeping the
+ * min and the max of each bucket at their own x, so that a line drawn one bucket per pixel still shows every spike.
+ */
+public class CachedLongDataSeries extends CachedDataSeries<Long> implements BufferedDataSeries {
+  public CachedLongDataSeries(@NotNull DataSeries<Long> delegate, @NotNull Range retainedRange) {
+    super(delegate, retainedRange);
+  }
+
+  @Override
+  public synchronized void getDataForXRange(@NotNull Range xRange, @NotNull LongSeriesBuffer buffer) {
+    buffer.clear();
+    List<SeriesData<Long>> slice = fetchSlice(xRange);
+    for (int i = 0; i < slice.size(); i++) {
+      SeriesData<Long> data = slice.get(i);
+      buffer.add(data.x, data.value);
+    }
+    evictOutsideRetainedRange();
+  }
+
+  @Override
+  public synchronized List<SeriesData<Long>> getDataForXRange(Range xRange, int bucketCount) {
+    List<SeriesData<Long>> slice = fetchSlice(xRange);
+    List<SeriesData<Long>> result = new ArrayList<>();
+    forEachBucketExtreme(slice, xRange, bucketCount, index -> result.add(slice.get(index)));
+    evictOutsideRetainedRange();
+    return result;
+  }
+
+  @Override
+  public synchronized void getDataForXRange(@NotNull Range xRange, int bucketCount, @NotNull LongSeriesBuffer buffer) {
+    buffer.clear();
+    List<SeriesData<Long>> slice = fetchSlice(xRange);
+    forEachBucketExtreme(slice, xRange, bucketCount, index -> buffer.add(slice.get(index).x, slice.get(index).value));
+    evictOutsideRetainedRange();
+  }
+
+  /**
+   * Divides {@code xRange} into {@code bucketCount} buckets of equal length and passes the index of the min and of the max point of each
+   * bucket to {@code consumer}, in x order and only once when they are the same point. The points of {@code data} outside of
+   * {@code xRange}, i.e. the closest point on each side, are all passed so that the caller can still interpolate up to the edges.
+   */
+  private static void forEachBucketExtreme(@NotNull List<SeriesData<Long>> data,
+                                           @NotNull Range xRange,
+                                           int bucketCount,
+                                           @NotNull IntConsumer consumer) {
+    double min = xRange.getMin();
+    double max = xRange.getMax();
+    int size = data.size();
+    if (bucketCount <= 0 || max <= min || size <= 2 * bucketCount) {
+      // Nothing to aggregate.
+      for (int i = 0; i < size; i++) {
+        consumer.accept(i);
+      }
+      return;
+    }
+
+    double bucketLength = (max - min) / bucketCount;
+    int i = 0;
+    for (; i < size && data.get(i).x < min; i++) {
+      consumer.accept(i);
+    }
+    while (i < size && data.get(i).x <= max) {
+      int bucket = getBucket(data.get(i).x, min, bucketLength, bucketCount);
+      int minIndex = i;
+      int maxIndex = i;
+      for (i++; i < size && data.get(i).x <= max && getBucket(data.get(i).x, min, bucketLength, bucketCount) == bucket; i++) {
+        long value = data.get(i).value;
+        if (value < data.get(minIndex).value) {
+          minIndex = i;
+        }
+        else if (value > data.get(maxIndex).value) {
+          maxIndex = i;
+        }
+      }
+      consumer.accept(Math.min(minIndex, maxIndex));
+      if (minIndex != maxIndex) {
+        consumer.accept(Math.max(minIndex, maxIndex));
+      }
+    }
+    for (; i < size; i++) {
+      consumer.accept(i);
+    }
+  }
+
+  private static int getBucket(long x, double min, double bucketLength, int bucketCount) {
+    // The max of the range falls right at the end of the last bucket.
+    return Math.min(bucketCount - 1, (int)((x - min) / bucketLength));
+  }
+}
@@ -23,4 +23,14 @@ import java.util.List;
 public interface DataSeries<E> {
 
   List<SeriesData<E>> getDataForXRange(Range xRange);
+
+  /**
+   * Resolution-aware version of {@link #getDataForXRange(Range)}. Callers pass the number of buckets they are going to render the range
+   * into (typically its width in pixels). Implementations able to compare their values should divide the range into that many buckets of
+   * equal length and return at most the min and max of each bucket, in x order, like {@link CachedLongDataSeries} does. The default
+   * implementation ignores {@code bucketCount} and returns the full resolution data.
+   */
+  default List<SeriesData<E>> getDataForXRange(Range xRange, int bucketCount) {
+    return getDataForXRange(xRange);
+  }
 }
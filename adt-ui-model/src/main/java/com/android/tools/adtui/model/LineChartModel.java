@@ -38,22 +38,29 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
    */
   private boolean myFirstUpdate = true;
 
+  /**
+   * Max value per y range, reused across updates.
+   */
+  @NotNull
+  private final Map<Range, Double> myMaxPerRange = new HashMap<>();
+
   @Override
   public void update(long elapsedNs) {
-    Map<Range, Double> maxPerRangeObject = new HashMap<>();
+    Map<Range, Double> maxPerRangeObject = myMaxPerRange;
+    maxPerRangeObject.clear();
 
     // TODO Handle stacked configs
     for (RangedContinuousSeries ranged : mySeries) {
       Range range = ranged.getYRange();
       double yMax = -Double.MAX_VALUE;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      if (seriesList.isEmpty()) {
+      LongSeriesBuffer seriesBuffer = ranged.getSeriesBuffer();
+      if (seriesBuffer.isEmpty()) {
         continue;
       }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
+      for (int i = 0; i < seriesBuffer.size(); i++) {
+        double value = seriesBuffer.getY(i);
         if (yMax < value) {
           yMax = value;
         }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A primitive alternative to {@code List<SeriesData<Long>>}: parallel x / y arrays which are meant to be cleared and refilled on every
+ * frame, so that once they have grown to the size of the data in view, rendering a series does not allocate anything.
+ */
+public final class LongSeriesBuffer {
+  private static final int DEFAULT_CAPACITY = 64;
+
+  @NotNull private long[] myX;
+  @NotNull private long[] myY;
+  private int mySize;
+
+  public LongSeriesBuffer() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongSeriesBuffer(int initialCapacity) {
+    myX = new long[Math.max(1, initialCapacity)];
+    myY = new long[Math.max(1, initialCapacity)];
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  /**
+   * Empties the buffer, keeping the underlying arrays for reuse.
+   */
+  public void clear() {
+    mySize = 0;
+  }
+
+  public void add(long x, long y) {
+    if (mySize == myX.length) {
+      int capacity = mySize * 2;
+      myX = Arrays.copyOf(myX, capacity);
+      myY = Arrays.copyOf(myY, capacity);
+    }
+    myX[mySize] = x;
+    myY[mySize] = y;
+    mySize++;
+  }
+
+  public long getX(int index) {
+    assert index < mySize;
+    return myX[index];
+  }
+
+  public long getY(int index) {
+    assert index < mySize;
+    return myY[index];
+  }
+
+  public void setY(int index, long y) {
+    assert index < mySize;
+    myY[index] = y;
+  }
+
+  /**
+   * Removes the last point.
+   */
+  public void removeLast() {
+    assert mySize > 0;
+    mySize--;
+  }
+
+  /**
+   * Replaces the content of this buffer with the content of {@code other}.
+   */
+  public void copyFrom(@NotNull LongSeriesBuffer other) {
+    clear();
+    for (int i = 0; i < other.size(); i++) {
+      add(other.getX(i), other.getY(i));
+    }
+  }
+
+  /**
+   * Replaces the content of this buffer with {@code data}.
+   */
+  public void copyFrom(@NotNull List<SeriesData<Long>> data) {
+    clear();
+    for (int i = 0; i < data.size(); i++) {
+      SeriesData<Long> point = data.get(i);
+      add(point.x, point.value);
+    }
+  }
+}
@@ -30,6 +30,12 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range mYRange;
 
+  /**
+   * Reused by {@link #getSeriesBuffer()} and {@link #getSeriesBuffer(int)} so rendering doesn't allocate once the buffer has grown.
+   */
+  @NotNull
+  private final LongSeriesBuffer myBuffer = new LongSeriesBuffer();
+
   public RangedContinuousSeries(@NotNull String name, @NotNull Range xRange, @NotNull Range yRange, @NotNull DataSeries<Long> series) {
     super(xRange, series);
     mYRange = yRange;
@@ -45,4 +51,34 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   public String getName() {
     return myName;
   }
+
+  /**
+   * Primitive version of {@link #getSeries()}. The returned buffer is owned by this series and is overwritten by the next call, so
+   * callers must be done with it before querying this series again. No {@link SeriesData} is allocated if the underlying
+   * {@link DataSeries} is a {@link BufferedDataSeries}.
+   */
+  @NotNull
+  public LongSeriesBuffer getSeriesBuffer() {
+    if (mSeries instanceof BufferedDataSeries) {
+      ((BufferedDataSeries)mSeries).getDataForXRange(mXRange, myBuffer);
+    }
+    else {
+      myBuffer.copyFrom(mSeries.getDataForXRange(mXRange));
+    }
+    return myBuffer;
+  }
+
+  /**
+   * Primitive version of {@link #getSeries(int)}. See {@link #getSeriesBuffer()} for the ownership of the returned buffer.
+   */
+  @NotNull
+  public LongSeriesBuffer getSeriesBuffer(int bucketCount) {
+    if (mSeries instanceof BufferedDataSeries) {
+      ((BufferedDataSeries)mSeries).getDataForXRange(mXRange, bucketCount, myBuffer);
+    }
+    else {
+      myBuffer.copyFrom(mSeries.getDataForXRange(mXRange, bucketCount));
+    }
+    return myBuffer;
+  }
 }
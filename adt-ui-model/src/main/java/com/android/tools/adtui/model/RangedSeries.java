@@ -50,6 +50,15 @@ public class RangedSeries<E> {
     return mSeries.getDataForXRange(mXRange);
   }
 
+  /**
+   * Same as {@link #getSeries()}, but lets the {@link DataSeries} aggregate the data down to {@code bucketCount} buckets.
+   * See {@link DataSeries#getDataForXRange(Range, int)}.
+   */
+  @NotNull
+  public List<SeriesData<E>> getSeries(int bucketCount) {
+    return mSeries.getDataForXRange(mXRange, bucketCount);
+  }
+
   /**
    * @return The {@link Range} object that represents the xRange of this series.
    */
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonic count, e.g. of rows written, cheap to update from many threads.
+ */
+public final class Counter {
+  private final LongAdder myValue = new LongAdder();
+
+  public void increment() {
+    myValue.increment();
+  }
+
+  public void add(long delta) {
+    myValue.add(delta);
+  }
+
+  public long get() {
+    return myValue.sum();
+  }
+
+  void reset() {
+    myValue.reset();
+  }
+}
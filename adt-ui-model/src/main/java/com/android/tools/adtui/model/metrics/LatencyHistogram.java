@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Distribution of durations, in buckets of powers of two nanoseconds. Recording is lock free and doesn't allocate, so it can be used on
+ * hot paths such as every statement executed or every frame. Percentiles are approximated by the upper bound of their bucket, i.e. they
+ * are at most 2x off.
+ */
+public final class LatencyHistogram {
+  private static final int BUCKET_COUNT = 64;
+
+  /**
+   * Bucket i counts the durations in [2^i, 2^(i+1)) ns, bucket 0 also the durations under 1ns.
+   */
+  @NotNull private final AtomicLongArray myBuckets = new AtomicLongArray(BUCKET_COUNT);
+  @NotNull private final LongAdder myCount = new LongAdder();
+  @NotNull private final LongAdder myTotalNs = new LongAdder();
+  @NotNull private final AtomicLong myMaxNs = new AtomicLong();
+
+  public void record(long durationNs) {
+    long duration = Math.max(durationNs, 0);
+    myBuckets.incrementAndGet(duration == 0 ? 0 : 63 - Long.numberOfLeadingZeros(duration));
+    myCount.increment();
+    myTotalNs.add(duration);
+    myMaxNs.accumulateAndGet(duration, Math::max);
+  }
+
+  /**
+   * Runs {@code task} and records how long it took.
+   */
+  public void time(@NotNull Runnable task) {
+    long startNs = System.nanoTime();
+    try {
+      task.run();
+    }
+    finally {
+      record(System.nanoTime() - startNs);
+    }
+  }
+
+  /**
+   * Same as {@link #time(Runnable)}, returning the result of {@code task}.
+   */
+  public <T> T time(@NotNull Supplier<T> task) {
+    long startNs = System.nanoTime();
+    try {
+      return task.get();
+    }
+    finally {
+      record(System.nanoTime() - startNs);
+    }
+  }
+
+  public long getCount() {
+    return myCount.sum();
+  }
+
+  public long getTotalNs() {
+    return myTotalNs.sum();
+  }
+
+  public long getMaxNs() {
+    return myMaxNs.get();
+  }
+
+  public long getMeanNs() {
+    long count = getCount();
+    return count == 0 ? 0 : getTotalNs() / count;
+  }
+
+  /**
+   * @param percentile between 0 and 100.
+   * @return the upper bound of the bucket holding the given percentile, capped by the max recorded duration, or 0 if nothing was
+   * recorded.
+   */
+  public long getPercentileNs(double percentile) {
+    assert percentile >= 0 && percentile <= 100;
+    long[] buckets = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets[i] = myBuckets.get(i);
+      count += buckets[i];
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += buckets[i];
+      if (seen >= rank) {
+        long upperBound = i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        return Math.min(upperBound, getMaxNs());
+      }
+    }
+    return getMaxNs();
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      myBuckets.set(i, 0);
+    }
+    myCount.reset();
+    myTotalNs.reset();
+    myMaxNs.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%dus p99=%dus max=%dus", getCount(), TimeUnit.NANOSECONDS.toMicros(getMeanNs()),
+                         TimeUnit.NANOSECONDS.toMicros(getPercentileNs(99)), TimeUnit.NANOSECONDS.toMicros(getMaxNs()));
+  }
+}
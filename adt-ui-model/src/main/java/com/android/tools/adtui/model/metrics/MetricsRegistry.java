@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.metrics;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Metrics the profilers record about themselves, so we can tell where the time goes when they feel slow: polling perfd, writing to and
+ * querying the datastore, or updating the UI models. Metrics are identified by dot separated names, starting with the stage of the
+ * pipeline they measure, e.g. "poll.CpuDataPoller" or "frame.LineChartModel".
+ * <p>
+ * The registry is process wide, since the stages live in different modules. Looking up a metric by name costs a hash lookup, so hot
+ * paths should keep the {@link Counter} or {@link LatencyHistogram} they update.
+ */
+public final class MetricsRegistry {
+  @NotNull private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+  @NotNull private final Map<String, Counter> myCounters = new ConcurrentHashMap<>();
+  @NotNull private final Map<String, LatencyHistogram> myHistograms = new ConcurrentHashMap<>();
+  @NotNull private final Map<String, Supplier<Map<String, Long>>> myGauges = new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  MetricsRegistry() {
+  }
+
+  @NotNull
+  public static MetricsRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  @NotNull
+  public Counter getCounter(@NotNull String name) {
+    return myCounters.computeIfAbsent(name, key -> new Counter());
+  }
+
+  @NotNull
+  public LatencyHistogram getHistogram(@NotNull String name) {
+    return myHistograms.computeIfAbsent(name, key -> new LatencyHistogram());
+  }
+
+  /**
+   * Adds values computed when a snapshot is taken, e.g. the size of each database table. The values are named {@code prefix} followed by
+   * a dot and their key. Replaces any previous gauges with the same prefix.
+   */
+  public void addGauges(@NotNull String prefix, @NotNull Supplier<Map<String, Long>> values) {
+    myGauges.put(prefix, values);
+  }
+
+  public void removeGauges(@NotNull String prefix) {
+    myGauges.remove(prefix);
+  }
+
+  @NotNull
+  public MetricsSnapshot snapshot() {
+    MetricsSnapshot.Builder builder = new MetricsSnapshot.Builder();
+    myCounters.forEach(builder::addCounter);
+    myHistograms.forEach(builder::addHistogram);
+    myGauges.forEach((prefix, values) -> {
+      Map<String, Long> gauges;
+      try {
+        gauges = values.get();
+      }
+      catch (RuntimeException e) {
+        // A failing source shouldn't prevent looking at the other metrics.
+        gauges = Collections.emptyMap();
+      }
+      gauges.forEach((key, value) -> builder.addGauge(prefix + "." + key, value));
+    });
+    return builder.build();
+  }
+
+  /**
+   * Zeroes the counters and histograms, e.g. before reproducing a slowdown.
+   */
+  public void reset() {
+    myCounters.values().forEach(Counter::reset);
+    myHistograms.values().forEach(LatencyHistogram::reset);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The values of all the metrics of a {@link MetricsRegistry} at some point in time, sorted by name.
+ */
+public final class MetricsSnapshot {
+  private final long myTimestampMs;
+  @NotNull private final Map<String, Long> myCounters;
+  @NotNull private final Map<String, HistogramValues> myHistograms;
+  @NotNull private final Map<String, Long> myGauges;
+
+  private MetricsSnapshot(@NotNull Builder builder) {
+    myTimestampMs = System.currentTimeMillis();
+    myCounters = Collections.unmodifiableMap(builder.myCounters);
+    myHistograms = Collections.unmodifiableMap(builder.myHistograms);
+    myGauges = Collections.unmodifiableMap(builder.myGauges);
+  }
+
+  public long getTimestampMs() {
+    return myTimestampMs;
+  }
+
+  @NotNull
+  public Map<String, Long> getCounters() {
+    return myCounters;
+  }
+
+  @NotNull
+  public Map<String, HistogramValues> getHistograms() {
+    return myHistograms;
+  }
+
+  @NotNull
+  public Map<String, Long> getGauges() {
+    return myGauges;
+  }
+
+  /**
+   * @return the snapshot as a JSON object, with durations in nanoseconds.
+   */
+  @NotNull
+  public String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n  \"timestampMs\": ").append(myTimestampMs).append(",\n");
+    appendValues(json, "counters", myCounters);
+    json.append(",\n  \"histograms\": {");
+    String separator = "\n";
+    for (Map.Entry<String, HistogramValues> entry : myHistograms.entrySet()) {
+      HistogramValues values = entry.getValue();
+      json.append(separator).append("    ");
+      appendString(json, entry.getKey());
+      json.append(String.format(": {\"count\": %d, \"totalNs\": %d, \"meanNs\": %d, \"p50Ns\": %d, \"p90Ns\": %d, \"p99Ns\": %d, " +
+                                "\"maxNs\": %d}", values.myCount, values.myTotalNs, values.getMeanNs(), values.myP50Ns, values.myP90Ns,
+                                values.myP99Ns, values.myMaxNs));
+      separator = ",\n";
+    }
+    json.append(myHistograms.isEmpty() ? "}" : "\n  }").append(",\n");
+    appendValues(json, "gauges", myGauges);
+    json.append("\n}\n");
+    return json.toString();
+  }
+
+  private static void appendValues(@NotNull StringBuilder json, @NotNull String name, @NotNull Map<String, Long> values) {
+    json.append("  \"").append(name).append("\": {");
+    String separator = "\n";
+    for (Map.Entry<String, Long> entry : values.entrySet()) {
+      json.append(separator).append("    ");
+      appendString(json, entry.getKey());
+      json.append(": ").append(entry.getValue());
+      separator = ",\n";
+    }
+    json.append(values.isEmpty() ? "}" : "\n  }");
+  }
+
+  private static void appendString(@NotNull StringBuilder json, @NotNull String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int)c));
+          }
+          else {
+            json.append(c);
+          }
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * The values of a {@link LatencyHistogram}, in nanoseconds.
+   */
+  public static final class HistogramValues {
+    private final long myCount;
+    private final long myTotalNs;
+    private final long myP50Ns;
+    private final long myP90Ns;
+    private final long myP99Ns;
+    private final long myMaxNs;
+
+    HistogramValues(@NotNull LatencyHistogram histogram) {
+      myCount = histogram.getCount();
+      myTotalNs = histogram.getTotalNs();
+      myP50Ns = histogram.getPercentileNs(50);
+      myP90Ns = histogram.getPercentileNs(90);
+      myP99Ns = histogram.getPercentileNs(99);
+      myMaxNs = histogram.getMaxNs();
+    }
+
+    public long getCount() {
+      return myCount;
+    }
+
+    public long getTotalNs() {
+      return myTotalNs;
+    }
+
+    public long getMeanNs() {
+      return myCount == 0 ? 0 : myTotalNs / myCount;
+    }
+
+    public long getP50Ns() {
+      return myP50Ns;
+    }
+
+    public long getP90Ns() {
+      return myP90Ns;
+    }
+
+    public long getP99Ns() {
+      return myP99Ns;
+    }
+
+    public long getMaxNs() {
+      return myMaxNs;
+    }
+  }
+
+  static final class Builder {
+    @NotNull private final Map<String, Long> myCounters = new TreeMap<>();
+    @NotNull private final Map<String, HistogramValues> myHistograms = new TreeMap<>();
+    @NotNull private final Map<String, Long> myGauges = new TreeMap<>();
+
+    void addCounter(@NotNull String name, @NotNull Counter counter) {
+      myCounters.put(name, counter.get());
+    }
+
+    void addHistogram(@NotNull String name, @NotNull LatencyHistogram histogram) {
+      myHistograms.put(name, new HistogramValues(histogram));
+    }
+
+    void addGauge(@NotNull String name, long value) {
+      myGauges.put(name, value);
+    }
+
+    @NotNull
+    MetricsSnapshot build() {
+      return new MetricsSnapshot(this);
+    }
+  }
+}
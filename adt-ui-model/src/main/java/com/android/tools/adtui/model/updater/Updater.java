@@ -17,10 +17,14 @@
 package com.android.tools.adtui.model.updater;
 
 import com.android.tools.adtui.model.StopwatchTimer;
+import com.android.tools.adtui.model.metrics.LatencyHistogram;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An auxiliary object that synchronizes a group of {@link Updatable} via a simple update loop
@@ -40,6 +44,12 @@ public class Updater implements StopwatchTimer.TickHandler {
 
   private boolean mUpdating;
 
+  /**
+   * Cost of {@link Updatable#update(long)} per frame, by class of {@link Updatable}. The total frame cost includes the post updates.
+   */
+  private final Map<Class<?>, LatencyHistogram> mFrameCosts = new HashMap<>();
+  private final LatencyHistogram mTotalFrameCost = MetricsRegistry.getInstance().getHistogram("frame.total");
+
   public Updater(@NotNull StopwatchTimer timer) {
     mComponents = new LinkedList<>();
     mToRegister = new LinkedList<>();
@@ -95,13 +105,19 @@ public class Updater implements StopwatchTimer.TickHandler {
   @Override
   public void onTick(long elapsedNs) {
     mUpdating = true;
+    long frameStartNs = System.nanoTime();
     if (mReset) {
       mComponents.forEach(Updatable::reset);
       mReset = false;
     }
 
-    mComponents.forEach(component -> component.update(elapsedNs));
+    mComponents.forEach(component -> {
+      long startNs = System.nanoTime();
+      component.update(elapsedNs);
+      getFrameCost(component).record(System.nanoTime() - startNs);
+    });
     mComponents.forEach(Updatable::postUpdate);
+    mTotalFrameCost.record(System.nanoTime() - frameStartNs);
     mUpdating = false;
 
     mToUnregister.forEach(this::unregister);
@@ -111,6 +127,14 @@ public class Updater implements StopwatchTimer.TickHandler {
     mToRegister.clear();
   }
 
+  @NotNull
+  private LatencyHistogram getFrameCost(@NotNull Updatable updatable) {
+    return mFrameCosts.computeIfAbsent(updatable.getClass(), type -> {
+      String name = type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+      return MetricsRegistry.getInstance().getHistogram("frame." + name);
+    });
+  }
+
   /**
    * A linear interpolation that accumulates over time. This gives an exponential effect where the
    * value {@code from} moves towards the value {@code to} at a rate of {@code fraction} per
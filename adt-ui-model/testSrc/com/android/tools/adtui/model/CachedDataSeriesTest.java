@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CachedDataSeriesTest {
+  private final TreeMap<Long, Long> myData = new TreeMap<>();
+  private final List<Range> myRequests = new ArrayList<>();
+  private long myPadding;
+
+  /**
+   * Returns the points within the range padded by {@link #myPadding}, plus the closest point on each side, like the datastore backed
+   * series do with their padding.
+   */
+  private final DataSeries<Long> myDelegate = range -> {
+    myRequests.add(new Range(range));
+    Long from = myData.floorKey((long)range.getMin() - myPadding);
+    Long to = myData.ceilingKey((long)range.getMax());
+    List<SeriesData<Long>> result = new ArrayList<>();
+    if (myData.isEmpty()) {
+      return result;
+    }
+    for (Map.Entry<Long, Long> entry : myData.subMap(from == null ? myData.firstKey() : from, true,
+                                                     to == null ? myData.lastKey() : to, true).entrySet()) {
+      result.add(new SeriesData<>(entry.getKey(), entry.getValue()));
+    }
+    return result;
+  };
+
+  private void addData(long fromX, long toX) {
+    for (long x = fromX; x <= toX; x += 10) {
+      myData.put(x, x);
+    }
+  }
+
+  private static List<Long> getXs(List<SeriesData<Long>> data) {
+    List<Long> xs = new ArrayList<>();
+    data.forEach(point -> xs.add(point.x));
+    return xs;
+  }
+
+  @Test
+  public void slidingRangeOnlyFetchesTheTail() {
+    addData(0, 100);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+
+    assertThat(getXs(series.getDataForXRange(viewRange))).containsExactly(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L).inOrder();
+    assertThat(series.getFetchCount()).isEqualTo(1);
+
+    addData(110, 120);
+    viewRange.set(20, 120);
+    assertThat(getXs(series.getDataForXRange(viewRange)))
+      .containsExactly(10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L, 110L, 120L).inOrder();
+    assertThat(series.getFetchCount()).isEqualTo(2);
+    // Only the new tail was requested.
+    assertThat(myRequests.get(1).getMin()).isEqualTo(100.0);
+    assertThat(myRequests.get(1).getMax()).isEqualTo(120.0);
+    // The point before the view range is kept for interpolation, the older ones are evicted.
+    assertThat(series.getCachedSize()).isEqualTo(12);
+  }
+
+  @Test
+  public void queryWithinCachedRangeDoesNotFetch() {
+    addData(0, 100);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    // e.g. a legend asking for the value at a given time.
+    assertThat(getXs(series.getDataForXRange(new Range(45, 45)))).containsExactly(40L, 50L).inOrder();
+    assertThat(getXs(series.getDataForXRange(new Range(50, 50)))).containsExactly(40L, 50L, 60L).inOrder();
+    assertThat(series.getFetchCount()).isEqualTo(1);
+    assertThat(series.getCachedSize()).isEqualTo(11);
+  }
+
+  @Test
+  public void zoomingOutFetchesTheHead() {
+    addData(0, 100);
+    Range viewRange = new Range(50, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    viewRange.set(0, 100);
+    assertThat(getXs(series.getDataForXRange(viewRange))).containsExactly(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L).inOrder();
+    assertThat(series.getFetchCount()).isEqualTo(2);
+    assertThat(myRequests.get(1).getMax()).isEqualTo(50.0);
+  }
+
+  @Test
+  public void disjointRangeResetsTheCache() {
+    addData(0, 1000);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    viewRange.set(495, 605);
+    assertThat(getXs(series.getDataForXRange(viewRange))).containsExactly(490L, 500L, 510L, 520L, 530L, 540L, 550L, 560L, 570L, 580L,
+                                                                          590L, 600L, 610L).inOrder();
+    assertThat(series.getCachedSize()).isEqualTo(13);
+  }
+
+  @Test
+  public void dataArrivingAfterTheLastPointIsPickedUp() {
+    addData(0, 50);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    assertThat(getXs(series.getDataForXRange(viewRange))).containsExactly(0L, 10L, 20L, 30L, 40L, 50L).inOrder();
+
+    // Data for the end of the range arrives after it was queried.
+    addData(60, 110);
+    viewRange.set(0, 110);
+    assertThat(getXs(series.getDataForXRange(viewRange)))
+      .containsExactly(0L, 10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 100L, 110L).inOrder();
+  }
+
+  @Test
+  public void invalidateRefetchesLateData() {
+    addData(0, 100);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    myData.put(45L, 1000L);
+    assertThat(getXs(series.getDataForXRange(viewRange))).doesNotContain(45L);
+
+    series.invalidate(45);
+    List<SeriesData<Long>> data = series.getDataForXRange(viewRange);
+    assertThat(getXs(data)).containsExactly(0L, 10L, 20L, 30L, 40L, 45L, 50L, 60L, 70L, 80L, 90L, 100L).inOrder();
+    assertThat(data.get(5).value).isEqualTo(1000L);
+    // Only the invalidated part was requested again.
+    assertThat(myRequests.get(myRequests.size() - 1).getMin()).isEqualTo(40.0);
+  }
+
+  @Test
+  public void lateDataReturnedByPaddedQueriesIsPickedUp() {
+    myPadding = 20;
+    addData(0, 100);
+    Range viewRange = new Range(0, 100);
+    CachedDataSeries<Long> series = new CachedDataSeries<>(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    // A sample arrives late, along with the new tail.
+    myData.put(95L, 1000L);
+    addData(110, 120);
+    viewRange.set(20, 120);
+    List<SeriesData<Long>> data = series.getDataForXRange(viewRange);
+    assertThat(getXs(data)).containsExactly(10L, 20L, 30L, 40L, 50L, 60L, 70L, 80L, 90L, 95L, 100L, 110L, 120L).inOrder();
+    assertThat(data.get(9).value).isEqualTo(1000L);
+    assertThat(series.getFetchCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void bufferIsFilledFromTheCache() {
+    addData(0, 100);
+    Range viewRange = new Range(0, 100);
+    CachedLongDataSeries series = new CachedLongDataSeries(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    buffer.add(-1, -1);
+    series.getDataForXRange(new Range(35, 65), buffer);
+    assertThat(buffer.size()).isEqualTo(5);
+    for (int i = 0; i < buffer.size(); i++) {
+      assertThat(buffer.getX(i)).isEqualTo(30L + i * 10L);
+      assertThat(buffer.getY(i)).isEqualTo(30L + i * 10L);
+    }
+    assertThat(series.getFetchCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void bucketedQueriesKeepTheExtremesOfEachBucket() {
+    addData(0, 1000);
+    // A spike, whose max comes before its min.
+    myData.put(500L, 5000L);
+    myData.put(510L, -5L);
+    Range viewRange = new Range(0, 1000);
+    CachedLongDataSeries series = new CachedLongDataSeries(myDelegate, viewRange);
+
+    List<SeriesData<Long>> data = series.getDataForXRange(viewRange, 10);
+    assertThat(getXs(data)).containsExactly(0L, 90L, 100L, 190L, 200L, 290L, 300L, 390L, 400L, 490L, 500L, 510L, 600L, 690L, 700L, 790L,
+                                            800L, 890L, 900L, 1000L).inOrder();
+    assertThat(data.get(10).value).isEqualTo(5000L);
+    assertThat(data.get(11).value).isEqualTo(-5L);
+
+    LongSeriesBuffer buffer = new LongSeriesBuffer();
+    series.getDataForXRange(viewRange, 10, buffer);
+    assertThat(buffer.size()).isEqualTo(data.size());
+    for (int i = 0; i < buffer.size(); i++) {
+      assertThat(buffer.getX(i)).isEqualTo(data.get(i).x);
+      assertThat(buffer.getY(i)).isEqualTo(data.get(i).value);
+    }
+    assertThat(series.getFetchCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void bucketedQueriesKeepThePointsOutsideTheRange() {
+    addData(0, 1000);
+    Range viewRange = new Range(0, 1000);
+    CachedLongDataSeries series = new CachedLongDataSeries(myDelegate, viewRange);
+    series.getDataForXRange(viewRange);
+
+    assertThat(getXs(series.getDataForXRange(new Range(105, 895), 2))).containsExactly(100L, 110L, 490L, 500L, 890L, 900L).inOrder();
+    assertThat(series.getFetchCount()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.metrics;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MetricsRegistryTest {
+  private final MetricsRegistry myRegistry = new MetricsRegistry();
+
+  @Test
+  public void histogramPercentilesAreBoundedByTheirBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+    assertThat(histogram.getCount()).isEqualTo(100);
+    assertThat(histogram.getMaxNs()).isEqualTo(TimeUnit.MICROSECONDS.toNanos(100));
+    assertThat(histogram.getMeanNs()).isEqualTo(50500);
+    // The 50th value is 50us, in the [32768, 65535] ns bucket.
+    assertThat(histogram.getPercentileNs(50)).isEqualTo(65535);
+    // The upper bound of the last bucket is past the max.
+    assertThat(histogram.getPercentileNs(99)).isEqualTo(TimeUnit.MICROSECONDS.toNanos(100));
+    assertThat(histogram.getPercentileNs(0)).isEqualTo(1023);
+  }
+
+  @Test
+  public void emptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertThat(histogram.getPercentileNs(50)).isEqualTo(0);
+    assertThat(histogram.getMeanNs()).isEqualTo(0);
+    histogram.record(0);
+    histogram.record(-5);
+    assertThat(histogram.getCount()).isEqualTo(2);
+    assertThat(histogram.getPercentileNs(100)).isEqualTo(0);
+  }
+
+  @Test
+  public void metricsAreSharedByName() {
+    myRegistry.getCounter("rows").add(3);
+    myRegistry.getCounter("rows").increment();
+    myRegistry.getHistogram("poll").record(10);
+    myRegistry.getHistogram("poll").record(20);
+
+    MetricsSnapshot snapshot = myRegistry.snapshot();
+    assertThat(snapshot.getCounters()).containsExactly("rows", 4L);
+    assertThat(snapshot.getHistograms().get("poll").getCount()).isEqualTo(2);
+    assertThat(snapshot.getHistograms().get("poll").getTotalNs()).isEqualTo(30);
+  }
+
+  @Test
+  public void gaugesAreComputedOnSnapshot() {
+    myRegistry.addGauges("tables", () -> ImmutableMap.of("Cpu", 10L, "Memory", 20L));
+    myRegistry.addGauges("broken", () -> {
+      throw new IllegalStateException();
+    });
+    assertThat(myRegistry.snapshot().getGauges()).containsExactly("tables.Cpu", 10L, "tables.Memory", 20L);
+
+    myRegistry.removeGauges("tables");
+    assertThat(myRegistry.snapshot().getGauges()).isEmpty();
+  }
+
+  @Test
+  public void resetZeroesTheMetrics() {
+    myRegistry.getCounter("rows").add(3);
+    myRegistry.getHistogram("poll").record(10);
+    myRegistry.reset();
+
+    MetricsSnapshot snapshot = myRegistry.snapshot();
+    assertThat(snapshot.getCounters()).containsExactly("rows", 0L);
+    assertThat(snapshot.getHistograms().get("poll").getCount()).isEqualTo(0);
+    assertThat(snapshot.getHistograms().get("poll").getMaxNs()).isEqualTo(0);
+  }
+
+  @Test
+  public void snapshotToJson() {
+    myRegistry.getCounter("rows \"written\"").add(2);
+    myRegistry.getHistogram("poll").record(1000);
+    myRegistry.addGauges("size", () -> ImmutableMap.of("Cpu", 1L));
+
+    String json = myRegistry.snapshot().toJson();
+    assertThat(json).contains("\"counters\": {\n    \"rows \\\"written\\\"\": 2\n  }");
+    assertThat(json).contains(
+      "\"poll\": {\"count\": 1, \"totalNs\": 1000, \"meanNs\": 1000, \"p50Ns\": 1000, \"p90Ns\": 1000, \"p99Ns\": 1000, \"maxNs\": 1000}");
+    assertThat(json).contains("\"gauges\": {\n    \"size.Cpu\": 1\n  }");
+  }
+}
@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +67,33 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  /**
+   * Same reduction as {@link #reduceData(List, LineConfig)}, without allocating.
+   */
+  @Override
+  public void reduceData(@NotNull LongSeriesBuffer data, @NotNull LongSeriesBuffer reduced, @NotNull LineConfig config) {
+    if (config.getDataBucketInterval() > 0) {
+      reduced.copyFrom(data);
+      return;
+    }
+
+    reduced.clear();
+    for (int i = 0; i < data.size(); i++) {
+      long value = data.getY(i);
+      while (reduced.size() >= 2) {
+        long preLast = reduced.getY(reduced.size() - 2);
+        long last = reduced.getY(reduced.size() - 1);
+
+        if (preLast == last && (config.isStepped() || last == value)) {
+          reduced.removeLast();
+        } else {
+          break;
+        }
+      }
+      reduced.add(data.getX(i), value);
+    }
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
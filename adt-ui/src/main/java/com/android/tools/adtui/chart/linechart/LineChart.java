@@ -19,9 +19,10 @@ package com.android.tools.adtui.chart.linechart;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.RangedContinuousSeries;
-import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
@@ -115,6 +116,49 @@ public class LineChart extends AnimatedComponent {
 
   private Map<LineConfig, DashInfo> myDashInfoCache = new HashMap<>();
 
+  /**
+   * Paths built by the previous redraw, reset and reused by the next one so that redrawing doesn't allocate a path per series.
+   */
+  @NotNull
+  private final Map<RangedContinuousSeries, Path2D> myPathCache = new HashMap<>();
+
+  /**
+   * Running sum of the stacked series, reused across redraws.
+   */
+  @NotNull
+  private final LongSeriesBuffer myStackedBuffer = new LongSeriesBuffer();
+
+  /**
+   * Output of {@link LineChartReducer#reduceData(LongSeriesBuffer, LongSeriesBuffer, LineConfig)}, reused across redraws.
+   */
+  @NotNull
+  private final LongSeriesBuffer myReducedBuffer = new LongSeriesBuffer();
+
+  /**
+   * {@link #myLinePaths} scaled to the component and reduced, with their configs. Reused across paints, and only recomputed after a
+   * redraw or a resize.
+   */
+  @NotNull
+  private final ArrayList<Path2D> myTransformedPaths = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<LineConfig> myTransformedConfigs = new ArrayList<>();
+
+  /**
+   * Scaled paths handed to the reducer, reset and refilled by each transform.
+   */
+  @NotNull
+  private final ArrayList<Path2D.Float> myScaledPaths = new ArrayList<>();
+
+  @NotNull
+  private final AffineTransform myScale = new AffineTransform();
+
+  /**
+   * {@link #myScale} of the last transform, null if the paths need to be transformed again.
+   */
+  @Nullable
+  private AffineTransform myTransformedScale;
+
   @VisibleForTesting
   public LineChart(@NotNull LineChartModel model, @NotNull LineChartReducer reducer) {
     myLinePaths = new ArrayList<>();
@@ -146,6 +190,7 @@ public class LineChart extends AnimatedComponent {
    */
   public void configure(@NotNull RangedContinuousSeries series, @NotNull LineConfig config) {
     myLinesConfig.put(series, config);
+    myTransformedScale = null;
   }
 
   public void addCustomRenderer(@NotNull LineChartCustomRenderer renderer) {
@@ -170,9 +215,9 @@ public class LineChart extends AnimatedComponent {
   private void redraw(@NotNull Dimension dim) {
     long duration = System.nanoTime();
 
-    // Store the last stacked series to use them to increment the Y values
+    // Whether myStackedBuffer holds the last stacked series, to use them to increment the Y values
     // of the current stacked series.
-    List<SeriesData<Long>> lastStackedSeries = null;
+    boolean hasStackedSeries = false;
 
     Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
     Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(myLinesConfig.size());
@@ -184,10 +229,13 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacked series are summed point by point, which requires the x values across series to be aligned, so they can't be
+      // aggregated per pixel independently.
+      LongSeriesBuffer seriesBuffer = config.isStacked() ? ranged.getSeriesBuffer() : ranged.getSeriesBuffer(Math.max(1, dim.width));
       if (config.isStacked()) {
-        if (lastStackedSeries == null) {
-          lastStackedSeries = new ArrayList<>(seriesList);
+        if (!hasStackedSeries) {
+          myStackedBuffer.copyFrom(seriesBuffer);
+          hasStackedSeries = true;
         }
         else {
           // If the current series is stacked, increment its value by the value of the last stacked
@@ -195,15 +243,23 @@ public class LineChart extends AnimatedComponent {
           // points than the last stacked series (meaning that the last one was populated in a
           // prior iteration). In this case, ignore the new points (i.e. we take only the intersection
           // across all series).
-          for (int i = 0; i < seriesList.size() && i < lastStackedSeries.size(); ++i) {
+          for (int i = 0; i < seriesBuffer.size() && i < myStackedBuffer.size(); ++i) {
             // An assumption is made here that the x values across series are aligned.
-            lastStackedSeries.get(i).value += seriesList.get(i).value;
+            myStackedBuffer.setY(i, myStackedBuffer.getY(i) + seriesBuffer.getY(i));
           }
-          seriesList = lastStackedSeries;
         }
+        seriesBuffer = myStackedBuffer;
       }
 
-      Path2D path = new Path2D.Float();
+      Path2D path;
+      if (config.isDash() && config.isAdjustDash()) {
+        // The dash phase adjustment compares against the previous frame's path, so it can't be overwritten.
+        path = new Path2D.Float();
+      }
+      else {
+        path = myPathCache.computeIfAbsent(ranged, series -> new Path2D.Float());
+        path.reset();
+      }
       double xMin = ranged.getXRange().getMin();
       double xLength = ranged.getXRange().getLength();
       double yMin = ranged.getYRange().getMin();
@@ -213,19 +269,24 @@ public class LineChart extends AnimatedComponent {
       double firstXd = 0f;
       // Actual value of first point
       double firstX = 0;
-      seriesList = myReducer.reduceData(seriesList, config);
+      LongSeriesBuffer reduced = myReducedBuffer;
+      myReducer.reduceData(seriesBuffer, reduced, config);
       double xBucketInterval = config.getDataBucketInterval() / xLength;
       double xBucketBarWidth = xBucketInterval * BUCKET_BAR_PERCENTAGE;
       // If we are a stepped chart or bar chart, we don't need to worry about start and end points' Y value.
       boolean optimizeYZooming = !config.isStepped() && xBucketInterval == 0;
-      for (int i = 0; i < seriesList.size(); i++) {
-        SeriesData<Long> data = seriesList.get(i);
-        SeriesData<Long> dataNext = seriesList.get(i + 1 == seriesList.size() ? i : i + 1);
-        SeriesData<Long> dataPrev = seriesList.get(i - 1 < 0 ? i : i - 1);
+      // Last point added to the path, tracked here since Path2D#getCurrentPoint allocates.
+      boolean hasCurrentPoint = false;
+      double currentX = 0;
+      double currentY = 0;
+      for (int i = 0; i < reduced.size(); i++) {
+        int next = i + 1 == reduced.size() ? i : i + 1;
+        int prev = i - 1 < 0 ? i : i - 1;
+        long dataX = reduced.getX(i);
         // TODO: refactor to allow different types (e.g. double)
-        double xd = (data.x - xMin) / xLength;
+        double xd = (dataX - xMin) / xLength;
         // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
-        double yd = 1 - (data.value - yMin) / yLength;
+        double yd = 1 - (reduced.getY(i) - yMin) / yLength;
 
         // This change significantly speeds up drawing when zoomed into the chart. Without this change a line could extend
         // a few thousand pixels off the screen in both directions. The fill/draw function would then spend a lot of time
@@ -242,14 +303,14 @@ public class LineChart extends AnimatedComponent {
 
         double originalXd = xd;
         if (xd < 0) {
-          double xdNext = (dataNext.x - xMin) / xLength;
+          double xdNext = (reduced.getX(next) - xMin) / xLength;
           // If our next point is also offscreen then ignore this point and continue.
           if (xdNext < 0) {
             continue;
           }
 
           //Get the Y offset of our next point.
-          double ydNext = 1 - (dataNext.value - yMin) / yLength;
+          double ydNext = 1 - (reduced.getY(next) - yMin) / yLength;
 
           // If we are a dash line we get the closest normalized point to are graph otherwise we just set our point to 0.
           double newPosition = 0;
@@ -264,34 +325,38 @@ public class LineChart extends AnimatedComponent {
           // Set our new X position and carry on.
           xd = newPosition;
         } else if (xd > 1) {
-          double xdPrev = (dataPrev.x - xMin) / xLength;
+          double xdPrev = (reduced.getX(prev) - xMin) / xLength;
           if (xdPrev > 1) {
             break;
           }
           if (optimizeYZooming) {
             double ratio = (1 - xdPrev) / (xd - xdPrev);
-            double ydPrev = 1 - (dataPrev.value - yMin) / yLength;
+            double ydPrev = 1 - (reduced.getY(prev) - yMin) / yLength;
             yd = (1 - ratio) * ydPrev + (ratio * yd);
           }
           xd = 1;
         }
 
-        if (path.getCurrentPoint() == null) {
+        if (!hasCurrentPoint) {
           firstXd = xd;
-          firstX = data.x;
+          firstX = dataX;
           // If for bucket data, because the previous ending x value is next data point's starting
           // x value, i.e. (xd + interval, 1), move the path start point to (xd, 1).
           // Otherwise, move the path start point to (xd, yd).
+          hasCurrentPoint = true;
+          currentX = (float)xd;
+          currentY = (float)(xBucketInterval != 0 ? 1 : yd);
           path.moveTo(xd, xBucketInterval != 0 ? 1 : yd);
         } else if (xBucketInterval == 0) {
           // If the chart is stepped, a horizontal line should be drawn from the current
           // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
           // drawing a line to the destination point itself (e.g. (x1, y1)).
           if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
+            path.lineTo(xd, currentY);
           }
           path.lineTo(xd, yd);
+          currentX = (float)xd;
+          currentY = (float)yd;
         }
 
         if (xBucketInterval != 0) {
@@ -303,19 +368,22 @@ public class LineChart extends AnimatedComponent {
             path.lineTo(xd, yd);
             path.lineTo(barX, yd);
             path.lineTo(barX, 1);
+            currentX = (float)barX;
+            currentY = 1;
           }
         }
       }
 
-      if (myFillEndGap && path.getCurrentPoint() != null) {
+      if (myFillEndGap && hasCurrentPoint) {
         // Extends the last point on the path to the end
-        path.lineTo(Math.max(path.getCurrentPoint().getX(), 1f), path.getCurrentPoint().getY());
+        currentX = Math.max(currentX, 1f);
+        path.lineTo(currentX, currentY);
       }
 
-      if (config.isFilled() && path.getCurrentPoint() != null) {
+      if (config.isFilled() && hasCurrentPoint) {
         // If the chart is filled, draw a line from the last point to X
         // axis and another one from this new point to the first destination point.
-        path.lineTo(path.getCurrentPoint().getX(), 1f);
+        path.lineTo(currentX, 1f);
         path.lineTo(firstXd, 1f);
       }
 
@@ -357,6 +425,9 @@ public class LineChart extends AnimatedComponent {
 
     myLinePathSeries.clear();
     myLinePathSeries.addAll(orderedSeries);
+    // Drop the paths of the series which are no longer drawn.
+    myPathCache.keySet().retainAll(myLinePathSeries);
+    myTransformedScale = null;
 
     addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
   }
@@ -386,7 +457,10 @@ public class LineChart extends AnimatedComponent {
     addDebugInfo("Redraws in the last second %d", myLastRedraws);
 
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    AffineTransform scale = new AffineTransform(dim.getWidth(), 0, 0, dim.getHeight() - myTopPadding, myXOffset, myYOffset + myTopPadding);
+    myScale.setTransform(dim.getWidth(), 0, 0, dim.getHeight() - myTopPadding, myXOffset, myYOffset + myTopPadding);
+    if (!myScale.equals(myTransformedScale)) {
+      transformPaths();
+    }
 
     if (myShowMaxLine) {
       g2d.setColor(myMaxLineColor);
@@ -394,20 +468,10 @@ public class LineChart extends AnimatedComponent {
       g2d.drawLine(myMaxLineMargin, 0, dim.width, 0);
     }
 
-    // Cache the transformed line paths for reuse below.
-    List<Path2D> transformedPaths = new ArrayList<>(myLinePaths.size());
-    List<LineConfig> configs = new ArrayList<>(myLinePaths.size());
-
-    for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
-      LineConfig config = getLineConfig(myLinePathSeries.get(i));
-      configs.add(config);
-      scaledPath = myReducer.reducePath(scaledPath, config);
-      transformedPaths.add(scaledPath);
-
-      if (isDrawDebugInfo()) {
+    if (isDrawDebugInfo()) {
+      for (Path2D path : myTransformedPaths) {
         int count = 0;
-        PathIterator it = scaledPath.getPathIterator(null);
+        PathIterator it = path.getPathIterator(null);
         while (!it.isDone()) {
           ++count;
           it.next();
@@ -417,16 +481,38 @@ public class LineChart extends AnimatedComponent {
     }
 
     // 1st pass - draw all the lines in the background.
-    for (int i = 0; i < transformedPaths.size(); ++i) {
-      drawLine(g2d, transformedPaths.get(i), configs.get(i));
+    for (int i = 0; i < myTransformedPaths.size(); ++i) {
+      drawLine(g2d, myTransformedPaths.get(i), myTransformedConfigs.get(i));
     }
 
     // 2nd pass - call each custom renderer instances to redraw any regions/lines as needed.
-    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, myLinePathSeries));
+    for (LineChartCustomRenderer renderer : myCustomRenderers) {
+      renderer.renderLines(this, g2d, myTransformedPaths, myLinePathSeries);
+    }
 
     addDebugInfo("Draw time: %.2fms", (System.nanoTime() - drawStartTime) / 1e6);
   }
 
+  /**
+   * Scales {@link #myLinePaths} with {@link #myScale} into {@link #myTransformedPaths}, reusing the scaled paths of the previous call.
+   */
+  private void transformPaths() {
+    myTransformedPaths.clear();
+    myTransformedConfigs.clear();
+    for (int i = 0; i < myLinePaths.size(); ++i) {
+      if (i == myScaledPaths.size()) {
+        myScaledPaths.add(new Path2D.Float());
+      }
+      Path2D.Float scaledPath = myScaledPaths.get(i);
+      scaledPath.reset();
+      scaledPath.append(myLinePaths.get(i).getPathIterator(myScale), false);
+      LineConfig config = getLineConfig(myLinePathSeries.get(i));
+      myTransformedConfigs.add(config);
+      myTransformedPaths.add(myReducer.reducePath(scaledPath, config));
+    }
+    myTransformedScale = new AffineTransform(myScale);
+  }
+
   public static void drawLine(@NotNull Graphics2D g2d,
                               @NotNull Path2D path,
                               @NotNull LineConfig config) {
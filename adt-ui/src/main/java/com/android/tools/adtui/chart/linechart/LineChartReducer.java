@@ -15,9 +15,11 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
 
 import java.awt.geom.Path2D;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +33,19 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Primitive version of {@link #reduceData(List, LineConfig)}, used by {@link LineChart} on every redraw. Clears {@code reduced} and
+   * fills it with the reduced {@code data}. The default implementation goes through the list version, implementations should override it
+   * to avoid the allocations.
+   */
+  default void reduceData(LongSeriesBuffer data, LongSeriesBuffer reduced, LineConfig config) {
+    List<SeriesData<Long>> dataList = new ArrayList<>(data.size());
+    for (int i = 0; i < data.size(); i++) {
+      dataList.add(new SeriesData<>(data.getX(i), data.getY(i)));
+    }
+    reduced.copyFrom(reduceData(dataList, config));
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
@@ -80,6 +80,24 @@ public final class StateChart<T> extends AnimatedComponent {
   private final List<Rectangle2D.Float> myRectangles = new ArrayList<>();
   private final List<T> myRectangleValues = new ArrayList<>();
 
+  /**
+   * Rectangles allocated by previous calls to {@link #transformToViewSpace()} and {@link #draw(Graphics2D, Dimension)} respectively, which
+   * are overwritten rather than reallocated on the next call.
+   */
+  private final List<Rectangle2D.Float> myRectanglePool = new ArrayList<>();
+  private final List<Rectangle2D.Float> myTransformedShapePool = new ArrayList<>();
+
+  /**
+   * Scratch lists passed to the {@link StateChartReducer} on every draw.
+   */
+  private final List<Rectangle2D.Float> myTransformedShapes = new ArrayList<>();
+  private final List<T> myTransformedValues = new ArrayList<>();
+
+  /**
+   * Binary search keys for the clip bounds and the mouse position.
+   */
+  private final Rectangle2D.Float mySearchKey = new Rectangle2D.Float();
+
   /**
    * In some cases, StateChart is delegated to by a parent containing component (e.g. a JList or
    * a table). In order to preform some painting optimizations, we need access to that source
@@ -199,15 +217,23 @@ public final class StateChart<T> extends AnimatedComponent {
                                  float height) {
     // Because we start our activity line from the bottom and grow up we offset the height from the bottom of the component
     // instead of the top by subtracting our height from 1.
-    Rectangle2D.Float rect = new Rectangle2D.Float(
-      (float)((previousX - minX) * invRange),
-      rectY,
-      (float)((currentX - previousX) * invRange),
-      height);
+    Rectangle2D.Float rect = getPooledRectangle(myRectanglePool, myRectangles.size());
+    rect.setRect((float)((previousX - minX) * invRange),
+                 rectY,
+                 (float)((currentX - previousX) * invRange),
+                 height);
     myRectangles.add(rect);
     myRectangleValues.add(value);
   }
 
+  @NotNull
+  private static Rectangle2D.Float getPooledRectangle(@NotNull List<Rectangle2D.Float> pool, int index) {
+    if (index == pool.size()) {
+      pool.add(new Rectangle2D.Float());
+    }
+    return pool.get(index);
+  }
+
   private void transformToViewSpace() {
     if (!myNeedsTransformToViewSpace) {
       return;
@@ -290,8 +316,10 @@ public final class StateChart<T> extends AnimatedComponent {
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
 
     assert myRectangles.size() == myRectangleValues.size();
-    List<Rectangle2D.Float> transformedShapes = new ArrayList<>(myRectangles.size());
-    List<T> transformedValues = new ArrayList<>(myRectangleValues.size());
+    List<Rectangle2D.Float> transformedShapes = myTransformedShapes;
+    List<T> transformedValues = myTransformedValues;
+    transformedShapes.clear();
+    transformedValues.clear();
 
     float scaleX = (float)getWidth();
     float scaleY = (float)getHeight();
@@ -303,7 +331,7 @@ public final class StateChart<T> extends AnimatedComponent {
       if (clipRect.x != 0) {
         startIndexInclusive = Collections.binarySearch(
           myRectangles,
-          new Rectangle2D.Float(clipRect.x / scaleX, 0, 0, 0),
+          setSearchKey(clipRect.x / scaleX, 0),
           (value, key) -> (value.x + value.width < key.x) ? -1 : (value.x > key.x ? 1 : 0));
         if (startIndexInclusive < 0) {
           startIndexInclusive = -(startIndexInclusive + 1);
@@ -312,7 +340,7 @@ public final class StateChart<T> extends AnimatedComponent {
       if (clipRect.width != getWidth()) {
         endIndexExclusive = Collections.binarySearch(
           myRectangles,
-          new Rectangle2D.Float((clipRect.x + clipRect.width) / scaleX, 0, 0, 0),
+          setSearchKey((clipRect.x + clipRect.width) / scaleX, 0),
           (value, key) -> (value.x + value.width < key.x) ? -1 : (value.x > key.x ? 1 : 0));
         if (endIndexExclusive < 0) {
           endIndexExclusive = -(endIndexExclusive + 1);
@@ -332,10 +360,12 @@ public final class StateChart<T> extends AnimatedComponent {
       // This shape has to support all types of points as such cannot be transformed as efficiently as a
       // rectangle. Furthermore, AffineTransform uses doubles, which is about half as fast for LS
       // when compared to floats (doubles memory bandwidth).
-      transformedShapes.add(new Rectangle2D.Float(rectangle.x * scaleX,
-                                                  rectangle.y * scaleY,
-                                                  rectangle.width * scaleX,
-                                                  rectangle.height * scaleY));
+      Rectangle2D.Float transformed = getPooledRectangle(myTransformedShapePool, transformedShapes.size());
+      transformed.setRect(rectangle.x * scaleX,
+                          rectangle.y * scaleY,
+                          rectangle.width * scaleX,
+                          rectangle.height * scaleY);
+      transformedShapes.add(transformed);
       transformedValues.add(myRectangleValues.get(i));
     }
 
@@ -351,7 +381,7 @@ public final class StateChart<T> extends AnimatedComponent {
       hoverIndex = Collections.binarySearch(
         transformedShapes,
         // Optimization: Encode mouseXFloat into width component of the key to avoid recalculating it on every invocation of the Comparable.
-        new Rectangle2D.Float(mouseXFloat, 0, mouseXFloat + 1.0f, 0),
+        setSearchKey(mouseXFloat, mouseXFloat + 1.0f),
         (value, key) -> (value.x + value.width < key.x) ? -1 : (value.x > key.width ? 1 : 0));
     }
 
@@ -382,6 +412,12 @@ public final class StateChart<T> extends AnimatedComponent {
     addDebugInfo("# of drawn rects: %d", transformedShapes.size());
   }
 
+  @NotNull
+  private Rectangle2D.Float setSearchKey(float x, float width) {
+    mySearchKey.setRect(x, 0, width, 0);
+    return mySearchKey;
+  }
+
   private void registerMouseEvents() {
     MouseEventHandler handler = new MouseEventHandler() {
       @Override
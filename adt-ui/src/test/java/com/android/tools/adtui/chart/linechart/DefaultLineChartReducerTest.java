@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.SeriesData;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
@@ -89,6 +90,29 @@ public class DefaultLineChartReducerTest {
     assertSeriesEquals(expected, result);
   }
 
+  @Test
+  public void reduceDataBufferMatchesList() {
+    long[] values = {10, 10, 13, 13, 13, 13, 5, 5, 5, 7};
+    LongSeriesBuffer data = new LongSeriesBuffer(2);
+    List<SeriesData<Long>> dataList = new ArrayList<>();
+    for (int i = 0; i < values.length; i++) {
+      data.add(i, values[i]);
+      dataList.add(new SeriesData<>(i, values[i]));
+    }
+
+    LongSeriesBuffer reduced = new LongSeriesBuffer(2);
+    for (boolean stepped : new boolean[]{false, true}) {
+      myConfig.setStepped(stepped);
+      myReducer.reduceData(data, reduced, myConfig);
+      List<SeriesData<Long>> expected = myReducer.reduceData(dataList, myConfig);
+      assertThat(reduced.size()).isEqualTo(expected.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertThat(reduced.getX(i)).isEqualTo(expected.get(i).x);
+        assertThat(reduced.getY(i)).isEqualTo(expected.get(i).value);
+      }
+    }
+  }
+
   @Test
   public void simpleReducePath() {
     float[][] given = {{0, 0}, {0.1f, 1}, {0.2f, 6}, {0.3f, 4}, {1, 2}, {1.1f, 5}};
@@ -20,7 +20,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
@@ -227,6 +229,34 @@ public class FutureCallbackExecutor implements Executor {
     }
   }
 
+  /**
+   * Similar to {@link #executeFuturesInSequence(Iterator, Function)}, but keeps up to {@code maxConcurrency}
+   * tasks running at once: as soon as a task completes, the task for the next element of the {@code iterator}
+   * is started.
+   *
+   * <p>The {@code iterator} is only accessed from the calling thread and from this executor, so this executor
+   * should be single threaded (e.g. the EDT) if the {@code iterator} isn't thread safe.
+   *
+   * <p>Returns a {@link ListenableFuture} that completes when all tasks have completed.
+   *
+   * @param iterator       The source of elements to process
+   * @param taskFactory    A factory {@link Function} that returns a {@link ListenableFuture} for a given element
+   * @param maxConcurrency The maximum number of tasks running at once
+   * @param <T>            The type of the elements to process
+   */
+  @NotNull
+  public <T> ListenableFuture<Void> executeFuturesInParallel(@NotNull Iterator<T> iterator,
+                                                             @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                             int maxConcurrency) {
+    List<ListenableFuture<Void>> workers = new ArrayList<>(maxConcurrency);
+    for (int i = 0; i < maxConcurrency && iterator.hasNext(); i++) {
+      SettableFuture<Void> workerResult = SettableFuture.create();
+      executeFuturesInSequenceWorker(iterator, taskFactory, workerResult);
+      workers.add(workerResult);
+    }
+    return transform(Futures.allAsList(workers), results -> null);
+  }
+
   /**
    * Wrap a {@link ThrowableFunction} into a {@link Function} using a {@link UndeclaredThrowableException}.
    *
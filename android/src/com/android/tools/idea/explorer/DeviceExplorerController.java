@@ -74,6 +74,11 @@ public class DeviceExplorerController {
   private static final String DEVICE_EXPLORER_BUSY_MESSAGE = "Device Explorer is busy, please retry later or cancel current operation";
   private static final long FILE_ENTRY_CREATION_TIMEOUT_MILLIS = 10_000;
   private static final long FILE_ENTRY_DELETION_TIMEOUT_MILLIS = 10_000;
+  /**
+   * Maximum number of entries of a directory downloaded at once. The device file system may further limit
+   * the number of concurrent transfers.
+   */
+  private static final int MAX_PARALLEL_DOWNLOADS = 4;
 
   private int myShowLoadingNodeDelayMillis = 200;
   private int myTransferringNodeRepaintMillis = 100;
@@ -715,14 +720,18 @@ public class DeviceExplorerController {
 
       SettableFuture<Void> futureResult = SettableFuture.create();
 
-      ListenableFuture<Void> futureLoadChildren = loadNodeChildren(treeNode);
+      ListenableFuture<Void> futureLoadChildren = loadNodeSubtree(treeNode);
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
-          ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
-            Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
-            return downloadSingleNode(node, nodePath, tracker);
-          });
+          // Pipeline the downloads of the directory entries, progress of all of them is reported to the same tracker
+          ListenableFuture<Void> futureDownloadChildren = myEdtExecutor.executeFuturesInParallel(
+            treeNode.getChildEntryNodes().iterator(),
+            node -> {
+              Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+              return downloadSingleNode(node, nodePath, tracker);
+            },
+            MAX_PARALLEL_DOWNLOADS);
           myEdtExecutor.addConsumer(futureDownloadChildren, (aVoid, throwable) -> {
             if (throwable != null) {
               tracker.addProblem(throwable);
@@ -1394,6 +1403,19 @@ public class DeviceExplorerController {
     }
 
     private ListenableFuture<Void> loadNodeChildren(@NotNull final DeviceFileEntryNode node) {
+      return loadNodeChildren(node, false);
+    }
+
+    /**
+     * Loads the children of a directory node and of all the directories below it from a single listing of the subtree
+     * (see {@link DeviceFileEntry#getDescendants()}), e.g. before downloading the directory, instead of listing each
+     * directory as it is reached. The listing doesn't follow symbolic links, so links to directories are loaded as usual.
+     */
+    private ListenableFuture<Void> loadNodeSubtree(@NotNull final DeviceFileEntryNode node) {
+      return loadNodeChildren(node, node.getEntry().isDirectory());
+    }
+
+    private ListenableFuture<Void> loadNodeChildren(@NotNull final DeviceFileEntryNode node, boolean isSubtree) {
       // Ensure node is expanded only once
       if (node.isLoaded()) {
         return Futures.immediateFuture(null);
@@ -1420,40 +1442,34 @@ public class DeviceExplorerController {
       myLoadingNodesAlarms.addRequest(showLoadingNode, myShowLoadingNodeDelayMillis);
 
       startLoadChildren(node);
-      ListenableFuture<List<DeviceFileEntry>> futureEntries = node.getEntry().getEntries();
-      myEdtExecutor.addCallback(futureEntries, new FutureCallback<List<DeviceFileEntry>>() {
+      ListenableFuture<Map<String, List<DeviceFileEntry>>> futureEntries;
+      if (isSubtree) {
+        futureEntries = myEdtExecutor.transform(node.getEntry().getDescendants(), descendants -> {
+          assert descendants != null;
+          Map<String, List<DeviceFileEntry>> entriesByParentPath = new HashMap<>();
+          for (DeviceFileEntry descendant : descendants) {
+            DeviceFileEntry parent = descendant.getParent();
+            if (parent != null) {
+              entriesByParentPath.computeIfAbsent(parent.getFullPath(), path -> new ArrayList<>()).add(descendant);
+            }
+          }
+          return entriesByParentPath;
+        });
+      }
+      else {
+        futureEntries = myEdtExecutor.transform(node.getEntry().getEntries(), entries -> {
+          assert entries != null;
+          return Collections.singletonMap(node.getEntry().getFullPath(), entries);
+        });
+      }
+      myEdtExecutor.addCallback(futureEntries, new FutureCallback<Map<String, List<DeviceFileEntry>>>() {
         @Override
-        public void onSuccess(List<DeviceFileEntry> result) {
+        public void onSuccess(Map<String, List<DeviceFileEntry>> result) {
           if (!Objects.equals(treeModel, getTreeModel())) {
             // We switched to another device, ignore this callback
             return;
           }
-
-          // Save selection
-          TreePath[] oldSelections = treeSelectionModel.getSelectionPaths();
-
-          // Collect existing entries that have the "isLinkToDirectory" property set
-          Set<String> isLinkToDirectory = node.getChildEntryNodes().stream()
-            .filter(DeviceFileEntryNode::isSymbolicLinkToDirectory)
-            .map(x -> x.getEntry().getName())
-            .collect(Collectors.toSet());
-
-          // Sort new entries according to presentation sort order
-          Comparator<DeviceFileEntry> comparator = NodeSorting.getCustomComparator(
-            DeviceFileEntry::getName,
-            x -> x.isDirectory() || isLinkToDirectory.contains(x.getName()));
-          result.sort(comparator);
-
-          List<DeviceFileEntryNode> addedNodes = updateChildrenNodes(treeModel, node, result);
-
-          // Restore selection
-          restoreTreeSelection(treeSelectionModel, oldSelections, node);
-
-          List<DeviceFileEntryNode> symlinkNodes = addedNodes
-            .stream()
-            .filter(x -> x.getEntry().isSymbolicLink())
-            .collect(Collectors.toList());
-          querySymbolicLinks(symlinkNodes, treeModel);
+          setChildEntries(treeModel, treeSelectionModel, node, result, isSubtree);
         }
 
         @Override
@@ -1476,6 +1492,54 @@ public class DeviceExplorerController {
       return myEdtExecutor.transform(futureEntries, entries -> null);
     }
 
+    /**
+     * Replaces the children of the node with the listed entries of its directory, and if {@code isSubtree} is true, does the same for
+     * all the directories below it, which are then loaded as well.
+     */
+    private void setChildEntries(@NotNull DefaultTreeModel treeModel,
+                                 @NotNull DefaultTreeSelectionModel treeSelectionModel,
+                                 @NotNull DeviceFileEntryNode node,
+                                 @NotNull Map<String, List<DeviceFileEntry>> entriesByParentPath,
+                                 boolean isSubtree) {
+      List<DeviceFileEntry> entries =
+        new ArrayList<>(entriesByParentPath.getOrDefault(node.getEntry().getFullPath(), Collections.emptyList()));
+
+      // Save selection
+      TreePath[] oldSelections = treeSelectionModel.getSelectionPaths();
+
+      // Collect existing entries that have the "isLinkToDirectory" property set
+      Set<String> isLinkToDirectory = node.getChildEntryNodes().stream()
+        .filter(DeviceFileEntryNode::isSymbolicLinkToDirectory)
+        .map(x -> x.getEntry().getName())
+        .collect(Collectors.toSet());
+
+      // Sort new entries according to presentation sort order
+      Comparator<DeviceFileEntry> comparator = NodeSorting.getCustomComparator(
+        DeviceFileEntry::getName,
+        x -> x.isDirectory() || isLinkToDirectory.contains(x.getName()));
+      entries.sort(comparator);
+
+      List<DeviceFileEntryNode> addedNodes = updateChildrenNodes(treeModel, node, entries);
+
+      // Restore selection
+      restoreTreeSelection(treeSelectionModel, oldSelections, node);
+
+      List<DeviceFileEntryNode> symlinkNodes = addedNodes
+        .stream()
+        .filter(x -> x.getEntry().isSymbolicLink())
+        .collect(Collectors.toList());
+      querySymbolicLinks(symlinkNodes, treeModel);
+
+      if (isSubtree) {
+        for (DeviceFileEntryNode childNode : node.getChildEntryNodes()) {
+          if (childNode.getEntry().isDirectory() && !childNode.isLoaded()) {
+            childNode.setLoaded(true);
+            setChildEntries(treeModel, treeSelectionModel, childNode, entriesByParentPath, true);
+          }
+        }
+      }
+    }
+
     @NotNull
     private List<DeviceFileEntryNode> updateChildrenNodes(@NotNull DefaultTreeModel treeModel,
                                                           @NotNull DeviceFileEntryNode parentNode,
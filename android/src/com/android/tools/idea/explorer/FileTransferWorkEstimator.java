@@ -109,16 +109,29 @@ public class FileTransferWorkEstimator {
     }
     reportProgress(estimate, progress);
 
-    if (entry.isDirectory() || isLinkToDirectory) {
-      ListenableFuture<List<DeviceFileEntry>> futureEntries = entry.getEntries();
-      return myEdtExecutor.transformAsync(futureEntries, entries -> {
-        assert entries != null;
+    if (entry.isDirectory() && !isLinkToDirectory) {
+      // The file system lists the whole subtree at once if it can
+      return myEdtExecutor.transform(entry.getDescendants(), descendants -> {
+        assert descendants != null;
         estimate.addDirectoryCount(1);
         estimate.addWorkUnits(getDirectoryWorkUnits());
-        return myEdtExecutor.executeFuturesInSequence(entries.iterator(),
-                                                      childEntry -> estimateDownloadWorkWorker(childEntry, false, estimate, progress));
+        for (DeviceFileEntry descendant : descendants) {
+          if (descendant.isDirectory()) {
+            estimate.addDirectoryCount(1);
+            estimate.addWorkUnits(getDirectoryWorkUnits());
+          }
+          else {
+            estimate.addFileCount(1);
+            estimate.addWorkUnits(getFileWorkUnits() + getFileContentsWorkUnits(descendant.getSize()));
+          }
+        }
+        reportProgress(estimate, progress);
+        return null;
       });
     }
+    else if (isLinkToDirectory) {
+      return estimateDownloadWorkByWalking(entry, estimate, progress);
+    }
     else {
       estimate.addFileCount(1);
       estimate.addWorkUnits(getFileWorkUnits() + getFileContentsWorkUnits(entry.getSize()));
@@ -126,6 +139,20 @@ public class FileTransferWorkEstimator {
     }
   }
 
+  @NotNull
+  private ListenableFuture<Void> estimateDownloadWorkByWalking(@NotNull DeviceFileEntry entry,
+                                                               @NotNull FileTransferWorkEstimate estimate,
+                                                               @NotNull FileTransferWorkEstimatorProgress progress) {
+    ListenableFuture<List<DeviceFileEntry>> futureEntries = entry.getEntries();
+    return myEdtExecutor.transformAsync(futureEntries, entries -> {
+      assert entries != null;
+      estimate.addDirectoryCount(1);
+      estimate.addWorkUnits(getDirectoryWorkUnits());
+      return myEdtExecutor.executeFuturesInSequence(entries.iterator(),
+                                                    childEntry -> estimateDownloadWorkWorker(childEntry, false, estimate, progress));
+    });
+  }
+
   public ListenableFuture<FileTransferWorkEstimate> estimateUploadWork(@NotNull Path path,
                                                                        @NotNull FileTransferWorkEstimatorProgress progress) {
     ListenableFuture<FileTransferWorkEstimate> futureEstimate = myTaskExecutor.executeAsync(() -> {
@@ -232,6 +232,20 @@ public class AdbDeviceDataDirectoryEntry extends AdbDeviceForwardingFileEntry {
       });
     }
 
+    @NotNull
+    @Override
+    public ListenableFuture<List<DeviceFileEntry>> getDescendants() {
+      // Create "run-as" entries for all the entries of the subtree
+      ListenableFuture<List<AdbFileListingEntry>> futureDescendants =
+        myDevice.getAdbFileListing().getDescendantsRunAs(myEntry, myPackageName);
+
+      return myDevice.getTaskExecutor().transform(futureDescendants, entries -> {
+        assert entries != null;
+        return AdbDeviceDirectFileEntry.createDescendantEntries(
+          this, entries, (parent, x) -> new AdbDevicePackageDirectoryEntry(parent, x, myPackageName));
+      });
+    }
+
     @NotNull
     @Override
     public ListenableFuture<Void> downloadFile(@NotNull Path localPath, @NotNull FileTransferProgress progress) {
@@ -43,6 +43,13 @@ public class AdbDeviceDefaultFileEntry extends AdbDeviceFileEntry {
     return myDevice.getTaskExecutor().transformAsync(futureMountPoint, AdbDeviceFileEntry::getEntries);
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<List<DeviceFileEntry>> getDescendants() {
+    ListenableFuture<AdbDeviceFileEntry> futureMountPoint = myDevice.resolveMountPoint(this);
+    return myDevice.getTaskExecutor().transformAsync(futureMountPoint, AdbDeviceFileEntry::getDescendants);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
@@ -28,7 +28,10 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -60,6 +63,38 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<List<DeviceFileEntry>> getDescendants() {
+    ListenableFuture<List<AdbFileListingEntry>> descendants = myDevice.getAdbFileListing().getDescendantsRunAs(myEntry, myRunAs);
+    return myDevice.getTaskExecutor().transform(descendants, result -> {
+      assert result != null;
+      return createDescendantEntries(this, result, (parent, listingEntry) -> new AdbDeviceDefaultFileEntry(myDevice, listingEntry, parent));
+    });
+  }
+
+  /**
+   * Wraps the entries returned by {@link AdbFileListing#getDescendantsRunAs} so that the parent of each entry is the
+   * entry of its directory.
+   */
+  @NotNull
+  static List<DeviceFileEntry> createDescendantEntries(@NotNull AdbDeviceFileEntry root,
+                                                       @NotNull List<AdbFileListingEntry> listingEntries,
+                                                       @NotNull BiFunction<AdbDeviceFileEntry, AdbFileListingEntry, AdbDeviceFileEntry> factory) {
+    Map<String, AdbDeviceFileEntry> directories = new HashMap<>();
+    directories.put(root.getFullPath(), root);
+    return listingEntries.stream()
+      .map(listingEntry -> {
+        AdbDeviceFileEntry parent = directories.getOrDefault(AdbPathUtil.getParentPath(listingEntry.getFullPath()), root);
+        AdbDeviceFileEntry entry = factory.apply(parent, listingEntry);
+        if (listingEntry.isDirectory()) {
+          directories.put(listingEntry.getFullPath(), entry);
+        }
+        return entry;
+      })
+      .collect(Collectors.toList());
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> delete() {
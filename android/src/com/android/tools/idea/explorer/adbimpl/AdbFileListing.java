@@ -27,7 +27,10 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.regex.MatchResult;
@@ -38,9 +41,16 @@ import java.util.stream.Collectors;
 import static com.android.ddmlib.FileListingService.LS_LD_PATTERN;
 import static com.android.ddmlib.FileListingService.LS_L_PATTERN;
 
+/**
+ * Lists the contents of directories of a device using "{@code ls -l}" shell commands.
+ *
+ * <p>Whole subtrees can be listed in a single shell round trip with {@link #getDescendantsRunAs}. Listings are never
+ * cached, so that each call reflects the current contents of the device.
+ */
 public class AdbFileListing {
   @NotNull public static final Logger LOGGER = Logger.getInstance(AdbFileListing.class);
   @NotNull private static final Pattern BACKSLASH = Pattern.compile("\\", Pattern.LITERAL);
+  @NotNull private static final Pattern REPEATED_SEPARATORS = Pattern.compile("/{2,}");
 
   @NotNull private final IDevice myDevice;
   @NotNull private AdbDeviceCapabilities myDeviceCapabilities;
@@ -76,7 +86,7 @@ public class AdbFileListing {
 
       List<AdbFileListingEntry> entries = commandResult.getOutput()
         .stream()
-        .map(line -> processLsOutputLine(line, escaping, parentEntry))
+        .map(line -> processLsOutputLine(line, escaping, parentEntry.getFullPath()))
         .filter(Objects::nonNull)
         .collect(Collectors.toList());
       if (entries.isEmpty() && commandResult.isError()) {
@@ -86,6 +96,75 @@ public class AdbFileListing {
     });
   }
 
+  /**
+   * Returns all the entries below {@code parentEntry}, at any depth, using a single "{@code ls -l -R}" shell command.
+   * Directories are listed before their contents. Symbolic links are not followed, and directories which can't be
+   * read are reported without their contents.
+   */
+  @NotNull
+  public ListenableFuture<List<AdbFileListingEntry>> getDescendantsRunAs(@NotNull AdbFileListingEntry parentEntry,
+                                                                         @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      String command = getCommand(runAs, "ls -l -R ").withDirectoryEscapedPath(parentEntry.getFullPath()).build(); //$NON-NLS-1$
+
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      boolean escaping = myDeviceCapabilities.hasEscapingLs();
+
+      // The output is made of one section per directory, starting with a "path:" header line followed by the
+      // "ls -l" lines of the directory contents.
+      String rootPath = normalizePath(parentEntry.getFullPath());
+      Map<String, List<AdbFileListingEntry>> listings = new LinkedHashMap<>();
+      String currentPath = rootPath;
+      List<AdbFileListingEntry> currentEntries = null;
+      for (String line : commandResult.getOutput()) {
+        AdbFileListingEntry entry = processLsOutputLine(line, escaping, currentPath);
+        if (entry != null) {
+          if (currentEntries == null) {
+            currentEntries = listings.computeIfAbsent(currentPath, key -> new ArrayList<>());
+          }
+          currentEntries.add(entry);
+        }
+        else if (line.endsWith(":")) {
+          String header = line.substring(0, line.length() - 1);
+          currentPath = normalizePath(escaping ? BACKSLASH.matcher(header).replaceAll("") : header);
+          currentEntries = listings.computeIfAbsent(currentPath, key -> new ArrayList<>());
+        }
+      }
+      if (listings.isEmpty() && commandResult.isError()) {
+        commandResult.throwIfError();
+      }
+
+      // Flatten the listings so that each directory comes before its contents
+      List<AdbFileListingEntry> descendants = new ArrayList<>();
+      addDescendants(rootPath, listings, descendants);
+      return descendants;
+    });
+  }
+
+  private static void addDescendants(@NotNull String path,
+                                     @NotNull Map<String, List<AdbFileListingEntry>> listings,
+                                     @NotNull List<AdbFileListingEntry> descendants) {
+    List<AdbFileListingEntry> entries = listings.get(path);
+    if (entries == null) {
+      return;
+    }
+    for (AdbFileListingEntry entry : entries) {
+      descendants.add(entry);
+      if (entry.isDirectory()) {
+        addDescendants(normalizePath(entry.getFullPath()), listings, descendants);
+      }
+    }
+  }
+
+  @NotNull
+  private static String normalizePath(@NotNull String path) {
+    path = REPEATED_SEPARATORS.matcher(path).replaceAll("/");
+    if (path.length() > 1 && path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+
   /**
    * Determine if a symlink entry points to a directory. This is a best effort process,
    * as the target of the symlink might not be accessible, in which case the future value
@@ -131,7 +210,7 @@ public class AdbFileListing {
   }
 
   @Nullable
-  private static AdbFileListingEntry processLsOutputLine(@NotNull String line, boolean escaping, @NotNull AdbFileListingEntry parentEntry) {
+  private static AdbFileListingEntry processLsOutputLine(@NotNull String line, boolean escaping, @NotNull String parentPath) {
     // no need to handle empty lines.
     if (line.isEmpty()) {
       return null;
@@ -197,7 +276,7 @@ public class AdbFileListing {
       info = "-> " + info; //$NON-NLS-1$;
     }
 
-    String path = AdbPathUtil.resolve(parentEntry.getFullPath(), name);
+    String path = AdbPathUtil.resolve(parentPath, name);
 
     // Create entry and add it to result
     return new AdbFileListingEntry(path,
@@ -24,23 +24,39 @@ import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.fs.ThrottledProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.android.tools.idea.explorer.adbimpl.AdbPathUtil.DEVICE_TEMP_DIRECTORY;
 
+/**
+ * Transfers files from/to a device using the ADB sync service.
+ *
+ * <p>Transfers may be started concurrently: at most {@link #MAX_SYNC_CONNECTIONS} sync connections are open at once,
+ * additional transfers are queued until a connection becomes available. When a transfer completes and another one is
+ * waiting, the connection is handed over to the waiting transfer instead of being closed, so that pipelined transfers
+ * of many small files don't pay the cost of opening a new connection for each file.
+ */
 public class AdbFileTransfer {
   @NotNull private static Logger LOGGER = Logger.getInstance(AdbFileTransfer.class);
+  private static final int MAX_SYNC_CONNECTIONS = 4;
 
   @NotNull private final IDevice myDevice;
   @NotNull private final AdbFileOperations myFileOperations;
   @NotNull private final FutureCallbackExecutor myProgressExecutor;
   @NotNull private final FutureCallbackExecutor myTaskExecutor;
+  @NotNull private final Object mySyncServiceLock = new Object();
+  @NotNull private final Deque<SettableFuture<SyncService>> myPendingSyncServiceRequests = new ArrayDeque<>();
+  private int myOpenSyncServiceCount;
 
   public AdbFileTransfer(@NotNull IDevice device,
                          @NotNull AdbFileOperations fileOperations,
@@ -128,10 +144,16 @@ public class AdbFileTransfer {
                                                     @NotNull Path localPath,
                                                     @NotNull FileTransferProgress progress) {
 
-    ListenableFuture<SyncService> futureSyncService = getSyncService();
+    ListenableFuture<SyncService> futureSyncService = acquireSyncService();
+    AtomicBoolean syncServiceClaimed = new AtomicBoolean();
 
-    ListenableFuture<Void> futurePull = myTaskExecutor.transform(futureSyncService, syncService -> {
+    ListenableFuture<Void> futurePull = myTaskExecutor.transform(Futures.nonCancellationPropagating(futureSyncService), syncService -> {
       assert syncService != null;
+      if (!syncServiceClaimed.compareAndSet(false, true)) {
+        // The transfer was cancelled and the connection has already been released
+        return null;
+      }
+      boolean completed = false;
       try {
         long startTime = System.nanoTime();
         syncService.pullFile(remotePath,
@@ -140,12 +162,14 @@ public class AdbFileTransfer {
         long endTime = System.nanoTime();
         LOGGER.info(String.format("Pull file took %,d ms to execute: \"%s\" -> \"%s\"",
                                   (endTime - startTime) / 1_000_000, remotePath, localPath));
+        completed = true;
         return null;
       }
       finally {
-        syncService.close();
+        releaseSyncService(syncService, completed);
       }
     });
+    releaseSyncServiceIfCancelled(futurePull, futureSyncService, syncServiceClaimed);
 
     return myTaskExecutor.catchingAsync(futurePull, SyncException.class, syncError -> {
       assert syncError != null;
@@ -163,10 +187,16 @@ public class AdbFileTransfer {
                                                   @NotNull String remotePath,
                                                   @NotNull FileTransferProgress progress) {
 
-    ListenableFuture<SyncService> futureSyncService = getSyncService();
+    ListenableFuture<SyncService> futureSyncService = acquireSyncService();
+    AtomicBoolean syncServiceClaimed = new AtomicBoolean();
 
-    ListenableFuture<Void> futurePush = myTaskExecutor.transform(futureSyncService, syncService -> {
+    ListenableFuture<Void> futurePush = myTaskExecutor.transform(Futures.nonCancellationPropagating(futureSyncService), syncService -> {
       assert syncService != null;
+      if (!syncServiceClaimed.compareAndSet(false, true)) {
+        // The transfer was cancelled and the connection has already been released
+        return null;
+      }
+      boolean completed = false;
       try {
         long fileLength = localPath.toFile().length();
         long startTime = System.nanoTime();
@@ -176,12 +206,14 @@ public class AdbFileTransfer {
         long endTime = System.nanoTime();
         LOGGER.info(String.format("Push file took %,d ms to execute: \"%s\" -> \"%s\"",
                                   (endTime - startTime) / 1_000_000, localPath, remotePath));
+        completed = true;
         return null;
       }
       finally {
-        syncService.close();
+        releaseSyncService(syncService, completed);
       }
     });
+    releaseSyncServiceIfCancelled(futurePush, futureSyncService, syncServiceClaimed);
 
     return myTaskExecutor.catchingAsync(futurePush, SyncException.class, syncError -> {
       assert syncError != null;
@@ -194,6 +226,114 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Releases the sync connection of a transfer that is cancelled before it could claim the connection, as the
+   * transfer then never runs and can't release the connection itself. {@code futureSyncService} is not cancelled
+   * along with the transfer, so that a connection being opened or handed over is always accounted for.
+   */
+  private void releaseSyncServiceIfCancelled(@NotNull ListenableFuture<Void> futureTransfer,
+                                             @NotNull ListenableFuture<SyncService> futureSyncService,
+                                             @NotNull AtomicBoolean syncServiceClaimed) {
+    myTaskExecutor.addListener(futureTransfer, () -> {
+      if (futureTransfer.isCancelled()) {
+        myTaskExecutor.addConsumer(futureSyncService, (syncService, error) -> {
+          if (syncService != null && syncServiceClaimed.compareAndSet(false, true)) {
+            releaseSyncService(syncService, true);
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Returns a future that completes with a sync connection once fewer than {@link #MAX_SYNC_CONNECTIONS} are in use.
+   * The connection must be given back with {@link #releaseSyncService}.
+   */
+  @NotNull
+  private ListenableFuture<SyncService> acquireSyncService() {
+    synchronized (mySyncServiceLock) {
+      if (myOpenSyncServiceCount >= MAX_SYNC_CONNECTIONS) {
+        SettableFuture<SyncService> futureSyncService = SettableFuture.create();
+        myPendingSyncServiceRequests.add(futureSyncService);
+        return futureSyncService;
+      }
+      myOpenSyncServiceCount++;
+    }
+    return openSyncService();
+  }
+
+  /**
+   * Hands {@code syncService} over to the next waiting transfer, or closes it if no transfer is waiting. If the
+   * connection can't be reused, i.e. the transfer failed or was cancelled, it is closed and a new connection is
+   * opened for the next waiting transfer.
+   */
+  private void releaseSyncService(@NotNull SyncService syncService, boolean reusable) {
+    if (!reusable) {
+      syncService.close();
+    }
+
+    SettableFuture<SyncService> nextRequest;
+    synchronized (mySyncServiceLock) {
+      nextRequest = myPendingSyncServiceRequests.poll();
+      if (nextRequest == null) {
+        myOpenSyncServiceCount--;
+      }
+    }
+
+    if (nextRequest == null) {
+      if (reusable) {
+        syncService.close();
+      }
+    }
+    else if (reusable) {
+      if (!nextRequest.set(syncService)) {
+        // The waiting transfer was cancelled, try the next one
+        releaseSyncService(syncService, true);
+      }
+    }
+    else {
+      openSyncService(nextRequest);
+    }
+  }
+
+  /**
+   * Opens a new sync connection for a slot already accounted for in {@link #myOpenSyncServiceCount}. The slot is
+   * released if the connection can't be opened.
+   */
+  @NotNull
+  private ListenableFuture<SyncService> openSyncService() {
+    ListenableFuture<SyncService> futureSyncService = getSyncService();
+    myTaskExecutor.addConsumer(futureSyncService, (syncService, error) -> {
+      if (error != null) {
+        SettableFuture<SyncService> nextRequest;
+        synchronized (mySyncServiceLock) {
+          nextRequest = myPendingSyncServiceRequests.poll();
+          if (nextRequest == null) {
+            myOpenSyncServiceCount--;
+          }
+        }
+        if (nextRequest != null) {
+          // Give the slot to the next waiting transfer
+          openSyncService(nextRequest);
+        }
+      }
+    });
+    return futureSyncService;
+  }
+
+  private void openSyncService(@NotNull SettableFuture<SyncService> request) {
+    ListenableFuture<SyncService> futureSyncService = openSyncService();
+    myTaskExecutor.addConsumer(futureSyncService, (syncService, error) -> {
+      if (error != null) {
+        request.setException(error);
+      }
+      else if (!request.set(syncService)) {
+        // The waiting transfer was cancelled
+        releaseSyncService(syncService, true);
+      }
+    });
+  }
+
   @NotNull
   private ListenableFuture<SyncService> getSyncService() {
     return myTaskExecutor.executeAsync(() -> {
@@ -15,11 +15,15 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -56,6 +60,34 @@ public interface DeviceFileEntry {
   @NotNull
   ListenableFuture<List<DeviceFileEntry>> getEntries();
 
+  /**
+   * The list of all entries contained in this directory, at any depth, each directory coming before its contents.
+   * Symbolic links are not followed.
+   *
+   * <p>The default implementation walks the subtree with {@link #getEntries()}, listing sibling directories
+   * concurrently. Implementations able to list a whole subtree in fewer requests to the device (e.g. in a single
+   * shell command) should override this method.
+   */
+  @NotNull
+  default ListenableFuture<List<DeviceFileEntry>> getDescendants() {
+    return Futures.transformAsync(getEntries(), entries -> {
+      assert entries != null;
+      List<ListenableFuture<List<DeviceFileEntry>>> futureSubtrees = new ArrayList<>(entries.size());
+      for (DeviceFileEntry entry : entries) {
+        futureSubtrees.add(entry.isDirectory() ? entry.getDescendants() : Futures.immediateFuture(Collections.emptyList()));
+      }
+      return Futures.transform(Futures.allAsList(futureSubtrees), subtrees -> {
+        assert subtrees != null;
+        List<DeviceFileEntry> descendants = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+          descendants.add(entries.get(i));
+          descendants.addAll(subtrees.get(i));
+        }
+        return descendants;
+      }, MoreExecutors.directExecutor());
+    }, MoreExecutors.directExecutor());
+  }
+
   /**
    * Deletes the entry from the device file system.
    */
@@ -104,11 +104,22 @@ class CachedProjectModelsSetup extends ModuleSetup<CachedProjectModels> {
       return true;
     });
 
+    // Deserializing the cached models of the modules is most of the work here, and independent for each module.
+    //noinspection deprecation
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(gradleFacets, indicator, true /* fail fast */, gradleFacet -> {
+      projectModels.findCacheForModule(gradleFacet.getModule().getName());
+      return true;
+    });
+
     SetupContextByModuleModel setupContextByModuleModel = new SetupContextByModuleModel();
 
     for (GradleFacet gradleFacet : gradleFacets) {
       String moduleName = gradleFacet.getModule().getName();
       CachedModuleModels moduleModelsCache = projectModels.findCacheForModule(moduleName);
+      if (moduleModelsCache == null && projectModels.isModuleUnreadable(moduleName)) {
+        // Skipping the module would leave it without models, a full sync is needed instead.
+        throw new ModelNotFoundInCacheException(CachedModuleModels.class);
+      }
       if (moduleModelsCache != null) {
         getModuleModelFromCache(gradleFacet, moduleModelsCache, moduleFinder, setupContextByModuleModel);
       }
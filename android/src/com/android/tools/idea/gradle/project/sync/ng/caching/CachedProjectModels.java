@@ -16,24 +16,48 @@
 package com.android.tools.idea.gradle.project.sync.ng.caching;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.gradle.model.data.BuildParticipant;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
 import static com.android.tools.idea.gradle.util.GradleUtil.getCacheFolderRootPath;
 import static com.intellij.openapi.util.io.FileUtil.ensureExists;
 
-public class CachedProjectModels implements Serializable {
-  // Increase the value when adding/removing fields or when changing the serialization/deserialization mechanism.
-  private static final long serialVersionUID = 2L;
+/**
+ * The Gradle models of all the modules of a project, saved after sync so the project can be set up from them at startup, without syncing.
+ * <p>
+ * On disk, the models of each module are serialized in their own section, after an index of the sections. Loading the cache only reads
+ * the index (through a memory mapping of the file), the models of a module are deserialized the first time they are requested, so
+ * modules can be deserialized concurrently. Strings are interned across all the modules while deserializing, since most of them (paths,
+ * artifact coordinates) are shared by many modules.
+ */
+public class CachedProjectModels {
+  private static final int MAGIC = 0x474d4f44; // 'GMOD'
+  // Increase the value when changing the layout of the file. The content of the module sections is versioned by CachedModuleModels.
+  private static final int FORMAT_VERSION = 3;
+
+  private static final String CACHE_FILE_NAME = "gradle_models.bin";
+  // Name of the cache file when the whole project was saved with Java serialization.
+  private static final String LEGACY_CACHE_FILE_NAME = "gradle_models.ser";
 
   public static class Factory {
     @NotNull
@@ -47,16 +71,11 @@ public class CachedProjectModels implements Serializable {
     public CachedProjectModels loadFromDisk(@NotNull Project project) {
       File cacheFilePath = getCacheFilePath(project);
       if (cacheFilePath.isFile()) {
-        try (FileInputStream fis = new FileInputStream(cacheFilePath)) {
-          try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-            return (CachedProjectModels)ois.readObject();
-          }
-          catch (Throwable e) {
-            getLog().warn(String.format("Failed to load Gradle models from '%1$s'", cacheFilePath.getPath()), e);
-          }
+        try {
+          return readFromDisk(cacheFilePath);
         }
         catch (Throwable e) {
-          getLog().warn(String.format("Failed to access '%1$s' while loading Gradle models", cacheFilePath.getPath()), e);
+          getLog().warn(String.format("Failed to load Gradle models from '%1$s'", cacheFilePath.getPath()), e);
         }
       }
       return null;
@@ -64,8 +83,9 @@ public class CachedProjectModels implements Serializable {
   }
 
   // Key: module name.
-  @NotNull private final Map<String, CachedModuleModels> myModelsByModuleName = new HashMap<>();
+  @NotNull private final Map<String, ModuleEntry> myModulesByName = new ConcurrentHashMap<>();
   @NotNull private final List<BuildParticipant> myBuildParticipants = new ArrayList<>();
+  @NotNull private final Interner<String> myStringInterner = Interners.newWeakInterner();
 
   @VisibleForTesting
   CachedProjectModels() {
@@ -83,54 +103,193 @@ public class CachedProjectModels implements Serializable {
   @NotNull
   public CachedModuleModels addModule(@NotNull Module module) {
     CachedModuleModels cache = new CachedModuleModels(module);
-    myModelsByModuleName.put(module.getName(), cache);
+    myModulesByName.put(module.getName(), new ModuleEntry(cache));
     return cache;
   }
 
+  /**
+   * Returns the models of the given module, deserializing them if they were loaded from disk and haven't been requested yet. Can be
+   * called concurrently for different modules. Returns null if the module isn't cached, or if its models couldn't be deserialized (see
+   * {@link #isModuleUnreadable}).
+   */
   @Nullable
   public CachedModuleModels findCacheForModule(@NotNull String moduleName) {
-    return myModelsByModuleName.get(moduleName);
+    ModuleEntry entry = myModulesByName.get(moduleName);
+    return entry != null ? entry.getModels(myStringInterner) : null;
   }
 
-  @NotNull
-  public Future<?> saveToDisk(@NotNull Project project) {
-    File cacheFilePath = getCacheFilePath(project);
-    return saveToDisk(cacheFilePath);
+  /**
+   * @return whether the models of the given module were read from disk but couldn't be deserialized, in which case the cache can't be
+   * used to set up the module.
+   */
+  public boolean isModuleUnreadable(@NotNull String moduleName) {
+    ModuleEntry entry = myModulesByName.get(moduleName);
+    return entry != null && entry.isUnreadable();
   }
 
-  @NotNull
-  public static File getCacheFilePath(@NotNull Project project) {
-    return new File(getCacheFolderRootPath(project), "gradle_models.ser");
+  @VisibleForTesting
+  boolean isModuleLoaded(@NotNull String moduleName) {
+    ModuleEntry entry = myModulesByName.get(moduleName);
+    return entry != null && entry.isLoaded();
   }
 
   @NotNull
-  private Future<?> saveToDisk(@NotNull File path) {
+  public Future<?> saveToDisk(@NotNull Project project) {
+    File cacheFilePath = getCacheFilePath(project);
     return ApplicationManager.getApplication().executeOnPooledThread(() -> {
       try {
-        ensureExists(path.getParentFile());
+        ensureExists(cacheFilePath.getParentFile());
       }
       catch (IOException e) {
-        getLog().warn(String.format("Failed to create folders for path '%1$s'", path.getPath()), e);
+        getLog().warn(String.format("Failed to create folders for path '%1$s'", cacheFilePath.getPath()), e);
       }
-      try (FileOutputStream fos = new FileOutputStream(path)) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(fos)) {
-          oos.writeObject(this);
-        }
-        catch (Throwable e) {
-          getLog().warn(String.format("Failed to save Gradle models to path '%1$s'", path.getPath()), e);
-        }
+      try {
+        writeToDisk(cacheFilePath);
       }
       catch (Throwable e) {
-        getLog().warn(String.format("Failed to open path '%1$s'", path.getPath()), e);
+        getLog().warn(String.format("Failed to save Gradle models to path '%1$s'", cacheFilePath.getPath()), e);
+      }
+      File legacyCacheFilePath = new File(cacheFilePath.getParentFile(), LEGACY_CACHE_FILE_NAME);
+      if (legacyCacheFilePath.exists()) {
+        legacyCacheFilePath.delete();
       }
     });
   }
 
+  @NotNull
+  public static File getCacheFilePath(@NotNull Project project) {
+    return new File(getCacheFolderRootPath(project), CACHE_FILE_NAME);
+  }
+
+  /**
+   * Writes the models to {@code path}, replacing it atomically. Modules loaded from disk and never requested are copied as they are.
+   */
+  @VisibleForTesting
+  void writeToDisk(@NotNull File path) throws IOException {
+    byte[] buildParticipants = serialize(new ArrayList<>(myBuildParticipants));
+    List<String> moduleNames = new ArrayList<>();
+    List<byte[]> modules = new ArrayList<>();
+    for (Map.Entry<String, ModuleEntry> entry : new TreeMap<>(myModulesByName).entrySet()) {
+      byte[] serializedModels = entry.getValue().getSerializedModels();
+      if (serializedModels != null) {
+        moduleNames.add(entry.getKey());
+        modules.add(serializedModels);
+      }
+    }
+
+    File tempPath = Files.createTempFile(path.getParentFile().toPath(), path.getName(), ".tmp").toFile();
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempPath)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(buildParticipants.length);
+        out.write(buildParticipants);
+        out.writeInt(moduleNames.size());
+        for (int i = 0; i < moduleNames.size(); i++) {
+          byte[] name = moduleNames.get(i).getBytes(StandardCharsets.UTF_8);
+          out.writeInt(name.length);
+          out.write(name);
+          out.writeInt(modules.get(i).length);
+        }
+        for (byte[] module : modules) {
+          out.write(module);
+        }
+      }
+      // Readers of the previous file keep their mapping of it.
+      Files.move(tempPath.toPath(), path.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    finally {
+      Files.deleteIfExists(tempPath.toPath());
+    }
+  }
+
+  /**
+   * Reads the index of the models saved at {@code path}, the models of each module are only deserialized when requested.
+   */
+  @VisibleForTesting
+  @NotNull
+  static CachedProjectModels readFromDisk(@NotNull File path) throws IOException, ClassNotFoundException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+      if (SystemInfo.isWindows) {
+        // On Windows a mapped file can't be replaced until the mapping is garbage collected, which would prevent saving the models
+        // after the next sync.
+        buffer = ByteBuffer.allocate((int)channel.size());
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        }
+        buffer.flip();
+      }
+      else {
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    }
+
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        throw new IOException("Unsupported Gradle models cache format");
+      }
+      CachedProjectModels cache = new CachedProjectModels();
+      for (Object participant : (List<?>)deserialize(slice(buffer, buffer.getInt()), cache.myStringInterner)) {
+        cache.myBuildParticipants.add((BuildParticipant)participant);
+      }
+
+      int moduleCount = buffer.getInt();
+      String[] moduleNames = new String[moduleCount];
+      int[] moduleLengths = new int[moduleCount];
+      for (int i = 0; i < moduleCount; i++) {
+        ByteBuffer name = slice(buffer, buffer.getInt());
+        byte[] nameBytes = new byte[name.remaining()];
+        name.get(nameBytes);
+        moduleNames[i] = new String(nameBytes, StandardCharsets.UTF_8);
+        moduleLengths[i] = buffer.getInt();
+      }
+      for (int i = 0; i < moduleCount; i++) {
+        cache.myModulesByName.put(moduleNames[i], new ModuleEntry(slice(buffer, moduleLengths[i])));
+      }
+      return cache;
+    }
+    catch (BufferUnderflowException | ClassCastException e) {
+      throw new IOException("Invalid Gradle models cache", e);
+    }
+  }
+
+  @NotNull
+  private static ByteBuffer slice(@NotNull ByteBuffer buffer, int length) throws IOException {
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IOException("Invalid section length: " + length);
+    }
+    ByteBuffer slice = buffer.slice();
+    slice.limit(length);
+    buffer.position(buffer.position() + length);
+    return slice;
+  }
+
+  @NotNull
+  private static byte[] serialize(@NotNull Serializable object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+      oos.writeObject(object);
+    }
+    return bytes.toByteArray();
+  }
+
+  @NotNull
+  private static Object deserialize(@NotNull ByteBuffer buffer, @NotNull Interner<String> stringInterner)
+    throws IOException, ClassNotFoundException {
+    try (ObjectInputStream ois = new InterningObjectInputStream(new ByteBufferInputStream(buffer), stringInterner)) {
+      return ois.readObject();
+    }
+  }
+
   public static void eraseDiskCache(@NotNull Project project) {
     File cache = getCacheFilePath(project);
     if (cache.exists()) {
       cache.delete();
     }
+    File legacyCache = new File(cache.getParentFile(), LEGACY_CACHE_FILE_NAME);
+    if (legacyCache.exists()) {
+      legacyCache.delete();
+    }
   }
 
   @NotNull
@@ -138,6 +297,21 @@ public class CachedProjectModels implements Serializable {
     return Logger.getInstance(CachedProjectModels.class);
   }
 
+  /**
+   * @return the models of all the modules, deserializing the ones which haven't been requested yet.
+   */
+  @NotNull
+  private Map<String, CachedModuleModels> getAllModules() {
+    Map<String, CachedModuleModels> modules = new HashMap<>();
+    for (String moduleName : myModulesByName.keySet()) {
+      CachedModuleModels models = findCacheForModule(moduleName);
+      if (models != null) {
+        modules.put(moduleName, models);
+      }
+    }
+    return modules;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -147,20 +321,124 @@ public class CachedProjectModels implements Serializable {
       return false;
     }
     CachedProjectModels cache = (CachedProjectModels)o;
-    return Objects.equals(myModelsByModuleName, cache.myModelsByModuleName)
+    return Objects.equals(getAllModules(), cache.getAllModules())
            && Objects.equals(myBuildParticipants, cache.myBuildParticipants);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(myModelsByModuleName, myBuildParticipants);
+    return Objects.hash(getAllModules(), myBuildParticipants);
   }
 
   @Override
   public String toString() {
     return "CachedProjectModels{" +
-           "myModelsByModuleName=" + myModelsByModuleName +
+           "myModelsByModuleName=" + getAllModules() +
            "myBuildParticipants=" + myBuildParticipants +
            '}';
   }
+
+  /**
+   * The models of a module, either created by sync or read from disk. The latter are kept serialized until requested.
+   */
+  private static final class ModuleEntry {
+    @Nullable private CachedModuleModels myModels;
+    @Nullable private ByteBuffer mySerializedModels;
+    private boolean myIsUnreadable;
+
+    ModuleEntry(@NotNull CachedModuleModels models) {
+      myModels = models;
+    }
+
+    ModuleEntry(@NotNull ByteBuffer serializedModels) {
+      mySerializedModels = serializedModels;
+    }
+
+    synchronized boolean isLoaded() {
+      return mySerializedModels == null;
+    }
+
+    synchronized boolean isUnreadable() {
+      return myIsUnreadable;
+    }
+
+    @Nullable
+    synchronized CachedModuleModels getModels(@NotNull Interner<String> stringInterner) {
+      if (mySerializedModels != null) {
+        try {
+          Object models = deserialize(mySerializedModels.duplicate(), stringInterner);
+          if (models instanceof CachedModuleModels) {
+            myModels = (CachedModuleModels)models;
+          }
+          else {
+            myIsUnreadable = true;
+          }
+        }
+        catch (Throwable e) {
+          getLog().warn("Failed to load cached Gradle models of a module", e);
+          myIsUnreadable = true;
+        }
+        // Models can be modified once requested, so they are serialized again when saving.
+        mySerializedModels = null;
+      }
+      return myModels;
+    }
+
+    @Nullable
+    synchronized byte[] getSerializedModels() throws IOException {
+      if (mySerializedModels != null) {
+        ByteBuffer buffer = mySerializedModels.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+      }
+      return myModels != null ? serialize(myModels) : null;
+    }
+  }
+
+  private static final class InterningObjectInputStream extends ObjectInputStream {
+    @NotNull private final Interner<String> myStringInterner;
+
+    InterningObjectInputStream(@NotNull InputStream in, @NotNull Interner<String> stringInterner) throws IOException {
+      super(in);
+      myStringInterner = stringInterner;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) {
+      return obj instanceof String ? myStringInterner.intern((String)obj) : obj;
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return myBuffer.remaining();
+    }
+  }
 }
@@ -24,6 +24,7 @@ import com.android.tools.idea.ddms.actions.TerminateVMAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyConfigureLogcatHeaderAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyRestartAction;
 import com.intellij.diagnostic.logging.LogConsoleBase;
+import com.intellij.diagnostic.logging.LogFilter;
 import com.intellij.diagnostic.logging.LogFormatter;
 import com.intellij.execution.impl.ConsoleViewImpl;
 import com.intellij.execution.ui.ConsoleView;
@@ -109,6 +110,24 @@ public final class AndroidLogConsole extends LogConsoleBase {
     super.addMessage(line);
   }
 
+  /**
+   * Rather than filtering every line of the console again, replays the messages kept by {@link AndroidLogcatService} which may pass the
+   * filters.
+   */
+  @Override
+  public void onTextFilterChange() {
+    if (!myView.replayFilteredMessages()) {
+      super.onTextFilterChange();
+    }
+  }
+
+  @Override
+  public void onFilterStateChange(LogFilter filter) {
+    if (!myView.replayFilteredMessages()) {
+      super.onFilterStateChange(filter);
+    }
+  }
+
   /**
    * Clear the current logs and replay all old messages. This is useful to do if the display
    * format of the logs have changed, for example.
@@ -169,6 +169,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
       .isApplicable(message, myPrevHeader.getTag(), myPrevHeader.getAppName(), myPrevHeader.getPid(), myPrevHeader.getLogLevel());
   }
 
+  /**
+   * Returns a filter accepting the messages which, judging by their header alone, this model may accept: the messages of the selected log
+   * level which the configured filter doesn't rule out by tag, package name, process id or log level. It is used to pick the messages to
+   * replay out of a {@link LogcatStore}, the replayed lines still go through {@link #processLine(String)}.
+   */
+  @NotNull
+  AndroidLogcatFilter getHeaderFilter() {
+    LogFilter logLevelFilter = getSelectedLogLevelFilter();
+    return new HeaderFilter(myConfiguredFilter, logLevelFilter != null ? ((AndroidLogLevelFilter)logLevelFilter).myLogLevel : null);
+  }
+
   @Override
   public final List<? extends LogFilter> getLogFilters() {
     return myLogLevelFilters;
@@ -188,6 +199,50 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
     }
   }
 
+  private static final class HeaderFilter implements AndroidLogcatFilter {
+    @Nullable private final AndroidLogcatFilter myConfiguredFilter;
+    @Nullable private final Log.LogLevel myLogLevel;
+
+    private HeaderFilter(@Nullable AndroidLogcatFilter configuredFilter, @Nullable Log.LogLevel logLevel) {
+      myConfiguredFilter = configuredFilter;
+      myLogLevel = logLevel;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+      return myConfiguredFilter != null ? myConfiguredFilter.getName() : "";
+    }
+
+    @Override
+    public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel) {
+      return isLogLevelApplicable(logLevel) && isTagApplicable(tag) && isPackageApplicable(pkg) && isPidApplicable(pid);
+    }
+
+    @Override
+    public boolean isTagApplicable(@NotNull String tag) {
+      return myConfiguredFilter == null || myConfiguredFilter.isTagApplicable(tag);
+    }
+
+    @Override
+    public boolean isPackageApplicable(@NotNull String pkg) {
+      return myConfiguredFilter == null || myConfiguredFilter.isPackageApplicable(pkg);
+    }
+
+    @Override
+    public boolean isPidApplicable(int pid) {
+      return myConfiguredFilter == null || myConfiguredFilter.isPidApplicable(pid);
+    }
+
+    @Override
+    public boolean isLogLevelApplicable(@NotNull Log.LogLevel logLevel) {
+      if (myLogLevel != null && logLevel.getPriority() < myLogLevel.getPriority()) {
+        return false;
+      }
+      return myConfiguredFilter == null || myConfiguredFilter.isLogLevelApplicable(logLevel);
+    }
+  }
+
   public abstract String getSelectedLogLevelName();
 
   @Nullable
@@ -34,4 +34,33 @@ public interface AndroidLogcatFilter {
    * Returns {@code true} if the current logcat message should be accepted, {@code false} otherwise.
    */
   boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel);
+
+  /**
+   * Returns {@code false} if no message with the given tag can be accepted, whatever the rest of the message. This lets
+   * {@link LogcatStore} rule out every message with a tag at once, filters which can't tell keep the default.
+   */
+  default boolean isTagApplicable(@NotNull String tag) {
+    return true;
+  }
+
+  /**
+   * @see #isTagApplicable(String)
+   */
+  default boolean isPackageApplicable(@NotNull String pkg) {
+    return true;
+  }
+
+  /**
+   * @see #isTagApplicable(String)
+   */
+  default boolean isPidApplicable(int pid) {
+    return true;
+  }
+
+  /**
+   * @see #isTagApplicable(String)
+   */
+  default boolean isLogLevelApplicable(@NotNull Log.LogLevel logLevel) {
+    return true;
+  }
 }
@@ -59,26 +59,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   public interface LogcatListener {
     default void onLogLineReceived(@NotNull LogCatMessage line) {
     }
@@ -95,7 +75,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   private final Map<IDevice, AndroidLogcatReceiver> myLogReceivers;
 
   @GuardedBy("myLock")
-  private final Map<IDevice, LogcatBuffer> myLogBuffers;
+  private final Map<IDevice, LogcatStore> myLogBuffers;
 
   /**
    * This is a list of commands to execute per device. We use a newSingleThreadExecutor
@@ -134,11 +114,16 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
       AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, newLogcatStore());
       myExecutors.get(device).submit(() -> executeLogcat(device, receiver));
     }
   }
 
+  @NotNull
+  private static LogcatStore newLogcatStore() {
+    return new LogcatStore(ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : Long.MAX_VALUE);
+  }
+
   @NotNull
   private AndroidLogcatReceiver newAndroidLogcatReceiver(@NotNull IDevice device) {
     return new AndroidLogcatReceiver(device, new LogcatListener() {
@@ -146,10 +131,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       public void onLogLineReceived(@NotNull LogCatMessage line) {
         synchronized (myLock) {
           myDeviceToListenerMultimap.get(device).forEach(listener -> listener.onLogLineReceived(line));
-          LogcatBuffer buffer = myLogBuffers.get(device);
+          LogcatStore buffer = myLogBuffers.get(device);
 
           if (buffer != null) {
-            buffer.addMessage(line);
+            buffer.add(line);
           }
         }
       }
@@ -295,6 +280,31 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
   }
 
+  /**
+   * Replays to {@code listener} the messages received so far from the device whose log level, tag, package name and process id are
+   * applicable according to {@code filter}, which is much faster than replaying every message when the filter rules most of them out.
+   * {@code beforeReplay} runs first, while no new message can be received, e.g. to clear what the listener displays.
+   *
+   * @return false if there are no messages kept for the device, in which case neither {@code beforeReplay} nor the listener are called.
+   */
+  public boolean replayMessages(@NotNull IDevice device,
+                                @NotNull LogcatListener listener,
+                                @NotNull AndroidLogcatFilter filter,
+                                @NotNull Runnable beforeReplay) {
+    synchronized (myLock) {
+      LogcatStore buffer = myLogBuffers.get(device);
+      if (buffer == null) {
+        return false;
+      }
+
+      beforeReplay.run();
+      for (LogCatMessage line : buffer.getMessages(filter)) {
+        listener.onLogLineReceived(line);
+      }
+      return true;
+    }
+  }
+
   /**
    * @see #addListener(IDevice, LogcatListener, boolean)
    */
@@ -343,6 +343,24 @@ public class AndroidLogcatView implements Disposable {
     }
   }
 
+  /**
+   * Clears the console and replays the messages received from the device which may pass the filters, as found through the indexes of
+   * the logcat buffer, instead of filtering every line of the console again.
+   *
+   * @return false if there is nothing to replay from, e.g. no device is selected.
+   */
+  boolean replayFilteredMessages() {
+    IDevice device = myDevice;
+    if (device == null || myLogConsole.getConsole() == null) {
+      return false;
+    }
+
+    return AndroidLogcatService.getInstance().replayMessages(device, myLogcatReceiver, myLogFilterModel.getHeaderFilter(), () -> {
+      myLogConsole.clear();
+      myLogFilterModel.processingStarted();
+    });
+  }
+
   @Nullable
   IDevice getSelectedDevice() {
     if (myDeviceContext != null) {
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * The logcat messages received from a device, oldest first. Rather than {@link LogCatMessage} objects, the messages are kept in a ring
+ * buffer of parallel primitive arrays: tags and package names are interned, timestamps are packed in a long and the text is kept as UTF-8
+ * bytes. {@link LogCatMessage}s are rebuilt when read.
+ * <p>
+ * The messages are also indexed by log level, tag, package name and process id, so {@link #getMessages(AndroidLogcatFilter)} tests each
+ * distinct tag, package name, etc. against the filter once, instead of testing every message.
+ * <p>
+ * Once the text of the messages exceeds the maximum size the oldest messages are dropped. The size is counted in characters, like the
+ * console's cycle buffer, rather than in bytes. This class isn't thread safe.
+ */
+final class LogcatStore {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final LogLevel[] LOG_LEVELS = LogLevel.values();
+  private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+  /**
+   * Maximum number of characters of message text kept.
+   */
+  private final long myMaxSize;
+  private long mySize;
+
+  /**
+   * Slot of the oldest message.
+   */
+  private int myHead;
+  private int myCount;
+
+  @NotNull private long[] myTimestamps;
+  /**
+   * Timestamps of the messages read with "logcat -v long", which don't fit in {@link #myTimestamps}. Only allocated if there are some.
+   */
+  @Nullable private LogCatTimestamp[] myLegacyTimestamps;
+  @NotNull private int[] myPids;
+  @NotNull private int[] myTids;
+  @NotNull private byte[] myLevels;
+  @NotNull private int[] myTags;
+  @NotNull private int[] myPackages;
+  @NotNull private byte[][] myTexts;
+  /**
+   * Length in characters of each message text, to keep the size without decoding the text of the dropped messages.
+   */
+  @NotNull private int[] myLengths;
+
+  /**
+   * Slots of the messages which have the same header as the message before them, i.e. the continuation lines of multi-line messages.
+   */
+  @NotNull private BitSet myContinuations = new BitSet();
+
+  @NotNull private final StringTable myTagTable = new StringTable();
+  @NotNull private final StringTable myPackageTable = new StringTable();
+
+  @NotNull private final BitSet[] myLevelIndex = new BitSet[LOG_LEVELS.length];
+  @NotNull private final TIntObjectHashMap<BitSet> myTagIndex = new TIntObjectHashMap<>();
+  @NotNull private final TIntObjectHashMap<BitSet> myPackageIndex = new TIntObjectHashMap<>();
+  @NotNull private final TIntObjectHashMap<BitSet> myPidIndex = new TIntObjectHashMap<>();
+
+  /**
+   * Header of the last message added, to recognize the next lines of the same message.
+   */
+  @Nullable private LogCatHeader myLastHeader;
+
+  /**
+   * @param maxSize the maximum number of characters of message text kept, {@link Long#MAX_VALUE} to keep every message.
+   */
+  LogcatStore(long maxSize) {
+    myMaxSize = maxSize;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(int capacity) {
+    myTimestamps = new long[capacity];
+    myPids = new int[capacity];
+    myTids = new int[capacity];
+    myLevels = new byte[capacity];
+    myTags = new int[capacity];
+    myPackages = new int[capacity];
+    myTexts = new byte[capacity][];
+    myLengths = new int[capacity];
+  }
+
+  int size() {
+    return myCount;
+  }
+
+  /**
+   * @return the number of characters of message text kept.
+   */
+  long getTextSize() {
+    return mySize;
+  }
+
+  @SuppressWarnings("deprecation")
+  void add(@NotNull LogCatMessage message) {
+    if (myCount == myTexts.length) {
+      grow();
+    }
+
+    LogCatHeader header = message.getHeader();
+    int slot = slot(myCount++);
+    Instant instant = header.getTimestampInstant();
+    if (instant != null) {
+      myTimestamps[slot] = instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+    else {
+      if (myLegacyTimestamps == null) {
+        myLegacyTimestamps = new LogCatTimestamp[myTexts.length];
+      }
+      myLegacyTimestamps[slot] = header.getTimestamp();
+    }
+    myPids[slot] = header.getPid();
+    myTids[slot] = header.getTid();
+    myLevels[slot] = (byte)header.getLogLevel().ordinal();
+    myTags[slot] = myTagTable.intern(header.getTag());
+    myPackages[slot] = myPackageTable.intern(header.getAppName());
+    myTexts[slot] = message.getMessage().getBytes(StandardCharsets.UTF_8);
+    myLengths[slot] = message.getMessage().length();
+    // Check the reference, like FormattedLogcatReceiver does: each line of a multi-line message comes with the same header instance.
+    myContinuations.set(slot, header == myLastHeader);
+    myLastHeader = header;
+    index(slot);
+
+    mySize += myLengths[slot];
+    while (mySize > myMaxSize && myCount > 0) {
+      removeOldest();
+    }
+  }
+
+  void clear() {
+    myHead = 0;
+    myCount = 0;
+    mySize = 0;
+    myLastHeader = null;
+    allocate(INITIAL_CAPACITY);
+    myLegacyTimestamps = null;
+    myContinuations = new BitSet();
+    Arrays.fill(myLevelIndex, null);
+    myTagIndex.clear();
+    myPackageIndex.clear();
+    myPidIndex.clear();
+  }
+
+  /**
+   * @return every message, oldest first.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages() {
+    BitSet all = new BitSet(myTexts.length);
+    all.set(0, myTexts.length);
+    return getMessages(all);
+  }
+
+  /**
+   * @return the messages, oldest first, whose log level, tag, package name and process id are applicable according to {@code filter}.
+   * Their text isn't checked.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages(@NotNull AndroidLogcatFilter filter) {
+    BitSet selected = new BitSet(myTexts.length);
+    for (int i = 0; i < LOG_LEVELS.length; ++i) {
+      if (myLevelIndex[i] != null && filter.isLogLevelApplicable(LOG_LEVELS[i])) {
+        selected.or(myLevelIndex[i]);
+      }
+    }
+    intersect(selected, myTagIndex, tag -> filter.isTagApplicable(myTagTable.get(tag)));
+    intersect(selected, myPackageIndex, pkg -> filter.isPackageApplicable(myPackageTable.get(pkg)));
+    intersect(selected, myPidIndex, filter::isPidApplicable);
+    return getMessages(selected);
+  }
+
+  /**
+   * Keeps in {@code selected} the slots of the keys of {@code index} which pass {@code predicate}.
+   */
+  private static void intersect(@NotNull BitSet selected, @NotNull TIntObjectHashMap<BitSet> index, @NotNull IntPredicate predicate) {
+    if (selected.isEmpty()) {
+      return;
+    }
+    BitSet union = new BitSet(selected.size());
+    boolean[] rejected = {false};
+    index.forEachEntry((key, slots) -> {
+      if (predicate.test(key)) {
+        union.or(slots);
+      }
+      else {
+        rejected[0] = true;
+      }
+      return true;
+    });
+    if (rejected[0]) {
+      selected.and(union);
+    }
+  }
+
+  @NotNull
+  @SuppressWarnings("deprecation")
+  private List<LogCatMessage> getMessages(@NotNull BitSet slots) {
+    List<LogCatMessage> messages = new ArrayList<>();
+    LogCatHeader header = null;
+    for (int i = 0; i < myCount; ++i) {
+      int slot = slot(i);
+      if (!slots.get(slot)) {
+        continue;
+      }
+      if (header == null || !myContinuations.get(slot)) {
+        LogLevel level = LOG_LEVELS[myLevels[slot]];
+        String tag = myTagTable.get(myTags[slot]);
+        String pkg = myPackageTable.get(myPackages[slot]);
+        LogCatTimestamp legacyTimestamp = myLegacyTimestamps != null ? myLegacyTimestamps[slot] : null;
+        header = legacyTimestamp != null
+                 ? new LogCatHeader(level, myPids[slot], myTids[slot], pkg, tag, legacyTimestamp)
+                 : new LogCatHeader(level, myPids[slot], myTids[slot], pkg, tag, Instant.ofEpochSecond(0, myTimestamps[slot]));
+      }
+      messages.add(new LogCatMessage(header, new String(myTexts[slot], StandardCharsets.UTF_8)));
+    }
+    return messages;
+  }
+
+  private int slot(int index) {
+    int slot = myHead + index;
+    return slot < myTexts.length ? slot : slot - myTexts.length;
+  }
+
+  private void removeOldest() {
+    int slot = myHead;
+    unindex(slot);
+    mySize -= myLengths[slot];
+    myTexts[slot] = null;
+    if (myLegacyTimestamps != null) {
+      myLegacyTimestamps[slot] = null;
+    }
+    myContinuations.clear(slot);
+    myHead = slot(1);
+    myCount--;
+  }
+
+  /**
+   * Doubles the capacity, moving the oldest message to the first slot.
+   */
+  private void grow() {
+    int capacity = myTexts.length;
+    long[] timestamps = myTimestamps;
+    LogCatTimestamp[] legacyTimestamps = myLegacyTimestamps;
+    int[] pids = myPids;
+    int[] tids = myTids;
+    byte[] levels = myLevels;
+    int[] tags = myTags;
+    int[] packages = myPackages;
+    byte[][] texts = myTexts;
+    int[] lengths = myLengths;
+    BitSet continuations = myContinuations;
+
+    allocate(capacity * 2);
+    myLegacyTimestamps = legacyTimestamps != null ? new LogCatTimestamp[capacity * 2] : null;
+    myContinuations = new BitSet(capacity * 2);
+    for (int i = 0; i < myCount; ++i) {
+      int from = slot(i);
+      myTimestamps[i] = timestamps[from];
+      if (legacyTimestamps != null) {
+        myLegacyTimestamps[i] = legacyTimestamps[from];
+      }
+      myPids[i] = pids[from];
+      myTids[i] = tids[from];
+      myLevels[i] = levels[from];
+      myTags[i] = tags[from];
+      myPackages[i] = packages[from];
+      myTexts[i] = texts[from];
+      myLengths[i] = lengths[from];
+      myContinuations.set(i, continuations.get(from));
+    }
+    myHead = 0;
+
+    // Slots moved, so the indexes are built again.
+    Arrays.fill(myLevelIndex, null);
+    myTagIndex.clear();
+    myPackageIndex.clear();
+    myPidIndex.clear();
+    for (int i = 0; i < myCount; ++i) {
+      index(i);
+    }
+  }
+
+  private void index(int slot) {
+    int level = myLevels[slot];
+    if (myLevelIndex[level] == null) {
+      myLevelIndex[level] = new BitSet(myTexts.length);
+    }
+    myLevelIndex[level].set(slot);
+    index(myTagIndex, myTags[slot], slot);
+    index(myPackageIndex, myPackages[slot], slot);
+    index(myPidIndex, myPids[slot], slot);
+  }
+
+  private void index(@NotNull TIntObjectHashMap<BitSet> index, int key, int slot) {
+    BitSet slots = index.get(key);
+    if (slots == null) {
+      slots = new BitSet(myTexts.length);
+      index.put(key, slots);
+    }
+    slots.set(slot);
+  }
+
+  private void unindex(int slot) {
+    myLevelIndex[myLevels[slot]].clear(slot);
+    unindex(myTagIndex, myTags[slot], slot);
+    unindex(myPackageIndex, myPackages[slot], slot);
+    unindex(myPidIndex, myPids[slot], slot);
+  }
+
+  private static void unindex(@NotNull TIntObjectHashMap<BitSet> index, int key, int slot) {
+    BitSet slots = index.get(key);
+    slots.clear(slot);
+    // Process ids in particular come and go, don't keep empty sets around.
+    if (slots.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * Assigns ids to strings, so each distinct string is only kept once.
+   */
+  private static final class StringTable {
+    @NotNull private final List<String> myStrings = new ArrayList<>();
+    @NotNull private final TObjectIntHashMap<String> myIds = new TObjectIntHashMap<>();
+
+    int intern(@NotNull String string) {
+      if (myIds.containsKey(string)) {
+        return myIds.get(string);
+      }
+      int id = myStrings.size();
+      myStrings.add(string);
+      myIds.put(string, id);
+      return id;
+    }
+
+    @NotNull
+    String get(int id) {
+      return myStrings.get(id);
+    }
+  }
+}
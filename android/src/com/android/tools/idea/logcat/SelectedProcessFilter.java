@@ -36,6 +36,11 @@ final class SelectedProcessFilter implements AndroidLogcatFilter {
    */
   @Override
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String p, int processId, @NotNull LogLevel priority) {
+    return isPidApplicable(processId);
+  }
+
+  @Override
+  public boolean isPidApplicable(int processId) {
     return myProcessId == processId;
   }
 }
@@ -34,6 +34,8 @@ import static com.android.testutils.TestUtils.getWorkspaceFile;
   // The following classes had failures when run in Bazel.
   com.android.tools.idea.gradle.project.NonAndroidGradleProjectImportingTestSuite.class,
   com.android.tools.perf.idea.gradle.project.sync.GradleSyncPerfTest.class, // Sync performance test only runs on perf buildbot
+  com.android.tools.idea.gradle.project.sync.ng.caching.CachedProjectModelsPerformanceTest.class, // Only runs on perf buildbot
+  com.android.tools.idea.logcat.LogcatStorePerformanceTest.class, // Only runs on perf buildbot
   // Require resources with spaces (HTML File template)
   // https://github.com/bazelbuild/bazel/issues/374
   com.android.tools.idea.actions.annotations.InferSupportAnnotationsTest.class,
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.google.common.collect.ImmutableList;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.immutable.reference.ImmutableTypeReference;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getDexPath;
+import static com.android.tools.idea.apk.viewer.dex.GenerateProguardKeepRuleActionTest.getTestDexFile;
+import static com.google.common.truth.Truth.assertThat;
+
+public class DexReferenceIndexTest {
+  private static final Reference OBJECT_INIT = new ImmutableMethodReference("Ljava/lang/Object;", "<init>", ImmutableList.of(), "V");
+  private static final Reference TEST_INIT = new ImmutableMethodReference("LTest;", "<init>", ImmutableList.of(), "V");
+  private static final Reference TEST = new ImmutableTypeReference("LTest;");
+
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  private Path myDexPath;
+  private DexBackedDexFile myDexFile;
+
+  @Before
+  public void setUp() throws Exception {
+    myDexPath = getDexPath("Test.dex");
+    myDexFile = getTestDexFile(myDexPath);
+  }
+
+  @Test
+  public void referrersAreIndexed() {
+    DexReferenceIndex index = DexReferenceIndex.create(myDexFile);
+    assertThat(index.getReferrers(OBJECT_INIT)).containsExactly(TEST_INIT);
+    assertThat(index.getReferrers(new ImmutableTypeReference("Ljava/lang/Object;"))).contains(TEST);
+    assertThat(index.hasReferrers(TEST_INIT)).isFalse();
+    assertThat(index.getReferrers(TEST_INIT)).isEmpty();
+  }
+
+  @Test
+  public void storedIndexIsLoaded() throws Exception {
+    Path directory = myTemporaryFolder.newFolder().toPath();
+    String key = DexReferenceIndex.computeKey(new Path[]{myDexPath});
+    assertThat(DexReferenceIndex.load(directory, key)).isNull();
+
+    DexReferenceIndex.create(myDexFile).store(directory, key);
+    DexReferenceIndex index = DexReferenceIndex.load(directory, key);
+    assertThat(index).isNotNull();
+    assertThat(index.getReferrers(OBJECT_INIT)).containsExactly(TEST_INIT);
+  }
+
+  @Test
+  public void corruptIndexIsIgnored() throws Exception {
+    Path directory = myTemporaryFolder.newFolder().toPath();
+    Files.write(directory.resolve("key.idx"), new byte[]{1, 2, 3});
+    assertThat(DexReferenceIndex.load(directory, "key")).isNull();
+  }
+
+  @Test
+  public void keyDependsOnDexSignatures() throws Exception {
+    Path copy = myTemporaryFolder.newFile("copy.dex").toPath();
+    Files.copy(myDexPath, copy, StandardCopyOption.REPLACE_EXISTING);
+    assertThat(DexReferenceIndex.computeKey(new Path[]{copy})).isEqualTo(DexReferenceIndex.computeKey(new Path[]{myDexPath}));
+    assertThat(DexReferenceIndex.computeKey(new Path[]{copy, myDexPath}))
+      .isNotEqualTo(DexReferenceIndex.computeKey(new Path[]{myDexPath}));
+  }
+}
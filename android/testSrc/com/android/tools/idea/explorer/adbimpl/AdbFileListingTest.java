@@ -32,6 +32,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.android.tools.idea.explorer.adbimpl.TestDevices.COMMAND_ERROR_CHECK_SUFFIX;
 import static com.google.common.truth.Truth.assertThat;
@@ -287,6 +288,54 @@ public class AdbFileListingTest {
     });
   }
 
+  @Test
+  public void test_Nexus7Api23_GetDescendants() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+
+    // Act
+    List<AdbFileListingEntry> entries = waitForFuture(fileListing.getDescendantsRunAs(createDirectoryEntry("/system/usr"), null));
+
+    // Assert
+    assertThat(entries.stream().map(AdbFileListingEntry::getFullPath).collect(Collectors.toList())).containsExactly(
+      "/system/usr/idc",
+      "/system/usr/idc/qwerty.idc",
+      "/system/usr/idc/qwerty2.idc",
+      "/system/usr/keylayout",
+      "/system/usr/keylayout/Generic.kl",
+      "/system/usr/share",
+      "/system/usr/share/zoneinfo",
+      "/system/usr/share/zoneinfo/tzdata").inOrder();
+
+    assertEntry(entries, "tzdata", entry -> {
+      assertThat(entry.isFile()).isTrue();
+      assertThat(entry.getSize()).isEqualTo(509024);
+      assertThat(entry.getDate()).isEqualTo("2008-08-01");
+      assertThat(entry.getTime()).isEqualTo("05:00");
+    });
+  }
+
+  @Test
+  public void test_Nexus7Api23_GetChildrenAfterGetDescendantsListsDevice() throws Exception {
+    // Prepare
+    TestShellCommands commands = new TestShellCommands();
+    TestDevices.addNexus7Api23Commands(commands);
+    commands.addError("ls -l /system/usr/idc/" + COMMAND_ERROR_CHECK_SUFFIX, new ShellCommandUnresponsiveException());
+    IDevice device = commands.createMockDevice();
+    Executor taskExecutor = PooledThreadExecutor.INSTANCE;
+    AdbFileListing fileListing = new AdbFileListing(device, new AdbDeviceCapabilities(device), taskExecutor);
+    waitForFuture(fileListing.getDescendantsRunAs(createDirectoryEntry("/system/usr"), null));
+
+    // Act/Assert
+    thrown.expect(ExecutionException.class);
+    thrown.expectCause(IsInstanceOf.instanceOf(ShellCommandUnresponsiveException.class));
+    waitForFuture(fileListing.getChildren(createDirectoryEntry("/system/usr/idc")));
+  }
+
   @Test
   public void whenLsEscapes() throws Exception {
     TestShellCommands commands = new TestShellCommands();
@@ -363,6 +412,11 @@ public class AdbFileListingTest {
     assertThat(waitForFuture(fileListing.isDirectoryLink(entry))).isEqualTo(value);
   }
 
+  @NotNull
+  private static AdbFileListingEntry createDirectoryEntry(@NotNull String path) {
+    return new AdbFileListingEntryBuilder().setPath(path).setKind(EntryKind.DIRECTORY).build();
+  }
+
   private static void assertEntry(@NotNull List<AdbFileListingEntry> entries,
                                   @NotNull String name,
                                   @NotNull Consumer<AdbFileListingEntry> consumer) {
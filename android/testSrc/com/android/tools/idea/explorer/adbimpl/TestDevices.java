@@ -258,6 +258,24 @@ public class TestDevices {
                                            "drwxr-xr-x root     shell             2013-06-15 12:54 vendor\n\n" +
                                            "drwxr-xr-x root     shell             2016-08-24 15:40 xbin\n\n");
 
+    addCommand(commands, "ls -l -R /system/usr/", "/system/usr/:\r\n" +
+                                                  "drwxr-xr-x root     root              2016-05-17 12:04 idc\r\n" +
+                                                  "drwxr-xr-x root     root              2016-05-17 12:04 keylayout\r\n" +
+                                                  "drwxr-xr-x root     root              2016-05-17 12:04 share\r\n" +
+                                                  "\r\n" +
+                                                  "/system/usr/idc:\r\n" +
+                                                  "-rw-r--r-- root     root          957 2008-08-01 05:00 qwerty.idc\r\n" +
+                                                  "-rw-r--r-- root     root          958 2008-08-01 05:00 qwerty2.idc\r\n" +
+                                                  "\r\n" +
+                                                  "/system/usr/keylayout:\r\n" +
+                                                  "-rw-r--r-- root     root          904 2008-08-01 05:00 Generic.kl\r\n" +
+                                                  "\r\n" +
+                                                  "/system/usr/share:\r\n" +
+                                                  "drwxr-xr-x root     root              2016-05-17 12:04 zoneinfo\r\n" +
+                                                  "\r\n" +
+                                                  "/system/usr/share/zoneinfo:\r\n" +
+                                                  "-rw-r--r-- root     root       509024 2008-08-01 05:00 tzdata\r\n");
+
     addFailedCommand(commands, "test -e /foo.txt");
 
     addFailedCommand(commands, "touch /foo.txt", "touch: '/foo.txt': Read-only file system\n");
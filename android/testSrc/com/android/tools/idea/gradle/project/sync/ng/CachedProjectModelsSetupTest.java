@@ -23,6 +23,7 @@ import com.android.tools.idea.gradle.project.model.NdkModuleModel;
 import com.android.tools.idea.gradle.project.sync.ModuleSetupContext;
 import com.android.tools.idea.gradle.project.sync.ng.caching.CachedModuleModels;
 import com.android.tools.idea.gradle.project.sync.ng.caching.CachedProjectModels;
+import com.android.tools.idea.gradle.project.sync.ng.caching.ModelNotFoundInCacheException;
 import com.android.tools.idea.gradle.project.sync.setup.module.AndroidModuleSetup;
 import com.android.tools.idea.gradle.project.sync.setup.module.GradleModuleSetup;
 import com.android.tools.idea.gradle.project.sync.setup.module.ModuleFinder;
@@ -124,6 +125,21 @@ public class CachedProjectModelsSetupTest extends IdeaTestCase {
     verify(myJavaModuleSetup).setUpModule(any(), eq(javaModel), eq(true));
   }
 
+  public void testUnreadableModuleFailsSetUp() throws Exception {
+    Module appModule = createModule("app");
+    makeGradleModule(appModule);
+    when(myCachedProjectModels.findCacheForModule("app")).thenReturn(null);
+    when(myCachedProjectModels.isModuleUnreadable("app")).thenReturn(true);
+
+    try {
+      myModuleSetup.setUpModules(myCachedProjectModels, new EmptyProgressIndicator());
+      fail("Expected ModelNotFoundInCacheException");
+    }
+    catch (ModelNotFoundInCacheException expected) {
+    }
+    verify(myGradleModuleSetup, never()).setUpModule(any(), any(), any(GradleModuleModel.class));
+  }
+
   private static void makeGradleModule(@NotNull Module module) {
     GradleFacet gradleFacet = createAndAddGradleFacet(module);
     gradleFacet.getConfiguration().GRADLE_PROJECT_PATH = ":" + module.getName();
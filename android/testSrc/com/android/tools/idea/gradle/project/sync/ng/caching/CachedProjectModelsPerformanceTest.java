@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.ng.caching;
+
+import com.android.tools.perflogger.Benchmark;
+import com.intellij.openapi.module.Module;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Saves and loads the cached models of a large project, with the per-module format of {@link CachedProjectModels} and with Java
+ * serialization of the whole project, as the cache used to be saved.
+ */
+public class CachedProjectModelsPerformanceTest {
+  private static final int MODULE_COUNT = 400;
+  private static final int DEPENDENCIES_PER_MODULE = 300;
+  private static final int LIBRARY_COUNT = 2000;
+  private static final int ITERATIONS = 5;
+
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  private final Benchmark myBenchmark = new Benchmark.Builder("Cached Gradle Models (millis)").setProject("Android Studio Sync").build();
+
+  @Test
+  public void runPerformanceTest() throws Exception {
+    CachedProjectModels cache = createProjectModels();
+    Map<String, CachedModuleModels> modulesByName = new HashMap<>();
+    for (int i = 0; i < MODULE_COUNT; i++) {
+      modulesByName.put(getModuleName(i), cache.findCacheForModule(getModuleName(i)));
+    }
+
+    File javaSerializationFile = myTemporaryFolder.newFile("gradle_models.ser");
+    long javaSaveMs = measure(() -> {
+      try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(javaSerializationFile)))) {
+        oos.writeObject(modulesByName);
+      }
+    });
+    List<Map<?, ?>> javaLoaded = new ArrayList<>();
+    long javaLoadMs = measure(() -> {
+      javaLoaded.clear();
+      try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(javaSerializationFile)))) {
+        javaLoaded.add((Map<?, ?>)ois.readObject());
+      }
+    });
+    assertThat(javaLoaded.get(0)).isEqualTo(modulesByName);
+
+    File binaryFile = new File(myTemporaryFolder.getRoot(), "gradle_models.bin");
+    long binarySaveMs = measure(() -> cache.writeToDisk(binaryFile));
+    long binaryLoadIndexMs = measure(() -> CachedProjectModels.readFromDisk(binaryFile));
+    List<CachedProjectModels> binaryLoaded = new ArrayList<>();
+    long binaryLoadAllMs = measure(() -> {
+      binaryLoaded.clear();
+      CachedProjectModels loaded = CachedProjectModels.readFromDisk(binaryFile);
+      modulesByName.keySet().parallelStream().forEach(loaded::findCacheForModule);
+      binaryLoaded.add(loaded);
+    });
+    assertThat(binaryLoaded.get(0)).isEqualTo(cache);
+
+    myBenchmark.log("Java-Serialization-Save", javaSaveMs);
+    myBenchmark.log("Java-Serialization-Load", javaLoadMs);
+    myBenchmark.log("Binary-Save", binarySaveMs);
+    myBenchmark.log("Binary-Load-Index", binaryLoadIndexMs);
+    myBenchmark.log("Binary-Load-All-Modules", binaryLoadAllMs);
+    myBenchmark.log("Java-Serialization-File-KB", javaSerializationFile.length() / 1024);
+    myBenchmark.log("Binary-File-KB", binaryFile.length() / 1024);
+  }
+
+  private interface IoBlock {
+    void run() throws Exception;
+  }
+
+  private static long measure(@NotNull IoBlock block) throws Exception {
+    // The first run warms up the JIT.
+    block.run();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      block.run();
+    }
+    return (System.nanoTime() - start) / ITERATIONS / 1_000_000;
+  }
+
+  /**
+   * Creates modules whose models mostly reference the same strings (library coordinates and paths), like the models of real projects.
+   */
+  @NotNull
+  private static CachedProjectModels createProjectModels() {
+    Random random = new Random(1);
+    CachedProjectModels cache = new CachedProjectModels();
+    for (int i = 0; i < MODULE_COUNT; i++) {
+      Module module = mock(Module.class);
+      when(module.getName()).thenReturn(getModuleName(i));
+      List<String> dependencies = new ArrayList<>(DEPENDENCIES_PER_MODULE);
+      for (int j = 0; j < DEPENDENCIES_PER_MODULE; j++) {
+        int library = random.nextInt(LIBRARY_COUNT);
+        dependencies.add("com.example.group" + library % 50 + ":library" + library + ":1." + library % 7 + ".0");
+        dependencies.add("/home/user/.gradle/caches/transforms-1/files-1.1/library" + library + "/jars/classes.jar");
+      }
+      cache.addModule(module).addModel(new FakeModuleModel("/home/user/project/" + getModuleName(i), dependencies));
+    }
+    return cache;
+  }
+
+  @NotNull
+  private static String getModuleName(int index) {
+    return "module" + index;
+  }
+
+  private static class FakeModuleModel implements Serializable {
+    @NotNull private final String myRootDirPath;
+    @NotNull private final List<String> myDependencies;
+
+    FakeModuleModel(@NotNull String rootDirPath, @NotNull List<String> dependencies) {
+      myRootDirPath = rootDirPath;
+      myDependencies = dependencies;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof FakeModuleModel)) {
+        return false;
+      }
+      FakeModuleModel model = (FakeModuleModel)o;
+      return myRootDirPath.equals(model.myRootDirPath) && myDependencies.equals(model.myDependencies);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myRootDirPath, myDependencies);
+    }
+  }
+}
@@ -20,9 +20,8 @@ import com.intellij.testFramework.IdeaTestCase;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.util.Objects;
 import java.util.concurrent.Future;
 
@@ -59,7 +58,7 @@ public class CachedProjectModelsTest extends IdeaTestCase {
     File cacheFilePath = CachedProjectModels.getCacheFilePath(project);
     assertAbout(file()).that(cacheFilePath).isFile();
 
-    CachedProjectModels deserialized = deserialize(cacheFilePath);
+    CachedProjectModels deserialized = CachedProjectModels.readFromDisk(cacheFilePath);
     assertEquals(myCache, deserialized);
     assertThat(deserialized).isNotSameAs(myCache);
 
@@ -72,13 +71,89 @@ public class CachedProjectModelsTest extends IdeaTestCase {
     assertEquals(p2, deserializedP2);
   }
 
-  @NotNull
-  private static CachedProjectModels deserialize(@NotNull File path) throws Exception {
-    try (FileInputStream fis = new FileInputStream(path)) {
-      try (ObjectInputStream ois = new ObjectInputStream(fis)) {
-        return (CachedProjectModels)ois.readObject();
+  public void testModulesAreLoadedOnDemand() throws Exception {
+    myCache.addModule(createModule("module1")).addModel(new Person("Luke"));
+    myCache.addModule(createModule("module2")).addModel(new Person("Leia"));
+    File cacheFilePath = saveToDisk(myCache);
+
+    CachedProjectModels deserialized = CachedProjectModels.readFromDisk(cacheFilePath);
+    assertFalse(deserialized.isModuleLoaded("module1"));
+    assertFalse(deserialized.isModuleLoaded("module2"));
+
+    CachedModuleModels deserializedModule1 = deserialized.findCacheForModule("module1");
+    assertNotNull(deserializedModule1);
+    assertEquals(new Person("Luke"), deserializedModule1.findModel(Person.class));
+    assertTrue(deserialized.isModuleLoaded("module1"));
+    assertFalse(deserialized.isModuleLoaded("module2"));
+  }
+
+  public void testSaveToDiskKeepsModulesNotLoaded() throws Exception {
+    myCache.addModule(createModule("module1")).addModel(new Person("Luke"));
+    myCache.addModule(createModule("module2")).addModel(new Person("Leia"));
+    File cacheFilePath = saveToDisk(myCache);
+
+    CachedProjectModels deserialized = CachedProjectModels.readFromDisk(cacheFilePath);
+    CachedModuleModels deserializedModule1 = deserialized.findCacheForModule("module1");
+    assertNotNull(deserializedModule1);
+    deserializedModule1.addModel(new Person("Han"));
+    saveToDisk(deserialized);
+
+    CachedProjectModels reloaded = CachedProjectModels.readFromDisk(cacheFilePath);
+    CachedModuleModels reloadedModule1 = reloaded.findCacheForModule("module1");
+    assertNotNull(reloadedModule1);
+    assertEquals(new Person("Han"), reloadedModule1.findModel(Person.class));
+    CachedModuleModels reloadedModule2 = reloaded.findCacheForModule("module2");
+    assertNotNull(reloadedModule2);
+    assertEquals(new Person("Leia"), reloadedModule2.findModel(Person.class));
+  }
+
+  public void testStringsAreInternedAcrossModules() throws Exception {
+    myCache.addModule(createModule("module1")).addModel(new Person(new String("Luke")));
+    myCache.addModule(createModule("module2")).addModel(new Person(new String("Luke")));
+    File cacheFilePath = saveToDisk(myCache);
+
+    CachedProjectModels deserialized = CachedProjectModels.readFromDisk(cacheFilePath);
+    Person p1 = deserialized.findCacheForModule("module1").findModel(Person.class);
+    Person p2 = deserialized.findCacheForModule("module2").findModel(Person.class);
+    assertSame(p1.getName(), p2.getName());
+  }
+
+  public void testUnreadableModulesAreReported() throws Exception {
+    myCache.addModule(createModule("module1")).addModel(new Person("Luke"));
+    myCache.addModule(createModule("module2")).addModel(new Person("Leia"));
+    File cacheFilePath = saveToDisk(myCache);
+
+    // Breaks the stream header of the last section, i.e. of module2.
+    byte[] bytes = Files.readAllBytes(cacheFilePath.toPath());
+    for (int i = bytes.length - 2; i >= 0; i--) {
+      if (bytes[i] == (byte)0xAC && bytes[i + 1] == (byte)0xED) {
+        bytes[i] = 0;
+        break;
       }
     }
+    Files.write(cacheFilePath.toPath(), bytes);
+
+    CachedProjectModels deserialized = CachedProjectModels.readFromDisk(cacheFilePath);
+    assertNotNull(deserialized.findCacheForModule("module1"));
+    assertFalse(deserialized.isModuleUnreadable("module1"));
+    assertNull(deserialized.findCacheForModule("module2"));
+    assertTrue(deserialized.isModuleUnreadable("module2"));
+    assertFalse(deserialized.isModuleUnreadable("module3"));
+  }
+
+  public void testLoadFromDiskWithInvalidFile() throws Exception {
+    File cacheFilePath = CachedProjectModels.getCacheFilePath(getProject());
+    Files.createDirectories(cacheFilePath.getParentFile().toPath());
+    Files.write(cacheFilePath.toPath(), new byte[]{1, 2, 3});
+
+    assertNull(new CachedProjectModels.Loader().loadFromDisk(getProject()));
+  }
+
+  @NotNull
+  private File saveToDisk(@NotNull CachedProjectModels cache) throws Exception {
+    Project project = getProject();
+    cache.saveToDisk(project).get(10, SECONDS);
+    return CachedProjectModels.getCacheFilePath(project);
   }
 
   public static class Person implements Serializable {
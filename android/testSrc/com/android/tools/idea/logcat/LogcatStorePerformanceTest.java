@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.tools.perflogger.Benchmark;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Replays a large logcat stream into a {@link LogcatStore}, then measures changing the filter through the store's indexes against
+ * testing every message with the filter, as the console used to.
+ */
+public class LogcatStorePerformanceTest {
+  private static final int MESSAGE_COUNT = 500_000;
+  private static final int TAG_COUNT = 200;
+  private static final int PROCESS_COUNT = 40;
+  private static final int ITERATIONS = 5;
+
+  private final Benchmark myBenchmark = new Benchmark.Builder("Logcat Store (millis)").setProject("Android Studio Logcat").build();
+
+  @Test
+  public void runPerformanceTest() {
+    List<String> lines = generateStream();
+    List<LogCatMessage> messages = new ArrayList<>(MESSAGE_COUNT);
+    AndroidLogcatService.LogcatListener listener = new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onLogLineReceived(@NotNull LogCatMessage line) {
+        messages.add(line);
+      }
+    };
+    AndroidLogcatReceiver receiver = new AndroidLogcatReceiver(AndroidLogcatReceiverTest.createMockDevice(), listener);
+    lines.forEach(receiver::processNewLine);
+
+    LogcatStore store = new LogcatStore(Long.MAX_VALUE);
+    long appendMs = measure(() -> {
+      store.clear();
+      messages.forEach(store::add);
+    });
+    assertThat(store.size()).isEqualTo(messages.size());
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("benchmark")
+      .setTagPattern(Pattern.compile("Tag1[0-9]$"))
+      .setPid(1005)
+      .setLogLevel(LogLevel.INFO)
+      .build();
+
+    List<LogCatMessage> scanned = new ArrayList<>();
+    long scanMs = measure(() -> {
+      scanned.clear();
+      for (LogCatMessage message : messages) {
+        LogCatHeader header = message.getHeader();
+        if (filter.isApplicable(message.getMessage(), header.getTag(), header.getAppName(), header.getPid(), header.getLogLevel())) {
+          scanned.add(message);
+        }
+      }
+    });
+
+    List<List<LogCatMessage>> indexed = new ArrayList<>();
+    long indexedMs = measure(() -> {
+      indexed.clear();
+      indexed.add(store.getMessages(filter));
+    });
+
+    assertThat(indexed.get(0).size()).isEqualTo(scanned.size());
+    myBenchmark.log("Store-Append", appendMs);
+    myBenchmark.log("Full-Scan-Filter", scanMs);
+    myBenchmark.log("Indexed-Filter", indexedMs);
+    myBenchmark.log("Store-Chars-Per-Message", store.getTextSize() / Math.max(1, store.size()));
+  }
+
+  private static long measure(@NotNull Runnable block) {
+    // The first run warms up the JIT.
+    block.run();
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      block.run();
+    }
+    return (System.nanoTime() - start) / ITERATIONS / 1_000_000;
+  }
+
+  /**
+   * Generates "logcat -v long -v epoch" output from chatty processes, with some multi-line messages.
+   */
+  @NotNull
+  private static List<String> generateStream() {
+    Random random = new Random(1);
+    LogLevel[] levels = {LogLevel.VERBOSE, LogLevel.DEBUG, LogLevel.INFO, LogLevel.WARN, LogLevel.ERROR};
+    List<String> lines = new ArrayList<>();
+    long timeMs = 1_534_635_551_439L;
+    int messages = 0;
+    while (messages < MESSAGE_COUNT) {
+      int pid = 1000 + random.nextInt(PROCESS_COUNT);
+      timeMs += random.nextInt(3);
+      lines.add(String.format(Locale.US, "[ %d.%03d %d:%d %s/Tag%d ]", timeMs / 1000, timeMs % 1000, pid, pid + random.nextInt(8),
+                              levels[random.nextInt(levels.length)].getPriorityLetter(), random.nextInt(TAG_COUNT)));
+      int lineCount = random.nextInt(10) == 0 ? 2 + random.nextInt(4) : 1;
+      for (int i = 0; i < lineCount && messages < MESSAGE_COUNT; i++, messages++) {
+        lines.add("Message " + messages + " with some text to make it look like a typical log line " + random.nextInt());
+      }
+      lines.add("");
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatStoreTest {
+  private static final Instant TIMESTAMP = Instant.parse("2018-04-17T20:33:25.907123Z");
+
+  @Test
+  public void messagesAreReadBackInOrder() {
+    LogcatStore store = new LogcatStore(Long.MAX_VALUE);
+    List<LogCatMessage> messages = new ArrayList<>();
+    LogCatHeader header = new LogCatHeader(LogLevel.WARN, 1493, 1500, "com.example", "Tag", TIMESTAMP);
+    messages.add(new LogCatMessage(header, "Line 1"));
+    messages.add(new LogCatMessage(header, "Line 2"));
+    messages.add(new LogCatMessage(new LogCatHeader(LogLevel.INFO, 1493, 1501, "com.example", "Tag", TIMESTAMP.plusMillis(1)), "\u00e9t\u00e9"));
+    messages.forEach(store::add);
+
+    List<LogCatMessage> stored = store.getMessages();
+    assertThat(describe(stored)).containsExactlyElementsIn(describe(messages)).inOrder();
+    // The lines of a multi-line message share their header, the formatter relies on it.
+    assertThat(stored.get(1).getHeader()).isSameAs(stored.get(0).getHeader());
+    assertThat(stored.get(2).getHeader()).isNotSameAs(stored.get(1).getHeader());
+  }
+
+  @Test
+  public void oldestMessagesAreDroppedOverMaxSize() {
+    LogcatStore store = new LogcatStore(10);
+    for (int i = 0; i < 5; i++) {
+      store.add(newMessage(LogLevel.DEBUG, 1, "Tag", "Text" + i));
+    }
+
+    assertThat(store.size()).isEqualTo(2);
+    assertThat(store.getTextSize()).isEqualTo(10L);
+    assertThat(texts(store.getMessages())).containsExactly("Text3", "Text4").inOrder();
+  }
+
+  @Test
+  public void maxSizeCountsCharactersRatherThanBytes() {
+    LogcatStore store = new LogcatStore(6);
+    for (int i = 0; i < 3; i++) {
+      store.add(newMessage(LogLevel.DEBUG, 1, "Tag", "\u00e9t\u00e9"));
+    }
+
+    assertThat(store.size()).isEqualTo(2);
+    assertThat(store.getTextSize()).isEqualTo(6L);
+  }
+
+  @Test
+  public void messagesAreKeptInOrderAcrossGrowthAndWrapping() {
+    // Enough room for 3000 messages of 4 bytes, added in several times the initial capacity.
+    LogcatStore store = new LogcatStore(3000 * 4);
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      String text = String.format("%04d", i);
+      store.add(newMessage(LogLevel.values()[i % LogLevel.values().length], i % 7, "Tag" + i % 3, text));
+      if (i >= 7000) {
+        expected.add(text);
+      }
+    }
+
+    assertThat(texts(store.getMessages())).containsExactlyElementsIn(expected).inOrder();
+    List<String> tag1 = texts(store.getMessages(new DefaultAndroidLogcatFilter.Builder("tag").setTagPattern(Pattern.compile("Tag1")).build()));
+    assertThat(tag1).containsExactlyElementsIn(expected.stream().filter(text -> Integer.parseInt(text) % 3 == 1).collect(Collectors.toList()))
+      .inOrder();
+  }
+
+  @Test
+  public void messagesAreSelectedByHeader() {
+    LogcatStore store = new LogcatStore(Long.MAX_VALUE);
+    store.add(newMessage(LogLevel.DEBUG, 1, "Network", "a"));
+    store.add(newMessage(LogLevel.ERROR, 1, "Network", "b"));
+    store.add(newMessage(LogLevel.ERROR, 2, "Network", "c"));
+    store.add(newMessage(LogLevel.ERROR, 1, "Database", "d"));
+    store.add(newMessage(LogLevel.INFO, 1, "NetworkStats", "e"));
+
+    AndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("filter")
+      .setTagPattern(Pattern.compile("^Network"))
+      .setPid(1)
+      .setLogLevel(LogLevel.INFO)
+      .build();
+    assertThat(texts(store.getMessages(filter))).containsExactly("b", "e").inOrder();
+
+    // The text of the messages is left to the caller to check.
+    AndroidLogcatFilter textFilter = new DefaultAndroidLogcatFilter.Builder("text").setMessagePattern(Pattern.compile("x")).build();
+    assertThat(texts(store.getMessages(textFilter))).containsExactly("a", "b", "c", "d", "e").inOrder();
+
+    assertThat(texts(store.getMessages(new SelectedProcessFilter(2)))).containsExactly("c");
+  }
+
+  @Test
+  public void clear() {
+    LogcatStore store = new LogcatStore(Long.MAX_VALUE);
+    store.add(newMessage(LogLevel.DEBUG, 1, "Tag", "a"));
+    store.clear();
+    assertThat(store.size()).isEqualTo(0);
+    assertThat(store.getMessages()).isEmpty();
+
+    store.add(newMessage(LogLevel.DEBUG, 1, "Tag", "b"));
+    assertThat(texts(store.getMessages())).containsExactly("b");
+  }
+
+  @NotNull
+  private static LogCatMessage newMessage(@NotNull LogLevel level, int pid, @NotNull String tag, @NotNull String text) {
+    return new LogCatMessage(new LogCatHeader(level, pid, pid, "com.example", tag, TIMESTAMP), text);
+  }
+
+  @NotNull
+  private static List<String> texts(@NotNull List<LogCatMessage> messages) {
+    return messages.stream().map(LogCatMessage::getMessage).collect(Collectors.toList());
+  }
+
+  /**
+   * Every field of the messages, {@link LogCatMessage#toString()} leaves some out.
+   */
+  @NotNull
+  private static List<String> describe(@NotNull List<LogCatMessage> messages) {
+    return messages.stream().map(message -> {
+      LogCatHeader header = message.getHeader();
+      return String.join(" ", header.getLogLevel().toString(), Integer.toString(header.getPid()), Integer.toString(header.getTid()),
+                         header.getAppName(), header.getTag(), String.valueOf(header.getTimestampInstant()), message.getMessage());
+    }).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the results of analyzing an archive (raw and download sizes of the archive and of each of its
+ * entries, output of "aapt dump xmltree" for its manifests), so that re-opening the same artifact doesn't recompute
+ * them. Entries are keyed by a SHA-256 hash of the archive contents, computed by reading the file through memory
+ * mapped windows, so a rebuilt artifact with a different content is never served stale results.
+ *
+ * <p>Only the {@link #DEFAULT_MAX_ENTRIES} most recently used analyses are kept.
+ */
+public class ApkAnalysisCache {
+  private static final int MAGIC = 0x41504b43; // 'APKC'
+  private static final int VERSION = 1;
+  private static final int DEFAULT_MAX_ENTRIES = 32;
+  private static final long HASH_WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final String FILE_EXTENSION = ".bin";
+
+  @Nullable private static ApkAnalysisCache ourInstance;
+
+  @NotNull private final Path myDirectory;
+  private final int myMaxEntries;
+
+  @NotNull
+  public static synchronized ApkAnalysisCache getInstance() {
+    if (ourInstance == null) {
+      ourInstance = new ApkAnalysisCache(Paths.get(PathManager.getSystemPath(), "apk-analyzer"), DEFAULT_MAX_ENTRIES);
+    }
+    return ourInstance;
+  }
+
+  @VisibleForTesting
+  ApkAnalysisCache(@NotNull Path directory, int maxEntries) {
+    myDirectory = directory;
+    myMaxEntries = maxEntries;
+  }
+
+  /**
+   * @return the hex encoded SHA-256 hash of the contents of {@code file}.
+   */
+  @NotNull
+  public static String computeHash(@NotNull Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      for (long position = 0; position < size; position += HASH_WINDOW_SIZE) {
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_WINDOW_SIZE, size - position));
+        digest.update(window);
+      }
+    }
+
+    StringBuilder hash = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hash.append(String.format("%02x", b));
+    }
+    return hash.toString();
+  }
+
+  /**
+   * @return the analysis cached for the archive with the given hash, or an empty one if there is none (or if it can't
+   * be read).
+   */
+  @NotNull
+  public Analysis load(@NotNull String hash) {
+    Path file = getFile(hash);
+    if (!Files.isRegularFile(file)) {
+      return new Analysis(hash);
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      Analysis analysis = Analysis.read(in, hash);
+      // Keep track of the most recently used entries
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return analysis;
+    }
+    catch (IOException e) {
+      getLog().info("Ignoring unreadable APK analysis cache entry " + file, e);
+      return new Analysis(hash);
+    }
+  }
+
+  public void store(@NotNull Analysis analysis) {
+    try {
+      Files.createDirectories(myDirectory);
+      Path file = getFile(analysis.getHash());
+      Path tempFile = Files.createTempFile(myDirectory, analysis.getHash(), ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+          analysis.write(out);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+      evictOldEntries();
+    }
+    catch (IOException e) {
+      getLog().info("Unable to store APK analysis cache entry", e);
+    }
+  }
+
+  private void evictOldEntries() throws IOException {
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(myDirectory)) {
+      files = stream.filter(path -> path.getFileName().toString().endsWith(FILE_EXTENSION)).collect(Collectors.toList());
+    }
+    if (files.size() <= myMaxEntries) {
+      return;
+    }
+
+    Map<Path, Long> lastModified = new HashMap<>();
+    for (Path file : files) {
+      lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+    }
+    files.sort(Comparator.comparing(lastModified::get));
+    for (Path file : files.subList(0, files.size() - myMaxEntries)) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @NotNull
+  private Path getFile(@NotNull String hash) {
+    return myDirectory.resolve(hash + FILE_EXTENSION);
+  }
+
+  @NotNull
+  private static Logger getLog() {
+    return Logger.getInstance(ApkAnalysisCache.class);
+  }
+
+  /**
+   * The results of analyzing one archive. Values not computed yet are negative, or {@code null}.
+   */
+  public static final class Analysis {
+    @NotNull private final String myHash;
+    private long myRawSize = -1;
+    private long myDownloadSize = -1;
+    @Nullable private NodeSizes myNodeSizes;
+    @NotNull private final Map<String, List<String>> myManifestXmlTrees = new HashMap<>();
+
+    @VisibleForTesting
+    Analysis(@NotNull String hash) {
+      myHash = hash;
+    }
+
+    @NotNull
+    public String getHash() {
+      return myHash;
+    }
+
+    public synchronized long getRawSize() {
+      return myRawSize;
+    }
+
+    public synchronized void setRawSize(long rawSize) {
+      myRawSize = rawSize;
+    }
+
+    public synchronized long getDownloadSize() {
+      return myDownloadSize;
+    }
+
+    public synchronized void setDownloadSize(long downloadSize) {
+      myDownloadSize = downloadSize;
+    }
+
+    @Nullable
+    public synchronized NodeSizes getNodeSizes() {
+      return myNodeSizes;
+    }
+
+    public synchronized void setNodeSizes(@NotNull NodeSizes nodeSizes) {
+      myNodeSizes = nodeSizes;
+    }
+
+    /**
+     * @return the output of "aapt dump xmltree" for the manifest at {@code path}, or null if it isn't cached.
+     */
+    @Nullable
+    public synchronized List<String> getManifestXmlTree(@NotNull String path) {
+      return myManifestXmlTrees.get(path);
+    }
+
+    public synchronized void setManifestXmlTree(@NotNull String path, @NotNull List<String> xmlTree) {
+      myManifestXmlTrees.put(path, Collections.unmodifiableList(new ArrayList<>(xmlTree)));
+    }
+
+    private synchronized void write(@NotNull DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(myHash);
+      out.writeLong(myRawSize);
+      out.writeLong(myDownloadSize);
+
+      out.writeBoolean(myNodeSizes != null);
+      if (myNodeSizes != null) {
+        myNodeSizes.write(out);
+      }
+
+      out.writeInt(myManifestXmlTrees.size());
+      for (Map.Entry<String, List<String>> entry : myManifestXmlTrees.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue().size());
+        for (String line : entry.getValue()) {
+          out.writeUTF(line);
+        }
+      }
+    }
+
+    @NotNull
+    private static Analysis read(@NotNull DataInputStream in, @NotNull String hash) throws IOException {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !hash.equals(in.readUTF())) {
+        throw new IOException("Unsupported APK analysis cache entry");
+      }
+      Analysis analysis = new Analysis(hash);
+      analysis.myRawSize = in.readLong();
+      analysis.myDownloadSize = in.readLong();
+
+      if (in.readBoolean()) {
+        analysis.myNodeSizes = NodeSizes.read(in);
+      }
+
+      int manifestCount = in.readInt();
+      for (int i = 0; i < manifestCount; i++) {
+        String path = in.readUTF();
+        int lineCount = in.readInt();
+        List<String> lines = new ArrayList<>(lineCount);
+        for (int j = 0; j < lineCount; j++) {
+          lines.add(in.readUTF());
+        }
+        analysis.myManifestXmlTrees.put(path, Collections.unmodifiableList(lines));
+      }
+      return analysis;
+    }
+  }
+
+  /**
+   * The raw and download sizes of the nodes of an archive tree, in pre-order. The path of each node is kept to check
+   * that the sizes are applied to the same tree they were recorded from.
+   */
+  public static final class NodeSizes {
+    @NotNull private final String[] myPaths;
+    @NotNull private final long[] myRawSizes;
+    @NotNull private final long[] myDownloadSizes;
+
+    public NodeSizes(@NotNull String[] paths, @NotNull long[] rawSizes, @NotNull long[] downloadSizes) {
+      assert paths.length == rawSizes.length && paths.length == downloadSizes.length;
+      myPaths = paths;
+      myRawSizes = rawSizes;
+      myDownloadSizes = downloadSizes;
+    }
+
+    public int size() {
+      return myPaths.length;
+    }
+
+    @NotNull
+    public String getPath(int index) {
+      return myPaths[index];
+    }
+
+    public long getRawSize(int index) {
+      return myRawSizes[index];
+    }
+
+    public long getDownloadSize(int index) {
+      return myDownloadSizes[index];
+    }
+
+    private void write(@NotNull DataOutputStream out) throws IOException {
+      out.writeInt(myPaths.length);
+      for (int i = 0; i < myPaths.length; i++) {
+        out.writeUTF(myPaths[i]);
+        out.writeLong(myRawSizes[i]);
+        out.writeLong(myDownloadSizes[i]);
+      }
+    }
+
+    @NotNull
+    private static NodeSizes read(@NotNull DataInputStream in) throws IOException {
+      int count = in.readInt();
+      if (count < 0) {
+        throw new IOException("Invalid node count: " + count);
+      }
+      String[] paths = new String[count];
+      long[] rawSizes = new long[count];
+      long[] downloadSizes = new long[count];
+      for (int i = 0; i < count; i++) {
+        paths[i] = in.readUTF();
+        rawSizes[i] = in.readLong();
+        downloadSizes[i] = in.readLong();
+      }
+      return new NodeSizes(paths, rawSizes, downloadSizes);
+    }
+  }
+}
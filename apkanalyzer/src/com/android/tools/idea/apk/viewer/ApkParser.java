@@ -38,6 +38,9 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 public class ApkParser {
@@ -45,6 +48,13 @@ public class ApkParser {
 
   private final ArchiveContext myArchiveContext;
   private final ApkSizeCalculator myApkSizeCalculator;
+  @Nullable private final ApkAnalysisCache myAnalysisCache;
+
+  /**
+   * Guards {@link #myAnalysis}. Not the parser itself, so callers on the UI thread don't wait for the archive to be hashed.
+   */
+  private final Object myAnalysisLock = new Object();
+  @Nullable private ApkAnalysisCache.Analysis myAnalysis;
 
   @Nullable private ListenableFuture<ArchiveNode> myTreeStructure;
   @Nullable private ListenableFuture<ArchiveNode> myTreeStructureWithDownloadSizes;
@@ -52,8 +62,19 @@ public class ApkParser {
   @Nullable private ListenableFuture<Long> myCompressedFullApkSize;
 
   public ApkParser(@NotNull ArchiveContext archiveContext, @NotNull ApkSizeCalculator sizeCalculator) {
+    this(archiveContext, sizeCalculator, null);
+  }
+
+  /**
+   * @param analysisCache if not null, the sizes and application info computed for the archive are stored in this cache, and reused
+   *                      when the same archive is opened again.
+   */
+  public ApkParser(@NotNull ArchiveContext archiveContext,
+                   @NotNull ApkSizeCalculator sizeCalculator,
+                   @Nullable ApkAnalysisCache analysisCache) {
     myArchiveContext = archiveContext;
     myApkSizeCalculator = sizeCalculator;
+    myAnalysisCache = analysisCache;
   }
 
   @NotNull
@@ -88,7 +109,14 @@ public class ApkParser {
   public synchronized ListenableFuture<ArchiveNode> updateTreeWithDownloadSizes() {
     if (myTreeStructureWithDownloadSizes == null) {
       myTreeStructureWithDownloadSizes = Futures.transform(constructTreeStructure(), input -> {
-        ArchiveTreeStructure.updateDownloadFileSizes(input, myApkSizeCalculator);
+        ApkAnalysisCache.Analysis analysis = getAnalysis();
+        if (analysis == null || analysis.getNodeSizes() == null || !applyNodeSizes(input, analysis.getNodeSizes())) {
+          ArchiveTreeStructure.updateDownloadFileSizes(input, myApkSizeCalculator);
+          if (analysis != null) {
+            analysis.setNodeSizes(collectNodeSizes(input));
+            storeAnalysis(analysis);
+          }
+        }
         return input;
       }, PooledThreadExecutor.INSTANCE);
     }
@@ -97,13 +125,44 @@ public class ApkParser {
 
   @NotNull
   public synchronized ListenableFuture<AndroidApplicationInfo> getApplicationInfo(@NotNull Path pathToAapt, @Nullable ArchiveEntry entry) {
-    return ourExecutorService.submit(() -> getAppInfo(pathToAapt, entry));
+    return ourExecutorService.submit(() -> {
+      ApkAnalysisCache.Analysis analysis = getAnalysis();
+      if (analysis == null || entry == null || entry.getArchive() instanceof AppBundleArchive) {
+        return getAppInfo(pathToAapt, entry);
+      }
+
+      String entryPath = getAaptEntryPath(entry);
+      List<String> xmlTree = analysis.getManifestXmlTree(entryPath);
+      if (xmlTree == null) {
+        try {
+          xmlTree = new AaptInvoker(pathToAapt, new LogWrapper(ApkParser.class)).getXmlTree(entry.getArchive().getPath().toFile(), entryPath);
+        }
+        catch (Throwable e) {
+          Logger.getInstance(ApkViewPanel.class).warn("Unable to retrieve application info from artifact", e);
+          return AndroidApplicationInfo.UNKNOWN;
+        }
+        analysis.setManifestXmlTree(entryPath, xmlTree);
+        storeAnalysis(analysis);
+      }
+      return AndroidApplicationInfo.parse(xmlTree);
+    });
   }
 
   @NotNull
   public synchronized ListenableFuture<Long> getUncompressedApkSize() {
     if (myRawFullApkSize == null) {
-      myRawFullApkSize = ourExecutorService.submit(() -> myApkSizeCalculator.getFullApkRawSize(myArchiveContext.getArchive().getPath()));
+      myRawFullApkSize = ourExecutorService.submit(() -> {
+        ApkAnalysisCache.Analysis analysis = getAnalysis();
+        if (analysis != null && analysis.getRawSize() >= 0) {
+          return analysis.getRawSize();
+        }
+        long size = myApkSizeCalculator.getFullApkRawSize(myArchiveContext.getArchive().getPath());
+        if (analysis != null) {
+          analysis.setRawSize(size);
+          storeAnalysis(analysis);
+        }
+        return size;
+      });
     }
     return myRawFullApkSize;
   }
@@ -111,7 +170,18 @@ public class ApkParser {
   @NotNull
   public synchronized ListenableFuture<Long> getCompressedFullApkSize() {
     if (myCompressedFullApkSize == null) {
-      myCompressedFullApkSize = ourExecutorService.submit(() -> myApkSizeCalculator.getFullApkDownloadSize(myArchiveContext.getArchive().getPath()));
+      myCompressedFullApkSize = ourExecutorService.submit(() -> {
+        ApkAnalysisCache.Analysis analysis = getAnalysis();
+        if (analysis != null && analysis.getDownloadSize() >= 0) {
+          return analysis.getDownloadSize();
+        }
+        long size = myApkSizeCalculator.getFullApkDownloadSize(myArchiveContext.getArchive().getPath());
+        if (analysis != null) {
+          analysis.setDownloadSize(size);
+          storeAnalysis(analysis);
+        }
+        return size;
+      });
     }
 
     return myCompressedFullApkSize;
@@ -120,10 +190,99 @@ public class ApkParser {
   @NotNull
   private ArchiveNode createTreeNode() throws IOException {
     ArchiveNode node = ArchiveTreeStructure.create(myArchiveContext);
-    ArchiveTreeStructure.updateRawFileSizes(node, myApkSizeCalculator);
+    ApkAnalysisCache.Analysis analysis = getAnalysis();
+    if (analysis == null || analysis.getNodeSizes() == null || !applyNodeSizes(node, analysis.getNodeSizes())) {
+      ArchiveTreeStructure.updateRawFileSizes(node, myApkSizeCalculator);
+    }
     return node;
   }
 
+  /**
+   * @return the cached analysis of the archive, loaded the first time it is needed, or null if there is no cache or the archive can't
+   * be hashed.
+   */
+  @Nullable
+  private ApkAnalysisCache.Analysis getAnalysis() {
+    if (myAnalysisCache == null) {
+      return null;
+    }
+    synchronized (myAnalysisLock) {
+      if (myAnalysis == null) {
+        try {
+          myAnalysis = myAnalysisCache.load(ApkAnalysisCache.computeHash(myArchiveContext.getArchive().getPath()));
+        }
+        catch (IOException e) {
+          Logger.getInstance(ApkParser.class).info("Unable to hash " + myArchiveContext.getArchive().getPath(), e);
+          return null;
+        }
+      }
+      return myAnalysis;
+    }
+  }
+
+  private void storeAnalysis(@NotNull ApkAnalysisCache.Analysis analysis) {
+    if (myAnalysisCache != null) {
+      myAnalysisCache.store(analysis);
+    }
+  }
+
+  /**
+   * @return the raw and download sizes of all the nodes of the tree rooted at {@code root}, in pre-order.
+   */
+  @NotNull
+  private static ApkAnalysisCache.NodeSizes collectNodeSizes(@NotNull ArchiveNode root) {
+    List<ArchiveNode> nodes = preOrder(root);
+    String[] paths = new String[nodes.size()];
+    long[] rawSizes = new long[nodes.size()];
+    long[] downloadSizes = new long[nodes.size()];
+    for (int i = 0; i < nodes.size(); i++) {
+      ArchiveEntry entry = nodes.get(i).getData();
+      paths[i] = entry.getPath().toString();
+      rawSizes[i] = entry.getRawFileSize();
+      downloadSizes[i] = entry.getDownloadFileSize();
+    }
+    return new ApkAnalysisCache.NodeSizes(paths, rawSizes, downloadSizes);
+  }
+
+  /**
+   * Sets the sizes of the nodes of the tree rooted at {@code root} to the cached ones.
+   *
+   * @return false, without changing anything, if the cached sizes were recorded from a different tree.
+   */
+  private static boolean applyNodeSizes(@NotNull ArchiveNode root, @NotNull ApkAnalysisCache.NodeSizes sizes) {
+    List<ArchiveNode> nodes = preOrder(root);
+    if (nodes.size() != sizes.size()) {
+      return false;
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      if (!nodes.get(i).getData().getPath().toString().equals(sizes.getPath(i))) {
+        return false;
+      }
+    }
+    for (int i = 0; i < nodes.size(); i++) {
+      ArchiveEntry entry = nodes.get(i).getData();
+      entry.setRawFileSize(sizes.getRawSize(i));
+      entry.setDownloadFileSize(sizes.getDownloadSize(i));
+    }
+    return true;
+  }
+
+  @NotNull
+  private static List<ArchiveNode> preOrder(@NotNull ArchiveNode root) {
+    List<ArchiveNode> nodes = new ArrayList<>();
+    Deque<ArchiveNode> toVisit = new ArrayDeque<>();
+    toVisit.push(root);
+    while (!toVisit.isEmpty()) {
+      ArchiveNode node = toVisit.pop();
+      nodes.add(node);
+      List<ArchiveNode> children = node.getChildren();
+      for (int i = children.size() - 1; i >= 0; i--) {
+        toVisit.push(children.get(i));
+      }
+    }
+    return nodes;
+  }
+
   @NotNull
   public static AndroidApplicationInfo getAppInfo(@NonNull Path pathToAapt, @Nullable Archive archive) {
     if (archive == null){
@@ -174,12 +333,17 @@ public class ApkParser {
     AaptInvoker invoker = new AaptInvoker(pathToAapt, new LogWrapper(ApkParser.class));
 
     File archiveFile = archiveEntry.getArchive().getPath().toFile();
+    List<String> xmlTree = invoker.getXmlTree(archiveFile, getAaptEntryPath(archiveEntry));
+    return AndroidApplicationInfo.parse(xmlTree);
+  }
+
+  @NotNull
+  private static String getAaptEntryPath(@NotNull ArchiveEntry archiveEntry) {
     // Note: aapt paths don't start with a "/"
     String entryPath = archiveEntry.getPath().toString();
     if (entryPath.startsWith("/")) {
       entryPath = entryPath.substring(1);
     }
-    List<String> xmlTree = invoker.getXmlTree(archiveFile, entryPath);
-    return AndroidApplicationInfo.parse(xmlTree);
+    return entryPath;
   }
 }
@@ -36,6 +36,7 @@ import com.intellij.notification.NotificationGroup;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
 import com.intellij.openapi.ui.Messages;
@@ -82,7 +83,8 @@ public class DexFileViewer implements ApkFileEditorComponent {
 
   @Nullable private ProguardMappings myProguardMappings;
   private boolean myDeobfuscateNames;
-  private ListenableFuture<DexReferences> myDexReferences;
+  @Nullable private ListenableFuture<DexBackedDexFile[]> myParsedDexFiles;
+  @Nullable private ListenableFuture<DexReferenceIndex> myReferenceIndex;
 
   @NotNull public static final NotificationGroup LOGGING_NOTIFICATION = NotificationGroup.logOnlyGroup("APK Analyzer (Info)");
   @NotNull public static final NotificationGroup BALLOON_NOTIFICATION = NotificationGroup.balloonGroup("APK Analyzer (Important)");
@@ -277,13 +279,14 @@ public class DexFileViewer implements ApkFileEditorComponent {
 
   public void initDex() {
     ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = pooledThreadExecutor.submit(() -> {
+    ListenableFuture<Map<Path, DexBackedDexFile>> dexFileFuture = Futures.transform(getParsedDexFiles(), files -> {
+      assert files != null;
       Map<Path, DexBackedDexFile> dexFiles = Maps.newHashMapWithExpectedSize(myDexFiles.length);
       for (int i = 0; i < myDexFiles.length; i++) {
-        dexFiles.put(myDexFiles[i], DexFiles.getDexFile(myDexFiles[i]));
+        dexFiles.put(myDexFiles[i], files[i]);
       }
       return dexFiles;
-    });
+    }, MoreExecutors.directExecutor());
 
     ListenableFuture<DexPackageNode> treeNodeFuture =
       Futures.transform(dexFileFuture, new Function<Map<Path, DexBackedDexFile>, DexPackageNode>() {
@@ -392,27 +395,59 @@ public class DexFileViewer implements ApkFileEditorComponent {
     return myDeobfuscateNames;
   }
 
-  @Nullable
-  ListenableFuture<DexReferences> getDexReferences() {
-    if (myDexReferences == null) {
+  /**
+   * Parses the dex files the first time they are needed, each one on its own pooled thread. The parsed files are shared by the tree,
+   * the stats and the reference index, and don't depend on the Proguard mappings.
+   */
+  @NotNull
+  private ListenableFuture<DexBackedDexFile[]> getParsedDexFiles() {
+    if (myParsedDexFiles == null) {
+      ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
+      List<ListenableFuture<DexBackedDexFile>> futures = new ArrayList<>(myDexFiles.length);
+      for (Path dexFile : myDexFiles) {
+        futures.add(pooledThreadExecutor.submit(() -> DexFiles.getDexFile(dexFile)));
+      }
+      myParsedDexFiles = Futures.transform(Futures.allAsList(futures), files -> {
+        assert files != null;
+        return files.toArray(new DexBackedDexFile[0]);
+      }, MoreExecutors.directExecutor());
+    }
+    return myParsedDexFiles;
+  }
+
+  /**
+   * @return the index of the references between the classes, methods and fields of the dex files, loaded from disk if it was
+   * built when the same dex files were opened before, otherwise built and stored.
+   */
+  @NotNull
+  ListenableFuture<DexReferenceIndex> getReferenceIndex() {
+    if (myReferenceIndex == null) {
       ListeningExecutorService pooledThreadExecutor = MoreExecutors.listeningDecorator(PooledThreadExecutor.INSTANCE);
-      ListenableFuture<DexBackedDexFile[]> dexFileFuture = pooledThreadExecutor.submit(() -> {
-        DexBackedDexFile[] files = new DexBackedDexFile[myDexFiles.length];
-        for (int i = 0; i < files.length; i++) {
-          files[i] = DexFiles.getDexFile(myDexFiles[i]);
+      myReferenceIndex = Futures.transformAsync(getParsedDexFiles(), files -> {
+        assert files != null;
+        Path directory = DexReferenceIndex.getDefaultDirectory();
+        String key;
+        try {
+          key = DexReferenceIndex.computeKey(myDexFiles);
         }
-        return files;
-      });
-      myDexReferences = Futures.transform(dexFileFuture, new Function<DexBackedDexFile[], DexReferences>() {
-        @Override
-        public DexReferences apply(@Nullable DexBackedDexFile[] inputs) {
-          assert inputs != null;
-          return new DexReferences(inputs);
+        catch (IOException e) {
+          Logger.getInstance(DexFileViewer.class).info("Unable to read dex file signatures", e);
+          return DexReferenceIndex.create(files, pooledThreadExecutor);
+        }
+
+        DexReferenceIndex storedIndex = DexReferenceIndex.load(directory, key);
+        if (storedIndex != null) {
+          return Futures.immediateFuture(storedIndex);
         }
+        return Futures.transform(DexReferenceIndex.create(files, pooledThreadExecutor), index -> {
+          assert index != null;
+          index.store(directory, key);
+          return index;
+        }, pooledThreadExecutor);
       }, pooledThreadExecutor);
     }
 
-    return myDexReferences;
+    return myReferenceIndex;
   }
 
   private static class DexTreeNodeRenderer extends ColoredTreeCellRenderer {
@@ -0,0 +1,468 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer.dex;
+
+import com.android.annotations.VisibleForTesting;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jf.dexlib2.dexbacked.DexBackedDexFile;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.Field;
+import org.jf.dexlib2.iface.Method;
+import org.jf.dexlib2.iface.MethodImplementation;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.instruction.ReferenceInstruction;
+import org.jf.dexlib2.iface.reference.FieldReference;
+import org.jf.dexlib2.iface.reference.MethodReference;
+import org.jf.dexlib2.iface.reference.Reference;
+import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.immutable.reference.ImmutableFieldReference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.immutable.reference.ImmutableTypeReference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Index of the references between the classes, methods and fields of a set of dex files: for each of them, the classes, methods and
+ * fields referring to it. It is built once, scanning the dex files in parallel, and stored on disk keyed by the signatures of the dex
+ * files, so finding usages is a lookup, even after the APK is closed and opened again.
+ */
+final class DexReferenceIndex {
+  private static final int MAGIC = 0x44524546; // 'DREF'
+  private static final int VERSION = 1;
+  private static final int MAX_STORED_INDICES = 16;
+  private static final String FILE_EXTENSION = ".idx";
+
+  private static final int DEX_SIGNATURE_OFFSET = 12;
+  private static final int DEX_SIGNATURE_SIZE = 20;
+
+  private static final byte KIND_TYPE = 0;
+  private static final byte KIND_FIELD = 1;
+  private static final byte KIND_METHOD = 2;
+
+  @NotNull private final Reference[] myReferences;
+  @NotNull private final Map<Reference, Integer> myIds;
+
+  /**
+   * The referrers of {@code myReferences[i]} are the references at the indices {@code myReferrers[myOffsets[i]]} to
+   * {@code myReferrers[myOffsets[i + 1] - 1]}.
+   */
+  @NotNull private final int[] myOffsets;
+  @NotNull private final int[] myReferrers;
+
+  private DexReferenceIndex(@NotNull Reference[] references, @NotNull int[] offsets, @NotNull int[] referrers) {
+    myReferences = references;
+    myOffsets = offsets;
+    myReferrers = referrers;
+    myIds = new HashMap<>(references.length * 2);
+    for (int i = 0; i < references.length; i++) {
+      myIds.put(references[i], i);
+    }
+  }
+
+  /**
+   * Scans each of the {@code dexFiles} on its own task of the {@code executor}, and indexes their references.
+   */
+  @NotNull
+  static ListenableFuture<DexReferenceIndex> create(@NotNull DexBackedDexFile[] dexFiles, @NotNull ListeningExecutorService executor) {
+    List<ListenableFuture<SetMultimap<Reference, Reference>>> futures = new ArrayList<>(dexFiles.length);
+    for (DexBackedDexFile dexFile : dexFiles) {
+      futures.add(executor.submit(() -> collectReferences(dexFile)));
+    }
+    return Futures.transform(Futures.allAsList(futures), DexReferenceIndex::merge, executor);
+  }
+
+  @VisibleForTesting
+  @NotNull
+  static DexReferenceIndex create(@NotNull DexBackedDexFile... dexFiles) {
+    List<SetMultimap<Reference, Reference>> references = new ArrayList<>(dexFiles.length);
+    for (DexBackedDexFile dexFile : dexFiles) {
+      references.add(collectReferences(dexFile));
+    }
+    return merge(references);
+  }
+
+  /**
+   * @return the classes, methods and fields referring to {@code reference}.
+   */
+  @NotNull
+  List<Reference> getReferrers(@NotNull Reference reference) {
+    Integer id = myIds.get(normalize(reference));
+    if (id == null) {
+      return Collections.emptyList();
+    }
+    List<Reference> referrers = new ArrayList<>(myOffsets[id + 1] - myOffsets[id]);
+    for (int i = myOffsets[id]; i < myOffsets[id + 1]; i++) {
+      referrers.add(myReferences[myReferrers[i]]);
+    }
+    return referrers;
+  }
+
+  boolean hasReferrers(@NotNull Reference reference) {
+    Integer id = myIds.get(normalize(reference));
+    return id != null && myOffsets[id + 1] > myOffsets[id];
+  }
+
+  /**
+   * @return the multimap from each class, method or field referenced by the code of {@code dexFile} to the ones referring to it.
+   */
+  @NotNull
+  private static SetMultimap<Reference, Reference> collectReferences(@NotNull DexBackedDexFile dexFile) {
+    SetMultimap<Reference, Reference> references = HashMultimap.create();
+    for (ClassDef classDef : dexFile.getClasses()) {
+      TypeReference classReference = new ImmutableTypeReference(classDef.getType());
+      if (classDef.getSuperclass() != null) {
+        addTypeReference(references, classDef.getSuperclass(), classReference);
+      }
+      for (String type : classDef.getInterfaces()) {
+        addTypeReference(references, type, classReference);
+      }
+
+      for (Field field : classDef.getFields()) {
+        addTypeReference(references, field.getType(), ImmutableFieldReference.of(field));
+      }
+
+      for (Method method : classDef.getMethods()) {
+        MethodReference methodReference = ImmutableMethodReference.of(method);
+        addTypeReference(references, method.getReturnType(), methodReference);
+        for (CharSequence type : method.getParameterTypes()) {
+          addTypeReference(references, type.toString(), methodReference);
+        }
+
+        MethodImplementation implementation = method.getImplementation();
+        if (implementation == null) {
+          continue;
+        }
+        for (Instruction instruction : implementation.getInstructions()) {
+          if (instruction instanceof ReferenceInstruction) {
+            addReference(references, ((ReferenceInstruction)instruction).getReference(), methodReference);
+          }
+        }
+      }
+    }
+    return references;
+  }
+
+  private static void addReference(@NotNull SetMultimap<Reference, Reference> references,
+                                   @NotNull Reference reference,
+                                   @NotNull Reference referrer) {
+    if (reference instanceof TypeReference) {
+      addTypeReference(references, ((TypeReference)reference).getType(), referrer);
+    }
+    else if (reference instanceof MethodReference) {
+      MethodReference methodReference = (MethodReference)reference;
+      addTypeReference(references, methodReference.getDefiningClass(), referrer);
+      if (!methodReference.equals(referrer)) {
+        references.put(ImmutableMethodReference.of(methodReference), referrer);
+      }
+    }
+    else if (reference instanceof FieldReference) {
+      FieldReference fieldReference = (FieldReference)reference;
+      addTypeReference(references, fieldReference.getDefiningClass(), referrer);
+      references.put(ImmutableFieldReference.of(fieldReference), referrer);
+    }
+  }
+
+  private static void addTypeReference(@NotNull SetMultimap<Reference, Reference> references,
+                                       @NotNull String type,
+                                       @NotNull Reference referrer) {
+    // Uses of arrays of a class are uses of the class, primitive types are not indexed.
+    String elementType = type.substring(type.lastIndexOf('[') + 1);
+    if (!elementType.startsWith("L")) {
+      return;
+    }
+    if (referrer instanceof TypeReference && ((TypeReference)referrer).getType().equals(elementType)) {
+      return;
+    }
+    references.put(new ImmutableTypeReference(elementType), referrer);
+  }
+
+  @NotNull
+  private static DexReferenceIndex merge(@NotNull Collection<SetMultimap<Reference, Reference>> referencesPerDex) {
+    SetMultimap<Reference, Reference> allReferences;
+    if (referencesPerDex.size() == 1) {
+      allReferences = referencesPerDex.iterator().next();
+    }
+    else {
+      allReferences = HashMultimap.create();
+      for (SetMultimap<Reference, Reference> references : referencesPerDex) {
+        allReferences.putAll(references);
+      }
+    }
+
+    Map<Reference, Integer> ids = new HashMap<>();
+    List<Reference> referenceList = new ArrayList<>();
+    for (Map.Entry<Reference, Reference> entry : allReferences.entries()) {
+      for (Reference reference : new Reference[]{entry.getKey(), entry.getValue()}) {
+        if (!ids.containsKey(reference)) {
+          ids.put(reference, referenceList.size());
+          referenceList.add(reference);
+        }
+      }
+    }
+
+    int[] offsets = new int[referenceList.size() + 1];
+    int[] referrers = new int[allReferences.size()];
+    int position = 0;
+    for (int i = 0; i < referenceList.size(); i++) {
+      offsets[i] = position;
+      for (Reference referrer : allReferences.get(referenceList.get(i))) {
+        referrers[position++] = ids.get(referrer);
+      }
+    }
+    offsets[referenceList.size()] = position;
+    return new DexReferenceIndex(referenceList.toArray(new Reference[0]), offsets, referrers);
+  }
+
+  @NotNull
+  private static Reference normalize(@NotNull Reference reference) {
+    if (reference instanceof TypeReference) {
+      return new ImmutableTypeReference(((TypeReference)reference).getType());
+    }
+    if (reference instanceof MethodReference) {
+      return ImmutableMethodReference.of((MethodReference)reference);
+    }
+    if (reference instanceof FieldReference) {
+      return ImmutableFieldReference.of((FieldReference)reference);
+    }
+    return reference;
+  }
+
+  @NotNull
+  static Path getDefaultDirectory() {
+    return Paths.get(PathManager.getSystemPath(), "apk-analyzer", "dex-references");
+  }
+
+  /**
+   * @return the key under which the index of {@code dexFiles} is stored: a hash of their signatures, which are themselves hashes
+   * of the content of each file.
+   */
+  @NotNull
+  static String computeKey(@NotNull Path[] dexFiles) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    byte[] header = new byte[DEX_SIGNATURE_OFFSET + DEX_SIGNATURE_SIZE];
+    for (Path dexFile : dexFiles) {
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(dexFile))) {
+        in.readFully(header);
+      }
+      digest.update(header, DEX_SIGNATURE_OFFSET, DEX_SIGNATURE_SIZE);
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return the index stored in {@code directory} under {@code key}, or null if there is none or it can't be read.
+   */
+  @Nullable
+  static DexReferenceIndex load(@NotNull Path directory, @NotNull String key) {
+    Path file = directory.resolve(key + FILE_EXTENSION);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      Reference[] references = new Reference[in.readInt()];
+      for (int i = 0; i < references.length; i++) {
+        references[i] = readReference(in);
+      }
+      int[] offsets = readInts(in);
+      int[] referrers = readInts(in);
+      if (offsets.length != references.length + 1 || offsets[references.length] != referrers.length) {
+        throw new IOException("Invalid reference offsets");
+      }
+      for (int referrer : referrers) {
+        if (referrer < 0 || referrer >= references.length) {
+          throw new IOException("Invalid referrer: " + referrer);
+        }
+      }
+      // Keep track of the most recently used indices
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return new DexReferenceIndex(references, offsets, referrers);
+    }
+    catch (IOException | RuntimeException e) {
+      getLog().info("Ignoring unreadable dex reference index " + file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores this index in {@code directory} under {@code key}, removing the least recently used indices if there are too many.
+   */
+  void store(@NotNull Path directory, @NotNull String key) {
+    try {
+      Files.createDirectories(directory);
+      Path tempFile = Files.createTempFile(directory, key, ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeInt(myReferences.length);
+          for (Reference reference : myReferences) {
+            writeReference(out, reference);
+          }
+          writeInts(out, myOffsets);
+          writeInts(out, myReferrers);
+        }
+        Files.move(tempFile, directory.resolve(key + FILE_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+      evictOldIndices(directory);
+    }
+    catch (IOException e) {
+      getLog().info("Unable to store dex reference index", e);
+    }
+  }
+
+  private static void evictOldIndices(@NotNull Path directory) throws IOException {
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(directory)) {
+      files = stream.filter(path -> path.getFileName().toString().endsWith(FILE_EXTENSION)).collect(Collectors.toList());
+    }
+    if (files.size() <= MAX_STORED_INDICES) {
+      return;
+    }
+
+    Map<Path, Long> lastModified = new HashMap<>();
+    for (Path file : files) {
+      lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+    }
+    files.sort(Comparator.comparing(lastModified::get));
+    for (Path file : files.subList(0, files.size() - MAX_STORED_INDICES)) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void writeReference(@NotNull DataOutputStream out, @NotNull Reference reference) throws IOException {
+    if (reference instanceof TypeReference) {
+      out.writeByte(KIND_TYPE);
+      out.writeUTF(((TypeReference)reference).getType());
+    }
+    else if (reference instanceof FieldReference) {
+      FieldReference field = (FieldReference)reference;
+      out.writeByte(KIND_FIELD);
+      out.writeUTF(field.getDefiningClass());
+      out.writeUTF(field.getName());
+      out.writeUTF(field.getType());
+    }
+    else if (reference instanceof MethodReference) {
+      MethodReference method = (MethodReference)reference;
+      out.writeByte(KIND_METHOD);
+      out.writeUTF(method.getDefiningClass());
+      out.writeUTF(method.getName());
+      out.writeUTF(method.getReturnType());
+      out.writeInt(method.getParameterTypes().size());
+      for (CharSequence type : method.getParameterTypes()) {
+        out.writeUTF(type.toString());
+      }
+    }
+    else {
+      throw new IllegalArgumentException("Unexpected reference: " + reference);
+    }
+  }
+
+  @NotNull
+  private static Reference readReference(@NotNull DataInputStream in) throws IOException {
+    byte kind = in.readByte();
+    switch (kind) {
+      case KIND_TYPE:
+        return new ImmutableTypeReference(in.readUTF());
+      case KIND_FIELD:
+        return new ImmutableFieldReference(in.readUTF(), in.readUTF(), in.readUTF());
+      case KIND_METHOD:
+        String definingClass = in.readUTF();
+        String name = in.readUTF();
+        String returnType = in.readUTF();
+        int parameterCount = in.readInt();
+        List<String> parameterTypes = new ArrayList<>(parameterCount);
+        for (int i = 0; i < parameterCount; i++) {
+          parameterTypes.add(in.readUTF());
+        }
+        return new ImmutableMethodReference(definingClass, name, parameterTypes, returnType);
+      default:
+        throw new IOException("Unknown reference kind: " + kind);
+    }
+  }
+
+  private static void writeInts(@NotNull DataOutputStream out, @NotNull int[] values) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  @NotNull
+  private static int[] readInts(@NotNull DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid length: " + length);
+    }
+    int[] values = new int[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  @NotNull
+  private static Logger getLog() {
+    return Logger.getInstance(DexReferenceIndex.class);
+  }
+}
@@ -42,6 +42,7 @@ import org.jf.dexlib2.iface.reference.FieldReference;
 import org.jf.dexlib2.iface.reference.MethodReference;
 import org.jf.dexlib2.iface.reference.Reference;
 import org.jf.dexlib2.iface.reference.TypeReference;
+import org.jf.dexlib2.util.ReferenceUtil;
 
 import javax.swing.*;
 import javax.swing.event.TreeExpansionEvent;
@@ -52,6 +53,8 @@ import javax.swing.tree.TreePath;
 import java.awt.*;
 
 public class ShowReferencesAction extends AnAction {
+  private static final String NOT_LOADED = "...";
+
   @NotNull private final Tree myTree;
   @NotNull private final DexFileViewer myDexFileViewer;
 
@@ -81,12 +84,12 @@ public class ShowReferencesAction extends AnAction {
     assert node != null; // action should've been disabled in this case
     Project project = getEventProject(e);
 
-    ListenableFuture<DexReferences> references = myDexFileViewer.getDexReferences();
-    assert references != null;
+    ListenableFuture<DexReferenceIndex> references = myDexFileViewer.getReferenceIndex();
 
-    Futures.addCallback(references, new FutureCallback<DexReferences>() {
+    Futures.addCallback(references, new FutureCallback<DexReferenceIndex>() {
       @Override
-      public void onSuccess(@Nullable DexReferences result) {
+      public void onSuccess(@Nullable DexReferenceIndex result) {
+        assert result != null;
         showReferenceTree(e, node, project, result);
       }
 
@@ -97,14 +100,14 @@ public class ShowReferencesAction extends AnAction {
     }, EdtExecutor.INSTANCE);
   }
 
-  private void showReferenceTree(AnActionEvent e, DexElementNode node, Project project, DexReferences references) {
+  private void showReferenceTree(AnActionEvent e, DexElementNode node, Project project, DexReferenceIndex references) {
     ProguardMappings proguardMappings = myDexFileViewer.getProguardMappings();
     final ProguardMap proguardMap = proguardMappings != null ? proguardMappings.map : null;
     final ProguardSeedsMap seedsMap = proguardMappings != null ? proguardMappings.seeds : null;
     final boolean deobfuscate = myDexFileViewer.isDeobfuscateNames();
 
     assert node.getReference() != null;
-    Tree tree = new Tree(new DefaultTreeModel(references.getReferenceTreeFor(node.getReference(), true)));
+    Tree tree = new Tree(new DefaultTreeModel(createReferenceTree(references, node.getReference())));
     tree.setShowsRootHandles(true);
     tree.addTreeWillExpandListener(new TreeWillExpandListener() {
       @Override
@@ -112,11 +115,8 @@ public class ShowReferencesAction extends AnAction {
         TreePath path = event.getPath();
         if (path.getLastPathComponent() instanceof DexElementNode) {
           DexElementNode node = (DexElementNode) path.getLastPathComponent();
-          if (!DexReferences.isAlreadyLoaded(node)){
-            node.removeAllChildren();
-            assert node.getReference() != null;
-            references.addReferencesForNode(node, true);
-            node.sort(DexReferences.NODE_COMPARATOR);
+          if (!areReferencesLoaded(node)){
+            addReferences(references, node);
           }
         }
       }
@@ -181,6 +181,50 @@ public class ShowReferencesAction extends AnAction {
     popup.showInBestPositionFor(e.getDataContext());
   }
 
+  /**
+   * @return a tree with the references to {@code reference} as children of the root. The references to these are only added when they
+   * are expanded, see {@link #addReferences}.
+   */
+  @NotNull
+  private static DexElementNode createReferenceTree(@NotNull DexReferenceIndex references, @NotNull Reference reference) {
+    DexElementNode root = createReferenceNode(reference);
+    addReferences(references, root);
+    return root;
+  }
+
+  private static void addReferences(@NotNull DexReferenceIndex references, @NotNull DexElementNode node) {
+    node.removeAllChildren();
+    assert node.getReference() != null;
+    for (Reference referrer : references.getReferrers(node.getReference())) {
+      DexElementNode child = createReferenceNode(referrer);
+      if (references.hasReferrers(referrer)) {
+        // Placeholder making the node expandable, replaced by the actual references when expanded.
+        child.add(new DexPackageNode(NOT_LOADED, null));
+      }
+      node.add(child);
+    }
+    node.sort(DexReferences.NODE_COMPARATOR);
+  }
+
+  private static boolean areReferencesLoaded(@NotNull DexElementNode node) {
+    return node.getChildCount() != 1 || ((DexElementNode)node.getChildAt(0)).getReference() != null;
+  }
+
+  @NotNull
+  private static DexElementNode createReferenceNode(@NotNull Reference reference) {
+    String name = ReferenceUtil.getReferenceString(reference);
+    if (reference instanceof TypeReference) {
+      return new DexClassNode(name, (TypeReference)reference);
+    }
+    else if (reference instanceof MethodReference) {
+      return new DexMethodNode(name, (MethodReference)reference);
+    }
+    else if (reference instanceof FieldReference) {
+      return new DexFieldNode(name, (FieldReference)reference);
+    }
+    throw new IllegalArgumentException("Unexpected reference: " + reference);
+  }
+
   @Nullable
   private DexElementNode getSelectedNode() {
     TreePath path = myTree.getSelectionPath();
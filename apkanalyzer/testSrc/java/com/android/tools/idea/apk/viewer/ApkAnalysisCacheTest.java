@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.apk.viewer;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ApkAnalysisCacheTest {
+  @Rule public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void hashDependsOnContentOnly() throws Exception {
+    Path first = myTemporaryFolder.newFile("first.apk").toPath();
+    Path second = myTemporaryFolder.newFile("second.apk").toPath();
+    Files.write(first, "content".getBytes(StandardCharsets.UTF_8));
+    Files.write(second, "content".getBytes(StandardCharsets.UTF_8));
+    assertEquals(ApkAnalysisCache.computeHash(first), ApkAnalysisCache.computeHash(second));
+
+    Files.write(second, "other content".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(ApkAnalysisCache.computeHash(first), ApkAnalysisCache.computeHash(second));
+  }
+
+  @Test
+  public void storedAnalysisIsLoaded() throws Exception {
+    ApkAnalysisCache cache = new ApkAnalysisCache(myTemporaryFolder.newFolder().toPath(), 4);
+    ApkAnalysisCache.Analysis analysis = new ApkAnalysisCache.Analysis("abc");
+    analysis.setRawSize(100);
+    analysis.setDownloadSize(60);
+    analysis.setNodeSizes(new ApkAnalysisCache.NodeSizes(new String[]{"/", "/classes.dex"}, new long[]{100, 80}, new long[]{60, 50}));
+    analysis.setManifestXmlTree("AndroidManifest.xml", ImmutableList.of("N: android=http://schemas.android.com/apk/res/android"));
+    cache.store(analysis);
+
+    ApkAnalysisCache.Analysis loaded = cache.load("abc");
+    assertEquals(100, loaded.getRawSize());
+    assertEquals(60, loaded.getDownloadSize());
+    ApkAnalysisCache.NodeSizes nodeSizes = loaded.getNodeSizes();
+    assertNotNull(nodeSizes);
+    assertEquals(2, nodeSizes.size());
+    assertEquals("/classes.dex", nodeSizes.getPath(1));
+    assertEquals(80, nodeSizes.getRawSize(1));
+    assertEquals(50, nodeSizes.getDownloadSize(1));
+    assertEquals(ImmutableList.of("N: android=http://schemas.android.com/apk/res/android"),
+                 loaded.getManifestXmlTree("AndroidManifest.xml"));
+  }
+
+  @Test
+  public void unknownOrCorruptEntryIsEmpty() throws Exception {
+    Path directory = myTemporaryFolder.newFolder().toPath();
+    ApkAnalysisCache cache = new ApkAnalysisCache(directory, 4);
+    assertEmpty(cache.load("abc"));
+
+    Files.write(directory.resolve("abc.bin"), new byte[]{1, 2, 3});
+    assertEmpty(cache.load("abc"));
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+    Path directory = myTemporaryFolder.newFolder().toPath();
+    ApkAnalysisCache cache = new ApkAnalysisCache(directory, 2);
+    for (String hash : new String[]{"a", "b", "c"}) {
+      ApkAnalysisCache.Analysis analysis = new ApkAnalysisCache.Analysis(hash);
+      analysis.setRawSize(1);
+      cache.store(analysis);
+      // Make sure the entries have distinct modification times.
+      Files.setLastModifiedTime(directory.resolve(hash + ".bin"), FileTime.fromMillis(1000 * hash.charAt(0)));
+    }
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertArrayEquals(new String[]{"b.bin", "c.bin"}, files.map(path -> path.getFileName().toString()).sorted().toArray());
+    }
+    assertEquals(1, cache.load("c").getRawSize());
+    assertEmpty(cache.load("a"));
+  }
+
+  private static void assertEmpty(ApkAnalysisCache.Analysis analysis) {
+    assertEquals(-1, analysis.getRawSize());
+    assertEquals(-1, analysis.getDownloadSize());
+    assertNull(analysis.getNodeSizes());
+  }
+}
@@ -37,61 +37,127 @@ import java.util.concurrent.*
  */
 class LlvmSymbolizer(private val symbolizerExe: String,
                      private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+                     private val timeoutMsc: Long = 5000,
+                     processCount: Int = DEFAULT_PROCESS_COUNT,
+                     cacheDir: File? = null) : NativeSymbolizer {
 
-  private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  private val processes = Array(Math.max(1, processCount)) { SymbolizerProcess() }
+  private val cache = if (cacheDir != null) SymbolCache(cacheDir) else null
 
   override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
-    val symFiles = symLocator.findSymbolFiles(abiArch, module)
+    return symbolize(abiArch, listOf(SymbolRequest(module, offset)))[0]
+  }
 
-    for (symFile in symFiles) {
-      val request = formatRequest(symFile, offset)
+  /**
+   * Looks up the requests in the cache first. The others are sent to the symbolizer processes, each symbol file always going to the same
+   * process so llvm-symbolizer only loads it once, in batches of [PIPELINE_DEPTH] requests written before any response is read.
+   * When a module has several candidate symbol files, the requests not resolved by the first file are retried with the second and so on.
+   */
+  override fun symbolize(abiArch: String, requests: List<SymbolRequest>): List<Symbol?> {
+    val results = arrayOfNulls<Symbol>(requests.size)
+    val symFilesByModule = hashMapOf<String, List<File>>()
+    var pending = requests.indices.toList()
+    var attempt = 0
+    while (pending.isNotEmpty()) {
+      val requestsBySymFile = linkedMapOf<File, MutableList<Int>>()
+      for (index in pending) {
+        val module = requests[index].module
+        val symFiles = symFilesByModule.getOrPut(module) { symLocator.findSymbolFiles(abiArch, module) }
+        if (attempt < symFiles.size) {
+          requestsBySymFile.getOrPut(symFiles[attempt]) { mutableListOf() }.add(index)
+        }
+      }
 
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
-        holder.stdin.flush()
-
-        val response: MutableList<String> = mutableListOf()
-        var responseLine: String?
-        while (true) {
-          responseLine = holder.stdout.readLine()
-          if (responseLine == null || responseLine.isEmpty()) {
-            break
+      val unresolved = mutableListOf<Int>()
+      val uncached = mutableListOf<SymFileRequest>()
+      for ((symFile, indices) in requestsBySymFile) {
+        for (index in indices) {
+          val cached = cache?.get(symFile, requests[index].offset)
+          if (cached == null) {
+            uncached.add(SymFileRequest(symFile, requests[index].offset, index))
+          }
+          else if (cached.name != null) {
+            results[index] = Symbol(cached.name, requests[index].module, cached.sourceFile, cached.lineNumber)
+          }
+          else {
+            unresolved.add(index)
           }
-          response.add(responseLine)
         }
-        response
-      })
-      val response : List<String>
-      try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
-      } catch (e: TimeoutException) {
-        getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
-        continue
-      } catch (e: ExecutionException) {
-        getLogger().warn("llvm-symbolizer communication failed", e)
-        stop()
-        continue
       }
 
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
+      for ((request, response) in query(uncached)) {
+        val symbol = if (response != null) parseResponse(response, requests[request.index].module) else null
+        if (symbol != null) {
+          results[request.index] = symbol
+        }
+        else {
+          unresolved.add(request.index)
+        }
+      }
+      pending = unresolved
+      attempt++
+    }
+    return results.asList()
+  }
+
+  /**
+   * Sends the requests to the symbolizer processes and waits for their responses.
+   * @return the response for each request, null if the process failed or timed out. Successful responses are added to the cache.
+   */
+  private fun query(requests: List<SymFileRequest>): List<Pair<SymFileRequest, List<String>?>> {
+    if (requests.isEmpty()) {
+      return listOf()
+    }
+    val requestsByProcess = requests.groupBy { processes[Math.floorMod(it.symFile.path.hashCode(), processes.size)] }
+    // Start all the processes before waiting for any of them, so they work in parallel.
+    val chunksByProcess = requestsByProcess.map { (process, processRequests) ->
+      Pair(process, processRequests.chunked(PIPELINE_DEPTH).let { chunks -> chunks.zip(process.submit(chunks)) })
     }
 
-    return null
+    val results = mutableListOf<Pair<SymFileRequest, List<String>?>>()
+    for ((process, chunks) in chunksByProcess) {
+      var failed = false
+      for ((chunk, future) in chunks) {
+        var responses: List<List<String>>? = null
+        if (!failed) {
+          try {
+            responses = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+          }
+          catch (e: TimeoutException) {
+            getLogger().warn("llvm-symbolizer timed out", e)
+          }
+          catch (e: ExecutionException) {
+            getLogger().warn("llvm-symbolizer communication failed", e)
+          }
+          catch (e: CancellationException) {
+            // Another batch stopped the process.
+          }
+          if (responses == null) {
+            failed = true
+            process.stop()
+          }
+        }
+        if (responses == null) {
+          future.cancel(true)
+          chunk.mapTo(results) { Pair(it, null) }
+        }
+        else {
+          chunk.zip(responses).toCollection(results)
+          cacheResponses(chunk, responses)
+        }
+      }
+    }
+    return results
   }
 
-  private fun getProcHolder() : ProcessHolder {
-    var holder = procHolder
-    if (holder == null || !holder.process.isAlive) {
-      start()
-      holder = procHolder!! // procHolder must't be null after start()
+  private fun cacheResponses(requests: List<SymFileRequest>, responses: List<List<String>>) {
+    val cache = cache ?: return
+    for ((symFile, symFileRequests) in requests.zip(responses).groupBy({ it.first.symFile })) {
+      cache.put(symFile, symFileRequests.map { (request, response) ->
+        val symbol = parseResponse(response, "")
+        Pair(request.offset, if (symbol == null) CachedSymbol(null) else CachedSymbol(symbol.name, symbol.sourceFile, symbol.lineNumber))
+      })
     }
-    return holder
   }
 
   private fun formatRequest(symFile: File, offset: Long): String {
@@ -126,24 +192,94 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return Symbol(name, module, sourceFile, lineNumber)
   }
 
-  private fun start() {
-    if (procHolder != null)
-      stop()
+  /**
+   * Stops the processes and their threads. They are started again if more requests come.
+   */
+  override fun stop() {
+    processes.forEach { it.stop() }
+  }
+
+  private class SymFileRequest(val symFile: File, val offset: Long, val index: Int)
 
-    val builder = ProcessBuilder(symbolizerExe)
-    val process = builder.start()
-    if (!process.isAlive) {
-      throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+  /**
+   * One llvm-symbolizer process. Requests are written and responses read by two different threads, so that neither side of the pipe can
+   * block the other when a batch doesn't fit in the pipe buffers. The threads live as long as the process.
+   */
+  private inner class SymbolizerProcess {
+    private var procHolder: ProcessHolder? = null
+    private var writer: ExecutorService? = null
+    private var reader: ExecutorService? = null
+
+    /**
+     * Starts the process if needed, in the calling thread so a missing executable is reported to the caller, and queues the chunks.
+     * @return a future for the responses to each chunk, completing in order
+     */
+    @Synchronized
+    fun submit(chunks: List<List<SymFileRequest>>): List<Future<List<List<String>>>> {
+      val holder = getProcHolder()
+      val writerThread = writer ?: Executors.newSingleThreadExecutor().also { writer = it }
+      val readerThread = reader ?: Executors.newSingleThreadExecutor().also { reader = it }
+      return chunks.map { chunk ->
+        val request = chunk.joinToString("") { formatRequest(it.symFile, it.offset) }
+        val written = writerThread.submit {
+          holder.stdin.write(request)
+          holder.stdin.flush()
+        }
+        readerThread.submit(Callable<List<List<String>>> {
+          val responses = chunk.map { readResponse(holder) }
+          // Surface a failure to write the requests, rather than the closed stream it leads to.
+          written.get()
+          responses
+        })
+      }
     }
 
-    val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
-    val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
-    procHolder = ProcessHolder(process, stdout, stdin)
-  }
+    private fun readResponse(holder: ProcessHolder): List<String> {
+      val response: MutableList<String> = mutableListOf()
+      while (true) {
+        val responseLine = holder.stdout.readLine() ?: throw IOException("llvm-symbolizer process exited")
+        if (responseLine.isEmpty()) {
+          break
+        }
+        response.add(responseLine)
+      }
+      return response
+    }
 
-  override fun stop() {
-    procHolder?.dispose()
-    procHolder = null
+    private fun getProcHolder(): ProcessHolder {
+      var holder = procHolder
+      if (holder == null || !holder.process.isAlive) {
+        start()
+        holder = procHolder!! // procHolder must't be null after start()
+      }
+      return holder
+    }
+
+    private fun start() {
+      if (procHolder != null)
+        stop()
+
+      val builder = ProcessBuilder(symbolizerExe)
+      val process = builder.start()
+      if (!process.isAlive) {
+        throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+      }
+
+      val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
+      val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
+      procHolder = ProcessHolder(process, stdout, stdin)
+    }
+
+    @Synchronized
+    fun stop() {
+      procHolder?.dispose()
+      procHolder = null
+      // The queued requests still run, failing right away now that the process is gone, so nobody waits for them until the timeout.
+      writer?.shutdown()
+      writer = null
+      reader?.shutdown()
+      reader = null
+    }
   }
 
   private class ProcessHolder(val process: Process,
@@ -153,4 +289,13 @@ class LlvmSymbolizer(private val symbolizerExe: String,
       process.destroy()
     }
   }
-}
\ No newline at end of file
+
+  companion object {
+    /**
+     * Number of requests written to a process before reading the responses.
+     */
+    private const val PIPELINE_DEPTH = 64
+
+    private val DEFAULT_PROCESS_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))
+  }
+}
@@ -20,11 +20,17 @@ import com.intellij.openapi.application.PathManager
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.util.SystemInfo
+import java.io.File
 import java.io.IOException
 import java.nio.file.Paths
 
 data class Symbol(val name: String, val module: String, val sourceFile: String = "", val lineNumber: Int = 0)
 
+/**
+ * An offset in a native module to be symbolized by [NativeSymbolizer.symbolize].
+ */
+data class SymbolRequest(val module: String, val offset: Long)
+
 /**
  * Components that can fetch information about native symbols by a module and an offset.
  */
@@ -39,6 +45,18 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Same as symbolizing each request in turn, but lets implementations answer many requests in a single round trip.
+   * @param abiArch - CPU architecture of the modules
+   * @param requests - modules and offsets that need to be symbolized
+   * @return symbols info in the order of [requests], with null for the ones that can't be found
+   */
+  @Throws(IOException::class)
+  fun symbolize(abiArch: String, requests: List<SymbolRequest>): List<Symbol?> {
+    return requests.map { symbolize(abiArch, it.module, it.offset) }
+  }
+
   fun stop()
 }
 
@@ -51,7 +69,8 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  val cacheDir = File(PathManager.getSystemPath(), "native-symbols")
+  return LlvmSymbolizer(symbolizerPath, symLocator, cacheDir = cacheDir)
 }
 
 /**
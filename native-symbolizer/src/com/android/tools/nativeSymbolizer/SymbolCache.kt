@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * What llvm-symbolizer returned for an offset of a symbol file. A null [name] means the offset doesn't belong to any known symbol.
+ */
+internal data class CachedSymbol(val name: String?, val sourceFile: String = "", val lineNumber: Int = 0)
+
+/**
+ * Persistent cache of symbolization results, so offsets symbolized in a previous session don't go through llvm-symbolizer again.
+ *
+ * Results are keyed by symbol file. A file is identified by its GNU build id and size when it has a build id, which stay the same when
+ * the same binary is rebuilt or copied elsewhere, and by its path, size and modification time otherwise. The size tells a stripped
+ * library apart from its unstripped copy, which has the same build id: offsets without a symbol in the first must not hide the symbols
+ * of the second. Each key has its own text file in [directory], with one line per offset, which is only appended to:
+ *  <hex offset>\t<function name>\t<source file>\t<line number>
+ *  <hex offset>                       (for offsets without a symbol)
+ *
+ * Only the symbols of the most recently used files are kept in memory, up to [maxSymbols]. The others are read again from [directory] when
+ * needed.
+ *
+ * The cache is shared by all the pollers of the data store, so all the accesses are synchronized.
+ */
+internal class SymbolCache(private val directory: File, private val maxSymbols: Int = MAX_SYMBOLS_IN_MEMORY) {
+  // Least recently used first.
+  private val symbolsByKey = LinkedHashMap<String, MutableMap<Long, CachedSymbol>>(16, 0.75f, true)
+  private val keysByFile = hashMapOf<File, FileKey>()
+  private var symbolCount = 0
+
+  /**
+   * Number of symbols kept in memory.
+   */
+  val size: Int
+    @Synchronized get() = symbolCount
+
+  @Synchronized
+  fun get(symFile: File, offset: Long): CachedSymbol? {
+    val symbols = getSymbols(getKey(symFile))
+    trim()
+    return symbols[offset]
+  }
+
+  @Synchronized
+  fun put(symFile: File, entries: List<Pair<Long, CachedSymbol>>) {
+    if (entries.isEmpty()) {
+      return
+    }
+    val key = getKey(symFile)
+    val symbols = getSymbols(key)
+    val lines = StringBuilder()
+    for ((offset, symbol) in entries) {
+      if (symbols.containsKey(offset) || !isStorable(symbol)) {
+        continue
+      }
+      symbols[offset] = symbol
+      symbolCount++
+      lines.append(java.lang.Long.toHexString(offset))
+      if (symbol.name != null) {
+        lines.append('\t').append(symbol.name).append('\t').append(symbol.sourceFile).append('\t').append(symbol.lineNumber)
+      }
+      lines.append('\n')
+    }
+    trim()
+    if (lines.isEmpty()) {
+      return
+    }
+    try {
+      directory.mkdirs()
+      getCacheFile(key).appendText(lines.toString(), Charsets.UTF_8)
+    }
+    catch (e: IOException) {
+      // The entries are still cached in memory for this session.
+      getLogger().warn("Can't write native symbols cache in $directory", e)
+    }
+  }
+
+  private fun getKey(symFile: File): String {
+    val length = symFile.length()
+    val lastModified = symFile.lastModified()
+    val cached = keysByFile[symFile]
+    if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+      return cached.key
+    }
+    val buildId = readGnuBuildId(symFile)
+    val key = if (buildId != null) {
+      "${symFile.nameWithoutExtension}-$buildId-$length"
+    }
+    else {
+      "${symFile.nameWithoutExtension}-${Integer.toHexString(symFile.absolutePath.hashCode())}-$length-$lastModified"
+    }.replace(Regex("[^A-Za-z0-9._-]"), "_")
+    keysByFile[symFile] = FileKey(key, length, lastModified)
+    return key
+  }
+
+  private fun getSymbols(key: String): MutableMap<Long, CachedSymbol> {
+    return symbolsByKey.getOrPut(key) { load(getCacheFile(key)).also { symbolCount += it.size } }
+  }
+
+  /**
+   * Drops the symbols of the least recently used files from memory, always keeping the last one used.
+   */
+  private fun trim() {
+    val iterator = symbolsByKey.values.iterator()
+    while (symbolCount > maxSymbols && symbolsByKey.size > 1) {
+      symbolCount -= iterator.next().size
+      iterator.remove()
+    }
+  }
+
+  private fun getCacheFile(key: String) = File(directory, "$key.txt")
+
+  private fun load(cacheFile: File): MutableMap<Long, CachedSymbol> {
+    val symbols = hashMapOf<Long, CachedSymbol>()
+    if (!cacheFile.isFile) {
+      return symbols
+    }
+    try {
+      cacheFile.forEachLine(Charsets.UTF_8) { line ->
+        val parts = line.split('\t')
+        val offset = parts[0].toLongOrNull(16)
+        // Skip lines truncated by a crash while appending.
+        if (offset != null && (parts.size == 1 || parts.size == 4)) {
+          symbols[offset] = if (parts.size == 1) CachedSymbol(null) else CachedSymbol(parts[1], parts[2], parts[3].toIntOrNull() ?: 0)
+        }
+      }
+    }
+    catch (e: IOException) {
+      getLogger().warn("Can't read native symbols cache $cacheFile", e)
+    }
+    return symbols
+  }
+
+  private fun isStorable(symbol: CachedSymbol): Boolean {
+    return listOf(symbol.name.orEmpty(), symbol.sourceFile).none { it.contains('\t') || it.contains('\n') || it.contains('\r') }
+  }
+
+  private class FileKey(val key: String, val length: Long, val lastModified: Long)
+}
+
+private const val MAX_SYMBOLS_IN_MEMORY = 200_000
+
+private const val ELF_MAGIC = 0x7f454c46
+private const val SHT_NOTE = 7
+private const val NT_GNU_BUILD_ID = 3
+private const val MAX_NOTES_SIZE = 64 * 1024
+private val GNU_NOTE_NAME = byteArrayOf(0x47, 0x4E, 0x55, 0) // "GNU"
+
+/**
+ * Reads the build id that linkers store in the .note.gnu.build-id section of ELF files.
+ * @return the build id as a hex string, or null if [file] isn't an ELF file or doesn't have a build id
+ */
+internal fun readGnuBuildId(file: File): String? {
+  try {
+    RandomAccessFile(file, "r").use { raf ->
+      val channel = raf.channel
+      val header = read(channel, 0, 64) ?: return null
+      if (header.getInt(0) != ELF_MAGIC) {
+        return null
+      }
+      val is64 = header.get(4).toInt() == 2
+      header.order(if (header.get(5).toInt() == 2) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN)
+      val sectionsOffset = if (is64) header.getLong(0x28) else header.getInt(0x20).toUnsignedLong()
+      val sectionSize = header.getShort(if (is64) 0x3A else 0x2E).toInt() and 0xFFFF
+      val sectionCount = header.getShort(if (is64) 0x3C else 0x30).toInt() and 0xFFFF
+      if (sectionsOffset <= 0 || sectionSize < (if (is64) 0x28 else 0x18) || sectionCount == 0) {
+        return null
+      }
+      val sections = read(channel, sectionsOffset, sectionSize * sectionCount)?.order(header.order()) ?: return null
+      for (i in 0 until sectionCount) {
+        val section = i * sectionSize
+        if (sections.getInt(section + 4) != SHT_NOTE) {
+          continue
+        }
+        val notesOffset = if (is64) sections.getLong(section + 0x18) else sections.getInt(section + 0x10).toUnsignedLong()
+        val notesSize = if (is64) sections.getLong(section + 0x20) else sections.getInt(section + 0x14).toUnsignedLong()
+        val notes = read(channel, notesOffset, Math.min(notesSize, MAX_NOTES_SIZE.toLong()).toInt())?.order(header.order()) ?: continue
+        val buildId = findBuildIdNote(notes)
+        if (buildId != null) {
+          return buildId
+        }
+      }
+    }
+  }
+  catch (e: IOException) {
+    getLogger().debug("Can't read build id of $file", e)
+  }
+  return null
+}
+
+private fun findBuildIdNote(notes: ByteBuffer): String? {
+  var position = 0
+  while (position + 12 <= notes.limit()) {
+    val nameSize = notes.getInt(position)
+    val descSize = notes.getInt(position + 4)
+    val type = notes.getInt(position + 8)
+    val nameStart = position + 12
+    val descStart = nameStart + align4(nameSize)
+    if (nameSize < 0 || descSize < 0 || descStart + descSize > notes.limit()) {
+      return null
+    }
+    if (type == NT_GNU_BUILD_ID && nameSize == GNU_NOTE_NAME.size && GNU_NOTE_NAME.indices.all { notes.get(nameStart + it) == GNU_NOTE_NAME[it] }) {
+      val buildId = StringBuilder(descSize * 2)
+      for (i in 0 until descSize) {
+        buildId.append(String.format("%02x", notes.get(descStart + i)))
+      }
+      return buildId.toString()
+    }
+    position = descStart + align4(descSize)
+  }
+  return null
+}
+
+private fun align4(size: Int) = (size + 3) and 3.inv()
+
+private fun Int.toUnsignedLong() = toLong() and 0xFFFFFFFFL
+
+/**
+ * Reads [size] bytes at [offset], or returns null if the file is too short.
+ */
+private fun read(channel: FileChannel, offset: Long, size: Int): ByteBuffer? {
+  if (offset < 0 || size < 0 || offset + size > channel.size()) {
+    return null
+  }
+  val buffer = ByteBuffer.allocate(size)
+  while (buffer.hasRemaining()) {
+    if (channel.read(buffer, offset + buffer.position()) < 0) {
+      return null
+    }
+  }
+  buffer.flip()
+  return buffer
+}
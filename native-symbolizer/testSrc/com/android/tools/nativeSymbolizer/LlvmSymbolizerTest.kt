@@ -168,6 +168,86 @@ class LlvmSymbolizerTest {
     Assert.assertNull(sym)
   }
 
+  @Test
+  fun testSymbolizeBatch() {
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), processCount = 2)
+    for (arch in architectures) {
+      val expectedSymbols = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().map { it.split('|') }
+      val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+      // +1 to get an address within the function, rather than function start address
+      val requests = expectedSymbols.map { SymbolRequest(module, it[0].toLong(16) + 1) } +
+                     SymbolRequest("/p/libnotexists.so", 12345) +
+                     SymbolRequest(LIB_FILE_NAME, 0xffffffffff)
+      val symbols = symbolizer.symbolize(arch, requests)
+      Assert.assertEquals(requests.size, symbols.size)
+      for ((i, expected) in expectedSymbols.withIndex()) {
+        val symbol = symbols[i]!!
+        Assert.assertEquals(expected[1], symbol.name)
+        Assert.assertEquals(expected[2], symbol.sourceFile)
+        Assert.assertEquals(module, symbol.module)
+        Assert.assertTrue(symbol.lineNumber >= expected[3].toInt())
+      }
+      Assert.assertNull(symbols[expectedSymbols.size])
+      Assert.assertNull(symbols[expectedSymbols.size + 1])
+    }
+  }
+
+  @Test
+  fun testSymbolCache() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache", true)
+    val arch = "x86"
+    val expectedSymbols = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().map { it.split('|') }
+    val requests = expectedSymbols.map { SymbolRequest(LIB_FILE_NAME, it[0].toLong(16) + 1) } + SymbolRequest(LIB_FILE_NAME, 0xffffffffff)
+    val symbols = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), cacheDir = cacheDir).symbolize(arch, requests)
+
+    // Everything is answered from the cache, including the unknown symbol, so the symbolizer executable is never needed.
+    val notExistingPath = getLlvmSymbolizerPath().replace("llvm-symbolizer", "not-llvm-symbolizer")
+    val cachedSymbolizer = LlvmSymbolizer(notExistingPath, SymbolFilesLocator(getSymDirMap()), cacheDir = cacheDir)
+    Assert.assertEquals(symbols, cachedSymbolizer.symbolize(arch, requests))
+    Assert.assertEquals(expectedSymbols[0][1], symbols[0]!!.name)
+  }
+
+  @Test
+  fun testSymbolCacheKeepsRecentFilesInMemory() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache", true)
+    val files = listOf("arm", "x86").map { Paths.get(testDataDir, it, LIB_FILE_NAME).toFile() }
+    val cache = SymbolCache(cacheDir, 3)
+    for (file in files) {
+      cache.put(file, (1L..3L).map { Pair(it, CachedSymbol("${file.parentFile.name}$it")) })
+    }
+    // Only the symbols of the last file are still in memory, the others are read again from the disk.
+    Assert.assertEquals(3, cache.size)
+    Assert.assertEquals("arm2", cache.get(files[0], 2)!!.name)
+    Assert.assertEquals(3, cache.size)
+    Assert.assertEquals("x862", cache.get(files[1], 2)!!.name)
+  }
+
+  @Test
+  fun testSymbolCacheTellsStrippedCopiesApart() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache", true)
+    val unstripped = Paths.get(testDataDir, "x86", LIB_FILE_NAME).toFile()
+    // Same build id, different size, like a stripped copy of the library.
+    val stripped = File(FileUtil.createTempDirectory("llvm-symbolizer", "stripped", true), LIB_FILE_NAME)
+    FileUtil.copy(unstripped, stripped)
+    stripped.appendBytes(ByteArray(16))
+    Assert.assertEquals(readGnuBuildId(unstripped), readGnuBuildId(stripped))
+
+    val cache = SymbolCache(cacheDir)
+    cache.put(stripped, listOf(Pair(1L, CachedSymbol(null))))
+    cache.put(unstripped, listOf(Pair(2L, CachedSymbol("symbol"))))
+    Assert.assertEquals(CachedSymbol(null), cache.get(stripped, 1))
+    Assert.assertNull(cache.get(unstripped, 1))
+    Assert.assertEquals("symbol", cache.get(unstripped, 2)!!.name)
+    Assert.assertNull(SymbolCache(cacheDir).get(unstripped, 1))
+  }
+
+  @Test
+  fun testReadGnuBuildId() {
+    Assert.assertEquals("77d9de6b9746662e7da8225fedd7533b57ded517", readGnuBuildId(Paths.get(testDataDir, "x86", LIB_FILE_NAME).toFile()))
+    Assert.assertEquals("9b3ea9b018209bd554c02186a62cf2c7cca3e915", readGnuBuildId(Paths.get(testDataDir, "arm64", LIB_FILE_NAME).toFile()))
+    Assert.assertNull(readGnuBuildId(Paths.get(testDataDir, "x86", EXPECTED_SYMBOLS_FILE_NAME).toFile()))
+  }
+
   fun getSymDirMap(): Map<String, Set<File>> {
     val result: MutableMap<String, Set<File>> = hashMapOf()
     for (arch in architectures) {
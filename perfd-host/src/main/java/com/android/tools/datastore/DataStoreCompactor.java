@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies the {@link RetentionPolicy}s of the datastore tables in the background: downsamples old rows, drops the rows past the horizon
+ * of their table and returns the freed pages to the file system a few at a time, so the databases don't grow without bound during long
+ * profiling sessions.
+ * <p>
+ * Each pass only downsamples the rows which aged into a tier since the previous pass, and runs while the database's
+ * {@link DataStoreWriter} isn't flushing, so it doesn't commit half a batch.
+ */
+public class DataStoreCompactor {
+  public static final long DEFAULT_PERIOD_MS = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * Number of free pages returned to the file system per pass, with the databases in incremental auto-vacuum mode.
+   */
+  private static final int VACUUM_PAGES_PER_PASS = 512;
+
+  @NotNull private final LogService myLogService;
+  @NotNull private final List<Database> myDatabases = new ArrayList<>();
+  @NotNull private final Map<String, RetentionPolicy> myPolicies = new LinkedHashMap<>();
+  @NotNull private final List<Listener> myListeners = new ArrayList<>();
+  /**
+   * End of the range already downsampled, by table, session and tier.
+   */
+  @NotNull private final Map<String, Long> myWatermarks = new ConcurrentHashMap<>();
+  @NotNull private final AtomicLong myDeletedRowCount = new AtomicLong();
+  /**
+   * Sizes of the tables measured by the last pass, see {@link #getTableSizes()}.
+   */
+  @NotNull private volatile Map<String, Long> myTableSizes = Collections.emptyMap();
+  @Nullable private ScheduledExecutorService myExecutor;
+
+  public DataStoreCompactor(@NotNull LogService logService) {
+    myLogService = logService;
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(DataStoreCompactor.class.getCanonicalName());
+  }
+
+  public synchronized void addDatabase(@NotNull String name, @NotNull Connection connection, @Nullable DataStoreWriter writer) {
+    myDatabases.add(new Database(name, connection, writer));
+  }
+
+  /**
+   * Adds the policy of a table, replacing its previous policy if any. The policy applies to the table in all the databases.
+   */
+  public synchronized void addPolicy(@NotNull RetentionPolicy policy) {
+    myPolicies.put(policy.getTable(), policy);
+  }
+
+  /**
+   * Changes the age past which the rows of the table are dropped.
+   */
+  public synchronized void setHorizonNs(@NotNull String table, long horizonNs) {
+    RetentionPolicy policy = myPolicies.get(table);
+    if (policy != null) {
+      myPolicies.put(table, policy.withHorizonNs(horizonNs));
+    }
+  }
+
+  public synchronized void addListener(@NotNull Listener listener) {
+    myListeners.add(listener);
+  }
+
+  @Nullable
+  public synchronized RetentionPolicy getPolicy(@NotNull String table) {
+    return myPolicies.get(table);
+  }
+
+  public synchronized void start(long periodMs) {
+    assert myExecutor == null;
+    myExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "DataStoreCompactor");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    });
+    myExecutor.scheduleWithFixedDelay(this::compact, periodMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background passes, waiting for the current one to complete.
+   */
+  public void shutdown() {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = myExecutor;
+      myExecutor = null;
+    }
+    if (executor == null) {
+      return;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return the number of rows deleted by the passes so far, downsampled or dropped.
+   */
+  public long getDeletedRowCount() {
+    return myDeletedRowCount.get();
+  }
+
+  /**
+   * Runs a pass over all the databases, then measures the size of their tables.
+   */
+  @VisibleForTesting
+  public void compact() {
+    List<Database> databases;
+    List<RetentionPolicy> policies;
+    List<Listener> listeners;
+    synchronized (this) {
+      databases = new ArrayList<>(myDatabases);
+      policies = new ArrayList<>(myPolicies.values());
+      listeners = new ArrayList<>(myListeners);
+    }
+    Map<String, Long> tableSizes = new TreeMap<>();
+    for (Database database : databases) {
+      database.runExclusively(() -> {
+        try {
+          if (database.myConnection.isClosed()) {
+            return;
+          }
+          Set<String> tables = getTableNames(database.myConnection);
+          for (RetentionPolicy policy : policies) {
+            if (tables.contains(policy.getTable())) {
+              compact(database, policy);
+            }
+          }
+          try (Statement statement = database.myConnection.createStatement()) {
+            statement.execute(String.format("PRAGMA incremental_vacuum(%d)", VACUUM_PAGES_PER_PASS));
+          }
+          database.myConnection.commit();
+          getTableSizes(database.myConnection).forEach((table, size) -> tableSizes.merge(table, size, Long::sum));
+        }
+        catch (SQLException e) {
+          getLogger().error(e);
+        }
+      });
+    }
+    myTableSizes = Collections.unmodifiableMap(tableSizes);
+    listeners.forEach(Listener::passCompleted);
+  }
+
+  private void compact(@NotNull Database database, @NotNull RetentionPolicy policy) throws SQLException {
+    Connection connection = database.myConnection;
+    String table = policy.getTable();
+    String session = policy.getSessionColumn();
+    String timestamp = policy.getTimestampColumn();
+
+    Map<Long, Long> lastTimestamps = new HashMap<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery(
+           String.format("SELECT %s, MAX(%s) FROM %s GROUP BY %s", session, timestamp, table, session))) {
+      while (results.next()) {
+        lastTimestamps.put(results.getLong(1), results.getLong(2));
+      }
+    }
+
+    String filter = policy.getFilter() == null ? "" : " AND (" + policy.getFilter() + ")";
+    List<String> groups = new ArrayList<>(policy.getGroupColumns());
+    // Integer division, the bucket of each row.
+    groups.add(timestamp + " / ?");
+    String range = String.format("%s = ? AND %s >= ? AND %s < ?%s", session, timestamp, timestamp, filter);
+    // SQLite takes the other columns of an aggregate query with MAX() from the row holding the maximum, i.e. the latest of each bucket.
+    String downsample = String.format("DELETE FROM %1$s WHERE %2$s AND rowid NOT IN (SELECT Id FROM (SELECT rowid AS Id, MAX(%3$s) FROM " +
+                                      "%1$s WHERE %2$s GROUP BY %4$s))", table, range, timestamp, String.join(", ", groups));
+
+    for (Map.Entry<Long, Long> entry : lastTimestamps.entrySet()) {
+      long sessionId = entry.getKey();
+      long last = entry.getValue();
+      for (int i = 0; i < policy.getTiers().size(); i++) {
+        RetentionPolicy.Tier tier = policy.getTiers().get(i);
+        long resolution = tier.getResolutionNs();
+        long end = Math.floorDiv(last - tier.getAgeNs(), resolution) * resolution;
+        String key = String.format("%s/%s/%d/%d", database.myName, table, sessionId, i);
+        long start = myWatermarks.getOrDefault(key, Long.MIN_VALUE);
+        if (start >= end) {
+          continue;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(downsample)) {
+          statement.setLong(1, sessionId);
+          statement.setLong(2, start);
+          statement.setLong(3, end);
+          statement.setLong(4, sessionId);
+          statement.setLong(5, start);
+          statement.setLong(6, end);
+          statement.setLong(7, resolution);
+          myDeletedRowCount.addAndGet(statement.executeUpdate());
+        }
+        myWatermarks.put(key, end);
+      }
+
+      if (policy.getHorizonNs() != RetentionPolicy.KEEP_ALL) {
+        try (PreparedStatement statement = connection.prepareStatement(
+          String.format("DELETE FROM %s WHERE %s = ? AND %s < ?", table, session, timestamp))) {
+          statement.setLong(1, sessionId);
+          statement.setLong(2, last - policy.getHorizonNs());
+          myDeletedRowCount.addAndGet(statement.executeUpdate());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the size in bytes of each table of the databases, including its indexes, as of the last pass. Tables with the same name in
+   * several databases are added up. Measuring scans every table, so it is only done by the passes, on the compactor thread; this returns
+   * right away and can be called from any thread, e.g. by a metrics gauge.
+   */
+  @NotNull
+  public Map<String, Long> getTableSizes() {
+    return myTableSizes;
+  }
+
+  @NotNull
+  private static Map<String, Long> getTableSizes(@NotNull Connection connection) throws SQLException {
+    Map<String, Long> sizes = new HashMap<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery(
+           "SELECT m.tbl_name, SUM(s.pgsize) FROM dbstat s JOIN sqlite_master m ON s.name = m.name GROUP BY m.tbl_name")) {
+      while (results.next()) {
+        sizes.put(results.getString(1), results.getLong(2));
+      }
+      return sizes;
+    }
+    catch (SQLException e) {
+      // SQLite built without the dbstat table, estimate the size from the length of the values instead.
+    }
+
+    for (String table : getTableNames(connection)) {
+      List<String> lengths = new ArrayList<>();
+      try (Statement statement = connection.createStatement();
+           ResultSet results = statement.executeQuery(String.format("PRAGMA table_info(%s)", table))) {
+        while (results.next()) {
+          lengths.add(String.format("IFNULL(LENGTH(%s), 0)", results.getString("name")));
+        }
+      }
+      if (lengths.isEmpty()) {
+        continue;
+      }
+      try (Statement statement = connection.createStatement();
+           ResultSet results = statement.executeQuery(String.format("SELECT SUM(%s) FROM %s", String.join(" + ", lengths), table))) {
+        sizes.put(table, results.next() ? results.getLong(1) : 0);
+      }
+    }
+    return sizes;
+  }
+
+  @NotNull
+  private static Set<String> getTableNames(@NotNull Connection connection) throws SQLException {
+    Set<String> tables = new HashSet<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery("SELECT name FROM sqlite_master WHERE type = 'table'")) {
+      while (results.next()) {
+        tables.add(results.getString(1));
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Notified on the compactor thread, so that data kept in memory next to the tables follows the same retention.
+   */
+  public interface Listener {
+    /**
+     * Called after each pass.
+     */
+    default void passCompleted() {
+    }
+  }
+
+  private static final class Database {
+    @NotNull private final String myName;
+    @NotNull private final Connection myConnection;
+    @Nullable private final DataStoreWriter myWriter;
+
+    private Database(@NotNull String name, @NotNull Connection connection, @Nullable DataStoreWriter writer) {
+      myName = name;
+      myConnection = connection;
+      myWriter = writer;
+    }
+
+    private void runExclusively(@NotNull Runnable task) {
+      if (myWriter != null) {
+        myWriter.runExclusively(task);
+      }
+      else {
+        task.run();
+      }
+    }
+  }
+}
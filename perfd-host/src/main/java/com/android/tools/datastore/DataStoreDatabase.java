@@ -15,12 +15,15 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreWriter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
@@ -39,6 +42,8 @@ public class DataStoreDatabase {
 
   private final Connection myConnection;
 
+  @Nullable private final DataStoreWriter myWriter;
+
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
    */
@@ -66,8 +71,8 @@ public class DataStoreDatabase {
         case DURABLE:
           File dbFile = new File(dbPath);
           // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
+          // The file is always recreated, sessions from prior Studio runs are restored from the SessionArchive instead, whose format is
+          // versioned.
           if (dbFile.exists()) {
             dbFile.delete();
           }
@@ -84,8 +89,12 @@ public class DataStoreDatabase {
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Must be set before any table is created. Lets the DataStoreCompactor return the pages freed by the rows it deletes.
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+      }
+
+      // Performance optimization. Transactions are committed periodically by the DataStoreWriter.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -98,10 +107,15 @@ public class DataStoreDatabase {
       noPiiExceptionHandler.accept(e);
     }
     myConnection = connection;
+    myWriter = connection != null ? new DataStoreWriter(connection) : null;
   }
 
   public void disconnect() {
     try {
+      if (myWriter != null) {
+        myWriter.shutdown();
+      }
+
       myConnection.commit();
     }
     catch (SQLException e) {
@@ -122,4 +136,12 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  /**
+   * @return the write-behind writer batching inserts into this database, or null if the database failed to open.
+   */
+  @Nullable
+  public DataStoreWriter getWriter() {
+    return myWriter;
+  }
 }
@@ -16,8 +16,13 @@
 package com.android.tools.datastore;
 
 import com.android.annotations.VisibleForTesting;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.SessionArchive;
+import com.android.tools.datastore.poller.PollRunner;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.datastore.service.*;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NopSymbolizer;
@@ -31,10 +36,15 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
@@ -54,6 +64,16 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   private static final long REPORT_INITIAL_DELAY = TimeUnit.MINUTES.toMillis(15);
   private static final long REPORT_PERIOD = TimeUnit.HOURS.toMillis(1);
 
+  /**
+   * Directory of the {@link SessionArchive}, next to the databases.
+   */
+  private static final String SESSION_ARCHIVE_DIRECTORY = "sessions";
+
+  /**
+   * Prefix of the gauges reporting the size in bytes of each table.
+   */
+  private static final String TABLE_SIZES_METRIC = "datastore.tableBytes";
+
   public static class BackingNamespace {
     public static final BackingNamespace DEFAULT_SHARED_NAMESPACE = new BackingNamespace("default.sql", DURABLE);
 
@@ -103,10 +123,22 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
 
   private final Timer myReportTimer;
 
+  @Nullable private SessionArchive mySessionArchive;
+  @NotNull private final ExecutorService myArchiveExecutor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "DataStoreSessionArchiver");
+    thread.setDaemon(true);
+    return thread;
+  });
+  @NotNull private final DataStoreCompactor myCompactor;
+  @NotNull private final SessionRequestInterceptor mySessionRequestInterceptor = new SessionRequestInterceptor(this::pageInSession);
+  @NotNull private final MetricsServerInterceptor myMetricsInterceptor = new MetricsServerInterceptor();
+  @NotNull private final PollScheduler myPollScheduler;
+
   /**
    * @param fetchExecutor A callback which is given a {@link Runnable} for each datastore service.
    *                      The runnable, when run, begins polling the target service. You probably
-   *                      want to run it on a background thread.
+   *                      want to run it on a background thread. {@link PollRunner}s return right
+   *                      away, the polling itself is done by the {@link PollScheduler}.
    */
   public DataStoreService(@NotNull String serviceName,
                           @NotNull String datastoreDirectory,
@@ -122,12 +154,21 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
                           @NotNull LogService logService,
                           @Nullable ServerInterceptor interceptor) {
     myLogService = logService;
-    myFetchExecutor = fetchExecutor;
+    myPollScheduler = new PollScheduler(logService);
+    myFetchExecutor = runnable -> {
+      if (runnable instanceof PollRunner) {
+        ((PollRunner)runnable).setScheduler(myPollScheduler);
+      }
+      fetchExecutor.accept(runnable);
+    };
     myInterceptor = interceptor;
     myDatastoreDirectory = datastoreDirectory;
     myServerBuilder = InProcessServerBuilder.forName(serviceName).directExecutor();
     myNoPiiExceptionHanlder = (t) -> getLogger().error(t);
+    myCompactor = new DataStoreCompactor(logService);
     createPollers();
+    loadSessionArchive();
+    startCompactor();
     myServer = myServerBuilder.build();
     try {
       myServer.start();
@@ -164,6 +205,123 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     registerService(new EnergyService(this, myFetchExecutor, myLogService));
   }
 
+  /**
+   * Lists the sessions archived by previous runs, see {@link SessionArchive}.
+   */
+  private void loadSessionArchive() {
+    Map<String, Connection> connections = new LinkedHashMap<>();
+    Map<String, DataStoreWriter> writers = new LinkedHashMap<>();
+    myDatabases.forEach((namespace, db) -> {
+      if (db.getConnection() != null) {
+        connections.put(namespace.myNamespace, db.getConnection());
+      }
+      if (db.getWriter() != null) {
+        writers.put(namespace.myNamespace, db.getWriter());
+      }
+    });
+    mySessionArchive = new SessionArchive(new File(myDatastoreDirectory + SESSION_ARCHIVE_DIRECTORY), connections, writers);
+    try {
+      mySessionArchive.loadArchivedSessions();
+    }
+    catch (SQLException | IOException ex) {
+      getLogger().error(ex);
+    }
+  }
+
+  private void startCompactor() {
+    myDatabases.forEach((namespace, db) -> {
+      if (db.getConnection() != null) {
+        myCompactor.addDatabase(namespace.myNamespace, db.getConnection(), db.getWriter());
+      }
+    });
+    myServices.forEach(service -> service.getRetentionPolicies().forEach(myCompactor::addPolicy));
+    myServices.forEach(myCompactor::addListener);
+    myCompactor.start(DataStoreCompactor.DEFAULT_PERIOD_MS);
+    MetricsRegistry.getInstance().addGauges(TABLE_SIZES_METRIC, myCompactor::getTableSizes);
+  }
+
+  /**
+   * @return the compactor applying the retention policies of the tables, e.g. to change how long their rows are kept.
+   */
+  @NotNull
+  public DataStoreCompactor getCompactor() {
+    return myCompactor;
+  }
+
+  /**
+   * @return the scheduler polling the devices, e.g. to poll the session shown in the profilers more often than the others.
+   */
+  @NotNull
+  public PollScheduler getPollScheduler() {
+    return myPollScheduler;
+  }
+
+  /**
+   * Archives the session in the background, so it can be reopened after the datastore restarts. Meant for sessions which have ended.
+   */
+  public void archiveSession(long sessionId) {
+    SessionArchive archive = mySessionArchive;
+    if (archive == null) {
+      return;
+    }
+    myArchiveExecutor.execute(() -> {
+      try {
+        archive.archive(sessionId);
+      }
+      catch (SQLException | IOException ex) {
+        getLogger().error(ex);
+      }
+    });
+  }
+
+  /**
+   * Drops the data the services keep in memory for the session, see {@link ServicePassThrough#evictSession(long)}.
+   */
+  public void evictSession(long sessionId) {
+    myServices.forEach(service -> service.evictSession(sessionId));
+  }
+
+  public void deleteArchivedSession(long sessionId) {
+    SessionArchive archive = mySessionArchive;
+    if (archive != null) {
+      myArchiveExecutor.execute(() -> archive.delete(sessionId));
+    }
+  }
+
+  /**
+   * Called before handling each request about a session, on the thread sending the request. Pages the session back in the databases on
+   * the archiver thread if it was archived and isn't paged in.
+   *
+   * @return null if the session can be queried right away, or a future completed once it is paged in.
+   */
+  @Nullable
+  private CompletableFuture<Void> pageInSession(long sessionId) {
+    SessionArchive archive = mySessionArchive;
+    if (archive == null || !archive.isArchived(sessionId) || archive.touchIfPagedIn(sessionId)) {
+      return null;
+    }
+    try {
+      return CompletableFuture.runAsync(() -> {
+        try {
+          archive.pageIn(sessionId);
+        }
+        catch (SQLException | IOException ex) {
+          getLogger().error(ex);
+        }
+      }, myArchiveExecutor);
+    }
+    catch (RejectedExecutionException ex) {
+      // Shutting down.
+      return null;
+    }
+  }
+
+  @VisibleForTesting
+  @Nullable
+  SessionArchive getSessionArchive() {
+    return mySessionArchive;
+  }
+
   @VisibleForTesting
   @NotNull
   public DataStoreDatabase createDatabase(@NotNull String dbPath,
@@ -186,14 +344,20 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       DataStoreDatabase db = myDatabases.computeIfAbsent(namespace, backingNamespace -> createDatabase(
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic, myNoPiiExceptionHanlder));
       service.setBackingStore(namespace, db.getConnection());
+      if (db.getWriter() != null) {
+        service.setBackingWriter(namespace, db.getWriter());
+      }
     });
 
     // Build server and start listening for RPC calls for the registered service
+    // Interceptors added last are called first, so archived sessions are paged in before the test interceptor sees the calls, and the
+    // time spent paging them in counts towards the latency of the call.
     if (myInterceptor != null) {
-      myServerBuilder.addService(ServerInterceptors.intercept(service.bindService(), myInterceptor));
+      myServerBuilder.addService(
+        ServerInterceptors.intercept(service.bindService(), myInterceptor, mySessionRequestInterceptor, myMetricsInterceptor));
     }
     else {
-      myServerBuilder.addService(service.bindService());
+      myServerBuilder.addService(ServerInterceptors.intercept(service.bindService(), mySessionRequestInterceptor, myMetricsInterceptor));
     }
   }
 
@@ -239,6 +403,17 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       client.shutdownNow();
     }
     myConnectedClients.clear();
+    myPollScheduler.shutdown();
+    MetricsRegistry.getInstance().removeGauges(TABLE_SIZES_METRIC);
+    myCompactor.shutdown();
+    // Let the sessions being archived finish before closing the databases.
+    myArchiveExecutor.shutdown();
+    try {
+      myArchiveExecutor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
     myDatabases.forEach((name, db) -> db.disconnect());
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.adtui.model.metrics.LatencyHistogram;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
+import io.grpc.ForwardingServerCall;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records how long the datastore takes to handle each RPC, from the start of the call until it is closed, in a histogram per method
+ * named "rpc." followed by the full method name.
+ */
+final class MetricsServerInterceptor implements ServerInterceptor {
+  @NotNull private final Map<String, LatencyHistogram> myLatencies = new ConcurrentHashMap<>();
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                               Metadata metadata,
+                                                               ServerCallHandler<ReqT, RespT> handler) {
+    long startNs = System.nanoTime();
+    LatencyHistogram latency = myLatencies.computeIfAbsent(
+      call.getMethodDescriptor().getFullMethodName(), method -> MetricsRegistry.getInstance().getHistogram("rpc." + method));
+    return handler.startCall(new ForwardingServerCall.SimpleForwardingServerCall<ReqT, RespT>(call) {
+      @Override
+      public void close(Status status, Metadata trailers) {
+        latency.record(System.nanoTime() - startNs);
+        super.close(status, trailers);
+      }
+    }, metadata);
+  }
+}
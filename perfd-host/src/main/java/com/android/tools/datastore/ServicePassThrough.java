@@ -15,17 +15,20 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
 import io.grpc.ServerServiceDefinition;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.Connection;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Interface for a class that wraps a grpc service. Once connected to the service, you will need to
  * trigger its runner (probably on a background thread) to begin polling it.
  */
-public interface ServicePassThrough {
+public interface ServicePassThrough extends DataStoreCompactor.Listener {
   /**
    * @return bound service object for setting up an RPC client.
    */
@@ -43,4 +46,29 @@ public interface ServicePassThrough {
    * @param connection {@link Connection} to the backing store
    */
   void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection);
+
+  /**
+   * Called after {@link #setBackingStore(DataStoreService.BackingNamespace, Connection)} with the write-behind writer of the same
+   * backing store. Services whose pollers insert high-rate samples should hand it to their tables.
+   *
+   * @param namespace a namespace corresponding to an entry in the list returned from {@link #getBackingNamespaces()}
+   * @param writer    {@link DataStoreWriter} batching inserts into the backing store
+   */
+  default void setBackingWriter(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriter writer) {
+  }
+
+  /**
+   * @return the retention policies of the service's tables, applied by the {@link DataStoreCompactor}.
+   */
+  @NotNull
+  default List<RetentionPolicy> getRetentionPolicies() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Called once the session has ended or was deleted. Services keeping data of their sessions in memory, next to their tables, should
+   * drop it; later requests about the session are answered from the tables.
+   */
+  default void evictSession(long sessionId) {
+  }
 }
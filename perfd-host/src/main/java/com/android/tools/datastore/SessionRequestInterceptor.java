@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore;
+
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.protobuf3jarjar.Descriptors;
+import com.android.tools.profiler.protobuf3jarjar.Message;
+import io.grpc.Context;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calls back with the id of the session each request is about, i.e. the requests with a {@link Common.Session} field named session,
+ * before the request is handled. Used to page archived sessions back in the databases when they are queried.
+ * <p>
+ * The server calls the interceptor on the thread sending the request, so paging in is left to the callback, which returns a future
+ * when the session can't be queried right away. The request, and the rest of the call, is then handled once the future completes, on
+ * the thread completing it.
+ */
+final class SessionRequestInterceptor implements ServerInterceptor {
+  private static final String SESSION_FIELD = "session";
+
+  interface SessionCallback {
+    /**
+     * @return null if the session can be queried right away, or a future completed once it can be.
+     */
+    @Nullable
+    CompletableFuture<?> beforeRequest(long sessionId);
+  }
+
+  @NotNull private final SessionCallback mySessionCallback;
+
+  /**
+   * The session field of each request type, or empty if it has none.
+   */
+  @NotNull private final Map<Descriptors.Descriptor, Optional<Descriptors.FieldDescriptor>> mySessionFields = new ConcurrentHashMap<>();
+
+  SessionRequestInterceptor(@NotNull SessionCallback sessionCallback) {
+    mySessionCallback = sessionCallback;
+  }
+
+  @Override
+  public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+                                                               Metadata metadata,
+                                                               ServerCallHandler<ReqT, RespT> handler) {
+    return new SessionListener<>(handler.startCall(call, metadata));
+  }
+
+  @Nullable
+  private CompletableFuture<?> beforeRequest(@NotNull Object message) {
+    if (!(message instanceof Message)) {
+      return null;
+    }
+    Optional<Descriptors.FieldDescriptor> field =
+      mySessionFields.computeIfAbsent(((Message)message).getDescriptorForType(), SessionRequestInterceptor::findSessionField);
+    if (!field.isPresent() || !((Message)message).hasField(field.get())) {
+      return null;
+    }
+    return mySessionCallback.beforeRequest(((Common.Session)((Message)message).getField(field.get())).getSessionId());
+  }
+
+  @NotNull
+  private static Optional<Descriptors.FieldDescriptor> findSessionField(@NotNull Descriptors.Descriptor descriptor) {
+    Descriptors.FieldDescriptor field = descriptor.findFieldByName(SESSION_FIELD);
+    if (field == null || field.isRepeated() || field.getJavaType() != Descriptors.FieldDescriptor.JavaType.MESSAGE ||
+        !field.getMessageType().equals(Common.Session.getDescriptor())) {
+      return Optional.empty();
+    }
+    return Optional.of(field);
+  }
+
+  /**
+   * Holds back the events of the call while the session of a request can't be queried, and then delivers them in order.
+   */
+  private final class SessionListener<ReqT> extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
+    /**
+     * The events held back, or null if they are delivered right away.
+     */
+    @Nullable private List<Runnable> myPendingEvents;
+
+    private SessionListener(@NotNull ServerCall.Listener<ReqT> delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void onMessage(ReqT message) {
+      CompletableFuture<?> sessionReady;
+      synchronized (this) {
+        if (myPendingEvents != null) {
+          myPendingEvents.add(Context.current().wrap(() -> super.onMessage(message)));
+          return;
+        }
+        sessionReady = beforeRequest(message);
+        if (sessionReady != null) {
+          myPendingEvents = new ArrayList<>();
+          myPendingEvents.add(Context.current().wrap(() -> super.onMessage(message)));
+        }
+      }
+      if (sessionReady == null) {
+        super.onMessage(message);
+      }
+      else {
+        // Delivered whether or not paging in succeeded: the request is then answered with the rows at hand.
+        sessionReady.whenComplete((result, error) -> deliverPendingEvents());
+      }
+    }
+
+    @Override
+    public void onHalfClose() {
+      deliver(() -> super.onHalfClose());
+    }
+
+    @Override
+    public void onCancel() {
+      deliver(() -> super.onCancel());
+    }
+
+    @Override
+    public void onComplete() {
+      deliver(() -> super.onComplete());
+    }
+
+    @Override
+    public void onReady() {
+      deliver(() -> super.onReady());
+    }
+
+    private void deliver(@NotNull Runnable event) {
+      synchronized (this) {
+        if (myPendingEvents != null) {
+          myPendingEvents.add(Context.current().wrap(event));
+          return;
+        }
+      }
+      event.run();
+    }
+
+    private void deliverPendingEvents() {
+      while (true) {
+        List<Runnable> events;
+        synchronized (this) {
+          assert myPendingEvents != null;
+          if (myPendingEvents.isEmpty()) {
+            myPendingEvents = null;
+            return;
+          }
+          events = myPendingEvents;
+          myPendingEvents = new ArrayList<>();
+        }
+        events.forEach(Runnable::run);
+      }
+    }
+  }
+}
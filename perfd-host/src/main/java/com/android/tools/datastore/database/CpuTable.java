@@ -75,6 +75,13 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
     QUERY_PROFILING_STATE,
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    // Usage samples hold cumulative times, so the usage between the samples kept stays correct.
+    return Collections.singletonList(new RetentionPolicy.Builder("Cpu_Data", "Session", "Timestamp").addDefaultTiers().build());
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -165,7 +172,7 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   }
 
   public void insert(Common.Session session, CpuUsageData data) {
-    execute(CpuStatements.INSERT_CPU_DATA, session.getSessionId(), data.getEndTimestamp(), data.toByteArray());
+    enqueue(CpuStatements.INSERT_CPU_DATA, session.getSessionId(), data.getEndTimestamp(), data.toByteArray());
   }
 
   public List<CpuUsageData> getCpuDataByRequest(CpuDataRequest request) {
@@ -15,7 +15,11 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.adtui.model.metrics.Counter;
+import com.android.tools.adtui.model.metrics.LatencyHistogram;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -31,6 +35,12 @@ public abstract class DataStoreTable<T extends Enum> {
 
   private Connection myConnection;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
+  @Nullable private volatile DataStoreWriter myWriter;
+
+  // Metrics, named after the table class and statement.
+  @NotNull private final Map<T, LatencyHistogram> myStatementLatencies = new ConcurrentHashMap<>();
+  @NotNull private final Counter myRowsWritten =
+    MetricsRegistry.getInstance().getCounter("datastore." + getClass().getSimpleName() + ".rowsWritten");
 
   public interface DataStoreTableErrorCallback {
     void onDataStoreError(Throwable t);
@@ -45,6 +55,23 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Sets the write-behind writer used by {@link #enqueue(Enum, Object...)}. If no writer is set, enqueued statements are executed
+   * immediately on the calling thread.
+   */
+  public void setWriter(@Nullable DataStoreWriter writer) {
+    myWriter = writer;
+  }
+
+  /**
+   * @return how long the rows of the table's time series are kept, see {@link com.android.tools.datastore.DataStoreCompactor}. By
+   * default the rows are kept as long as the database.
+   */
+  @NotNull
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return Collections.emptyList();
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -149,7 +176,10 @@ public abstract class DataStoreTable<T extends Enum> {
           onError(ex);
         }
       });
+      long startNs = System.nanoTime();
       int[] results = stmt.executeBatch();
+      getStatementLatency(statement).record(System.nanoTime() - startNs);
+      myRowsWritten.add(results.length);
       for(int i = 0; i < results.length; i++) {
         if (results[i] == Statement.EXECUTE_FAILED) {
           throw new SQLException(String.format("Failed to insert batch element %d with result %d", i, results[i]));
@@ -168,20 +198,66 @@ public abstract class DataStoreTable<T extends Enum> {
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
-      stmt.execute();
+      long startNs = System.nanoTime();
+      if (!stmt.execute()) {
+        myRowsWritten.add(Math.max(0, stmt.getUpdateCount()));
+      }
+      getStatementLatency(statement).record(System.nanoTime() - startNs);
     }
     catch (SQLException ex) {
       onError(ex);
     }
   }
 
+  /**
+   * Same as {@link #execute(Enum, Object...)}, but lets the table's {@link DataStoreWriter} (if any) defer the statement and batch it
+   * with others. Only use this for inserts that nothing reads back right away, as the row becomes visible to queries after the next
+   * flush.
+   */
+  protected void enqueue(@NotNull T statement, Object... params) {
+    DataStoreWriter writer = myWriter;
+    if (writer == null || !writer.enqueue(this, statement, params)) {
+      execute(statement, params);
+    }
+  }
+
+  /**
+   * Called from the {@link DataStoreWriter} thread to execute previously queued writes. Consecutive writes using the same statement
+   * are grouped into a single batch so that insertion order is preserved.
+   */
+  @SuppressWarnings("unchecked")
+  void executePending(@NotNull List<DataStoreWriter.PendingWrite> writes) {
+    int start = 0;
+    while (start < writes.size()) {
+      Enum statement = writes.get(start).getStatement();
+      int end = start + 1;
+      while (end < writes.size() && writes.get(end).getStatement() == statement) {
+        end++;
+      }
+      executeBatch((T)statement, writes.subList(start, end), DataStoreWriter.PendingWrite::getParams);
+      start = end;
+    }
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
     if (isClosed()) {
       return new EmptyResultSet();
     }
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
-    return stmt.executeQuery();
+    long startNs = System.nanoTime();
+    ResultSet results = stmt.executeQuery();
+    getStatementLatency(statement).record(System.nanoTime() - startNs);
+    return results;
+  }
+
+  /**
+   * @return the distribution of the time it takes to execute the statement. For queries it doesn't include reading the results.
+   */
+  @NotNull
+  private LatencyHistogram getStatementLatency(@NotNull T statement) {
+    return myStatementLatencies.computeIfAbsent(
+      statement, key -> MetricsRegistry.getInstance().getHistogram("datastore." + getClass().getSimpleName() + "." + key.name()));
   }
 
   protected ResultSet executeOneTimeQuery(@NotNull String sql, Object[] params) throws SQLException {
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.adtui.model.metrics.LatencyHistogram;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-behind stage sitting between the pollers and a database {@link Connection}. Inserts queued through
+ * {@link DataStoreTable#enqueue(Enum, Object...)} are buffered in a bounded queue per table and written out on a dedicated thread
+ * with {@link java.sql.PreparedStatement#executeBatch()}, followed by a single commit. A flush is triggered either when
+ * {@link #getFlushBatchSize()} rows are pending or every {@link #getFlushIntervalMs()} milliseconds, whichever comes first.
+ * <p>
+ * When a table's queue is full the producer blocks until the writer catches up, so the pollers are throttled rather than
+ * growing the heap without bound.
+ */
+public class DataStoreWriter {
+  public static final int DEFAULT_MAX_QUEUE_SIZE = 8192;
+  public static final int DEFAULT_FLUSH_BATCH_SIZE = 512;
+  public static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+  private static final LatencyHistogram FLUSH_LATENCY = MetricsRegistry.getInstance().getHistogram("datastore.flush");
+
+  @NotNull private final Connection myConnection;
+  private final int myMaxQueueSize;
+  private final int myFlushBatchSize;
+  private final long myFlushIntervalMs;
+
+  @NotNull private final Map<DataStoreTable<?>, BlockingQueue<PendingWrite>> myQueues = new ConcurrentHashMap<>();
+  @NotNull private final ScheduledExecutorService myExecutor;
+  @NotNull private final AtomicBoolean myFlushRequested = new AtomicBoolean(false);
+  private volatile boolean myIsShutdown = false;
+
+  // Metrics.
+  @NotNull private final AtomicInteger myQueueDepth = new AtomicInteger();
+  private volatile int myMaxQueueDepth;
+  private volatile long myLastFlushLatencyNs;
+  private volatile long myMaxFlushLatencyNs;
+  @NotNull private final AtomicLong myFlushCount = new AtomicLong();
+  @NotNull private final AtomicLong myFlushedRowCount = new AtomicLong();
+  @NotNull private final AtomicLong myTotalFlushLatencyNs = new AtomicLong();
+
+  public DataStoreWriter(@NotNull Connection connection) {
+    this(connection, DEFAULT_MAX_QUEUE_SIZE, DEFAULT_FLUSH_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+  }
+
+  public DataStoreWriter(@NotNull Connection connection, int maxQueueSize, int flushBatchSize, long flushIntervalMs) {
+    assert maxQueueSize > 0 && flushBatchSize > 0 && flushIntervalMs > 0;
+    myConnection = connection;
+    myMaxQueueSize = maxQueueSize;
+    myFlushBatchSize = flushBatchSize;
+    myFlushIntervalMs = flushIntervalMs;
+    myExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "DataStoreWriter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    myExecutor.scheduleWithFixedDelay(this::flush, myFlushIntervalMs, myFlushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues a write for the given table.
+   *
+   * @return false if the write could not be queued (e.g. the writer has been shut down), in which case the caller is expected
+   * to execute the statement itself.
+   */
+  boolean enqueue(@NotNull DataStoreTable<?> table, @NotNull Enum statement, @NotNull Object[] params) {
+    if (myIsShutdown) {
+      return false;
+    }
+
+    BlockingQueue<PendingWrite> queue = myQueues.computeIfAbsent(table, key -> new ArrayBlockingQueue<>(myMaxQueueSize));
+    PendingWrite write = new PendingWrite(statement, params);
+    if (!queue.offer(write)) {
+      // Back pressure: make sure the writer is draining, then wait for room.
+      requestFlush();
+      try {
+        while (!queue.offer(write, myFlushIntervalMs, TimeUnit.MILLISECONDS)) {
+          if (myIsShutdown) {
+            return false;
+          }
+          requestFlush();
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    int depth = myQueueDepth.incrementAndGet();
+    if (depth > myMaxQueueDepth) {
+      myMaxQueueDepth = depth;
+    }
+    if (depth >= myFlushBatchSize) {
+      requestFlush();
+    }
+    return true;
+  }
+
+  private void requestFlush() {
+    if (myFlushRequested.compareAndSet(false, true)) {
+      try {
+        myExecutor.execute(this::flush);
+      }
+      catch (RejectedExecutionException ignored) {
+        // Shut down, the final flush takes care of whatever is left.
+        myFlushRequested.set(false);
+      }
+    }
+  }
+
+  /**
+   * Writes out everything that is currently pending and commits the transaction. This is normally called on the writer thread, but
+   * can be called from any thread to force pending writes to become visible to queries.
+   */
+  public synchronized void flush() {
+    myFlushRequested.set(false);
+    long startNs = System.nanoTime();
+    int rows = 0;
+    List<PendingWrite> writes = new ArrayList<>();
+    for (Map.Entry<DataStoreTable<?>, BlockingQueue<PendingWrite>> entry : myQueues.entrySet()) {
+      entry.getValue().drainTo(writes);
+      if (writes.isEmpty()) {
+        continue;
+      }
+      myQueueDepth.addAndGet(-writes.size());
+      entry.getKey().executePending(writes);
+      rows += writes.size();
+      writes.clear();
+    }
+
+    if (rows == 0) {
+      return;
+    }
+
+    try {
+      if (!myConnection.isClosed()) {
+        myConnection.commit();
+      }
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+
+    long latencyNs = System.nanoTime() - startNs;
+    myLastFlushLatencyNs = latencyNs;
+    if (latencyNs > myMaxFlushLatencyNs) {
+      myMaxFlushLatencyNs = latencyNs;
+    }
+    myTotalFlushLatencyNs.addAndGet(latencyNs);
+    myFlushCount.incrementAndGet();
+    myFlushedRowCount.addAndGet(rows);
+    FLUSH_LATENCY.record(latencyNs);
+  }
+
+  /**
+   * Runs {@code task} on the calling thread while no flush is in progress, for maintenance statements which commit on the same
+   * connection and shouldn't commit half a batch.
+   */
+  public synchronized void runExclusively(@NotNull Runnable task) {
+    task.run();
+  }
+
+  /**
+   * Stops accepting new writes, writes out everything still pending and stops the writer thread.
+   */
+  public void shutdown() {
+    myIsShutdown = true;
+    myExecutor.shutdown();
+    try {
+      myExecutor.awaitTermination(myFlushIntervalMs * 10, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  public boolean isShutdown() {
+    return myIsShutdown;
+  }
+
+  public int getMaxQueueSize() {
+    return myMaxQueueSize;
+  }
+
+  public int getFlushBatchSize() {
+    return myFlushBatchSize;
+  }
+
+  public long getFlushIntervalMs() {
+    return myFlushIntervalMs;
+  }
+
+  /**
+   * @return the number of writes currently buffered across all tables.
+   */
+  public int getQueueDepth() {
+    return myQueueDepth.get();
+  }
+
+  /**
+   * @return the highest number of writes that were buffered at once since this writer was created.
+   */
+  public int getMaxQueueDepth() {
+    return myMaxQueueDepth;
+  }
+
+  public long getLastFlushLatencyNs() {
+    return myLastFlushLatencyNs;
+  }
+
+  public long getMaxFlushLatencyNs() {
+    return myMaxFlushLatencyNs;
+  }
+
+  public long getAverageFlushLatencyNs() {
+    long count = myFlushCount.get();
+    return count == 0 ? 0 : myTotalFlushLatencyNs.get() / count;
+  }
+
+  /**
+   * @return the number of flushes which wrote at least one row.
+   */
+  public long getFlushCount() {
+    return myFlushCount.get();
+  }
+
+  public long getFlushedRowCount() {
+    return myFlushedRowCount.get();
+  }
+
+  static final class PendingWrite {
+    @NotNull private final Enum myStatement;
+    @NotNull private final Object[] myParams;
+
+    PendingWrite(@NotNull Enum statement, @NotNull Object[] params) {
+      myStatement = statement;
+      myParams = params;
+    }
+
+    @NotNull
+    Enum getStatement() {
+      return myStatement;
+    }
+
+    @NotNull
+    Object[] getParams() {
+      return myParams;
+    }
+  }
+}
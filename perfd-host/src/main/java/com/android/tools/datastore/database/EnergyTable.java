@@ -24,6 +24,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatements> {
@@ -36,6 +37,12 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
     QUERY_EVENT_GROUP,
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return Collections.singletonList(new RetentionPolicy.Builder("Energy_Sample", "Session", "Timestamp").addDefaultTiers().build());
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -95,7 +102,7 @@ public final class EnergyTable extends DataStoreTable<EnergyTable.EventStatement
   }
 
   public void insertOrReplace(@NotNull Common.Session session, @NotNull EnergyProfiler.EnergySample sample) {
-    execute(EventStatements.INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
+    enqueue(EventStatements.INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), sample.toByteArray());
   }
 
   public void insertOrReplace(@NotNull Common.Session session, @NotNull EnergyProfiler.EnergyEvent event) {
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import gnu.trove.TIntIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory columnar counterpart of the Memory_AllocationEvents table of {@link MemoryLiveAllocationTable}: the allocations of each
+ * session are kept in parallel primitive arrays sorted by allocation time, with the freed ones also indexed by free time, so that the
+ * live objects at a given time and the allocations and deallocations within a range are found by binary search instead of SQLite
+ * queries over millions of rows.
+ * <p>
+ * Fed by {@link com.android.tools.datastore.poller.MemoryJvmtiDataPoller} along with the table, and only kept while the session is
+ * polled. Sessions which are not in the index return null, in which case the table should be queried instead.
+ * <p>
+ * Each allocation takes about 70 bytes: 52 in the columns, 4 in the free time order and about 14 in the tag lookup. Pruned down to
+ * {@link #DEFAULT_ALLOCATION_COUNT_LIMIT} once freed objects allow it, a polled session thus holds at most about 350MB of the IDE heap,
+ * more only if it has that many live objects, which the table then keeps as well. There is one index per datastore, and as sessions
+ * are dropped once they stop being polled, that is normally the bound for the whole datastore.
+ */
+public final class LiveAllocationIndex {
+  /**
+   * Same limit as {@link MemoryLiveAllocationTable}.
+   */
+  static final int DEFAULT_ALLOCATION_COUNT_LIMIT = 5000000;
+
+  @NotNull private final Map<Long, SessionAllocations> mySessions = new ConcurrentHashMap<>();
+  private final int myAllocationCountLimit;
+
+  public LiveAllocationIndex() {
+    this(DEFAULT_ALLOCATION_COUNT_LIMIT);
+  }
+
+  public LiveAllocationIndex(int allocationCountLimit) {
+    myAllocationCountLimit = allocationCountLimit;
+  }
+
+  /**
+   * Adds the allocation and deallocation events of the sample, ignoring the class data. Like the table, an allocation whose tag is
+   * already known is ignored.
+   */
+  public void insertAllocationData(long sessionId, @NotNull BatchAllocationSample sample) {
+    SessionAllocations allocations = mySessions.computeIfAbsent(sessionId, id -> new SessionAllocations(myAllocationCountLimit));
+    synchronized (allocations) {
+      for (AllocationEvent event : sample.getEventsList()) {
+        switch (event.getEventCase()) {
+          case ALLOC_DATA:
+            allocations.addAllocation(event.getTimestamp(), event.getAllocData());
+            break;
+          case FREE_DATA:
+            allocations.addDeallocation(event.getTimestamp(), event.getFreeData().getTag());
+            break;
+          default:
+            break;
+        }
+      }
+      allocations.prune();
+    }
+  }
+
+  /**
+   * @return the objects allocated before {@code endTime} and not freed at {@code endTime}, as allocation events in allocation time order,
+   * or null if nothing was recorded for the session.
+   */
+  @Nullable
+  public BatchAllocationSample getSnapshot(long sessionId, long endTime) {
+    SessionAllocations allocations = mySessions.get(sessionId);
+    if (allocations == null) {
+      return null;
+    }
+    BatchAllocationSample.Builder sampleBuilder = BatchAllocationSample.newBuilder();
+    long timestamp = Long.MIN_VALUE;
+    synchronized (allocations) {
+      for (int row = 0, end = allocations.firstAllocatedAtOrAfter(endTime); row < end; row++) {
+        if (allocations.myFreeTimes[row] > endTime) {
+          sampleBuilder.addEvents(allocations.toAllocationEvent(row));
+          timestamp = Math.max(timestamp, allocations.myAllocTimes[row]);
+        }
+      }
+    }
+    return sampleBuilder.setTimestamp(timestamp).build();
+  }
+
+  /**
+   * @return the allocation events then the deallocation events within [{@code startTime}, {@code endTime}), each in time order, or null
+   * if nothing was recorded for the session.
+   */
+  @Nullable
+  public BatchAllocationSample getAllocations(long sessionId, long startTime, long endTime) {
+    SessionAllocations allocations = mySessions.get(sessionId);
+    if (allocations == null) {
+      return null;
+    }
+    BatchAllocationSample.Builder sampleBuilder = BatchAllocationSample.newBuilder();
+    long timestamp = Long.MIN_VALUE;
+    synchronized (allocations) {
+      for (int row = allocations.firstAllocatedAtOrAfter(startTime), end = allocations.firstAllocatedAtOrAfter(endTime); row < end; row++) {
+        sampleBuilder.addEvents(allocations.toAllocationEvent(row));
+        timestamp = Math.max(timestamp, allocations.myAllocTimes[row]);
+      }
+      for (int i = allocations.firstFreedAtOrAfter(startTime), end = allocations.firstFreedAtOrAfter(endTime); i < end; i++) {
+        int row = allocations.myFreeOrder[i];
+        sampleBuilder.addEvents(allocations.toDeallocationEvent(row));
+        timestamp = Math.max(timestamp, allocations.myFreeTimes[row]);
+      }
+    }
+    return sampleBuilder.setTimestamp(timestamp).build();
+  }
+
+  /**
+   * @return the number of allocations kept for the session.
+   */
+  public int getAllocationCount(long sessionId) {
+    SessionAllocations allocations = mySessions.get(sessionId);
+    if (allocations == null) {
+      return 0;
+    }
+    synchronized (allocations) {
+      return allocations.mySize;
+    }
+  }
+
+  @NotNull
+  public Set<Long> getSessionIds() {
+    return Collections.unmodifiableSet(mySessions.keySet());
+  }
+
+  public void removeSession(long sessionId) {
+    mySessions.remove(sessionId);
+  }
+
+  /**
+   * The allocations of a session. Rows are sorted by allocation time, {@link #myFreeOrder} lists the freed rows by free time. Events
+   * normally arrive in time order, so both are appended to, and only the rare late event is inserted.
+   */
+  private static final class SessionAllocations {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int myAllocationCountLimit;
+    private int mySize;
+    @NotNull private int[] myTags = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myClassTags = new int[INITIAL_CAPACITY];
+    @NotNull private long[] myAllocTimes = new long[INITIAL_CAPACITY];
+    /**
+     * {@link Long#MAX_VALUE} while the object is alive, as in the table.
+     */
+    @NotNull private long[] myFreeTimes = new long[INITIAL_CAPACITY];
+    @NotNull private long[] mySizes = new long[INITIAL_CAPACITY];
+    @NotNull private int[] myLengths = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myThreadIds = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myStackIds = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myHeapIds = new int[INITIAL_CAPACITY];
+
+    private int myFreeCount;
+    @NotNull private int[] myFreeOrder = new int[INITIAL_CAPACITY];
+
+    @NotNull private TIntIntHashMap myRowsByTag = new TIntIntHashMap();
+
+    SessionAllocations(int allocationCountLimit) {
+      myAllocationCountLimit = allocationCountLimit;
+    }
+
+    void addAllocation(long timestamp, @NotNull AllocationEvent.Allocation allocation) {
+      if (myRowsByTag.containsKey(allocation.getTag())) {
+        return;
+      }
+      if (mySize == myTags.length) {
+        // Don't double past the limit, the rows over it are pruned at the end of the sample if they can be
+        grow(mySize < myAllocationCountLimit
+             ? Math.min(mySize * 2, myAllocationCountLimit)
+             : mySize + Math.max(INITIAL_CAPACITY, myAllocationCountLimit / 16));
+      }
+      int row = mySize;
+      if (row > 0 && myAllocTimes[row - 1] > timestamp) {
+        row = firstAllocatedAtOrAfter(timestamp + 1);
+        shiftRows(row);
+      }
+      myTags[row] = allocation.getTag();
+      myClassTags[row] = allocation.getClassTag();
+      myAllocTimes[row] = timestamp;
+      myFreeTimes[row] = Long.MAX_VALUE;
+      mySizes[row] = allocation.getSize();
+      myLengths[row] = allocation.getLength();
+      myThreadIds[row] = allocation.getThreadId();
+      myStackIds[row] = allocation.getStackId();
+      myHeapIds[row] = allocation.getHeapId();
+      myRowsByTag.put(allocation.getTag(), row);
+      mySize++;
+    }
+
+    /**
+     * Deallocations of unknown objects, e.g. pruned ones, and repeated deallocations are ignored.
+     */
+    void addDeallocation(long timestamp, int tag) {
+      if (!myRowsByTag.containsKey(tag)) {
+        return;
+      }
+      int row = myRowsByTag.get(tag);
+      if (myFreeTimes[row] != Long.MAX_VALUE) {
+        return;
+      }
+      myFreeTimes[row] = timestamp;
+      if (myFreeCount == myFreeOrder.length) {
+        // Only allocated rows get freed, and only once
+        myFreeOrder = Arrays.copyOf(myFreeOrder, Math.min(myFreeCount * 2, myTags.length));
+      }
+      int index = myFreeCount;
+      if (index > 0 && myFreeTimes[myFreeOrder[index - 1]] > timestamp) {
+        index = firstFreedAtOrAfter(timestamp + 1);
+        System.arraycopy(myFreeOrder, index, myFreeOrder, index + 1, myFreeCount - index);
+      }
+      myFreeOrder[index] = row;
+      myFreeCount++;
+    }
+
+    /**
+     * Once over the limit, drops the objects freed first, down to the limit like {@link MemoryLiveAllocationTable}. Live objects are
+     * never dropped.
+     */
+    void prune() {
+      if (mySize <= myAllocationCountLimit || myFreeCount == 0) {
+        return;
+      }
+      int pruneCount = Math.min(myFreeCount, mySize - myAllocationCountLimit);
+      int[] newRows = new int[mySize];
+      for (int i = 0; i < pruneCount; i++) {
+        newRows[myFreeOrder[i]] = -1;
+      }
+      int kept = 0;
+      myRowsByTag = new TIntIntHashMap(mySize - pruneCount);
+      for (int row = 0; row < mySize; row++) {
+        if (newRows[row] < 0) {
+          continue;
+        }
+        newRows[row] = kept;
+        myTags[kept] = myTags[row];
+        myClassTags[kept] = myClassTags[row];
+        myAllocTimes[kept] = myAllocTimes[row];
+        myFreeTimes[kept] = myFreeTimes[row];
+        mySizes[kept] = mySizes[row];
+        myLengths[kept] = myLengths[row];
+        myThreadIds[kept] = myThreadIds[row];
+        myStackIds[kept] = myStackIds[row];
+        myHeapIds[kept] = myHeapIds[row];
+        myRowsByTag.put(myTags[kept], kept);
+        kept++;
+      }
+      mySize = kept;
+      int freeKept = 0;
+      for (int i = 0; i < myFreeCount; i++) {
+        int row = newRows[myFreeOrder[i]];
+        if (row >= 0) {
+          myFreeOrder[freeKept++] = row;
+        }
+      }
+      myFreeCount = freeKept;
+    }
+
+    /**
+     * @return the first row allocated at or after {@code time}, {@link #mySize} if there is none.
+     */
+    int firstAllocatedAtOrAfter(long time) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myAllocTimes[mid] < time) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the first index in {@link #myFreeOrder} freed at or after {@code time}, {@link #myFreeCount} if there is none.
+     */
+    int firstFreedAtOrAfter(long time) {
+      int low = 0;
+      int high = myFreeCount;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myFreeTimes[myFreeOrder[mid]] < time) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @NotNull
+    AllocationEvent toAllocationEvent(int row) {
+      return AllocationEvent.newBuilder()
+        .setAllocData(AllocationEvent.Allocation.newBuilder()
+                        .setTag(myTags[row]).setClassTag(myClassTags[row]).setSize(mySizes[row]).setLength(myLengths[row])
+                        .setThreadId(myThreadIds[row]).setStackId(myStackIds[row]).setHeapId(myHeapIds[row]))
+        .setTimestamp(myAllocTimes[row]).build();
+    }
+
+    @NotNull
+    AllocationEvent toDeallocationEvent(int row) {
+      return AllocationEvent.newBuilder()
+        .setFreeData(AllocationEvent.Deallocation.newBuilder()
+                       .setTag(myTags[row]).setClassTag(myClassTags[row]).setSize(mySizes[row]).setLength(myLengths[row])
+                       .setThreadId(myThreadIds[row]).setStackId(myStackIds[row]).setHeapId(myHeapIds[row]))
+        .setTimestamp(myFreeTimes[row]).build();
+    }
+
+    /**
+     * Makes room for a late allocation at {@code row}, moving the following rows by one.
+     */
+    private void shiftRows(int row) {
+      int count = mySize - row;
+      System.arraycopy(myTags, row, myTags, row + 1, count);
+      System.arraycopy(myClassTags, row, myClassTags, row + 1, count);
+      System.arraycopy(myAllocTimes, row, myAllocTimes, row + 1, count);
+      System.arraycopy(myFreeTimes, row, myFreeTimes, row + 1, count);
+      System.arraycopy(mySizes, row, mySizes, row + 1, count);
+      System.arraycopy(myLengths, row, myLengths, row + 1, count);
+      System.arraycopy(myThreadIds, row, myThreadIds, row + 1, count);
+      System.arraycopy(myStackIds, row, myStackIds, row + 1, count);
+      System.arraycopy(myHeapIds, row, myHeapIds, row + 1, count);
+      for (int moved = row + 1; moved <= mySize; moved++) {
+        myRowsByTag.put(myTags[moved], moved);
+      }
+      for (int i = 0; i < myFreeCount; i++) {
+        if (myFreeOrder[i] >= row) {
+          myFreeOrder[i]++;
+        }
+      }
+    }
+
+    private void grow(int capacity) {
+      myTags = Arrays.copyOf(myTags, capacity);
+      myClassTags = Arrays.copyOf(myClassTags, capacity);
+      myAllocTimes = Arrays.copyOf(myAllocTimes, capacity);
+      myFreeTimes = Arrays.copyOf(myFreeTimes, capacity);
+      mySizes = Arrays.copyOf(mySizes, capacity);
+      myLengths = Arrays.copyOf(myLengths, capacity);
+      myThreadIds = Arrays.copyOf(myThreadIds, capacity);
+      myStackIds = Arrays.copyOf(myStackIds, capacity);
+      myHeapIds = Arrays.copyOf(myHeapIds, capacity);
+    }
+  }
+}
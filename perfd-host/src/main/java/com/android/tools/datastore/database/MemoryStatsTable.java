@@ -28,6 +28,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.android.tools.datastore.database.MemoryStatsTable.MemoryStatements.*;
@@ -86,6 +87,18 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     GC_STATS
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    // GC events are not samples, only downsample the memory and allocation samples.
+    return Collections.singletonList(
+      new RetentionPolicy.Builder("Memory_Samples", "Session", "Timestamp")
+        .setGroupColumns("Type")
+        .setFilter(String.format("Type IN (%d, %d)", MemorySamplesType.MEMORY.ordinal(), MemorySamplesType.ALLOC_STATS.ordinal()))
+        .addDefaultTiers()
+        .build());
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -146,21 +159,21 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
 
   public void insertMemory(@NotNull Common.Session session, @NotNull List<MemoryData.MemorySample> samples) {
     for (MemoryData.MemorySample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
+      enqueue(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
               sample.toByteArray());
     }
   }
 
   public void insertAllocStats(@NotNull Common.Session session, @NotNull List<MemoryData.AllocStatsSample> samples) {
     for (MemoryData.AllocStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
+      enqueue(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
               sample.toByteArray());
     }
   }
 
   public void insertGcStats(@NotNull Common.Session session, @NotNull List<MemoryData.GcStatsSample> samples) {
     for (MemoryData.GcStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
+      enqueue(INSERT_SAMPLE, session.getSessionId(), sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
               sample.toByteArray());
     }
   }
@@ -31,16 +31,15 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     QUERY_NETWORK_DATA_BY_TYPE,
     QUERY_NETWORK_DATA,
     QUERY_COMMON_CONNECTION_DATA,
-    FIND_CONNECTION_DATA,
+    FIND_REQUEST_DATA,
+    FIND_RESPONSE_DATA,
+    FIND_REQUEST_BODY_DATA,
+    FIND_RESPONSE_BODY_DATA,
+    FIND_THREADS_DATA,
     INSERT_CONNECTION_DATA
   }
 
   private static final Map<NetworkProfiler.NetworkProfilerData.DataCase, Integer> DATACASE_REQUEST_TYPE_MAP = new HashMap<>();
-  private static final int REQUEST_COLUMN = 2;
-  private static final int RESPONSE_COLUMN = 3;
-  private static final int REQUEST_BODY_COLUMN = 4;
-  private static final int RESPONSE_BODY_COLUMN = 5;
-  private static final int THREADS_COLUMN = 6;
 
   static {
     DATACASE_REQUEST_TYPE_MAP
@@ -51,6 +50,19 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                                   NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY.getNumber());
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    // Connectivity changes are events, only downsample the speed and connection count samples.
+    return Collections.singletonList(
+      new RetentionPolicy.Builder("Network_Data", "Session", "EndTime")
+        .setGroupColumns("Type")
+        .setFilter(String.format("Type IN (%d, %d)", NetworkProfiler.NetworkDataRequest.Type.SPEED.getNumber(),
+                                 NetworkProfiler.NetworkDataRequest.Type.CONNECTIONS.getNumber()))
+        .addDefaultTiers()
+        .build());
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -64,6 +76,8 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                   "PRIMARY KEY(Session, Id)");
       createUniqueIndex("Network_Data", "Session", "Type", "EndTime");
       createUniqueIndex("Network_Connection", "Session", "Id");
+      // For the range queries of the connections list.
+      createIndex("Network_Connection", 0, "Session", "StartTime");
     }
     catch (SQLException ex) {
       onError(ex);
@@ -82,8 +96,14 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
 
       createStatement(NetworkStatements.QUERY_COMMON_CONNECTION_DATA,
                       "SELECT ConnectionData FROM Network_Connection WHERE Session = ? AND (EndTime > ? OR EndTime = 0) AND StartTime <= ?");
-      createStatement(NetworkStatements.FIND_CONNECTION_DATA,
-                      "SELECT ConnectionData, RequestData, ResponseData, RequestBodyData, ResponseBodyData, ThreadsData FROM Network_Connection WHERE Id = ? AND Session = ?");
+      // Each kind of details is queried on its own, so a query doesn't read the blobs of all the others.
+      createStatement(NetworkStatements.FIND_REQUEST_DATA, "SELECT RequestData FROM Network_Connection WHERE Id = ? AND Session = ?");
+      createStatement(NetworkStatements.FIND_RESPONSE_DATA, "SELECT ResponseData FROM Network_Connection WHERE Id = ? AND Session = ?");
+      createStatement(NetworkStatements.FIND_REQUEST_BODY_DATA,
+                      "SELECT RequestBodyData FROM Network_Connection WHERE Id = ? AND Session = ?");
+      createStatement(NetworkStatements.FIND_RESPONSE_BODY_DATA,
+                      "SELECT ResponseBodyData FROM Network_Connection WHERE Id = ? AND Session = ?");
+      createStatement(NetworkStatements.FIND_THREADS_DATA, "SELECT ThreadsData FROM Network_Connection WHERE Id = ? AND Session = ?");
       createStatement(NetworkStatements.INSERT_CONNECTION_DATA,
                       "INSERT OR REPLACE INTO Network_Connection (Session, Id, StartTime, EndTime, ConnectionData, RequestData, ResponseData, RequestBodyData, ResponseBodyData, ThreadsData) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     }
@@ -138,25 +158,27 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   }
 
   public void insert(@NotNull Common.Session session, NetworkProfiler.NetworkProfilerData data) {
-    execute(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
+    enqueue(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
             data.getEndTimestamp(), data.toByteArray());
   }
 
   public NetworkProfiler.HttpDetailsResponse getHttpDetailsResponseById(long connId,
                                                                         Common.Session session,
                                                                         NetworkProfiler.HttpDetailsRequest.Type type) {
+    Optional<NetworkStatements> statement = statementFor(type);
+    if (!statement.isPresent()) {
+      return null;
+    }
+
     NetworkProfiler.HttpDetailsResponse.Builder responseBuilder = NetworkProfiler.HttpDetailsResponse.newBuilder();
     try {
-      ResultSet results = executeQuery(NetworkStatements.FIND_CONNECTION_DATA, connId, session.getSessionId());
+      ResultSet results = executeQuery(statement.get(), connId, session.getSessionId());
       if (results.next()) {
-        Optional<Integer> column = columnFor(type);
-        if (column.isPresent()) {
-          byte[] responseBytes = results.getBytes(column.get());
-          if (responseBytes != null) {
-            responseBuilder.mergeFrom(responseBytes);
-          }
-          return responseBuilder.build();
+        byte[] responseBytes = results.getBytes(1);
+        if (responseBytes != null) {
+          responseBuilder.mergeFrom(responseBytes);
         }
+        return responseBuilder.build();
       }
     }
     catch (InvalidProtocolBufferException | SQLException ex) {
@@ -165,18 +187,18 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
     return null;
   }
 
-  private Optional<Integer> columnFor(NetworkProfiler.HttpDetailsRequest.Type type) {
+  private static Optional<NetworkStatements> statementFor(NetworkProfiler.HttpDetailsRequest.Type type) {
     switch (type) {
       case REQUEST:
-        return Optional.of(REQUEST_COLUMN);
+        return Optional.of(NetworkStatements.FIND_REQUEST_DATA);
       case RESPONSE:
-        return Optional.of(RESPONSE_COLUMN);
+        return Optional.of(NetworkStatements.FIND_RESPONSE_DATA);
       case REQUEST_BODY:
-        return Optional.of(REQUEST_BODY_COLUMN);
+        return Optional.of(NetworkStatements.FIND_REQUEST_BODY_DATA);
       case RESPONSE_BODY:
-        return Optional.of(RESPONSE_BODY_COLUMN);
+        return Optional.of(NetworkStatements.FIND_RESPONSE_BODY_DATA);
       case ACCESSING_THREADS:
-        return Optional.of(THREADS_COLUMN);
+        return Optional.of(NetworkStatements.FIND_THREADS_DATA);
       case UNSPECIFIED:
       case UNRECOGNIZED:
         return Optional.empty();
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long the rows of a time series table are kept, at which resolution. Rows older than the age of a {@link Tier} (relative to the
+ * latest row of the same session) are downsampled to at most one row per {@link Tier#getResolutionNs()}, the latest of each bucket. Rows
+ * older than {@link #getHorizonNs()} are dropped.
+ * <p>
+ * Keeping the latest row of a bucket is what makes downsampling correct for both gauges (e.g. memory usage) and cumulative counters
+ * (e.g. cpu time), whose deltas are still correct between the rows kept. Tables holding discrete events rather than samples must not be
+ * downsampled, or use {@link Builder#setFilter(String)} to only downsample their sampled rows.
+ */
+public final class RetentionPolicy {
+  public static final long KEEP_ALL = Long.MAX_VALUE;
+
+  @NotNull private final String myTable;
+  @NotNull private final String mySessionColumn;
+  @NotNull private final String myTimestampColumn;
+  @NotNull private final List<String> myGroupColumns;
+  @Nullable private final String myFilter;
+  @NotNull private final List<Tier> myTiers;
+  private final long myHorizonNs;
+
+  private RetentionPolicy(@NotNull Builder builder) {
+    myTable = builder.myTable;
+    mySessionColumn = builder.mySessionColumn;
+    myTimestampColumn = builder.myTimestampColumn;
+    myGroupColumns = Collections.unmodifiableList(new ArrayList<>(builder.myGroupColumns));
+    myFilter = builder.myFilter;
+    List<Tier> tiers = new ArrayList<>(builder.myTiers);
+    tiers.sort((a, b) -> Long.compare(a.myAgeNs, b.myAgeNs));
+    myTiers = Collections.unmodifiableList(tiers);
+    myHorizonNs = builder.myHorizonNs;
+  }
+
+  @NotNull
+  public String getTable() {
+    return myTable;
+  }
+
+  @NotNull
+  public String getSessionColumn() {
+    return mySessionColumn;
+  }
+
+  @NotNull
+  public String getTimestampColumn() {
+    return myTimestampColumn;
+  }
+
+  /**
+   * Columns distinguishing the series interleaved in the table, e.g. the sample type. Each series is downsampled separately.
+   */
+  @NotNull
+  public List<String> getGroupColumns() {
+    return myGroupColumns;
+  }
+
+  /**
+   * SQL condition restricting the rows which are downsampled, or null to downsample all of them.
+   */
+  @Nullable
+  public String getFilter() {
+    return myFilter;
+  }
+
+  /**
+   * The downsampling tiers, youngest first.
+   */
+  @NotNull
+  public List<Tier> getTiers() {
+    return myTiers;
+  }
+
+  /**
+   * Age past which rows are dropped, or {@link #KEEP_ALL}.
+   */
+  public long getHorizonNs() {
+    return myHorizonNs;
+  }
+
+  @NotNull
+  public RetentionPolicy withHorizonNs(long horizonNs) {
+    Builder builder = new Builder(myTable, mySessionColumn, myTimestampColumn)
+      .setGroupColumns(myGroupColumns.toArray(new String[0]))
+      .setFilter(myFilter)
+      .setHorizonNs(horizonNs);
+    for (Tier tier : myTiers) {
+      builder.addTier(tier.myAgeNs, tier.myResolutionNs);
+    }
+    return builder.build();
+  }
+
+  public static final class Tier {
+    private final long myAgeNs;
+    private final long myResolutionNs;
+
+    private Tier(long ageNs, long resolutionNs) {
+      assert ageNs >= 0 && resolutionNs > 0;
+      myAgeNs = ageNs;
+      myResolutionNs = resolutionNs;
+    }
+
+    public long getAgeNs() {
+      return myAgeNs;
+    }
+
+    public long getResolutionNs() {
+      return myResolutionNs;
+    }
+  }
+
+  public static final class Builder {
+    @NotNull private final String myTable;
+    @NotNull private final String mySessionColumn;
+    @NotNull private final String myTimestampColumn;
+    @NotNull private List<String> myGroupColumns = Collections.emptyList();
+    @Nullable private String myFilter;
+    @NotNull private final List<Tier> myTiers = new ArrayList<>();
+    private long myHorizonNs = KEEP_ALL;
+
+    public Builder(@NotNull String table, @NotNull String sessionColumn, @NotNull String timestampColumn) {
+      myTable = table;
+      mySessionColumn = sessionColumn;
+      myTimestampColumn = timestampColumn;
+    }
+
+    @NotNull
+    public Builder setGroupColumns(@NotNull String... columns) {
+      myGroupColumns = Arrays.asList(columns);
+      return this;
+    }
+
+    @NotNull
+    public Builder setFilter(@Nullable String filter) {
+      myFilter = filter;
+      return this;
+    }
+
+    /**
+     * Adds the tiers used by the sampled tables: one row per second past 10 minutes, and one per 10 seconds past an hour.
+     */
+    @NotNull
+    public Builder addDefaultTiers() {
+      return addTier(TimeUnit.MINUTES.toNanos(10), TimeUnit.SECONDS.toNanos(1))
+        .addTier(TimeUnit.HOURS.toNanos(1), TimeUnit.SECONDS.toNanos(10));
+    }
+
+    /**
+     * Keeps at most one row per {@code resolutionNs} once rows are older than {@code ageNs}.
+     */
+    @NotNull
+    public Builder addTier(long ageNs, long resolutionNs) {
+      myTiers.add(new Tier(ageNs, resolutionNs));
+      return this;
+    }
+
+    @NotNull
+    public Builder setHorizonNs(long horizonNs) {
+      assert horizonNs > 0;
+      myHorizonNs = horizonNs;
+      return this;
+    }
+
+    @NotNull
+    public RetentionPolicy build() {
+      return new RetentionPolicy(this);
+    }
+  }
+}
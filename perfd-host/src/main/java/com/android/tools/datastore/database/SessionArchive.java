@@ -0,0 +1,589 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps ended sessions on disk, outside of the datastore databases which are recreated on every start, so they can be reopened later
+ * without re-importing their data.
+ * <p>
+ * Each archived session is a directory holding one SQLite file per database namespace, with the session's rows of every table (the
+ * tables keyed by a Session or SessionId column, plus the session's device and process rows). When the datastore starts, only the
+ * Profiler_Sessions rows of the archived sessions are copied back, so they are listed right away. The rest of a session's rows are paged
+ * in the databases by {@link #pageIn(long)} when the session is first queried, and paged out again when more than
+ * {@link #getMaxPagedInSessions()} archived sessions are paged in, least recently used first.
+ * <p>
+ * The archives take at most {@link #getMaxArchiveSize()} bytes on disk. Past that, the least recently archived sessions are deleted,
+ * and no longer listed.
+ * <p>
+ * Every operation runs while the databases' {@link DataStoreWriter}s are flushed and held with
+ * {@link DataStoreWriter#runExclusively(Runnable)}, since they share the connections and commit on them.
+ */
+public final class SessionArchive {
+  /**
+   * Version of the archive files, stored as their SQLite user_version. Archives of another version are ignored, since the schema of
+   * the tables may have changed.
+   */
+  static final int FORMAT_VERSION = 1;
+  public static final int DEFAULT_MAX_PAGED_IN_SESSIONS = 2;
+  public static final long DEFAULT_MAX_ARCHIVE_SIZE = 1L << 30;
+
+  private static final String SESSIONS_TABLE = "Profiler_Sessions";
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  @NotNull private final File myDirectory;
+  /**
+   * Connections to the databases, by namespace.
+   */
+  @NotNull private final Map<String, Connection> myDatabases;
+  /**
+   * Write-behind writers of the databases, by namespace.
+   */
+  @NotNull private final Map<String, DataStoreWriter> myWriters;
+  private final int myMaxPagedInSessions;
+  private final long myMaxArchiveSize;
+
+  @NotNull private final Set<Long> myArchivedSessions = ConcurrentHashMap.newKeySet();
+  /**
+   * Archived sessions whose rows are in the databases, with the value of {@link #myUseCounter} when they were last used. Concurrent,
+   * so requests about a session which is already paged in don't wait for the sessions being archived or paged in.
+   */
+  @NotNull private final Map<Long, Long> myPagedInSessions = new ConcurrentHashMap<>();
+  @NotNull private final AtomicLong myUseCounter = new AtomicLong();
+  /**
+   * Sessions archived by this run, whose rows may still be written after they were archived, e.g. the last samples polled from the
+   * device. They are archived again before being paged out.
+   */
+  @NotNull private final Set<Long> myLiveSessions = new HashSet<>();
+
+  public SessionArchive(@NotNull File directory,
+                        @NotNull Map<String, Connection> databases,
+                        @NotNull Map<String, DataStoreWriter> writers) {
+    this(directory, databases, writers, DEFAULT_MAX_PAGED_IN_SESSIONS, DEFAULT_MAX_ARCHIVE_SIZE);
+  }
+
+  public SessionArchive(@NotNull File directory,
+                        @NotNull Map<String, Connection> databases,
+                        @NotNull Map<String, DataStoreWriter> writers,
+                        int maxPagedInSessions,
+                        long maxArchiveSize) {
+    assert maxPagedInSessions > 0;
+    myDirectory = directory;
+    myDatabases = new LinkedHashMap<>(databases);
+    myWriters = new LinkedHashMap<>(writers);
+    myMaxPagedInSessions = maxPagedInSessions;
+    myMaxArchiveSize = maxArchiveSize;
+  }
+
+  public int getMaxPagedInSessions() {
+    return myMaxPagedInSessions;
+  }
+
+  public long getMaxArchiveSize() {
+    return myMaxArchiveSize;
+  }
+
+  public boolean isArchived(long sessionId) {
+    return myArchivedSessions.contains(sessionId);
+  }
+
+  /**
+   * Marks the session as the most recently used if it is paged in. Doesn't wait for the other operations of the archive.
+   *
+   * @return whether the session is paged in, i.e. whether it can be queried without calling {@link #pageIn(long)}.
+   */
+  public boolean touchIfPagedIn(long sessionId) {
+    return myPagedInSessions.computeIfPresent(sessionId, (id, lastUse) -> myUseCounter.incrementAndGet()) != null;
+  }
+
+  /**
+   * Lists the sessions archived by previous runs: copies their Profiler_Sessions rows in the databases, unless a session with the same
+   * id is already there. Archives which are incomplete or of another format version are deleted, and so are the least recently archived
+   * sessions past {@link #getMaxArchiveSize()}.
+   *
+   * @return the ids of the archived sessions.
+   */
+  @NotNull
+  public synchronized List<Long> loadArchivedSessions() throws SQLException, IOException {
+    File[] files = myDirectory.listFiles();
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    List<Long> sessionIds = new ArrayList<>();
+    runExclusively(() -> {
+      for (File file : files) {
+        if (parseSessionId(file) == null || !isValidArchive(file)) {
+          deleteRecursively(file);
+        }
+      }
+      prune(Collections.emptySet());
+      for (File file : listArchives()) {
+        long sessionId = parseSessionId(file);
+        for (Map.Entry<String, Connection> database : myDatabases.entrySet()) {
+          File archiveFile = new File(file, database.getKey());
+          if (archiveFile.exists()) {
+            copyRows(archiveFile, database.getValue(), Collections.singleton(SESSIONS_TABLE), "INSERT OR IGNORE");
+          }
+        }
+        myArchivedSessions.add(sessionId);
+        sessionIds.add(sessionId);
+      }
+    });
+    return sessionIds;
+  }
+
+  /**
+   * Writes the rows of the session to its archive, replacing any previous archive of the session. The session's rows stay in the
+   * databases, as if it was paged in, and are archived again when paged out, to include the rows written in the meantime. Then the least
+   * recently archived sessions which aren't paged in are deleted past {@link #getMaxArchiveSize()}.
+   */
+  public synchronized void archive(long sessionId) throws SQLException, IOException {
+    runExclusively(() -> writeArchive(sessionId));
+    myArchivedSessions.add(sessionId);
+    myLiveSessions.add(sessionId);
+    touch(sessionId);
+    runExclusively(() -> prune(new HashSet<>(myPagedInSessions.keySet())));
+  }
+
+  /**
+   * Copies the rows of an archived session back in the databases, if they aren't there already. Does nothing for sessions which aren't
+   * archived, e.g. the one being profiled.
+   */
+  public void pageIn(long sessionId) throws SQLException, IOException {
+    if (!myArchivedSessions.contains(sessionId)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (myPagedInSessions.containsKey(sessionId)) {
+        touch(sessionId);
+        return;
+      }
+
+      File directory = new File(myDirectory, Long.toString(sessionId));
+      runExclusively(() -> {
+        for (Map.Entry<String, Connection> database : myDatabases.entrySet()) {
+          File archiveFile = new File(directory, database.getKey());
+          if (archiveFile.exists()) {
+            copyRows(archiveFile, database.getValue(), null, "INSERT OR REPLACE");
+          }
+        }
+      });
+      touch(sessionId);
+    }
+  }
+
+  /**
+   * Deletes the archive of the session. Its rows in the databases, if any, are left as is.
+   */
+  public synchronized void delete(long sessionId) {
+    myArchivedSessions.remove(sessionId);
+    myPagedInSessions.remove(sessionId);
+    myLiveSessions.remove(sessionId);
+    deleteRecursively(new File(myDirectory, Long.toString(sessionId)));
+  }
+
+  /**
+   * Marks the session as the most recently used, paging out the least recently used sessions past the limit.
+   */
+  private void touch(long sessionId) throws SQLException, IOException {
+    myPagedInSessions.put(sessionId, myUseCounter.incrementAndGet());
+    while (myPagedInSessions.size() > myMaxPagedInSessions) {
+      long evicted = Collections.min(myPagedInSessions.entrySet(), Map.Entry.comparingByValue()).getKey();
+      myPagedInSessions.remove(evicted);
+      pageOut(evicted);
+    }
+  }
+
+  /**
+   * Deletes the session's rows from the databases, except for its Profiler_Sessions row which keeps it listed, and the device and
+   * process rows which may be shared with other sessions. Sessions archived by this run are archived again first, so no row written
+   * since is lost.
+   */
+  private void pageOut(long sessionId) throws SQLException, IOException {
+    runExclusively(() -> {
+      if (myLiveSessions.remove(sessionId)) {
+        writeArchive(sessionId);
+      }
+      for (Connection connection : myDatabases.values()) {
+        for (TableInfo table : getTables(connection)) {
+          String sessionColumn = table.getSessionColumn();
+          if (sessionColumn == null || table.myName.equals(SESSIONS_TABLE)) {
+            continue;
+          }
+          try (PreparedStatement statement = connection.prepareStatement(
+            String.format("DELETE FROM %s WHERE %s = ?", table.myName, sessionColumn))) {
+            statement.setLong(1, sessionId);
+            statement.executeUpdate();
+          }
+        }
+        connection.commit();
+      }
+    });
+  }
+
+  /**
+   * Deletes the least recently archived sessions, except for {@code keptSessions}, until the archives take at most
+   * {@link #getMaxArchiveSize()} bytes. The Profiler_Sessions rows of the deleted sessions are deleted too, so they are no longer listed.
+   */
+  private void prune(@NotNull Set<Long> keptSessions) throws SQLException {
+    List<File> archives = listArchives();
+    // Archives are written again when paged out, so the most recently used sessions are kept first.
+    archives.sort(Comparator.comparingLong(File::lastModified).reversed());
+    long size = 0;
+    for (File archive : archives) {
+      long sessionId = parseSessionId(archive);
+      long archiveSize = sizeOf(archive);
+      if (keptSessions.contains(sessionId) || size + archiveSize <= myMaxArchiveSize) {
+        size += archiveSize;
+        continue;
+      }
+
+      myArchivedSessions.remove(sessionId);
+      myLiveSessions.remove(sessionId);
+      deleteRecursively(archive);
+      for (Connection connection : myDatabases.values()) {
+        if (getTables(connection).stream().noneMatch(table -> table.myName.equals(SESSIONS_TABLE))) {
+          continue;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + SESSIONS_TABLE + " WHERE SessionId = ?")) {
+          statement.setLong(1, sessionId);
+          statement.executeUpdate();
+        }
+        connection.commit();
+      }
+    }
+  }
+
+  /**
+   * @return the directories of the complete archives.
+   */
+  @NotNull
+  private List<File> listArchives() {
+    List<File> archives = new ArrayList<>();
+    File[] files = myDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (parseSessionId(file) != null) {
+          archives.add(file);
+        }
+      }
+    }
+    return archives;
+  }
+
+  /**
+   * Runs {@code task} while every writer is held with {@link DataStoreWriter#runExclusively(Runnable)}, after flushing them so the rows
+   * they buffer are in the databases.
+   */
+  private void runExclusively(@NotNull ArchiveTask task) throws SQLException, IOException {
+    Exception[] failure = new Exception[1];
+    runExclusively(new ArrayList<>(myWriters.values()), 0, () -> {
+      try {
+        myWriters.values().forEach(DataStoreWriter::flush);
+        task.run();
+      }
+      catch (SQLException | IOException e) {
+        failure[0] = e;
+      }
+    });
+    if (failure[0] instanceof SQLException) {
+      throw (SQLException)failure[0];
+    }
+    if (failure[0] instanceof IOException) {
+      throw (IOException)failure[0];
+    }
+  }
+
+  private static void runExclusively(@NotNull List<DataStoreWriter> writers, int index, @NotNull Runnable task) {
+    if (index == writers.size()) {
+      task.run();
+    }
+    else {
+      writers.get(index).runExclusively(() -> runExclusively(writers, index + 1, task));
+    }
+  }
+
+  /**
+   * Writes the archive of the session, replacing the previous one if any. The archive only becomes visible once complete.
+   */
+  private void writeArchive(long sessionId) throws SQLException, IOException {
+    File directory = new File(myDirectory, Long.toString(sessionId));
+    File tempDirectory = new File(myDirectory, sessionId + TEMP_SUFFIX);
+    deleteRecursively(tempDirectory);
+    if (!tempDirectory.mkdirs()) {
+      throw new IOException("Unable to create " + tempDirectory);
+    }
+
+    for (Map.Entry<String, Connection> database : myDatabases.entrySet()) {
+      writeArchive(sessionId, database.getValue(), new File(tempDirectory, database.getKey()));
+    }
+
+    deleteRecursively(directory);
+    if (!tempDirectory.renameTo(directory)) {
+      deleteRecursively(tempDirectory);
+      throw new IOException("Unable to create " + directory);
+    }
+  }
+
+  private static void writeArchive(long sessionId, @NotNull Connection source, @NotNull File file) throws SQLException {
+    List<TableInfo> tables = getTables(source);
+    Object[] deviceAndProcess = findDeviceAndProcess(source, tables, sessionId);
+    try (Connection archive = DriverManager.getConnection(String.format("jdbc:sqlite:%s", file.getPath()))) {
+      archive.setAutoCommit(false);
+      try (Statement statement = archive.createStatement()) {
+        statement.execute("PRAGMA user_version = " + FORMAT_VERSION);
+      }
+      for (TableInfo table : tables) {
+        String where;
+        Object[] params;
+        if (table.getSessionColumn() != null) {
+          where = table.getSessionColumn() + " = ?";
+          params = new Object[]{sessionId};
+        }
+        else if (deviceAndProcess != null && table.myColumns.contains("DeviceId") && table.myColumns.contains("ProcessId")) {
+          where = "DeviceId = ? AND ProcessId = ?";
+          params = deviceAndProcess;
+        }
+        else if (deviceAndProcess != null && table.myColumns.contains("DeviceId")) {
+          where = "DeviceId = ?";
+          params = new Object[]{deviceAndProcess[0]};
+        }
+        else {
+          continue;
+        }
+
+        try (Statement statement = archive.createStatement()) {
+          statement.execute(table.mySql);
+        }
+        try (PreparedStatement select = source.prepareStatement(String.format("SELECT * FROM %s WHERE %s", table.myName, where))) {
+          for (int i = 0; i < params.length; i++) {
+            select.setObject(i + 1, params[i]);
+          }
+          try (ResultSet rows = select.executeQuery()) {
+            insertRows(rows, archive, table, "INSERT");
+          }
+        }
+      }
+      archive.commit();
+    }
+  }
+
+  /**
+   * Copies the rows of the archive's tables which exist with the same columns in the destination database.
+   *
+   * @param tableNames the tables to copy, or null to copy all of them.
+   * @param insertVerb how to insert the rows, e.g. INSERT OR REPLACE.
+   */
+  private static void copyRows(@NotNull File archiveFile,
+                               @NotNull Connection destination,
+                               @Nullable Set<String> tableNames,
+                               @NotNull String insertVerb) throws SQLException {
+    Map<String, TableInfo> destinationTables = new LinkedHashMap<>();
+    for (TableInfo table : getTables(destination)) {
+      destinationTables.put(table.myName, table);
+    }
+
+    try (Connection archive = DriverManager.getConnection(String.format("jdbc:sqlite:%s", archiveFile.getPath()))) {
+      for (TableInfo table : getTables(archive)) {
+        TableInfo destinationTable = destinationTables.get(table.myName);
+        if ((tableNames != null && !tableNames.contains(table.myName)) ||
+            destinationTable == null || !destinationTable.myColumns.equals(table.myColumns)) {
+          continue;
+        }
+        // Device and process rows of the live databases are more up to date than the archived ones.
+        String verb = table.getSessionColumn() == null ? "INSERT OR IGNORE" : insertVerb;
+        try (Statement select = archive.createStatement();
+             ResultSet rows = select.executeQuery("SELECT * FROM " + table.myName)) {
+          insertRows(rows, destination, table, verb);
+        }
+      }
+    }
+    destination.commit();
+  }
+
+  private static void insertRows(@NotNull ResultSet rows, @NotNull Connection destination, @NotNull TableInfo table,
+                                 @NotNull String insertVerb) throws SQLException {
+    int columnCount = table.myColumns.size();
+    String placeholders = String.join(", ", Collections.nCopies(columnCount, "?"));
+    try (PreparedStatement insert = destination.prepareStatement(
+      String.format("%s INTO %s (%s) VALUES (%s)", insertVerb, table.myName, String.join(", ", table.myColumns), placeholders))) {
+      int pending = 0;
+      while (rows.next()) {
+        for (int i = 1; i <= columnCount; i++) {
+          insert.setObject(i, rows.getObject(i));
+        }
+        insert.addBatch();
+        if (++pending == DataStoreWriter.DEFAULT_FLUSH_BATCH_SIZE) {
+          insert.executeBatch();
+          pending = 0;
+        }
+      }
+      if (pending > 0) {
+        insert.executeBatch();
+      }
+    }
+  }
+
+  /**
+   * @return the device id and pid of the session, or null if the database doesn't know the session.
+   */
+  @Nullable
+  private static Object[] findDeviceAndProcess(@NotNull Connection connection, @NotNull List<TableInfo> tables, long sessionId)
+    throws SQLException {
+    boolean hasSessionsTable = tables.stream().anyMatch(table -> table.myName.equals(SESSIONS_TABLE));
+    if (!hasSessionsTable) {
+      return null;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(
+      "SELECT DeviceId, ProcessId FROM " + SESSIONS_TABLE + " WHERE SessionId = ?")) {
+      statement.setLong(1, sessionId);
+      try (ResultSet results = statement.executeQuery()) {
+        return results.next() ? new Object[]{results.getLong(1), results.getLong(2)} : null;
+      }
+    }
+  }
+
+  @NotNull
+  private static List<TableInfo> getTables(@NotNull Connection connection) throws SQLException {
+    List<TableInfo> tables = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery("SELECT name, sql FROM sqlite_master WHERE type = 'table'")) {
+      while (results.next()) {
+        tables.add(new TableInfo(results.getString(1), results.getString(2)));
+      }
+    }
+    for (TableInfo table : tables) {
+      try (Statement statement = connection.createStatement();
+           ResultSet results = statement.executeQuery(String.format("PRAGMA table_info(%s)", table.myName))) {
+        while (results.next()) {
+          table.myColumns.add(results.getString("name"));
+        }
+      }
+    }
+    return tables;
+  }
+
+  private static long sizeOf(@NotNull File file) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      return file.length();
+    }
+    long size = 0;
+    for (File child : children) {
+      size += sizeOf(child);
+    }
+    return size;
+  }
+
+  private static void deleteRecursively(@NotNull File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  @Nullable
+  private static Long parseSessionId(@NotNull File file) {
+    if (!file.isDirectory()) {
+      return null;
+    }
+    try {
+      return Long.parseLong(file.getName());
+    }
+    catch (NumberFormatException e) {
+      // Including the directories of archives which were not completely written.
+      return null;
+    }
+  }
+
+  private boolean isValidArchive(@NotNull File directory) {
+    boolean hasSessionRow = false;
+    for (String namespace : myDatabases.keySet()) {
+      File file = new File(directory, namespace);
+      if (!file.exists()) {
+        continue;
+      }
+      try (Connection archive = DriverManager.getConnection(String.format("jdbc:sqlite:%s", file.getPath()));
+           Statement statement = archive.createStatement();
+           ResultSet version = statement.executeQuery("PRAGMA user_version")) {
+        if (!version.next() || version.getInt(1) != FORMAT_VERSION) {
+          return false;
+        }
+        hasSessionRow |= getTables(archive).stream().anyMatch(table -> table.myName.equals(SESSIONS_TABLE));
+      }
+      catch (SQLException e) {
+        return false;
+      }
+    }
+    return hasSessionRow;
+  }
+
+  private interface ArchiveTask {
+    void run() throws SQLException, IOException;
+  }
+
+  private static final class TableInfo {
+    @NotNull private final String myName;
+    @NotNull private final String mySql;
+    @NotNull private final List<String> myColumns = new ArrayList<>();
+
+    private TableInfo(@NotNull String name, @NotNull String sql) {
+      myName = name;
+      mySql = sql;
+    }
+
+    /**
+     * @return the column holding the session id of the rows, or null if the rows don't belong to a session.
+     */
+    @Nullable
+    String getSessionColumn() {
+      if (myColumns.contains("Session")) {
+        return "Session";
+      }
+      if (myColumns.contains("SessionId")) {
+        return "SessionId";
+      }
+      return null;
+    }
+  }
+}
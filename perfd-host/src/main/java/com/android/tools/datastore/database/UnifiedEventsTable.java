@@ -26,6 +26,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -60,6 +61,13 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    // Events are never downsampled, as begin and end events must be kept in pairs. Only a horizon can be set.
+    return Collections.singletonList(new RetentionPolicy.Builder("UnifiedEventsTable", "SessionId", "Timestamp").build());
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
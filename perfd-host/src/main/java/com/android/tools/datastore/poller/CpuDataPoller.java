@@ -60,7 +60,7 @@ public class CpuDataPoller extends PollRunner {
                        @NotNull CpuTable table,
                        @NotNull CpuServiceGrpc.CpuServiceBlockingStub pollingService,
                        @NotNull LogService logService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     myCpuTable = table;
     myPollingService = pollingService;
     mySession = session;
@@ -74,6 +74,7 @@ public class CpuDataPoller extends PollRunner {
     CpuProfiler.CpuDataRequest.Builder request = CpuProfiler.CpuDataRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getDataStartNs).setEndTimestamp(Long.MAX_VALUE);
     CpuProfiler.CpuDataResponse response = myPollingService.getData(request.build());
+    boolean hasNewData = response.getDataCount() > 0;
     for (CpuProfiler.CpuUsageData data : response.getDataList()) {
       getDataStartNs = Math.max(getDataStartNs, data.getEndTimestamp());
       myCpuTable.insert(mySession, data);
@@ -97,6 +98,7 @@ public class CpuDataPoller extends PollRunner {
       List<CpuProfiler.GetThreadsResponse.ThreadActivity> activities = thread.getActivitiesList();
       int count = thread.getActivitiesCount();
       if (count > 0) {
+        hasNewData = true;
         CpuProfiler.GetThreadsResponse.ThreadActivity last = activities.get(count - 1);
         getThreadsStartNs = Math.max(getThreadsStartNs, last.getTimestamp());
       }
@@ -144,6 +146,9 @@ public class CpuDataPoller extends PollRunner {
       }
     }
     myTraceInfoRequestStartTimestampNs = traceInfoResponse.getResponseTimestamp();
+    if (!hasNewData && traceInfoResponse.getTraceInfoCount() == 0) {
+      reportIdle();
+    }
 
     myDataRequestStartTimestampNs = Math.max(Math.max(myDataRequestStartTimestampNs + 1, getDataStartNs), getThreadsStartNs);
   }
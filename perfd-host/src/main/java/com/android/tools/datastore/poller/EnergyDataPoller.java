@@ -69,7 +69,7 @@ public final class EnergyDataPoller extends PollRunner {
                           @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
                           @NotNull EnergyServiceGrpc.EnergyServiceBlockingStub energyService,
                           @NotNull LogService logService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     myBatteryModel = batteryModel;
     myEnergyTable = eventTable;
     myProfilerService = profilerService;
@@ -36,7 +36,7 @@ public class EventDataPoller extends PollRunner {
   public EventDataPoller(@NotNull Common.Session session,
                          @NotNull EventsTable eventTable,
                          @NotNull EventServiceGrpc.EventServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     myEventsTable = eventTable;
     myEventPollingService = pollingService;
     mySession = session;
@@ -42,7 +42,7 @@ public class MemoryDataPoller extends PollRunner {
                           @NotNull MemoryStatsTable statsTable,
                           @NotNull MemoryServiceGrpc.MemoryServiceBlockingStub pollingService,
                           @NotNull Consumer<Runnable> fetchExecutor) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     mySession = session;
     myMemoryStatsTable = statsTable;
     myPollingService = pollingService;
@@ -147,6 +147,10 @@ public class MemoryDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    if (response.getMemSamplesCount() == 0 && response.getAllocStatsSamplesCount() == 0 && response.getGcStatsSamplesCount() == 0 &&
+        response.getAllocationsInfoCount() == 0 && response.getHeapDumpInfosCount() == 0) {
+      reportIdle();
+    }
   }
 
   private void fetchLegacyAllocData(@NotNull List<AllocationsInfo> dumpsToFetch) {
@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore.poller;
 
+import com.android.tools.datastore.database.LiveAllocationIndex;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
@@ -28,14 +29,17 @@ public class MemoryJvmtiDataPoller extends PollRunner {
   private long myDataRequestStartTimestampNs = Long.MIN_VALUE;
   private final MemoryServiceGrpc.MemoryServiceBlockingStub myPollingService;
   private final MemoryLiveAllocationTable myLiveAllocationTable;
+  private final LiveAllocationIndex myAllocationIndex;
   private final Common.Session mySession;
 
   public MemoryJvmtiDataPoller(@NotNull Common.Session session,
                                @NotNull MemoryLiveAllocationTable liveAllocationTable,
+                               @NotNull LiveAllocationIndex allocationIndex,
                                @NotNull MemoryServiceGrpc.MemoryServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     mySession = session;
     myLiveAllocationTable = liveAllocationTable;
+    myAllocationIndex = allocationIndex;
     myPollingService = pollingService;
   }
 
@@ -50,6 +54,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
       myLiveAllocationTable.insertStackInfo(mySession, sample.getStacksList());
       myLiveAllocationTable.insertThreadInfo(mySession, sample.getThreadInfosList());
       myLiveAllocationTable.insertAllocationData(mySession, sample);
+      myAllocationIndex.insertAllocationData(mySession.getSessionId(), sample);
     }
     for (MemoryProfiler.BatchJNIGlobalRefEvent batchJniEvent : response.getJniReferenceEventBatchesList()) {
       myLiveAllocationTable.insertThreadInfo(mySession, batchJniEvent.getThreadInfosList());
@@ -61,5 +66,9 @@ public class MemoryJvmtiDataPoller extends PollRunner {
     if (response.getEndTimestamp() > myDataRequestStartTimestampNs) {
       myDataRequestStartTimestampNs = response.getEndTimestamp();
     }
+    if (response.getAllocationSamplesCount() == 0 && response.getJniReferenceEventBatchesCount() == 0 &&
+        response.getAllocSamplingRateEventsCount() == 0) {
+      reportIdle();
+    }
   }
 }
\ No newline at end of file
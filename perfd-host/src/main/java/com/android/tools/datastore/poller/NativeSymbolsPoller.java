@@ -21,6 +21,7 @@ import com.android.tools.datastore.database.ProfilerTable;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NopSymbolizer;
 import com.android.tools.nativeSymbolizer.Symbol;
+import com.android.tools.nativeSymbolizer.SymbolRequest;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.NativeCallStack;
 import com.android.tools.profiler.proto.Profiler;
@@ -34,6 +35,10 @@ import java.util.List;
 
 public class NativeSymbolsPoller extends PollRunner {
   private static final int MAX_SYMBOLS_PER_REQUEST = 1000;
+  /**
+   * Bounds the time spent in one poll, the remaining frames are picked up by the next one.
+   */
+  private static final int MAX_REQUESTS_PER_POLL = 50;
 
   @NotNull
   private final MemoryLiveAllocationTable myLiveAllocationTable;
@@ -54,7 +59,7 @@ public class NativeSymbolsPoller extends PollRunner {
                              @NotNull NativeSymbolizer symbolizer,
                              @NotNull ProfilerServiceGrpc.ProfilerServiceBlockingStub profilerService,
                              @NotNull LogService logService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     mySession = session;
     myLiveAllocationTable = liveAllocationTable;
     mySymbolizer = symbolizer;
@@ -62,9 +67,18 @@ public class NativeSymbolsPoller extends PollRunner {
     myLogService = logService;
   }
 
+  /**
+   * Each poll can run up to {@link #MAX_REQUESTS_PER_POLL} batches through the symbolizer.
+   */
+  @Override
+  public boolean isBlocking() {
+    return true;
+  }
+
   @Override
   public void poll() {
     if (mySymbolizer instanceof NopSymbolizer) {
+      reportIdle();
       return;
     }
 
@@ -72,21 +86,24 @@ public class NativeSymbolsPoller extends PollRunner {
       myProcess = findProcess();
       if (myProcess == null) {
         // Can't find a process in the database. Nothing to do.
+        reportIdle();
         return;
       }
     }
 
-    List<NativeCallStack.NativeFrame> framesToSymbolize =
-      myLiveAllocationTable.queryNotsymbolizedNativeFrames(mySession, MAX_SYMBOLS_PER_REQUEST);
-    ArrayList<NativeCallStack.NativeFrame> symbolizedFrames = new ArrayList<>(framesToSymbolize.size());
-
-    for (NativeCallStack.NativeFrame frame : framesToSymbolize) {
-      NativeCallStack.NativeFrame symbolizedFrame = symbolize(frame);
-      symbolizedFrames.add(symbolizedFrame);
-    }
-
-    if (!symbolizedFrames.isEmpty()) {
-      myLiveAllocationTable.updateSymbolizedNativeFrames(mySession, symbolizedFrames);
+    // Keep going while there is a backlog, the symbolizer answers a whole batch in a few round trips.
+    for (int i = 0; i < MAX_REQUESTS_PER_POLL; i++) {
+      List<NativeCallStack.NativeFrame> framesToSymbolize =
+        myLiveAllocationTable.queryNotsymbolizedNativeFrames(mySession, MAX_SYMBOLS_PER_REQUEST);
+      if (!framesToSymbolize.isEmpty()) {
+        myLiveAllocationTable.updateSymbolizedNativeFrames(mySession, symbolize(framesToSymbolize));
+      }
+      else if (i == 0) {
+        reportIdle();
+      }
+      if (framesToSymbolize.size() < MAX_SYMBOLS_PER_REQUEST) {
+        break;
+      }
     }
   }
 
@@ -103,18 +120,30 @@ public class NativeSymbolsPoller extends PollRunner {
   }
 
   @NotNull
-  private NativeCallStack.NativeFrame symbolize(NativeCallStack.NativeFrame frame) {
-    long offset = frame.getModuleOffset();
-    Symbol symbol = null;
+  private List<NativeCallStack.NativeFrame> symbolize(@NotNull List<NativeCallStack.NativeFrame> frames) {
+    List<SymbolRequest> requests = new ArrayList<>(frames.size());
+    for (NativeCallStack.NativeFrame frame : frames) {
+      requests.add(new SymbolRequest(frame.getModuleName(), getOffsetOfPreviousInstruction(frame.getModuleOffset())));
+    }
+    List<Symbol> symbols = null;
     try {
-      long prevInstructionOffset = getOffsetOfPreviousInstruction(offset);
-      symbol = mySymbolizer.symbolize(myProcess.getAbiCpuArch(), frame.getModuleName(), prevInstructionOffset);
+      symbols = mySymbolizer.symbolize(myProcess.getAbiCpuArch(), requests);
     }
     catch (IOException | RuntimeException e) {
       getLogger().warn(e);
     }
+
+    List<NativeCallStack.NativeFrame> symbolizedFrames = new ArrayList<>(frames.size());
+    for (int i = 0; i < frames.size(); i++) {
+      symbolizedFrames.add(symbolize(frames.get(i), symbols == null ? null : symbols.get(i)));
+    }
+    return symbolizedFrames;
+  }
+
+  @NotNull
+  private static NativeCallStack.NativeFrame symbolize(@NotNull NativeCallStack.NativeFrame frame, @Nullable Symbol symbol) {
     if (symbol == null) {
-      String unfoundSymbolName = String.format("0x%x", offset);
+      String unfoundSymbolName = String.format("0x%x", frame.getModuleOffset());
       return frame.toBuilder().setSymbolName(unfoundSymbolName).build();
     }
     return frame.toBuilder().setSymbolName(symbol.getName())
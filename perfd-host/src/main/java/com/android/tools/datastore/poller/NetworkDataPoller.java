@@ -35,7 +35,7 @@ public class NetworkDataPoller extends PollRunner {
   public NetworkDataPoller(@NotNull Common.Session session,
                            @NotNull NetworkTable table,
                            @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, session);
     mySession = session;
     myNetworkTable = table;
     myPollingService = pollingService;
@@ -52,10 +52,15 @@ public class NetworkDataPoller extends PollRunner {
       myDataRequestStartTimestampNs = Math.max(myDataRequestStartTimestampNs, data.getEndTimestamp());
       myNetworkTable.insert(mySession, data);
     }
-    pollHttpRange();
+    if (!pollHttpRange() && response.getDataCount() == 0) {
+      reportIdle();
+    }
   }
 
-  private void pollHttpRange() {
+  /**
+   * @return whether there were any connections to update.
+   */
+  private boolean pollHttpRange() {
     HttpRangeRequest.Builder requestBuilder = HttpRangeRequest
       .newBuilder().setSession(mySession).setStartTimestamp(myHttpRangeRequestStartTimeNs).setEndTimestamp(Long.MAX_VALUE);
     HttpRangeResponse httpRange = myPollingService.getHttpRange(requestBuilder.build());
@@ -85,6 +90,7 @@ public class NetworkDataPoller extends PollRunner {
       threads = pollHttpDetails(connection.getConnId(), HttpDetailsRequest.Type.ACCESSING_THREADS);
       myNetworkTable.insertOrReplace(mySession, request, response, requestBody, responseBody, threads, connection);
     }
+    return httpRange.getDataCount() > 0;
   }
 
   private HttpDetailsResponse pollHttpDetails(long id, HttpDetailsRequest.Type type) {
@@ -15,7 +15,12 @@
  */
 package com.android.tools.datastore.poller;
 
+import com.android.tools.adtui.model.metrics.LatencyHistogram;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
+import com.android.tools.profiler.proto.Common;
 import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RunnableFuture;
@@ -24,22 +29,88 @@ import java.util.concurrent.TimeUnit;
 /**
  * A {@link RunnableFuture} which, while running, triggers a callback at a specified period
  * (which can be used to poll a target service at some frequency).
+ * <p>
+ * When bound to a {@link PollScheduler}, {@link #run()} hands the runner over to the scheduler and returns right away. The scheduler
+ * then calls {@link #poll()} from its own threads, less often while the polls report nothing new (see {@link #reportIdle()}).
  */
 public abstract class PollRunner implements RunnableFuture<Void> {
 
   public static final long POLLING_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(250);
 
+  /**
+   * Session or device id of a runner which doesn't poll a single session or device.
+   */
+  public static final long NO_SESSION = Long.MIN_VALUE;
+  public static final long NO_DEVICE = Long.MIN_VALUE;
+
   private long myPollPeriodNs;
 
+  private final long myDeviceId;
+
+  private final long mySessionId;
+
+  @Nullable private volatile PollScheduler myScheduler;
+
+  // Guarded by the PollScheduler the runner is bound to.
+  long myNextPollNs;
+
+  private volatile int myIdlePollCount;
+
+  private boolean myLastPollIdle;
+
   private boolean myIsRunning = false;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  private final LatencyHistogram myPollLatency = MetricsRegistry.getInstance().getHistogram("poll." + getClass().getSimpleName());
 
   public PollRunner(long pollPeriodNs) {
+    this(pollPeriodNs, NO_DEVICE, NO_SESSION);
+  }
+
+  public PollRunner(long pollPeriodNs, @NotNull Common.Session session) {
+    this(pollPeriodNs, session.getDeviceId(), session.getSessionId());
+  }
+
+  public PollRunner(long pollPeriodNs, long deviceId, long sessionId) {
     myPollPeriodNs = pollPeriodNs;
+    myDeviceId = deviceId;
+    mySessionId = sessionId;
+  }
+
+  public long getPollPeriodNs() {
+    return myPollPeriodNs;
+  }
+
+  /**
+   * @return the device this runner polls, which the {@link PollScheduler} uses to poll all the runners of a device together.
+   */
+  public long getDeviceId() {
+    return myDeviceId;
+  }
+
+  /**
+   * @return the session this runner polls, which the {@link PollScheduler} polls more often while it is shown.
+   */
+  public long getSessionId() {
+    return mySessionId;
+  }
+
+  /**
+   * @return whether a poll can take much longer than a request to the device, e.g. because it runs an external tool, in which case the
+   * {@link PollScheduler} polls this runner from a task of its own rather than with the other runners of its device.
+   */
+  public boolean isBlocking() {
+    return false;
+  }
+
+  /**
+   * Makes {@link #run()} schedule this runner on {@code scheduler} instead of polling on the calling thread.
+   */
+  public void setScheduler(@Nullable PollScheduler scheduler) {
+    myScheduler = scheduler;
   }
 
   public void stop() {
@@ -54,11 +125,19 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   @Override
   public void run() {
+    PollScheduler scheduler = myScheduler;
+    if (scheduler != null) {
+      myIsRunning = true;
+      scheduler.schedule(this);
+      return;
+    }
+
     try {
       myIsRunning = true;
       while (myRunning.getCount() > 0) {
         long startTimeNs = System.nanoTime();
         poll();
+        myPollLatency.record(System.nanoTime() - startTimeNs);
         long sleepTime = Math.max(myPollPeriodNs - (System.nanoTime() - startTimeNs), 0L);
         myRunning.await(sleepTime, TimeUnit.NANOSECONDS);
       }
@@ -73,9 +152,50 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   public abstract void poll();
 
+  /**
+   * Called from {@link #poll()} when the target service had nothing new, so a {@link PollScheduler} can poll this runner less often until
+   * it does again.
+   */
+  protected final void reportIdle() {
+    myLastPollIdle = true;
+  }
+
+  /**
+   * @return the number of consecutive polls which reported nothing new.
+   */
+  int getIdlePollCount() {
+    return myIdlePollCount;
+  }
+
+  /**
+   * Polls once on behalf of a {@link PollScheduler}, which ends the runner if this throws, as the loop in {@link #run()} would.
+   */
+  void pollOnce() {
+    myLastPollIdle = false;
+    long startTimeNs = System.nanoTime();
+    try {
+      poll();
+    }
+    finally {
+      myPollLatency.record(System.nanoTime() - startTimeNs);
+    }
+    myIdlePollCount = myLastPollIdle ? myIdlePollCount + 1 : 0;
+  }
+
+  /**
+   * Called by the {@link PollScheduler} once this runner won't be polled anymore.
+   */
+  void finish() {
+    myIsDone.countDown();
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
+    PollScheduler scheduler = myScheduler;
+    if (scheduler != null) {
+      scheduler.unschedule(this);
+    }
     return true;
   }
 
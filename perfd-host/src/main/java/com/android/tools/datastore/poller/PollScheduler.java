@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.adtui.model.metrics.Counter;
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
+import com.android.tools.datastore.LogService;
+import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives the {@link PollRunner}s of the datastore from a small pool of threads, instead of a thread per runner sleeping between polls.
+ * <ul>
+ * <li>The runners of a device are polled one after the other by a single task, so a device with several sessions gets one burst of
+ * requests per period rather than requests spread over several threads. Blocking runners (see {@link PollRunner#isBlocking()}) are
+ * polled by a task of their own, on threads of their own, so that they don't hold up the other runners of their device.</li>
+ * <li>A runner whose last polls reported nothing new (see {@link PollRunner#reportIdle()}) is polled at twice its period for each
+ * idle poll, up to a limit, and back at its period as soon as it gets data again.</li>
+ * <li>The runners of the session shown in the profilers, and of the stage being shown, back off the least. The runners of other
+ * sessions are polled less often. See {@link #setFocus(long, Collection)}.</li>
+ * </ul>
+ */
+public final class PollScheduler {
+  /**
+   * Most a runner of the focused session and stage backs off to, as a multiple of its period. Also applies to all runners while no
+   * session has the focus.
+   */
+  static final int FOCUSED_MAX_BACKOFF = 2;
+
+  /**
+   * Most the other runners of the focused session, and the runners not bound to a session, back off to.
+   */
+  static final int ACTIVE_MAX_BACKOFF = 8;
+
+  /**
+   * Runners of the sessions not shown are polled at this multiple of their period, and back off up to {@link #BACKGROUND_MAX_BACKOFF}.
+   */
+  static final int BACKGROUND_PERIOD_MULTIPLIER = 4;
+  static final int BACKGROUND_MAX_BACKOFF = 16;
+
+  private static final int MAX_THREAD_COUNT = 4;
+  private static final int BLOCKING_THREAD_COUNT = 2;
+
+  @NotNull private final LogService myLogService;
+  @NotNull private final ScheduledExecutorService myExecutor;
+  @NotNull private final ScheduledExecutorService myBlockingExecutor;
+
+  /**
+   * Runners being polled, grouped by device. Runners not bound to a device, and blocking runners, are in a group of their own.
+   */
+  @NotNull private final Map<Object, DeviceQueue> myQueues = new HashMap<>();
+  private boolean myIsShutdown;
+
+  private volatile long myFocusedSessionId = PollRunner.NO_SESSION;
+  @NotNull private volatile Set<Class<?>> myFocusedRunnerClasses = Collections.emptySet();
+
+  @NotNull private final Counter myPollCount = MetricsRegistry.getInstance().getCounter("poll.scheduler.polls");
+  @NotNull private final Counter myIdlePollCount = MetricsRegistry.getInstance().getCounter("poll.scheduler.idlePolls");
+
+  public PollScheduler(@NotNull LogService logService) {
+    this(logService, Math.min(MAX_THREAD_COUNT, Math.max(2, Runtime.getRuntime().availableProcessors() / 2)));
+  }
+
+  @VisibleForTesting
+  PollScheduler(@NotNull LogService logService, int threadCount) {
+    myLogService = logService;
+    myExecutor = createExecutor("DataStorePollScheduler-", threadCount);
+    myBlockingExecutor = createExecutor("DataStorePollScheduler-Blocking-", BLOCKING_THREAD_COUNT);
+  }
+
+  @NotNull
+  private static ScheduledExecutorService createExecutor(@NotNull String threadPrefix, int threadCount) {
+    AtomicInteger threadIndex = new AtomicInteger();
+    return Executors.newScheduledThreadPool(threadCount, runnable -> {
+      Thread thread = new Thread(runnable, threadPrefix + threadIndex.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(PollScheduler.class);
+  }
+
+  /**
+   * Starts polling {@code runner}, right away and then until it is cancelled. This is normally called from {@link PollRunner#run()}.
+   */
+  public void schedule(@NotNull PollRunner runner) {
+    synchronized (this) {
+      if (!myIsShutdown && !runner.isCancelled()) {
+        DeviceQueue queue = myQueues.computeIfAbsent(getQueueKey(runner), key -> new DeviceQueue(key, runner.isBlocking()));
+        runner.myNextPollNs = System.nanoTime();
+        queue.myRunners.add(runner);
+        queue.scheduleNext();
+        return;
+      }
+    }
+    runner.finish();
+  }
+
+  /**
+   * Stops polling {@code runner}. If it is being polled, it is done once the poll returns.
+   */
+  void unschedule(@NotNull PollRunner runner) {
+    synchronized (this) {
+      DeviceQueue queue = findQueue(runner);
+      if (queue == null) {
+        return;
+      }
+      if (queue.myCurrentRunner == runner) {
+        return;
+      }
+      queue.myRunners.remove(runner);
+      queue.removeIfEmpty();
+    }
+    runner.finish();
+  }
+
+  /**
+   * Polls the runners of the session shown in the profilers more often than the others.
+   *
+   * @param sessionId     the session shown, or {@link PollRunner#NO_SESSION} to poll every session as if it was shown.
+   * @param runnerClasses the runners the shown stage depends on. Empty if it depends on all the runners of the session.
+   */
+  public void setFocus(long sessionId, @NotNull Collection<Class<? extends PollRunner>> runnerClasses) {
+    long now = System.nanoTime();
+    synchronized (this) {
+      List<PollRunner> runners = new ArrayList<>();
+      myQueues.values().forEach(queue -> runners.addAll(queue.myRunners));
+      Map<PollRunner, Long> previousPeriods = new HashMap<>();
+      runners.forEach(runner -> previousPeriods.put(runner, getNextPeriodNs(runner)));
+
+      myFocusedSessionId = sessionId;
+      myFocusedRunnerClasses = new HashSet<>(runnerClasses);
+
+      // Poll the runners which are now polled more often right away, rather than at the end of their previous (longer) period.
+      for (DeviceQueue queue : myQueues.values()) {
+        for (PollRunner runner : queue.myRunners) {
+          if (getNextPeriodNs(runner) < previousPeriods.get(runner) && runner.myNextPollNs - now > 0) {
+            runner.myNextPollNs = now;
+          }
+        }
+        queue.scheduleNext();
+      }
+    }
+  }
+
+  public long getFocusedSessionId() {
+    return myFocusedSessionId;
+  }
+
+  /**
+   * @return how long after the start of its last poll {@code runner} is polled again.
+   */
+  @VisibleForTesting
+  long getNextPeriodNs(@NotNull PollRunner runner) {
+    long periodNs = runner.getPollPeriodNs();
+    long maxBackoff;
+    long focusedSessionId = myFocusedSessionId;
+    long sessionId = runner.getSessionId();
+    if (focusedSessionId == PollRunner.NO_SESSION ||
+        (sessionId == focusedSessionId &&
+         (myFocusedRunnerClasses.isEmpty() || myFocusedRunnerClasses.contains(runner.getClass())))) {
+      maxBackoff = FOCUSED_MAX_BACKOFF;
+    }
+    else if (sessionId == PollRunner.NO_SESSION || sessionId == focusedSessionId) {
+      maxBackoff = ACTIVE_MAX_BACKOFF;
+    }
+    else {
+      periodNs *= BACKGROUND_PERIOD_MULTIPLIER;
+      maxBackoff = BACKGROUND_MAX_BACKOFF / BACKGROUND_PERIOD_MULTIPLIER;
+    }
+    return periodNs * Math.min(1L << Math.min(runner.getIdlePollCount(), 30), maxBackoff);
+  }
+
+  /**
+   * Stops polling. The runners still scheduled are done, though a poll in progress may complete in the background.
+   */
+  public void shutdown() {
+    List<PollRunner> runners = new ArrayList<>();
+    synchronized (this) {
+      myIsShutdown = true;
+      for (DeviceQueue queue : myQueues.values()) {
+        runners.addAll(queue.myRunners);
+        queue.cancel();
+      }
+      myQueues.clear();
+    }
+    runners.forEach(PollRunner::finish);
+    myExecutor.shutdown();
+    myBlockingExecutor.shutdown();
+  }
+
+  @Nullable
+  private DeviceQueue findQueue(@NotNull PollRunner runner) {
+    DeviceQueue queue = myQueues.get(getQueueKey(runner));
+    return queue != null && queue.myRunners.contains(runner) ? queue : null;
+  }
+
+  @NotNull
+  private static Object getQueueKey(@NotNull PollRunner runner) {
+    return runner.getDeviceId() == PollRunner.NO_DEVICE || runner.isBlocking() ? runner : runner.getDeviceId();
+  }
+
+  /**
+   * Polls the runners of a device which are due, one after the other, then schedules itself for when the next one is due. Only one
+   * instance of the task is pending or running at a time.
+   */
+  private final class DeviceQueue implements Runnable {
+    @NotNull private final Object myKey;
+    @NotNull private final ScheduledExecutorService myQueueExecutor;
+    @NotNull private final List<PollRunner> myRunners = new ArrayList<>();
+    @Nullable private ScheduledFuture<?> myFuture;
+    private long myFutureDueNs;
+    private boolean myIsPolling;
+    @Nullable private PollRunner myCurrentRunner;
+
+    DeviceQueue(@NotNull Object key, boolean isBlocking) {
+      myKey = key;
+      myQueueExecutor = isBlocking ? myBlockingExecutor : myExecutor;
+    }
+
+    @Override
+    public void run() {
+      List<PollRunner> dueRunners = new ArrayList<>();
+      synchronized (PollScheduler.this) {
+        if (myIsPolling || myIsShutdown) {
+          return;
+        }
+        myIsPolling = true;
+        myFuture = null;
+        long now = System.nanoTime();
+        for (PollRunner runner : myRunners) {
+          if (runner.myNextPollNs - now <= 0) {
+            dueRunners.add(runner);
+          }
+        }
+      }
+
+      try {
+        for (PollRunner runner : dueRunners) {
+          synchronized (PollScheduler.this) {
+            if (!myRunners.contains(runner)) {
+              continue;
+            }
+            myCurrentRunner = runner;
+          }
+          boolean polled = false;
+          try {
+            polled = poll(runner);
+          }
+          finally {
+            synchronized (PollScheduler.this) {
+              myCurrentRunner = null;
+              if (!polled || runner.isCancelled() || myIsShutdown) {
+                myRunners.remove(runner);
+                runner.finish();
+              }
+            }
+          }
+        }
+      }
+      finally {
+        synchronized (PollScheduler.this) {
+          myIsPolling = false;
+          // Drops a task scheduled by a focus change while this one was about to run, if any.
+          cancel();
+          if (!removeIfEmpty()) {
+            scheduleNext();
+          }
+        }
+      }
+    }
+
+    /**
+     * @return false if the poll threw, in which case the runner is ended.
+     */
+    private boolean poll(@NotNull PollRunner runner) {
+      long startNs = System.nanoTime();
+      try {
+        runner.pollOnce();
+      }
+      catch (StatusRuntimeException e) {
+        // Same as PollRunner#run, the device went away.
+        return false;
+      }
+      catch (RuntimeException e) {
+        getLogger().error(e);
+        return false;
+      }
+
+      myPollCount.increment();
+      if (runner.getIdlePollCount() > 0) {
+        myIdlePollCount.increment();
+      }
+      synchronized (PollScheduler.this) {
+        runner.myNextPollNs = startNs + getNextPeriodNs(runner);
+      }
+      return true;
+    }
+
+    /**
+     * Makes sure the task runs when the earliest runner is due. Must be called with the scheduler's lock held.
+     */
+    void scheduleNext() {
+      if (myIsPolling || myIsShutdown || myRunners.isEmpty()) {
+        return;
+      }
+      long dueNs = Long.MAX_VALUE;
+      for (PollRunner runner : myRunners) {
+        if (dueNs == Long.MAX_VALUE || runner.myNextPollNs - dueNs < 0) {
+          dueNs = runner.myNextPollNs;
+        }
+      }
+      if (myFuture != null) {
+        if (myFutureDueNs - dueNs <= 0) {
+          return;
+        }
+        myFuture.cancel(false);
+      }
+      try {
+        myFuture = myQueueExecutor.schedule(this, Math.max(0, dueNs - System.nanoTime()), TimeUnit.NANOSECONDS);
+        myFutureDueNs = dueNs;
+      }
+      catch (RejectedExecutionException ignored) {
+        // Shut down.
+        myFuture = null;
+      }
+    }
+
+    /**
+     * Must be called with the scheduler's lock held.
+     *
+     * @return true if there were no runners left, in which case the queue was removed.
+     */
+    boolean removeIfEmpty() {
+      if (!myRunners.isEmpty()) {
+        return false;
+      }
+      if (!myIsPolling) {
+        cancel();
+        myQueues.remove(myKey, this);
+      }
+      return true;
+    }
+
+    void cancel() {
+      if (myFuture != null) {
+        myFuture.cancel(false);
+        myFuture = null;
+      }
+    }
+  }
+}
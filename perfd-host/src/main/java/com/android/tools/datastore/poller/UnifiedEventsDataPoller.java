@@ -32,7 +32,7 @@ public class UnifiedEventsDataPoller extends PollRunner {
   public UnifiedEventsDataPoller(int streamId,
                          @NotNull UnifiedEventsTable unifiedEventsTable,
                          @NotNull ProfilerServiceGrpc.ProfilerServiceBlockingStub pollingService) {
-    super(POLLING_DELAY_NS);
+    super(POLLING_DELAY_NS, streamId, NO_SESSION);
     myEventPollingService = pollingService;
     myStreamId = streamId;
     myTable = unifiedEventsTable;
@@ -51,5 +51,8 @@ public class UnifiedEventsDataPoller extends PollRunner {
     if (response.getEventsCount() > 0) {
       myLastPollTimestamp = response.getEventsList().get(response.getEventsCount() - 1).getTimestamp();
     }
+    else {
+      reportIdle();
+    }
   }
 }
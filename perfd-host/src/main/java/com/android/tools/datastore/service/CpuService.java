@@ -20,6 +20,8 @@ import com.android.tools.datastore.DeviceId;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.CpuTable;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.poller.CpuDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
 import com.android.tools.profiler.proto.CpuProfiler.*;
@@ -263,4 +265,16 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
     myCpuTable.initialize(connection);
   }
+
+  @Override
+  public void setBackingWriter(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriter writer) {
+    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    myCpuTable.setWriter(writer);
+  }
+
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return myCpuTable.getRetentionPolicies();
+  }
 }
@@ -20,6 +20,8 @@ import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DeviceId;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.database.EnergyTable;
 import com.android.tools.datastore.energy.BatteryModel;
 import com.android.tools.datastore.poller.EnergyDataPoller;
@@ -157,4 +159,16 @@ public class EnergyService extends EnergyServiceGrpc.EnergyServiceImplBase imple
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
     myEnergyTable.initialize(connection);
   }
+
+  @Override
+  public void setBackingWriter(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriter writer) {
+    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    myEnergyTable.setWriter(writer);
+  }
+
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return myEnergyTable.getRetentionPolicies();
+  }
 }
@@ -22,6 +22,9 @@ import com.android.tools.datastore.DataStoreService.BackingNamespace;
 import com.android.tools.datastore.DeviceId;
 import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
+import com.android.tools.datastore.database.LiveAllocationIndex;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
 import com.android.tools.datastore.database.MemoryStatsTable;
 import com.android.tools.datastore.poller.MemoryDataPoller;
@@ -76,6 +79,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 
@@ -83,10 +87,11 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
   private static final BackingNamespace LIVE_ALLOCATION_NAMESPACE = new BackingNamespace("LiveAllocations", PERFORMANT);
 
   private final Map<Long, PollRunner> myRunners = new HashMap<>();
-  private final Map<Long, PollRunner> myJvmtiRunners = new HashMap<>();
+  private final Map<Long, PollRunner> myJvmtiRunners = new ConcurrentHashMap<>();
   private final Map<Long, PollRunner> mySymbolizationRunners = new HashMap<>();
   private final MemoryStatsTable myStatsTable;
   private final MemoryLiveAllocationTable myAllocationsTable;
+  private final LiveAllocationIndex myAllocationIndex;
   private final Consumer<Runnable> myFetchExecutor;
   private final DataStoreService myService;
   private final LogService myLogService;
@@ -98,6 +103,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     myService = dataStoreService;
     myStatsTable = new MemoryStatsTable();
     myAllocationsTable = new MemoryLiveAllocationTable(myLogService);
+    myAllocationIndex = new LiveAllocationIndex();
   }
 
   @Override
@@ -111,7 +117,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       DeviceId deviceId = DeviceId.fromSession(session);
       long sessionId = session.getSessionId();
 
-      myJvmtiRunners.put(sessionId, new MemoryJvmtiDataPoller(session, myAllocationsTable, client));
+      myJvmtiRunners.put(sessionId, new MemoryJvmtiDataPoller(session, myAllocationsTable, myAllocationIndex, client));
       myRunners.put(sessionId, new MemoryDataPoller(session, myStatsTable, client, myFetchExecutor));
       mySymbolizationRunners.put(sessionId,
                                  new NativeSymbolsPoller(session, myAllocationsTable, myService.getNativeSymbolizer(),
@@ -138,6 +144,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     if (runner != null) {
       runner.stop();
     }
+    myAllocationIndex.removeSession(sessionId);
     runner = mySymbolizationRunners.remove(sessionId);
     if (runner != null) {
       runner.stop();
@@ -352,13 +359,21 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
 
   @Override
   public void getAllocations(AllocationSnapshotRequest request, StreamObserver<BatchAllocationSample> responseObserver) {
+    // Sessions polled by this datastore are answered from the in-memory index, the table is only queried for the others.
+    long sessionId = request.getSession().getSessionId();
     BatchAllocationSample response;
     if (request.getLiveObjectsOnly()) {
-      response = myAllocationsTable.getSnapshot(request.getSession(), request.getEndTime());
+      response = myAllocationIndex.getSnapshot(sessionId, request.getEndTime());
+      if (response == null) {
+        response = myAllocationsTable.getSnapshot(request.getSession(), request.getEndTime());
+      }
     }
     else {
-      response =
-        myAllocationsTable.getAllocations(request.getSession(), request.getStartTime(), request.getEndTime());
+      response = myAllocationIndex.getAllocations(sessionId, request.getStartTime(), request.getEndTime());
+      if (response == null) {
+        response =
+          myAllocationsTable.getAllocations(request.getSession(), request.getStartTime(), request.getEndTime());
+      }
     }
     responseObserver.onNext(response);
     responseObserver.onCompleted();
@@ -428,6 +443,24 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     observer.onCompleted();
   }
 
+  @Override
+  public void evictSession(long sessionId) {
+    myAllocationIndex.removeSession(sessionId);
+  }
+
+  /**
+   * Drops the allocations indexed for sessions which are no longer polled, e.g. when a sample was still being inserted as polling
+   * stopped.
+   */
+  @Override
+  public void passCompleted() {
+    for (Long sessionId : myAllocationIndex.getSessionIds()) {
+      if (!myJvmtiRunners.containsKey(sessionId)) {
+        myAllocationIndex.removeSession(sessionId);
+      }
+    }
+  }
+
   @NotNull
   @Override
   public List<BackingNamespace> getBackingNamespaces() {
@@ -444,4 +477,17 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       myAllocationsTable.initialize(connection);
     }
   }
-}
\ No newline at end of file
+
+  @Override
+  public void setBackingWriter(@NotNull BackingNamespace namespace, @NotNull DataStoreWriter writer) {
+    if (namespace.equals(BackingNamespace.DEFAULT_SHARED_NAMESPACE)) {
+      myStatsTable.setWriter(writer);
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return myStatsTable.getRetentionPolicies();
+  }
+}
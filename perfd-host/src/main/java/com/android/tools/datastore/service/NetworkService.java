@@ -18,6 +18,8 @@ package com.android.tools.datastore.service;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DeviceId;
 import com.android.tools.datastore.ServicePassThrough;
+import com.android.tools.datastore.database.DataStoreWriter;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.database.NetworkTable;
 import com.android.tools.datastore.poller.NetworkDataPoller;
 import com.android.tools.datastore.poller.PollRunner;
@@ -146,4 +148,16 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
     myNetworkTable.initialize(connection);
   }
-}
\ No newline at end of file
+
+  @Override
+  public void setBackingWriter(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreWriter writer) {
+    assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
+    myNetworkTable.setWriter(writer);
+  }
+
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return myNetworkTable.getRetentionPolicies();
+  }
+}
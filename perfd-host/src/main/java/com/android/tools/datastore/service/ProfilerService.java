@@ -21,6 +21,7 @@ import com.android.tools.datastore.LogService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.ProfilerTable;
+import com.android.tools.datastore.database.RetentionPolicy;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.poller.ProfilerDevicePoller;
 import com.android.tools.profiler.proto.Common;
@@ -158,6 +159,8 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
       // In case the device is no longer connected, update the session's end time with the device's last known time.
       long timeNs = myTable.getDeviceLastKnownTime(deviceId);
       myTable.updateSessionEndTime(request.getSessionId(), timeNs);
+      myService.archiveSession(request.getSessionId());
+      myService.evictSession(request.getSessionId());
       Common.Session session = myTable.getSessionById(request.getSessionId());
       responseObserver.onNext(EndSessionResponse.newBuilder().setSession(session).build());
     }
@@ -167,6 +170,8 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
       // TODO (b/67508808) re-investigate whether we should use a poller to update the session instead.
       // The downside is we will have a delay before getSessions will see the data
       myTable.updateSessionEndTime(session.getSessionId(), session.getEndTimestamp());
+      myService.archiveSession(session.getSessionId());
+      myService.evictSession(session.getSessionId());
       responseObserver.onNext(response);
     }
     responseObserver.onCompleted();
@@ -189,6 +194,8 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
   public void deleteSession(DeleteSessionRequest request, StreamObserver<DeleteSessionResponse> responseObserver) {
     // TODO (b\67509712): properly delete all data related to the session.
     myTable.deleteSession(request.getSessionId());
+    myService.deleteArchivedSession(request.getSessionId());
+    myService.evictSession(request.getSessionId());
     responseObserver.onNext(DeleteSessionResponse.getDefaultInstance());
     responseObserver.onCompleted();
   }
@@ -250,6 +257,12 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
     myUnifiedEventsTable.initialize(connection);
   }
 
+  @NotNull
+  @Override
+  public List<RetentionPolicy> getRetentionPolicies() {
+    return myUnifiedEventsTable.getRetentionPolicies();
+  }
+
   @Override
   public void execute(ExecuteRequest request, StreamObserver<ExecuteResponse> responseObserver) {
     ProfilerServiceGrpc.ProfilerServiceBlockingStub client =
@@ -0,0 +1,174 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.android.tools.datastore
+
+import com.android.tools.datastore.database.RetentionPolicy
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+class DataStoreCompactorTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var compactor: DataStoreCompactor
+
+  @Before
+  fun setUp() {
+    dbFile = File.createTempFile("DataStoreCompactorTest", "sql")
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    database.connection.createStatement().use {
+      it.execute("CREATE TABLE Samples (Session INTEGER NOT NULL, Timestamp INTEGER NOT NULL, Type INTEGER NOT NULL, Data BLOB)")
+    }
+    compactor = DataStoreCompactor(FakeLogService())
+    compactor.addDatabase("test", database.connection, database.writer)
+  }
+
+  @After
+  fun tearDown() {
+    compactor.shutdown()
+    database.disconnect()
+    dbFile.delete()
+  }
+
+  @Test
+  fun oldRowsAreDownsampledPerTier() {
+    compactor.addPolicy(policy().build())
+    // 2 minutes of samples every 100ms.
+    insertSamples(1, 0, 1200)
+
+    compactor.compact()
+    val timestamps = queryTimestamps(1, 0)
+    // One row per 10s before 50s, one per second before 109s, then everything.
+    assertThat(timestamps.filter { it < seconds(50) }).containsExactly(
+      millis(9900), millis(19900), millis(29900), millis(39900), millis(49900)).inOrder()
+    assertThat(timestamps.filter { it >= seconds(50) && it < seconds(109) }).hasSize(59)
+    assertThat(timestamps.filter { it >= seconds(109) }).hasSize(110)
+    assertThat(compactor.deletedRowCount).isEqualTo(1200L - timestamps.size)
+  }
+
+  @Test
+  fun compactionIsIncremental() {
+    compactor.addPolicy(policy().build())
+    insertSamples(1, 0, 1200)
+    compactor.compact()
+    val compacted = queryTimestamps(1, 0)
+
+    // Nothing aged into a tier since the previous pass.
+    compactor.compact()
+    assertThat(queryTimestamps(1, 0)).isEqualTo(compacted)
+
+    // 10 more seconds of samples.
+    insertSamples(1, 1200, 100)
+    compactor.compact()
+    val timestamps = queryTimestamps(1, 0)
+    assertThat(timestamps.filter { it < seconds(60) }).hasSize(6)
+    assertThat(timestamps.filter { it >= seconds(60) && it < seconds(119) }).hasSize(59)
+    assertThat(timestamps.filter { it >= seconds(119) }).hasSize(110)
+  }
+
+  @Test
+  fun filteredAndGroupedRowsAreDownsampledSeparately() {
+    compactor.addPolicy(policy().setGroupColumns("Type").setFilter("Type IN (0, 1)").build())
+    insertSamples(1, 0, 1200, type = 0)
+    insertSamples(1, 0, 1200, type = 1)
+    insertSamples(1, 0, 1200, type = 2)
+
+    compactor.compact()
+    assertThat(queryTimestamps(1, 0)).hasSize(174)
+    assertThat(queryTimestamps(1, 1)).hasSize(174)
+    assertThat(queryTimestamps(1, 2)).hasSize(1200)
+  }
+
+  @Test
+  fun sessionsAreCompactedRelativeToTheirLastRow() {
+    compactor.addPolicy(policy().build())
+    insertSamples(1, 0, 1200)
+    // A session which only lasted 5 seconds, nothing is old enough to be downsampled.
+    insertSamples(2, 0, 50)
+
+    compactor.compact()
+    assertThat(queryTimestamps(1, 0)).hasSize(174)
+    assertThat(queryTimestamps(2, 0)).hasSize(50)
+  }
+
+  @Test
+  fun rowsPastTheHorizonAreDropped() {
+    compactor.addPolicy(RetentionPolicy.Builder("Samples", "Session", "Timestamp").build())
+    insertSamples(1, 0, 1200)
+    compactor.compact()
+    assertThat(queryTimestamps(1, 0)).hasSize(1200)
+
+    compactor.setHorizonNs("Samples", seconds(30))
+    compactor.compact()
+    val timestamps = queryTimestamps(1, 0)
+    assertThat(timestamps.first()).isEqualTo(millis(89900))
+    assertThat(timestamps).hasSize(301)
+  }
+
+  @Test
+  fun policiesOfMissingTablesAreIgnored() {
+    compactor.addPolicy(RetentionPolicy.Builder("Missing", "Session", "Timestamp").addDefaultTiers().build())
+    insertSamples(1, 0, 10)
+    compactor.compact()
+    assertThat(queryTimestamps(1, 0)).hasSize(10)
+  }
+
+  @Test
+  fun tableSizesAreReported() {
+    insertSamples(1, 0, 100)
+    assertThat(compactor.tableSizes).isEmpty()
+    compactor.compact()
+    val sizes = compactor.tableSizes
+    assertThat(sizes).containsKey("Samples")
+    assertThat(sizes["Samples"]).isGreaterThan(0L)
+  }
+
+  private fun policy() = RetentionPolicy.Builder("Samples", "Session", "Timestamp")
+    .addTier(seconds(10), seconds(1))
+    .addTier(seconds(60), seconds(10))
+
+  private fun insertSamples(sessionId: Long, first: Int, count: Int, type: Int = 0) {
+    database.connection.prepareStatement("INSERT INTO Samples (Session, Timestamp, Type, Data) VALUES (?, ?, ?, ?)").use {
+      for (i in first until first + count) {
+        it.setLong(1, sessionId)
+        it.setLong(2, millis(i * 100L))
+        it.setInt(3, type)
+        it.setBytes(4, ByteArray(16))
+        it.executeUpdate()
+      }
+    }
+    database.connection.commit()
+  }
+
+  private fun queryTimestamps(sessionId: Long, type: Int): List<Long> {
+    val timestamps = mutableListOf<Long>()
+    database.connection.prepareStatement("SELECT Timestamp FROM Samples WHERE Session = ? AND Type = ? ORDER BY Timestamp").use {
+      it.setLong(1, sessionId)
+      it.setInt(2, type)
+      it.executeQuery().use { results ->
+        while (results.next()) {
+          timestamps.add(results.getLong(1))
+        }
+      }
+    }
+    return timestamps
+  }
+
+  private fun seconds(value: Long) = TimeUnit.SECONDS.toNanos(value)
+
+  private fun millis(value: Long) = TimeUnit.MILLISECONDS.toNanos(value)
+}
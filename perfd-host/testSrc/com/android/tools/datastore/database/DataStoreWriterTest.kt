@@ -0,0 +1,135 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.sql.Connection
+
+class DataStoreWriterTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: WriterTestTable
+
+  @Before
+  fun setUp() {
+    dbFile = File.createTempFile("DataStoreWriterTest", "sql")
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    table = WriterTestTable()
+    table.initialize(database.connection)
+  }
+
+  @After
+  fun tearDown() {
+    if (!database.connection.isClosed) {
+      database.disconnect()
+    }
+    dbFile.delete()
+  }
+
+  @Test
+  fun writesExecuteImmediatelyWithoutWriter() {
+    table.insert(1, 2, 3)
+    assertThat(table.count()).isEqualTo(3)
+  }
+
+  @Test
+  fun writesAreDeferredUntilFlush() {
+    // Use a long interval and a large batch size so nothing gets flushed behind our back.
+    val writer = DataStoreWriter(database.connection, 100, 100, 60_000)
+    table.setWriter(writer)
+    table.insert(1, 2, 3)
+    assertThat(writer.queueDepth).isEqualTo(3)
+    assertThat(table.count()).isEqualTo(0)
+
+    writer.flush()
+    assertThat(writer.queueDepth).isEqualTo(0)
+    assertThat(writer.flushCount).isEqualTo(1)
+    assertThat(writer.flushedRowCount).isEqualTo(3)
+    assertThat(writer.maxQueueDepth).isEqualTo(3)
+    assertThat(table.count()).isEqualTo(3)
+    writer.shutdown()
+  }
+
+  @Test
+  fun reachingBatchSizeTriggersFlush() {
+    val writer = DataStoreWriter(database.connection, 100, 10, 60_000)
+    table.setWriter(writer)
+    table.insert(*IntArray(10) { it })
+    waitForQueueToDrain(writer)
+    assertThat(table.count()).isEqualTo(10)
+    writer.shutdown()
+  }
+
+  @Test
+  fun fullQueueBlocksUntilWriterCatchesUp() {
+    val writer = DataStoreWriter(database.connection, 4, 1000, 10)
+    table.setWriter(writer)
+    table.insert(*IntArray(100) { it })
+    writer.flush()
+    assertThat(table.count()).isEqualTo(100)
+    writer.shutdown()
+  }
+
+  @Test
+  fun shutdownFlushesPendingWritesAndFallsBackToDirectExecution() {
+    val writer = DataStoreWriter(database.connection, 100, 100, 60_000)
+    table.setWriter(writer)
+    table.insert(1, 2)
+    writer.shutdown()
+    assertThat(writer.isShutdown).isTrue()
+    assertThat(table.count()).isEqualTo(2)
+
+    table.insert(3)
+    assertThat(table.count()).isEqualTo(3)
+  }
+
+  private fun waitForQueueToDrain(writer: DataStoreWriter) {
+    while (writer.queueDepth > 0 || writer.flushCount == 0L) {
+      Thread.yield()
+    }
+  }
+
+  private enum class WriterTestStatements {
+    INSERT,
+    COUNT
+  }
+
+  private class WriterTestTable : DataStoreTable<WriterTestStatements>() {
+    override fun initialize(connection: Connection) {
+      super.initialize(connection)
+      createTable("Writer_Table", "Value INTEGER")
+    }
+
+    override fun prepareStatements() {
+      createStatement(WriterTestStatements.INSERT, "INSERT INTO Writer_Table (Value) VALUES (?)")
+      createStatement(WriterTestStatements.COUNT, "SELECT COUNT(*) FROM Writer_Table")
+    }
+
+    fun insert(vararg values: Int) {
+      values.forEach { enqueue(WriterTestStatements.INSERT, it) }
+    }
+
+    fun count(): Int {
+      val results = executeQuery(WriterTestStatements.COUNT)
+      results.next()
+      return results.getInt(1)
+    }
+  }
+}
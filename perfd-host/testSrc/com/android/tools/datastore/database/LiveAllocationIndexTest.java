@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LiveAllocationIndexTest {
+  private static final long SESSION_ID = 1L;
+  private static final int CLASS_TAG = 10;
+
+  private final LiveAllocationIndex myIndex = new LiveAllocationIndex();
+
+  @Test
+  public void unknownSessionIsNotIndexed() {
+    assertThat(myIndex.getSnapshot(SESSION_ID, 100)).isNull();
+    assertThat(myIndex.getAllocations(SESSION_ID, 0, 100)).isNull();
+  }
+
+  @Test
+  public void removedSessionIsNotIndexed() {
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(1, 10)));
+    assertThat(myIndex.getSessionIds()).containsExactly(SESSION_ID);
+
+    myIndex.removeSession(SESSION_ID);
+    assertThat(myIndex.getSessionIds()).isEmpty();
+    assertThat(myIndex.getSnapshot(SESSION_ID, 100)).isNull();
+    assertThat(myIndex.getAllocationCount(SESSION_ID)).isEqualTo(0);
+  }
+
+  @Test
+  public void snapshotContainsObjectsAliveAtEndTime() {
+    // Tags 1 to 4 allocated at 10, 20, 30 and 40. 1 is freed at 25, 3 at 40.
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(1, 10), alloc(2, 20), free(1, 25), alloc(3, 30), alloc(4, 40), free(3, 40)));
+
+    BatchAllocationSample snapshot = myIndex.getSnapshot(SESSION_ID, 35);
+    assertThat(tags(snapshot.getEventsList())).containsExactly(2, 3).inOrder();
+    assertThat(snapshot.getTimestamp()).isEqualTo(30);
+    assertThat(snapshot.getEvents(0).getAllocData().getClassTag()).isEqualTo(CLASS_TAG);
+    assertThat(snapshot.getEvents(0).getAllocData().getSize()).isEqualTo(2);
+
+    // Same boundaries as the table: allocated strictly before, freed strictly after.
+    assertThat(tags(myIndex.getSnapshot(SESSION_ID, 40).getEventsList())).containsExactly(2).inOrder();
+    assertThat(tags(myIndex.getSnapshot(SESSION_ID, 41).getEventsList())).containsExactly(2, 4).inOrder();
+  }
+
+  @Test
+  public void allocationsContainAllocationsThenDeallocationsInRange() {
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(1, 10), alloc(2, 20), free(1, 25), alloc(3, 30)));
+    myIndex.insertAllocationData(SESSION_ID, sample(free(2, 35), alloc(4, 40)));
+
+    BatchAllocationSample allocations = myIndex.getAllocations(SESSION_ID, 20, 40);
+    List<AllocationEvent> events = allocations.getEventsList();
+    assertThat(tags(events)).containsExactly(2, 3, 1, 2).inOrder();
+    assertThat(events.stream().map(AllocationEvent::getEventCase).collect(Collectors.toList()))
+      .containsExactly(AllocationEvent.EventCase.ALLOC_DATA, AllocationEvent.EventCase.ALLOC_DATA, AllocationEvent.EventCase.FREE_DATA,
+                       AllocationEvent.EventCase.FREE_DATA).inOrder();
+    assertThat(events.get(2).getTimestamp()).isEqualTo(25);
+    assertThat(allocations.getTimestamp()).isEqualTo(35);
+  }
+
+  @Test
+  public void lateEventsAreInsertedInTimeOrder() {
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(1, 10), alloc(2, 30), free(2, 50)));
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(3, 20), free(1, 40), alloc(4, 5)));
+
+    assertThat(tags(myIndex.getSnapshot(SESSION_ID, 35).getEventsList())).containsExactly(4, 1, 3, 2).inOrder();
+    assertThat(tags(myIndex.getAllocations(SESSION_ID, 0, 100).getEventsList())).containsExactly(4, 1, 3, 2, 1, 2).inOrder();
+    // Frees of a moved row still refer to the right object.
+    myIndex.insertAllocationData(SESSION_ID, sample(free(3, 60)));
+    assertThat(tags(myIndex.getSnapshot(SESSION_ID, 70).getEventsList())).containsExactly(4).inOrder();
+  }
+
+  @Test
+  public void duplicateAllocationsAndUnknownDeallocationsAreIgnored() {
+    myIndex.insertAllocationData(SESSION_ID, sample(alloc(1, 10), alloc(1, 20), free(2, 30)));
+    assertThat(myIndex.getAllocationCount(SESSION_ID)).isEqualTo(1);
+    assertThat(myIndex.getAllocations(SESSION_ID, 0, 100).getEvents(0).getTimestamp()).isEqualTo(10);
+  }
+
+  @Test
+  public void oldestFreedObjectsArePrunedOverTheLimit() {
+    LiveAllocationIndex index = new LiveAllocationIndex(10);
+    BatchAllocationSample.Builder builder = BatchAllocationSample.newBuilder();
+    for (int tag = 0; tag < 10; tag++) {
+      builder.addEvents(alloc(tag, tag));
+    }
+    // Free the odd tags in reverse order, so 9 is the first one freed.
+    for (int tag = 9; tag > 0; tag -= 2) {
+      builder.addEvents(free(tag, 100 - tag));
+    }
+    index.insertAllocationData(SESSION_ID, builder.build());
+    assertThat(index.getAllocationCount(SESSION_ID)).isEqualTo(10);
+
+    // Going over the limit prunes down to it, first freed first.
+    index.insertAllocationData(SESSION_ID, sample(alloc(10, 200)));
+    assertThat(index.getAllocationCount(SESSION_ID)).isEqualTo(10);
+    assertThat(tags(index.getAllocations(SESSION_ID, 0, 1000).getEventsList()))
+      .containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 10, 7, 5, 3, 1).inOrder();
+  }
+
+  private static List<Integer> tags(List<AllocationEvent> events) {
+    return events.stream()
+      .map(event -> event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA ? event.getAllocData().getTag() : event.getFreeData().getTag())
+      .collect(Collectors.toList());
+  }
+
+  private static BatchAllocationSample sample(AllocationEvent... events) {
+    BatchAllocationSample.Builder builder = BatchAllocationSample.newBuilder();
+    for (AllocationEvent event : events) {
+      builder.addEvents(event);
+    }
+    return builder.build();
+  }
+
+  private static AllocationEvent alloc(int tag, long timestamp) {
+    return AllocationEvent.newBuilder()
+      .setAllocData(AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(CLASS_TAG).setSize(tag))
+      .setTimestamp(timestamp).build();
+  }
+
+  private static AllocationEvent free(int tag, long timestamp) {
+    return AllocationEvent.newBuilder()
+      .setFreeData(AllocationEvent.Deallocation.newBuilder().setTag(tag).setClassTag(CLASS_TAG))
+      .setTimestamp(timestamp).build();
+  }
+}
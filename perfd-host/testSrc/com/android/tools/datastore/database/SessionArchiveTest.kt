@@ -0,0 +1,265 @@
+// Copyright (C) 2019 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.android.tools.datastore.database
+
+import com.android.testutils.TestUtils
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.sql.Connection
+import java.sql.DriverManager
+
+class SessionArchiveTest {
+  private lateinit var directory: File
+  private lateinit var database: DataStoreDatabase
+
+  @Before
+  fun setUp() {
+    directory = TestUtils.createTempDirDeletedOnExit()
+    database = createDatabase()
+  }
+
+  @After
+  fun tearDown() {
+    if (!database.connection.isClosed) {
+      database.disconnect()
+    }
+  }
+
+  @Test
+  fun archivedSessionsAreListedWithoutTheirData() {
+    insertSession(database.connection, 1, 10)
+    archive().archive(1)
+    restart()
+
+    val archive = archive()
+    assertThat(archive.loadArchivedSessions()).containsExactly(1L)
+    assertThat(archive.isArchived(1)).isTrue()
+    assertThat(querySessions()).containsExactly(1L)
+    assertThat(queryData(1)).isEmpty()
+  }
+
+  @Test
+  fun pageInRestoresTheSessionData() {
+    insertSession(database.connection, 1, 10)
+    archive().archive(1)
+    restart()
+
+    val archive = archive()
+    archive.loadArchivedSessions()
+    archive.pageIn(1)
+    assertThat(queryData(1)).containsExactly("data 1 0", "data 1 1", "data 1 2", "data 1 3", "data 1 4", "data 1 5", "data 1 6",
+                                             "data 1 7", "data 1 8", "data 1 9").inOrder()
+  }
+
+  @Test
+  fun leastRecentlyUsedSessionIsPagedOut() {
+    insertSession(database.connection, 1, 3)
+    insertSession(database.connection, 2, 3)
+    archive().archive(1)
+    archive().archive(2)
+    restart()
+
+    val archive = archive(1)
+    archive.loadArchivedSessions()
+    archive.pageIn(1)
+    assertThat(queryData(1)).hasSize(3)
+    archive.pageIn(2)
+    assertThat(queryData(1)).isEmpty()
+    assertThat(queryData(2)).hasSize(3)
+    // Paged out sessions stay listed.
+    assertThat(querySessions()).containsExactly(1L, 2L)
+  }
+
+  @Test
+  fun rowsWrittenAfterArchivingAreArchivedBeforePagingOut() {
+    insertSession(database.connection, 1, 3)
+    val archive = archive(1)
+    archive.archive(1)
+    // E.g. the last samples polled from the device after the session ended.
+    insertData(database.connection, 1, 3 until 5)
+    insertSession(database.connection, 2, 3)
+    archive.archive(2)
+    assertThat(queryData(1)).isEmpty()
+    restart()
+
+    val reloaded = archive()
+    reloaded.loadArchivedSessions()
+    reloaded.pageIn(1)
+    assertThat(queryData(1)).containsExactly("data 1 0", "data 1 1", "data 1 2", "data 1 3", "data 1 4").inOrder()
+  }
+
+  @Test
+  fun onlyPagedInSessionsAreTouched() {
+    insertSession(database.connection, 1, 3)
+    archive().archive(1)
+    restart()
+
+    val archive = archive()
+    archive.loadArchivedSessions()
+    assertThat(archive.touchIfPagedIn(1)).isFalse()
+    archive.pageIn(1)
+    assertThat(archive.touchIfPagedIn(1)).isTrue()
+  }
+
+  @Test
+  fun leastRecentlyArchivedSessionsArePrunedOnLoad() {
+    insertSession(database.connection, 1, 3)
+    insertSession(database.connection, 2, 3)
+    insertSession(database.connection, 3, 3)
+    val archive = archive()
+    archive.archive(1)
+    archive.archive(2)
+    archive.archive(3)
+    for (sessionId in 1..3) {
+      File(File(directory, "sessions"), sessionId.toString()).setLastModified(sessionId * 1000L)
+    }
+    restart()
+
+    val reloaded = archive(maxArchiveSize = archiveSize(2) + archiveSize(3))
+    assertThat(reloaded.loadArchivedSessions()).containsExactly(2L, 3L)
+    assertThat(querySessions()).containsExactly(2L, 3L)
+    assertThat(File(File(directory, "sessions"), "1").exists()).isFalse()
+  }
+
+  @Test
+  fun pagedOutSessionsArePrunedWhenArchiving() {
+    insertSession(database.connection, 1, 3)
+    insertSession(database.connection, 2, 3)
+    val archive = archive(maxPagedInSessions = 1, maxArchiveSize = 1)
+    archive.archive(1)
+    // The paged in session is kept, even past the maximum size.
+    assertThat(archive.isArchived(1)).isTrue()
+    archive.archive(2)
+    assertThat(archive.isArchived(1)).isFalse()
+    assertThat(archive.isArchived(2)).isTrue()
+    assertThat(querySessions()).containsExactly(2L)
+    assertThat(File(File(directory, "sessions"), "1").exists()).isFalse()
+  }
+
+  @Test
+  fun sessionsWhichAreNotArchivedAreIgnored() {
+    insertSession(database.connection, 1, 3)
+    val archive = archive(1)
+    archive.pageIn(1)
+    assertThat(archive.isArchived(1)).isFalse()
+    assertThat(queryData(1)).hasSize(3)
+  }
+
+  @Test
+  fun archivesOfAnotherVersionAreDeleted() {
+    insertSession(database.connection, 1, 3)
+    archive().archive(1)
+    val archiveFile = File(File(directory, "1"), NAMESPACE)
+    DriverManager.getConnection("jdbc:sqlite:${archiveFile.path}").use {
+      it.createStatement().use { statement -> statement.execute("PRAGMA user_version = ${SessionArchive.FORMAT_VERSION + 1}") }
+    }
+    restart()
+
+    assertThat(archive().loadArchivedSessions()).isEmpty()
+    assertThat(querySessions()).isEmpty()
+    assertThat(File(directory, "1").exists()).isFalse()
+  }
+
+  @Test
+  fun deletedArchivesAreNotLoaded() {
+    insertSession(database.connection, 1, 3)
+    val archive = archive()
+    archive.archive(1)
+    archive.delete(1)
+    restart()
+
+    assertThat(archive().loadArchivedSessions()).isEmpty()
+  }
+
+  private fun archive(maxPagedInSessions: Int = SessionArchive.DEFAULT_MAX_PAGED_IN_SESSIONS,
+                      maxArchiveSize: Long = SessionArchive.DEFAULT_MAX_ARCHIVE_SIZE) =
+    SessionArchive(File(directory, "sessions"), mapOf(NAMESPACE to database.connection), mapOf(NAMESPACE to database.writer!!),
+                   maxPagedInSessions, maxArchiveSize)
+
+  private fun archiveSize(sessionId: Long) =
+    File(File(directory, "sessions"), sessionId.toString()).walk().filter { it.isFile }.map { it.length() }.sum()
+
+  /**
+   * Replaces the database with an empty one, like when the datastore starts.
+   */
+  private fun restart() {
+    database.disconnect()
+    database = createDatabase()
+  }
+
+  private fun createDatabase(): DataStoreDatabase {
+    val db = DataStoreDatabase(File(directory, NAMESPACE).absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    db.connection.createStatement().use {
+      it.execute("CREATE TABLE IF NOT EXISTS Profiler_Sessions (SessionId INTEGER PRIMARY KEY, DeviceId INTEGER, ProcessId INTEGER)")
+      it.execute("CREATE TABLE IF NOT EXISTS Cpu_Data (Session INTEGER, Timestamp INTEGER, Data TEXT)")
+    }
+    db.connection.commit()
+    return db
+  }
+
+  private fun insertSession(connection: Connection, sessionId: Long, sampleCount: Int) {
+    connection.prepareStatement("INSERT INTO Profiler_Sessions (SessionId, DeviceId, ProcessId) VALUES (?, 1, ?)").use {
+      it.setLong(1, sessionId)
+      it.setLong(2, sessionId * 100)
+      it.executeUpdate()
+    }
+    insertData(connection, sessionId, 0 until sampleCount)
+  }
+
+  private fun insertData(connection: Connection, sessionId: Long, samples: IntRange) {
+    connection.prepareStatement("INSERT INTO Cpu_Data (Session, Timestamp, Data) VALUES (?, ?, ?)").use {
+      for (i in samples) {
+        it.setLong(1, sessionId)
+        it.setLong(2, i.toLong())
+        it.setString(3, "data $sessionId $i")
+        it.executeUpdate()
+      }
+    }
+    connection.commit()
+  }
+
+  private fun querySessions(): List<Long> {
+    val sessions = mutableListOf<Long>()
+    database.connection.createStatement().use { statement ->
+      statement.executeQuery("SELECT SessionId FROM Profiler_Sessions ORDER BY SessionId").use {
+        while (it.next()) {
+          sessions.add(it.getLong(1))
+        }
+      }
+    }
+    return sessions
+  }
+
+  private fun queryData(sessionId: Long): List<String> {
+    val data = mutableListOf<String>()
+    database.connection.prepareStatement("SELECT Data FROM Cpu_Data WHERE Session = ? ORDER BY Timestamp").use { statement ->
+      statement.setLong(1, sessionId)
+      statement.executeQuery().use {
+        while (it.next()) {
+          data.add(it.getString(1))
+        }
+      }
+    }
+    return data
+  }
+
+  companion object {
+    private const val NAMESPACE = "Profiler.sql"
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.tools.datastore.FakeLogService;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class PollSchedulerTest {
+  private static final long PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long DEVICE_ID = 1;
+  private static final long SESSION_ID = 2;
+  private static final long OTHER_SESSION_ID = 3;
+
+  private PollScheduler myScheduler;
+
+  @Before
+  public void setUp() {
+    myScheduler = new PollScheduler(new FakeLogService(), 2);
+  }
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void idleRunnersBackOff() {
+    FakeRunner runner = new FakeRunner(SESSION_ID);
+    assertThat(myScheduler.getNextPeriodNs(runner)).isEqualTo(PERIOD_NS);
+
+    runner.myIsIdle = true;
+    runner.pollOnce();
+    assertThat(myScheduler.getNextPeriodNs(runner)).isEqualTo(PERIOD_NS * 2);
+    runner.pollOnce();
+    runner.pollOnce();
+    assertThat(myScheduler.getNextPeriodNs(runner)).isEqualTo(PERIOD_NS * PollScheduler.FOCUSED_MAX_BACKOFF);
+
+    runner.myIsIdle = false;
+    runner.pollOnce();
+    assertThat(myScheduler.getNextPeriodNs(runner)).isEqualTo(PERIOD_NS);
+  }
+
+  @Test
+  public void focusedRunnersArePolledMoreOften() {
+    FakeRunner focused = new FakeRunner(SESSION_ID);
+    FakeRunner otherSession = new FakeRunner(OTHER_SESSION_ID);
+    FakeRunner noSession = new FakeRunner(PollRunner.NO_SESSION);
+    for (FakeRunner runner : new FakeRunner[]{focused, otherSession, noSession}) {
+      runner.myIsIdle = true;
+      for (int i = 0; i < 10; i++) {
+        runner.pollOnce();
+      }
+    }
+
+    myScheduler.setFocus(SESSION_ID, Collections.emptyList());
+    assertThat(myScheduler.getFocusedSessionId()).isEqualTo(SESSION_ID);
+    assertThat(myScheduler.getNextPeriodNs(focused)).isEqualTo(PERIOD_NS * PollScheduler.FOCUSED_MAX_BACKOFF);
+    assertThat(myScheduler.getNextPeriodNs(noSession)).isEqualTo(PERIOD_NS * PollScheduler.ACTIVE_MAX_BACKOFF);
+    assertThat(myScheduler.getNextPeriodNs(otherSession)).isEqualTo(PERIOD_NS * PollScheduler.BACKGROUND_MAX_BACKOFF);
+
+    // Runners of the focused session which the stage doesn't depend on.
+    myScheduler.setFocus(SESSION_ID, Collections.singletonList(CpuDataPoller.class));
+    assertThat(myScheduler.getNextPeriodNs(focused)).isEqualTo(PERIOD_NS * PollScheduler.ACTIVE_MAX_BACKOFF);
+
+    // Runners of other sessions are slower even when they have data.
+    otherSession.myIsIdle = false;
+    otherSession.pollOnce();
+    assertThat(myScheduler.getNextPeriodNs(otherSession)).isEqualTo(PERIOD_NS * PollScheduler.BACKGROUND_PERIOD_MULTIPLIER);
+
+    myScheduler.setFocus(PollRunner.NO_SESSION, Collections.emptyList());
+    assertThat(myScheduler.getNextPeriodNs(otherSession)).isEqualTo(PERIOD_NS);
+  }
+
+  @Test
+  public void runnerIsPolledUntilStopped() throws Exception {
+    FakeRunner runner = new FakeRunner(SESSION_ID);
+    runner.setScheduler(myScheduler);
+    runner.run();
+    assertThat(runner.myPolls.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(runner.isDone()).isFalse();
+
+    runner.stop();
+    assertThat(runner.isDone()).isTrue();
+    int pollCount = runner.myPollCount.get();
+    Thread.sleep(20);
+    assertThat(runner.myPollCount.get()).isEqualTo(pollCount);
+  }
+
+  @Test
+  public void runnersOfADeviceArePolledOneAtATime() throws Exception {
+    AtomicInteger concurrentPolls = new AtomicInteger();
+    AtomicInteger maxConcurrentPolls = new AtomicInteger();
+    FakeRunner[] runners = new FakeRunner[4];
+    for (int i = 0; i < runners.length; i++) {
+      runners[i] = new FakeRunner(SESSION_ID + i) {
+        @Override
+        public void poll() {
+          maxConcurrentPolls.accumulateAndGet(concurrentPolls.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(1);
+          }
+          catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          concurrentPolls.decrementAndGet();
+          super.poll();
+        }
+      };
+      runners[i].setScheduler(myScheduler);
+      runners[i].run();
+    }
+    for (FakeRunner runner : runners) {
+      assertThat(runner.myPolls.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+    for (FakeRunner runner : runners) {
+      runner.stop();
+    }
+    assertThat(maxConcurrentPolls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void blockingRunnersDontHoldUpTheirDevice() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    FakeRunner blocking = new FakeRunner(SESSION_ID) {
+      @Override
+      public boolean isBlocking() {
+        return true;
+      }
+
+      @Override
+      public void poll() {
+        super.poll();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    FakeRunner runner = new FakeRunner(SESSION_ID);
+    blocking.setScheduler(myScheduler);
+    blocking.run();
+    runner.setScheduler(myScheduler);
+    runner.run();
+
+    // The other runner of the device keeps being polled while the blocking one is stuck in its first poll.
+    assertThat(runner.myPolls.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(blocking.myPollCount.get()).isEqualTo(1);
+
+    release.countDown();
+    blocking.stop();
+    runner.stop();
+  }
+
+  @Test
+  public void runnerEndsWhenTheDeviceGoesAway() throws Exception {
+    FakeRunner runner = new FakeRunner(SESSION_ID) {
+      @Override
+      public void poll() {
+        throw new StatusRuntimeException(Status.UNAVAILABLE);
+      }
+    };
+    runner.setScheduler(myScheduler);
+    runner.run();
+    runner.get(10, TimeUnit.SECONDS);
+    assertThat(runner.isDone()).isTrue();
+  }
+
+  @Test
+  public void shutdownEndsRunners() throws Exception {
+    FakeRunner runner = new FakeRunner(SESSION_ID);
+    runner.setScheduler(myScheduler);
+    runner.run();
+    myScheduler.shutdown();
+    runner.get(10, TimeUnit.SECONDS);
+    assertThat(runner.isDone()).isTrue();
+
+    FakeRunner lateRunner = new FakeRunner(SESSION_ID);
+    lateRunner.setScheduler(myScheduler);
+    lateRunner.run();
+    assertThat(lateRunner.isDone()).isTrue();
+  }
+
+  private static class FakeRunner extends PollRunner {
+    private final CountDownLatch myPolls = new CountDownLatch(5);
+    private final AtomicInteger myPollCount = new AtomicInteger();
+    private volatile boolean myIsIdle;
+
+    FakeRunner(long sessionId) {
+      super(PERIOD_NS, DEVICE_ID, sessionId);
+    }
+
+    @Override
+    public void poll() {
+      myPollCount.incrementAndGet();
+      myPolls.countDown();
+      if (myIsIdle) {
+        reportIdle();
+      }
+    }
+  }
+}
@@ -17,12 +17,26 @@ package com.android.tools.idea.profilers;
 
 import com.android.ddmlib.IDevice;
 import com.android.tools.adtui.model.AspectObserver;
+import com.android.tools.datastore.poller.CpuDataPoller;
+import com.android.tools.datastore.poller.EnergyDataPoller;
+import com.android.tools.datastore.poller.EventDataPoller;
+import com.android.tools.datastore.poller.MemoryDataPoller;
+import com.android.tools.datastore.poller.MemoryJvmtiDataPoller;
+import com.android.tools.datastore.poller.NativeSymbolsPoller;
+import com.android.tools.datastore.poller.NetworkDataPoller;
+import com.android.tools.datastore.poller.PollRunner;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.idea.model.AndroidModuleInfo;
 import com.android.tools.idea.profilers.perfd.ProfilerServiceProxy;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profilers.*;
+import com.android.tools.profilers.cpu.CpuProfilerStage;
+import com.android.tools.profilers.energy.EnergyProfilerStage;
+import com.android.tools.profilers.memory.MemoryProfilerStage;
+import com.android.tools.profilers.network.NetworkProfilerStage;
 import com.android.tools.profilers.sessions.SessionAspect;
 import com.android.tools.profilers.sessions.SessionsManager;
+import com.google.common.collect.ImmutableList;
 import com.intellij.execution.runners.ExecutionUtil;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.module.Module;
@@ -45,6 +59,7 @@ import org.jetbrains.annotations.Nullable;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.util.List;
 import java.util.function.Predicate;
 
 import static com.android.tools.profilers.ProfilerFonts.H1_FONT;
@@ -255,10 +270,12 @@ public class AndroidProfilerToolWindow implements Disposable {
     @NotNull private final ToolWindow myWindow;
     @NotNull private final StudioProfilers myProfilers;
     @NotNull private final StudioProfilersView myView;
+    @NotNull private final PollScheduler myPollScheduler;
 
     StudioProfilersWrapper(@NotNull Project project, @NotNull ToolWindow window, @NotNull ProfilerService service) {
       myProject = project;
       myWindow = window;
+      myPollScheduler = service.getDataStoreService().getPollScheduler();
 
       IdeProfilerServices ideProfilerServices = new IntellijProfilerServices(myProject);
       service.getDataStoreService().setNoPiiExceptionHanlder(ideProfilerServices::reportNoPiiException);
@@ -295,6 +312,7 @@ public class AndroidProfilerToolWindow implements Disposable {
 
     @Override
     public void dispose() {
+      myPollScheduler.setFocus(PollRunner.NO_SESSION, ImmutableList.of());
       myProfilers.stop();
     }
 
@@ -320,6 +338,41 @@ public class AndroidProfilerToolWindow implements Disposable {
       if (myProfilers.isStopped()) {
         AndroidProfilerToolWindowFactory.removeContent(myWindow);
       }
+      updatePollFocus();
+    }
+
+    /**
+     * Lets the datastore poll the data shown, i.e. of the selected session and stage, more often than the rest.
+     */
+    private void updatePollFocus() {
+      Common.Session session = myProfilers.getSession();
+      if (Common.Session.getDefaultInstance().equals(session)) {
+        myPollScheduler.setFocus(PollRunner.NO_SESSION, ImmutableList.of());
+      }
+      else {
+        myPollScheduler.setFocus(session.getSessionId(), getPollersOfStage(myProfilers.getStage()));
+      }
+    }
+
+    /**
+     * @return the pollers providing the data the stage shows, empty if it shows a bit of everything.
+     */
+    @NotNull
+    private static List<Class<? extends PollRunner>> getPollersOfStage(@NotNull Stage stage) {
+      // Every stage shows the events timeline.
+      if (stage instanceof CpuProfilerStage) {
+        return ImmutableList.of(EventDataPoller.class, CpuDataPoller.class);
+      }
+      if (stage instanceof MemoryProfilerStage) {
+        return ImmutableList.of(EventDataPoller.class, MemoryDataPoller.class, MemoryJvmtiDataPoller.class, NativeSymbolsPoller.class);
+      }
+      if (stage instanceof NetworkProfilerStage) {
+        return ImmutableList.of(EventDataPoller.class, NetworkDataPoller.class);
+      }
+      if (stage instanceof EnergyProfilerStage) {
+        return ImmutableList.of(EventDataPoller.class, EnergyDataPoller.class);
+      }
+      return ImmutableList.of();
     }
 
     private void selectedSessionChanged() {
@@ -327,6 +380,7 @@ public class AndroidProfilerToolWindow implements Disposable {
       // setTitle appends to the ToolWindow's existing name (i.e. "Profiler"), hence we only
       // need to create and set the string for the session's name.
       myWindow.setTitle(metaData.getSessionName());
+      updatePollFocus();
     }
 
     private void profilingSessionChanged() {
@@ -26,6 +26,7 @@ import com.android.tools.idea.profilers.stacktrace.IntellijCodeNavigator;
 import com.android.tools.idea.project.AndroidNotification;
 import com.android.tools.idea.run.AndroidRunConfigurationBase;
 import com.android.tools.idea.run.profiler.CpuProfilerConfigsState;
+import com.android.tools.profilers.CaptureCache;
 import com.android.tools.profilers.FeatureConfig;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.Notification;
@@ -39,6 +40,7 @@ import com.intellij.execution.RunnerAndConfigurationSettings;
 import com.intellij.execution.impl.EditConfigurationsDialog;
 import com.intellij.notification.NotificationType;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.module.Module;
@@ -55,6 +57,7 @@ import javax.swing.*;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -68,6 +71,12 @@ import java.util.stream.Collectors;
 
 public class IntellijProfilerServices implements IdeProfilerServices {
 
+  /**
+   * Shared by the projects, next to the datastore's session archive (see {@link ProfilerService}).
+   */
+  private static final CaptureCache ourCaptureCache =
+    new CaptureCache(Paths.get(PathManager.getSystemPath(), ".android", "captures").toFile());
+
   private static Logger getLogger() {
     return Logger.getInstance(IntellijProfilerServices.class);
   }
@@ -278,6 +287,12 @@ public class IntellijProfilerServices implements IdeProfilerServices {
     return myPersistentPreferences;
   }
 
+  @NotNull
+  @Override
+  public CaptureCache getCaptureCache() {
+    return ourCaptureCache;
+  }
+
   @Override
   public void openParseLargeTracesDialog(Runnable yesCallback, Runnable noCallback) {
     int dialogResult = Messages.showYesNoDialog(myProject,
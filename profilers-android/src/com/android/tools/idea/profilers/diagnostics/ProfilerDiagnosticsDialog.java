@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.profilers.diagnostics;
+
+import com.android.tools.adtui.model.metrics.MetricsRegistry;
+import com.android.tools.adtui.model.metrics.MetricsSnapshot;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Internal dialog listing the metrics of the {@link MetricsRegistry}, refreshed every second, with durations in milliseconds.
+ */
+public class ProfilerDiagnosticsDialog extends DialogWrapper {
+  private static final int REFRESH_PERIOD_MS = 1000;
+
+  @Nullable private final Project myProject;
+  @NotNull private final MetricsTableModel myModel = new MetricsTableModel();
+  @NotNull private final Timer myRefreshTimer;
+  @NotNull private MetricsSnapshot mySnapshot;
+
+  public ProfilerDiagnosticsDialog(@Nullable Project project) {
+    super(project, false, IdeModalityType.MODELESS);
+    myProject = project;
+    setTitle("Profiler Diagnostics");
+    mySnapshot = MetricsRegistry.getInstance().snapshot();
+    myModel.setSnapshot(mySnapshot);
+    myRefreshTimer = new Timer(REFRESH_PERIOD_MS, event -> refresh());
+    myRefreshTimer.start();
+    init();
+  }
+
+  private void refresh() {
+    mySnapshot = MetricsRegistry.getInstance().snapshot();
+    myModel.setSnapshot(mySnapshot);
+  }
+
+  @Override
+  protected JComponent createCenterPanel() {
+    JBTable table = new JBTable(myModel);
+    table.setAutoCreateRowSorter(true);
+    table.getColumnModel().getColumn(0).setPreferredWidth(JBUI.scale(400));
+    JPanel panel = new JPanel(new BorderLayout());
+    panel.add(new JBScrollPane(table), BorderLayout.CENTER);
+    panel.setPreferredSize(JBUI.size(900, 500));
+    return panel;
+  }
+
+  @NotNull
+  @Override
+  protected Action[] createLeftSideActions() {
+    return new Action[]{
+      new AbstractAction("Reset") {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+          MetricsRegistry.getInstance().reset();
+          refresh();
+        }
+      },
+      new AbstractAction("Copy JSON") {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+          CopyPasteManager.getInstance().setContents(new StringSelection(mySnapshot.toJson()));
+        }
+      },
+      new AbstractAction("Export JSON...") {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+          exportJson();
+        }
+      }
+    };
+  }
+
+  @NotNull
+  @Override
+  protected Action[] createActions() {
+    return new Action[]{getOKAction()};
+  }
+
+  private void exportJson() {
+    String json = mySnapshot.toJson();
+    FileSaverDescriptor descriptor = new FileSaverDescriptor("Export Profiler Metrics", "Save the metrics as JSON", "json");
+    VirtualFileWrapper file = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, myProject).save(null, "profiler-metrics");
+    if (file == null) {
+      return;
+    }
+    try {
+      Files.write(file.getFile().toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+    catch (IOException e) {
+      Messages.showErrorDialog(myProject, e.getMessage(), "Export Profiler Metrics");
+    }
+  }
+
+  @Override
+  protected void dispose() {
+    myRefreshTimer.stop();
+    super.dispose();
+  }
+
+  private static final class MetricsTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"Metric", "Count / Value", "Mean (ms)", "p50 (ms)", "p90 (ms)", "p99 (ms)", "Max (ms)",
+      "Total (ms)"};
+
+    @NotNull private final List<Object[]> myRows = new ArrayList<>();
+
+    void setSnapshot(@NotNull MetricsSnapshot snapshot) {
+      myRows.clear();
+      for (Map.Entry<String, MetricsSnapshot.HistogramValues> entry : snapshot.getHistograms().entrySet()) {
+        MetricsSnapshot.HistogramValues values = entry.getValue();
+        myRows.add(new Object[]{entry.getKey(), values.getCount(), toMs(values.getMeanNs()), toMs(values.getP50Ns()),
+          toMs(values.getP90Ns()), toMs(values.getP99Ns()), toMs(values.getMaxNs()), toMs(values.getTotalNs())});
+      }
+      snapshot.getCounters().forEach((name, value) -> myRows.add(new Object[]{name, value, null, null, null, null, null, null}));
+      snapshot.getGauges().forEach((name, value) -> myRows.add(new Object[]{name, value, null, null, null, null, null, null}));
+      fireTableDataChanged();
+    }
+
+    private static double toMs(long ns) {
+      return ns / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public int getRowCount() {
+      return myRows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+      return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+      return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+      return column == 0 ? String.class : column == 1 ? Long.class : Double.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+      return myRows.get(row)[column];
+    }
+  }
+}
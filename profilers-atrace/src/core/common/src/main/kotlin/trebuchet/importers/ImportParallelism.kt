@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package trebuchet.importers
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Threads shared by the importers to parse their input on several cores. The number of threads is bounded, so importing a
+ * large trace doesn't starve the rest of the application.
+ */
+object ImportParallelism {
+    private const val MaxParallelism = 8
+
+    private val threadCount = AtomicInteger()
+    private var executor: ExecutorService? = null
+
+    var parallelism: Int = defaultParallelism()
+        @Synchronized get
+        private set
+
+    private fun defaultParallelism() =
+            // Leave one core for the caller, which applies the parsed results.
+            maxOf(1, minOf(MaxParallelism, Runtime.getRuntime().availableProcessors() - 1))
+
+    /**
+     * Changes the number of threads, e.g. to 1 in order to compare against a sequential import. Tasks already submitted
+     * keep running on the previous threads.
+     */
+    @Synchronized
+    fun setParallelism(parallelism: Int) {
+        executor?.shutdown()
+        executor = null
+        this.parallelism = maxOf(1, parallelism)
+    }
+
+    @Synchronized
+    fun resetParallelism() = setParallelism(defaultParallelism())
+
+    @Synchronized
+    fun <T> submit(task: () -> T): Future<T> {
+        val executor = this.executor ?: ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                LinkedBlockingQueue<Runnable>()) { runnable ->
+            val thread = Thread(runnable, "Trace import worker ${threadCount.incrementAndGet()}")
+            thread.isDaemon = true
+            thread
+        }.apply {
+            // Only keep the threads around while traces are being imported.
+            allowCoreThreadTimeOut(true)
+        }
+        this.executor = executor
+        return executor.submit(task)
+    }
+}
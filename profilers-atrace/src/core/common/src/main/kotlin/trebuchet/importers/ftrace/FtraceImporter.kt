@@ -17,6 +17,7 @@
 package trebuchet.importers.ftrace
 
 import trebuchet.importers.ImportFeedback
+import trebuchet.importers.ImportParallelism
 import trebuchet.importers.Importer
 import trebuchet.importers.ImporterFactory
 import trebuchet.io.DataSlice
@@ -24,53 +25,198 @@ import trebuchet.io.GenericByteBuffer
 import trebuchet.io.StreamingLineReader
 import trebuchet.io.StreamingReader
 import trebuchet.model.fragments.ModelFragment
+import trebuchet.util.BufferReader
+import trebuchet.util.StringCache
 import trebuchet.util.contains
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 import java.util.regex.Pattern
 
+/**
+ * Imports ftrace text in chunks of lines. The chunks are parsed on [ImportParallelism]'s threads, into [FtraceLine]s and the
+ * details their [ParseFunction]s extract, then applied to the model on the importing thread, in file order. Slices and
+ * scheduling states span chunks, so applying them in order is what keeps the result the same as a sequential import.
+ */
 class FtraceImporter(val feedback: ImportFeedback) : Importer {
     var foundHeader = false
     var state = FtraceImporterState(feedback)
-    val parser = FtraceLine.Parser(state.stringCache)
+    private val handlers = FunctionRegistry.create()
+    private var chunk = LineChunk()
+    private val parsingChunks = ArrayDeque<Future<List<ParsedLine>>>()
 
     // Create captured lambads here to avoid extra kotlin-generated overhead
     private val lineReaderCallback: (DataSlice) -> Unit = this::handleLine
-    private var ftraceParserCallback: (FtraceLine) -> Unit = state::importLine
-    private val coreStartedRegex = Pattern.compile("^#+ CPU \\d buffer started #+")
 
     override fun import(stream: StreamingReader): ModelFragment? {
-        val lineReader = StreamingLineReader(1024, stream)
+        val lineReader = StreamingLineReader(1024, stream, keepLongLines = true)
         foundHeader = false
-        lineReader.forEachLine(lineReaderCallback)
+        try {
+            lineReader.forEachLine(lineReaderCallback)
+            parseChunk()
+            while (parsingChunks.isNotEmpty()) {
+                applyNextChunk()
+            }
+        } finally {
+            parsingChunks.forEach { it.cancel(false) }
+            parsingChunks.clear()
+        }
         return state.finish()
     }
 
     fun handleLine(line: DataSlice) {
-        // This should never happen. However due to the dereference below we guard against it so we don't throw out of bounds exceptions.
-        if (line.buffer.size < 2) {
+        if (!chunk.add(line)) {
+            parseChunk()
+            chunk.add(line)
+        }
+    }
+
+    private fun parseChunk() {
+        if (chunk.lineCount == 0) {
+            return
+        }
+        val lines = chunk
+        chunk = LineChunk()
+        val parallelism = ImportParallelism.parallelism
+        if (parallelism == 1) {
+            apply(parse(lines))
             return
         }
-        // The format of the line buffer should be either a series of comments, or a tracer line. Null and empty are handled
-        // at a higher level.
-        if (line[1] == '#'.toByte() && coreStartedRegex.matcher(line.toString()).matches()) {
-            // Fix inconsistencies in traces due to circular buffering.
-            //
-            //  The circular buffers are kept per CPU, so it is not guaranteed that the
-            //  beginning of a slice is overwritten before the end. To work around this, we
-            //  throw away the prefix of the trace where not all CPUs have events yet.
-            state = FtraceImporterState(feedback)
-            ftraceParserCallback = state::importLine
+        parsingChunks.add(ImportParallelism.submit { parse(lines) })
+        // Bounds the number of chunks held in memory when parsing gets ahead of applying.
+        while (parsingChunks.size > 2 * parallelism) {
+            applyNextChunk()
+        }
+    }
+
+    private fun applyNextChunk() {
+        val lines = try {
+            parsingChunks.removeFirst().get()
+        } catch (ex: ExecutionException) {
+            throw ex.cause ?: ex
+        }
+        apply(lines)
+    }
+
+    /**
+     * Parses the lines of [chunk] without touching the importer's state. Runs on any thread.
+     */
+    private fun parse(chunk: LineChunk): List<ParsedLine> {
+        val stringCache = StringCache()
+        val parser = FtraceLine.Parser(stringCache)
+        val detailsReader = BufferReader()
+        val result = ArrayList<ParsedLine>(chunk.lineCount)
+        for (i in 0 until chunk.lineCount) {
+            val line = chunk.line(i)
+            // The format of the line buffer should be either a series of comments, or a tracer line. Empty lines are skipped.
+            if (line.length == 0) {
+                continue
+            }
+            if (line.length > 1 && line[1] == '#'.toByte() && coreStartedRegex.matcher(line.toString()).matches()) {
+                result.add(ParsedLine.CpuBufferStarted)
+            } else if (line[0] == '#'.toByte()) {
+                result.add(ParsedLine.Comment)
+            } else {
+                result.add(try {
+                    parseEvent(line, parser, detailsReader, stringCache)
+                } catch (ex: Exception) {
+                    ParsedLine.Failed(line, ex)
+                })
+            }
+        }
+        return result
+    }
+
+    private fun parseEvent(raw: DataSlice, parser: FtraceLine.Parser, detailsReader: BufferReader,
+                           stringCache: StringCache): ParsedLine.Event {
+        val line = parser.parseLine(raw)
+        val handler = handlers[line.function] ?: return ParsedLine.Event(raw, line, null, null, null)
+        return try {
+            val details = detailsReader.read(line.functionDetails, stringCache) { handler.parse(line, this) }
+            ParsedLine.Event(raw, line, handler, details, null)
+        } catch (ex: Exception) {
+            // The line is still imported, the failure reported after that, like when applying the details fails.
+            ParsedLine.Event(raw, line, null, null, ex)
+        }
+    }
+
+    private fun apply(lines: List<ParsedLine>) {
+        for (parsed in lines) {
+            when (parsed) {
+                ParsedLine.CpuBufferStarted -> {
+                    // Fix inconsistencies in traces due to circular buffering.
+                    //
+                    //  The circular buffers are kept per CPU, so it is not guaranteed that the
+                    //  beginning of a slice is overwritten before the end. To work around this, we
+                    //  throw away the prefix of the trace where not all CPUs have events yet.
+                    state = FtraceImporterState(feedback)
+                }
+                ParsedLine.Comment -> foundHeader = true
+                is ParsedLine.Event -> if (foundHeader) {
+                    try {
+                        state.importLine(parsed.line, parsed.handler, parsed.details)
+                        parsed.error?.let { throw it }
+                    } catch (ex: Exception) {
+                        reportFailure(parsed.raw, ex)
+                    }
+                }
+                is ParsedLine.Failed -> if (foundHeader) {
+                    reportFailure(parsed.raw, parsed.error)
+                }
+            }
         }
-        else if (line[0] == '#'.toByte()) {
-            foundHeader = true
-        } else if (foundHeader) {
-            try {
-                parser.parseLine(line, ftraceParserCallback)
-            } catch (ex: Exception) {
-                if (line.toString().isNotBlank()) {
-                    feedback.reportImportWarning("Failed to parse: '$line'")
-                    feedback.reportImportException(ex)
+    }
+
+    private fun reportFailure(line: DataSlice, ex: Exception) {
+        if (line.toString().isNotBlank()) {
+            feedback.reportImportWarning("Failed to parse: '$line'")
+            feedback.reportImportException(ex)
+        }
+    }
+
+    private sealed class ParsedLine {
+        object CpuBufferStarted : ParsedLine()
+        object Comment : ParsedLine()
+        class Event(val raw: DataSlice, val line: FtraceLine, val handler: ParseFunction?, val details: Any?,
+                    val error: Exception?) : ParsedLine()
+        class Failed(val raw: DataSlice, val error: Exception) : ParsedLine()
+    }
+
+    /**
+     * Copies of consecutive lines. The lines read are slices of the reader's window, which is reused as the stream advances.
+     * A line longer than [ChunkSize] gets a chunk of its own.
+     */
+    private class LineChunk {
+        private var buffer = ByteArray(ChunkSize)
+        private var size = 0
+        private var lineEnds = IntArray(1024)
+        var lineCount = 0
+            private set
+
+        /**
+         * Returns false if the chunk is full. An empty chunk always accepts the line, growing if needed.
+         */
+        fun add(line: DataSlice): Boolean {
+            if (size + line.length + 1 > buffer.size) {
+                if (lineCount > 0) {
+                    return false
                 }
+                buffer = ByteArray(line.length + 1)
+            }
+            System.arraycopy(line.buffer, line.startIndex, buffer, size, line.length)
+            size += line.length
+            // Keep the line separator, parsing may peek one byte past the end of a line.
+            buffer[size++] = '\n'.toByte()
+            if (lineCount == lineEnds.size) {
+                lineEnds = lineEnds.copyOf(lineCount * 2)
             }
+            lineEnds[lineCount++] = size - 1
+            return true
+        }
+
+        fun line(index: Int): DataSlice {
+            val start = if (index == 0) 0 else lineEnds[index - 1] + 1
+            return DataSlice(buffer, start, lineEnds[index])
         }
     }
 
@@ -82,4 +228,11 @@ class FtraceImporter(val feedback: ImportFeedback) : Importer {
             return null
         }
     }
+
+    private companion object {
+        // Large enough for each chunk to be worth a task, small enough to spread a trace over all the threads.
+        const val ChunkSize = 1024 * 1024
+
+        val coreStartedRegex: Pattern = Pattern.compile("^#+ CPU \\d buffer started #+")
+    }
 }
\ No newline at end of file
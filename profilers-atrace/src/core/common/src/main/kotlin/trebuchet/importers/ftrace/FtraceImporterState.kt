@@ -28,7 +28,6 @@ import trebuchet.util.StringCache
 class FtraceImporterState(feedback: ImportFeedback) {
     private val pidMap = SparseArray<ThreadModelFragment>(50)
     private val cpuMap = SparseArray<CpuModelFragment>(6)
-    private val handlers = FunctionRegistry.create()
     val modelFragment = ModelFragment()
     val stringCache = StringCache()
     private val importData = ImportData(this, feedback)
@@ -37,15 +36,18 @@ class FtraceImporterState(feedback: ImportFeedback) {
         return modelFragment
     }
 
-    fun importLine(line: FtraceLine) {
+    /**
+     * Applies a line, the details of which [handler] already parsed into [parsed].
+     */
+    fun importLine(line: FtraceLine, handler: ParseFunction?, parsed: Any?) {
         if (modelFragment.globalStartTime == 0.0) {
             modelFragment.globalStartTime = line.timestamp
         }
         modelFragment.globalEndTime = line.timestamp
 
         if (line.hasTgid) threadFor(line)
-        val handler = handlers[line.function] ?: return
-        handler(importData.wrap(line))
+        if (handler == null) return
+        handler(importData.wrap(line, parsed))
     }
 
     private fun createProcess(tgid: Int, name: String? = null): ThreadModelFragment {
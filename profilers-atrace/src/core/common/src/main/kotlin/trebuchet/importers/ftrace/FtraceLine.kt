@@ -26,14 +26,18 @@ import java.util.regex.Pattern
 @Suppress("unused")
 const val FtraceLineRE = """^*(.{1,16})-(\d+) +(?:\( *(\d+)?-*\) )?\[(\d+)] (?:[dX.]...)? *([\d.]*): ?([^:]*): (.*)$"""
 
-class FtraceLine private constructor() {
-    private var _task: String? = null
-    private var _pid: Int = 0
-    private var _tgid: Int = 0
-    private var _cpu: Int = 0
-    private var _timestamp: Double = 0.0
-    private var _function: DataSlice = DataSlice()
-    private var _functionDetails: BufferReader? = null
+/**
+ * One parsed ftrace line. The function and its details are slices of the buffer the line was read from, which must stay
+ * unchanged for as long as the line is in use.
+ */
+class FtraceLine(val task: String?,
+                 val pid: Int,
+                 tgid: Int,
+                 val cpu: Int,
+                 val timestamp: Double,
+                 val function: DataSlice,
+                 val functionDetails: DataSlice) {
+    private var _tgid: Int = tgid
 
     val hasTgid: Boolean get() = _tgid != InvalidId
     var tgid: Int
@@ -44,47 +48,33 @@ class FtraceLine private constructor() {
             }
             _tgid = value
         }
-    val task get() = _task
-    val pid get() = _pid
-    val cpu get() = _cpu
-    val timestamp get() = _timestamp
-    val function get() = _function
-    val functionDetailsReader get() = _functionDetails!!
-
-    private fun set(taskName: String?, pid: Int, tgid: Int, cpu: Int, timestamp: Double,
-                    func: DataSlice, funcDetails: BufferReader) {
-        _task = taskName
-        _pid = pid
-        _tgid = tgid
-        _cpu = cpu
-        _timestamp = timestamp
-        _function = func
-        _functionDetails = funcDetails
-    }
 
+    /**
+     * Parses lines into new [FtraceLine]s. Not thread safe, each thread needs its own parser.
+     */
     class Parser(val stringCache: StringCache) {
         private val NullTaskName = stringCache.stringFor("<...>".asSlice())
-        private val ftraceLine = FtraceLine()
         private val _reader = BufferReader()
         private val matcher = Pattern.compile(FtraceLineRE).matcher("")
 
-        fun parseLine_new(line: DataSlice, callback: (FtraceLine) -> Unit) =
+        fun parseLine_new(line: DataSlice): FtraceLine? =
                 _reader.read(line, stringCache) {
+            var result: FtraceLine? = null
             match(matcher) {
-                ftraceLine.set(
+                result = FtraceLine(
                         string(1),
                         int(2),
                         if (matcher!!.start(3) == -1) InvalidId else int(3),
                         int(4),
                         double(5),
                         slice(6),
-                        reader(7)
+                        slice(7)
                 )
-                callback(ftraceLine)
             }
+            result
         }
 
-        fun parseLine(line: DataSlice, callback: (FtraceLine) -> Unit) =
+        fun parseLine(line: DataSlice): FtraceLine =
                 _reader.read(line, stringCache) {
             var tgid: Int = InvalidId
             skipChar(' '.toByte())
@@ -110,11 +100,10 @@ class FtraceLine private constructor() {
             skipChar(' '.toByte())
             val timestamp = readDouble()
             skipCount(1); skipChar(' '.toByte())
-            val func = sliceTo(ftraceLine.function) { skipUntil { it == ':'.toByte() } }
+            val func = sliceTo { skipUntil { it == ':'.toByte() } }
             skipCount(2)
-            ftraceLine.set(if (taskName === NullTaskName) null else taskName, pid, tgid, cpu,
-                    timestamp, func, _reader)
-            callback(ftraceLine)
+            FtraceLine(if (taskName === NullTaskName) null else taskName, pid, tgid, cpu,
+                    timestamp, func, DataSlice(buffer, minOf(index, endIndexExclusive), endIndexExclusive))
         }
     }
 }
@@ -18,11 +18,22 @@ package trebuchet.importers.ftrace
 
 import trebuchet.io.DataSlice
 import trebuchet.io.asSlice
+import trebuchet.util.BufferReader
 import java.util.regex.Matcher
 import java.util.regex.Pattern
 
 
+/**
+ * Handles the lines of one ftrace function in two steps: [parse] reads the function details, on any thread, and [invoke] applies
+ * the result to the model, on the importing thread and in file order.
+ */
 interface ParseFunction {
+    /**
+     * Parses the details of the line without touching the model, so it may run concurrently with other lines.
+     * The result is available as [ImportData.parsed] when the line is applied.
+     */
+    fun parse(line: FtraceLine, details: BufferReader): Any? = null
+
     operator fun invoke(data: ImportData): Unit
 }
 
@@ -35,10 +46,36 @@ abstract class FunctionHandlerRegistry(val handlers: MutableList<FunctionHandler
         }))
     }
 
-    protected fun matcher(pattern: String): Matcher = Pattern.compile(pattern).matcher("")
+    /**
+     * Registers a handler whose details are parsed by [parse] ahead of time. [apply] is not called for the lines [parse]
+     * returns null for.
+     */
+    protected fun <T : Any> String.handleWith(parse: (FtraceLine, BufferReader) -> T?, apply: (ImportData, T) -> Unit) {
+        handlers.add(FunctionHandler(this, object : ParseFunction {
+            override fun parse(line: FtraceLine, details: BufferReader): Any? = parse(line, details)
+
+            @Suppress("UNCHECKED_CAST")
+            override fun invoke(data: ImportData) {
+                val parsed = data.parsed ?: return
+                apply(data, parsed as T)
+            }
+        }))
+    }
+
+    /**
+     * Matchers aren't thread safe, and details are parsed on several threads at once.
+     */
+    protected fun matcher(pattern: String): ThreadLocal<Matcher> {
+        val compiled = Pattern.compile(pattern)
+        return ThreadLocal.withInitial { compiled.matcher("") }
+    }
 }
 
 object FunctionRegistry {
+    /**
+     * The returned map is only read afterwards (the hash codes of its keys are cached when they are put), so it can be shared
+     * by the threads parsing the lines.
+     */
     fun create(): Map<DataSlice,  ParseFunction> {
         val lut = mutableMapOf<DataSlice, ParseFunction>()
         handlers.forEach { factory ->
@@ -21,16 +21,24 @@ import trebuchet.util.BufferReader
 
 data class ImportData(val importer: FtraceImporterState, val feedback: ImportFeedback) {
     private var _line: FtraceLine? = null
+    private var _parsed: Any? = null
+    val detailsReader = BufferReader()
 
-    fun wrap(line: FtraceLine): ImportData {
+    fun wrap(line: FtraceLine, parsed: Any? = null): ImportData {
         _line = line
+        _parsed = parsed
         return this
     }
 
     val line: FtraceLine get() = _line!!
     val thread get() = importer.threadFor(line)
 
+    /**
+     * What [ParseFunction.parse] returned for the line.
+     */
+    val parsed: Any? get() = _parsed
+
     inline fun <T> readDetails(init: BufferReader.() -> T): T {
-        return line.functionDetailsReader.init()
+        return detailsReader.read(line.functionDetails, importer.stringCache, init)
     }
 }
\ No newline at end of file
@@ -17,61 +17,70 @@
 package trebuchet.importers.ftrace
 
 import trebuchet.model.SchedulingState
-import trebuchet.model.fragments.ThreadModelFragment
+import trebuchet.util.BufferReader
 import trebuchet.util.PreviewReader
 import java.util.regex.Pattern
 
 object SchedParser : FunctionHandlerRegistry() {
     init {
-        "sched_switch" handleWith this::sched_switch
-        "sched_waking" handleWith this::sched_wakeup
-        "sched_wakeup" handleWith this::sched_wakeup
+        "sched_switch".handleWith(this::parseSchedSwitch, this::sched_switch)
+        "sched_waking".handleWith(this::parseSchedWakeup, this::sched_wakeup)
+        "sched_wakeup".handleWith(this::parseSchedWakeup, this::sched_wakeup)
         "sched_blocked_reason" handleWith this::sched_blocked_reason
         "sched_cpu_hotplug" handleWith this::sched_cpu_hotplug
     }
 
+    private class SchedSwitch(val prevComm: String, val prevPid: Int, val prevState: SchedulingState,
+                              val nextComm: String, val nextPid: Int)
+
+    private class SchedWakeup(val comm: String, val pid: Int)
+
     private val schedSwitchMatcher = matcher(
             "prev_comm=(.*) prev_pid=(\\d+) prev_prio=(\\d+) prev_state=([^\\s]+) ==> next_comm=(.*) next_pid=(\\d+) next_prio=(\\d+)")
 
-    private fun sched_switch(data: ImportData) = data.readDetails {
+    private fun parseSchedSwitch(line: FtraceLine, details: BufferReader): SchedSwitch? {
         // sched_switch: prev_comm=atrace prev_pid=7100 prev_prio=120 prev_state=S
         // ==> next_comm=swapper/1 next_pid=0 next_prio=120
-        match(schedSwitchMatcher) {
-            val prevPid = int(2)
-            val prevPrio = int(3)
-            val prevState = read(4) { readSchedulingState() }
-            val nextPid = int(6)
-            val nextPrio = int(7)
-
-            val prevThread = data.importer.threadFor(prevPid)
-            if (prevThread.name == null) {
-                prevThread.hint(name = string(1))
-            }
-            val nextThread = data.importer.threadFor(nextPid)
-            if (nextThread.name == null) {
-                nextThread.hint(name = string(5))
-            }
-            val cpu = data.importer.cpuFor(data.line.cpu)
-
-            prevThread.schedulingStateBuilder.switchState(prevState, data.line.timestamp)
-            nextThread.schedulingStateBuilder.switchState(SchedulingState.RUNNING, data.line.timestamp)
-            cpu.schedulingProcessBuilder.switchProcess(nextThread.process, nextThread, data.line.timestamp)
+        var result: SchedSwitch? = null
+        details.match(schedSwitchMatcher.get()) {
+            result = SchedSwitch(string(1), int(2), read(4) { readSchedulingState() }, string(5), int(6))
+        }
+        return result
+    }
 
+    private fun sched_switch(data: ImportData, event: SchedSwitch) {
+        val prevThread = data.importer.threadFor(event.prevPid)
+        if (prevThread.name == null) {
+            prevThread.hint(name = event.prevComm)
         }
+        val nextThread = data.importer.threadFor(event.nextPid)
+        if (nextThread.name == null) {
+            nextThread.hint(name = event.nextComm)
+        }
+        val cpu = data.importer.cpuFor(data.line.cpu)
+
+        prevThread.schedulingStateBuilder.switchState(event.prevState, data.line.timestamp)
+        nextThread.schedulingStateBuilder.switchState(SchedulingState.RUNNING, data.line.timestamp)
+        cpu.schedulingProcessBuilder.switchProcess(nextThread.process, nextThread, data.line.timestamp)
     }
 
     private val schedWakeupMatcher = matcher(
             """comm=(.+) pid=(\d+) prio=(\d+)(?: success=\d+)? target_cpu=(\d+)""")
 
-    private fun sched_wakeup(data: ImportData) = data.readDetails {
-        match(schedWakeupMatcher) {
-            val pid = int(2)
-            val thread = data.importer.threadFor(pid)
-            if (thread.name == null) {
-                thread.hint(name = string(1))
-            }
-            thread.schedulingStateBuilder.switchState(SchedulingState.WAKING, data.line.timestamp)
+    private fun parseSchedWakeup(line: FtraceLine, details: BufferReader): SchedWakeup? {
+        var result: SchedWakeup? = null
+        details.match(schedWakeupMatcher.get()) {
+            result = SchedWakeup(string(1), int(2))
+        }
+        return result
+    }
+
+    private fun sched_wakeup(data: ImportData, event: SchedWakeup) {
+        val thread = data.importer.threadFor(event.pid)
+        if (thread.name == null) {
+            thread.hint(name = event.comm)
         }
+        thread.schedulingStateBuilder.switchState(SchedulingState.WAKING, data.line.timestamp)
     }
 
     private fun sched_blocked_reason(data: ImportData) = data.readDetails {
@@ -23,55 +23,77 @@ object TracingMarkerWrite : FunctionHandlerRegistry() {
     const val End = 'E'.toByte()
     const val Counter = 'C'.toByte()
 
+    private class BeginMarker(val tgid: Int, val name: String)
+    private object EndMarker
+    private class CounterMarker(val tgid: Int, val name: String, val value: Int)
+    private class ParentClockSync(val timestamp: Double)
+    private class RealtimeClockSync(val timestamp: Long)
+
     init {
-        "tracing_mark_write" handleWith this::handle
+        "tracing_mark_write".handleWith(this::parse, this::handle)
     }
 
-    fun handle(data: ImportData) = data.readDetails {
+    private fun parse(line: FtraceLine, details: BufferReader): Any? = details.run {
         when (peek()) {
-            Begin -> handleBegin(data)
-            End -> handleEnd(data)
-            Counter -> handleCounter(data)
-            else -> handleClockSyncMarker(data)
+            Begin -> parseBegin()
+            End -> EndMarker
+            Counter -> parseCounter()
+            else -> parseClockSyncMarker()
+        }
+    }
+
+    private fun handle(data: ImportData, marker: Any) {
+        when (marker) {
+            is BeginMarker -> handleBegin(data, marker)
+            EndMarker -> handleEnd(data)
+            is CounterMarker -> handleCounter(data, marker)
+            is ParentClockSync -> {
+                data.importer.modelFragment.parentTimestamp = marker.timestamp
+                data.importer.modelFragment.parentTimestampBootTime = data.line.timestamp
+            }
+            is RealtimeClockSync -> data.importer.modelFragment.realtimeTimestamp = marker.timestamp
         }
     }
 
 
     // tracing_mark_write: trace_event_clock_sync: parent_ts=23816.083984
-    val parentTsMatcher = matcher(
+    private val parentTsMatcher = matcher(
             "trace_event_clock_sync: parent_ts=(.*)")
 
 
     // tracing_mark_write: trace_event_clock_sync: realtime_ts=1491850748338
-    val realtimeTsMatcher = matcher(
+    private val realtimeTsMatcher = matcher(
             "trace_event_clock_sync: realtime_ts=(.*)")
 
 
-    fun BufferReader.handleClockSyncMarker(data: ImportData) {
+    private fun BufferReader.parseClockSyncMarker(): Any? {
+        var marker: Any? = null
         // First check if the line we are importing is the parent timestamp line.
-        tryMatch(parentTsMatcher) {
-            val timestamp = double(1)
-            data.importer.modelFragment.parentTimestamp = timestamp
-            data.importer.modelFragment.parentTimestampBootTime = data.line.timestamp
+        tryMatch(parentTsMatcher.get()) {
+            marker = ParentClockSync(double(1))
         }
 
         // Test if the line we are testing has the realtime timestamp.
-        tryMatch(realtimeTsMatcher) {
-            val timestamp = long(1)
-            data.importer.modelFragment.realtimeTimestamp = timestamp
+        tryMatch(realtimeTsMatcher.get()) {
+            marker = RealtimeClockSync(long(1))
         }
+        return marker
     }
 
-    fun BufferReader.handleBegin(data: ImportData) {
+    private fun BufferReader.parseBegin(): BeginMarker {
         // Begin format: B|<tgid>|<title>
         skipCount(2)
-        data.line.tgid = readInt()
+        val tgid = readInt()
         skip()
+        return BeginMarker(tgid, stringTo { end() })
+    }
+
+    private fun handleBegin(data: ImportData, marker: BeginMarker) {
+        data.line.tgid = marker.tgid
         val thread = data.importer.threadFor(data.line)
-        val name = stringTo { end() }
         thread.slicesBuilder.beginSlice {
             it.startTime = data.line.timestamp
-            it.name = name
+            it.name = marker.name
         }
     }
 
@@ -84,7 +106,7 @@ object TracingMarkerWrite : FunctionHandlerRegistry() {
         }
     }
 
-    fun BufferReader.handleCounter(data: ImportData) {
+    private fun BufferReader.parseCounter(): CounterMarker {
         // Counter format: C|<tgid>|<name>|<value>
         skipCount(2)
         val tgid = readInt()
@@ -92,7 +114,11 @@ object TracingMarkerWrite : FunctionHandlerRegistry() {
         val name = stringTo { skipUntil { it == '|'.toByte() } }
         skip()
         val value = readInt()
-        data.line.tgid = tgid
-        data.importer.threadFor(data.line).process.addCounterSample(name, data.line.timestamp, value)
+        return CounterMarker(tgid, name, value)
+    }
+
+    private fun handleCounter(data: ImportData, marker: CounterMarker) {
+        data.line.tgid = marker.tgid
+        data.importer.threadFor(data.line).process.addCounterSample(marker.name, data.line.timestamp, marker.value)
     }
 }
\ No newline at end of file
@@ -16,7 +16,11 @@
 
 package trebuchet.io
 
-class StreamingLineReader(val maxLineLength: Int, val stream: StreamingReader) {
+/**
+ * Calls back with each line of the stream. Lines longer than [maxLineLength] are skipped, unless [keepLongLines] is set, in which
+ * case they are copied to a buffer growing to fit the longest one as the stream is read.
+ */
+class StreamingLineReader(val maxLineLength: Int, val stream: StreamingReader, val keepLongLines: Boolean = false) {
     init {
         if (maxLineLength > stream.keepLoadedSize) {
             throw IllegalArgumentException("Cannot have a maxLineLength ($maxLineLength) that's bigger than "
@@ -27,14 +31,22 @@ class StreamingLineReader(val maxLineLength: Int, val stream: StreamingReader) {
     val tmpBuffer = ByteArray(maxLineLength)
     val tmpBufferSlice = tmpBuffer.asSlice()
     val tmpSlice = DataSlice()
+    private var longLine = ByteArray(0)
+    private var longLineLength = 0
+    private val longLineSlice = DataSlice()
 
     fun forEachLine(lineCallback: (DataSlice) -> Unit) {
         var lineStartIndex = stream.startIndex
         while (true) {
             var index = lineStartIndex
             var foundAt = -1
+            longLineLength = 0
             while (true) {
                 if (index > stream.endIndex) {
+                    if (keepLongLines && index - lineStartIndex >= maxLineLength) {
+                        // Loading more may release the start of the line
+                        copyToLongLine(lineStartIndex, index - 1)
+                    }
                     if (!stream.loadIndex(index)) break
                 }
                 val window = stream.windowFor(index)
@@ -65,11 +77,29 @@ class StreamingLineReader(val maxLineLength: Int, val stream: StreamingReader) {
                     tmpBufferSlice.set(tmpBuffer, 0, lineEndIndexInclusive - lineStartIndex + 1)
                     lineCallback(tmpBufferSlice)
                 }
+            } else if (keepLongLines) {
+                copyToLongLine(lineStartIndex, lineEndIndexInclusive)
+                // The line break may have been copied already
+                longLineSlice.set(longLine, 0, lineEndIndexInclusive - lineStartIndex + 1)
+                lineCallback(longLineSlice)
             }
             lineStartIndex = nextStart
         }
     }
 
+    /**
+     * Appends the bytes of the line starting at [lineStartIndex] up to [endIndex] which aren't in [longLine] yet.
+     */
+    private fun copyToLongLine(lineStartIndex: Int, endIndex: Int) {
+        val length = endIndex - lineStartIndex + 1
+        if (length <= longLineLength) return
+        if (length > longLine.size) {
+            longLine = longLine.copyOf(maxOf(length, longLine.size * 2))
+        }
+        stream.copyTo(longLine, lineStartIndex + longLineLength, endIndex, longLineLength)
+        longLineLength = length
+    }
+
     fun findNewlineInWindow(window: StreamingReader.Window, startIndex: Int): Int {
         for (i in startIndex..window.globalEndIndex) {
             if (window[i] == '\n'.toByte()) return i
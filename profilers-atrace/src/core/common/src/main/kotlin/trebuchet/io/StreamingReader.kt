@@ -71,9 +71,9 @@ class StreamingReader(val source: BufferProducer, val keepLoadedSize: Int = 8096
         inline operator fun get(i: Int): Byte = slice[i - globalStartIndex]
     }
 
-    fun copyTo(tmpBuffer: ByteArray, lineStartIndex: Int, lineEndIndex: Int) {
+    fun copyTo(tmpBuffer: ByteArray, lineStartIndex: Int, lineEndIndex: Int, dstOffset: Int = 0) {
         var srcIndex = lineStartIndex
-        var dstIndex = 0
+        var dstIndex = dstOffset
         while (srcIndex <= lineEndIndex && dstIndex < tmpBuffer.size) {
             val window = windowFor(srcIndex)
             while (srcIndex <= window.globalEndIndex && dstIndex < tmpBuffer.size) {
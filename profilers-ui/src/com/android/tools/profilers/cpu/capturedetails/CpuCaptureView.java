@@ -147,7 +147,10 @@ public class CpuCaptureView {
     @NotNull
     @Override
     protected String getDurationText() {
-      return TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(myStage.getCaptureParser().getParsingElapsedTimeMs()));
+      CpuCaptureParser parser = myStage.getCaptureParser();
+      String duration = TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(parser.getParsingElapsedTimeMs()));
+      int progress = parser.getParsingProgress();
+      return progress < 0 ? duration : String.format("%s (%d%% read)", duration, progress);
     }
 
     @Override
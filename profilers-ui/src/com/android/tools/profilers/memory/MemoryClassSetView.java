@@ -210,7 +210,15 @@ final class MemoryClassSetView extends AspectObserver {
         "Retained Size",
         () -> new SimpleColumnRenderer<>(value -> {
           MemoryObject node = value.getAdapter();
-          return node instanceof ValueObject ? NumberFormatter.formatInteger(((ValueObject)node).getRetainedSize()) : "";
+          if (!(node instanceof ValueObject)) {
+            return "";
+          }
+          long retainedSize = ((ValueObject)node).getRetainedSize();
+          // Values without a retained size are left blank, unlike the ones whose retained size is being computed.
+          if (retainedSize == MemoryObject.INVALID_VALUE && (myCaptureObject == null || myCaptureObject.isRetainedSizeReady())) {
+            return "";
+          }
+          return MemoryClassifierView.getRetainedSizeText(myCaptureObject, retainedSize, retainedSize == MemoryObject.INVALID_VALUE);
         }, value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -65,6 +65,16 @@ final class MemoryClassifierView extends AspectObserver {
   private static final int DEFAULT_COLUMN_WIDTH = 80;
   private static final int HEAP_UPDATING_DELAY_MS = 250;
   private static final int MIN_COLUMN_WIDTH = 16;
+  /**
+   * Shown in the "Retained Size" column until the retained sizes of a row are computed, see {@link CaptureObject#isRetainedSizeReady()} and
+   * {@link ClassifierSet#hasPendingRetainedSize()}.
+   */
+  static final String RETAINED_SIZE_PENDING_TEXT = "Computing...";
+  /**
+   * Shown in the "Retained Size" column if the capture's retained sizes couldn't be computed, see
+   * {@link CaptureObject#isRetainedSizeError()}.
+   */
+  static final String RETAINED_SIZE_ERROR_TEXT = "Unavailable";
 
   private static final String HELP_TIP_HEADER_LIVE_ALLOCATION = "Selected range has no allocations or deallocations";
   private static final String HELP_TIP_DESCRIPTION_LIVE_ALLOCATION =
@@ -194,7 +204,8 @@ final class MemoryClassifierView extends AspectObserver {
       new AttributeColumn<>(
         "Retained Size",
         () -> new SimpleColumnRenderer<ClassifierSet>(
-          value -> NumberFormatter.formatInteger(value.getAdapter().getTotalRetainedSize()),
+          value -> getRetainedSizeText(myCaptureObject, value.getAdapter().getTotalRetainedSize(),
+                                       value.getAdapter().hasPendingRetainedSize()),
           value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -208,6 +219,20 @@ final class MemoryClassifierView extends AspectObserver {
     return myPanel;
   }
 
+  /**
+   * @return the text of a retained size, or a placeholder while it is computed or if the capture's retained sizes failed.
+   */
+  @NotNull
+  static String getRetainedSizeText(@Nullable CaptureObject captureObject, long retainedSize, boolean isPending) {
+    if (captureObject != null && captureObject.isRetainedSizeError()) {
+      return RETAINED_SIZE_ERROR_TEXT;
+    }
+    if (isPending && captureObject != null && !captureObject.isRetainedSizeReady()) {
+      return RETAINED_SIZE_PENDING_TEXT;
+    }
+    return NumberFormatter.formatInteger(retainedSize);
+  }
+
   @VisibleForTesting
   @Nullable
   JTree getTree() {
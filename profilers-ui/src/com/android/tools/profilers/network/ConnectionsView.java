@@ -239,12 +239,50 @@ final class ConnectionsView {
     @NotNull private List<HttpData> myDataList = new ArrayList<>();
 
     private ConnectionsTableModel(HttpDataFetcher httpDataFetcher) {
-      httpDataFetcher.addListener(httpDataList -> {
-        myDataList = httpDataList;
-        fireTableDataChanged();
+      httpDataFetcher.addListener(new HttpDataFetcher.Listener() {
+        @Override
+        public void onUpdated(@NotNull List<HttpData> httpDataList) {
+          myDataList = httpDataList;
+          fireTableDataChanged();
+        }
+
+        @Override
+        public void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull HttpDataFetcher.Diff diff) {
+          List<HttpData> previous = myDataList;
+          if (!isAppendedTo(previous, httpDataList, diff)) {
+            onUpdated(httpDataList);
+            return;
+          }
+
+          // Only fire the rows which changed, so the rest of the table, and their timeline charts, are left as they are.
+          myDataList = httpDataList;
+          for (int i = 0; i < previous.size(); ++i) {
+            if (previous.get(i) != httpDataList.get(i)) {
+              fireTableRowsUpdated(i, i);
+            }
+          }
+          if (!diff.getAdded().isEmpty()) {
+            fireTableRowsInserted(previous.size(), httpDataList.size() - 1);
+          }
+        }
       });
     }
 
+    /**
+     * @return whether {@code current} lists the {@code previous} requests in the same rows, followed by the added ones.
+     */
+    private boolean isAppendedTo(@NotNull List<HttpData> previous, @NotNull List<HttpData> current, @NotNull HttpDataFetcher.Diff diff) {
+      if (previous.isEmpty() || !diff.getRemoved().isEmpty() || previous.size() + diff.getAdded().size() != current.size()) {
+        return false;
+      }
+      for (int i = 0; i < previous.size(); ++i) {
+        if (previous.get(i).getId() != current.get(i).getId()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public int getRowCount() {
       return myDataList.size();
@@ -340,13 +378,31 @@ final class ConnectionsView {
 
     @Override
     public void tableChanged(TableModelEvent e) {
-      myConnectionsCharts.clear();
       ConnectionsTableModel model = (ConnectionsTableModel)myTable.getModel();
-      for (int i = 0; i < model.getRowCount(); ++i) {
-        ConnectionsStateChart chart = new ConnectionsStateChart(model.getHttpData(i), getTimeline().getSelectionRange());
-        chart.setHeightGap(0.3f);
-        myConnectionsCharts.add(chart);
+      if (e.getType() == TableModelEvent.INSERT && e.getFirstRow() == myConnectionsCharts.size()) {
+        for (int i = e.getFirstRow(); i <= e.getLastRow(); ++i) {
+          myConnectionsCharts.add(createChart(model.getHttpData(i)));
+        }
+      }
+      else if (e.getType() == TableModelEvent.UPDATE && e.getFirstRow() != TableModelEvent.HEADER_ROW &&
+               e.getLastRow() != Integer.MAX_VALUE && e.getLastRow() < myConnectionsCharts.size()) {
+        for (int i = e.getFirstRow(); i <= e.getLastRow(); ++i) {
+          myConnectionsCharts.set(i, createChart(model.getHttpData(i)));
+        }
       }
+      else {
+        myConnectionsCharts.clear();
+        for (int i = 0; i < model.getRowCount(); ++i) {
+          myConnectionsCharts.add(createChart(model.getHttpData(i)));
+        }
+      }
+    }
+
+    @NotNull
+    private ConnectionsStateChart createChart(@NotNull HttpData data) {
+      ConnectionsStateChart chart = new ConnectionsStateChart(data, getTimeline().getSelectionRange());
+      chart.setHeightGap(0.3f);
+      return chart;
     }
   }
 }
@@ -23,9 +23,13 @@ import static com.android.tools.profilers.ProfilerLayout.MONITOR_LABEL_PADDING;
 import static com.android.tools.profilers.ProfilerLayout.PROFILER_LEGEND_RIGHT_PADDING;
 import static com.android.tools.profilers.ProfilerLayout.PROFILING_INSTRUCTIONS_BACKGROUND_ARC_DIAMETER;
 import static com.android.tools.profilers.ProfilerLayout.Y_AXIS_TOP_MARGIN;
+import static com.android.tools.profilers.ProfilerLayout.FILTER_TEXT_FIELD_TRIGGER_DELAY_MS;
+import static com.android.tools.profilers.ProfilerLayout.FILTER_TEXT_FIELD_WIDTH;
+import static com.android.tools.profilers.ProfilerLayout.FILTER_TEXT_HISTORY_SIZE;
 import static com.android.tools.profilers.ProfilerLayout.createToolbarLayout;
 
 import com.android.tools.adtui.AxisComponent;
+import com.android.tools.adtui.FilterComponent;
 import com.android.tools.adtui.LegendComponent;
 import com.android.tools.adtui.LegendConfig;
 import com.android.tools.adtui.RangeTooltipComponent;
@@ -33,6 +37,7 @@ import com.android.tools.adtui.SelectionComponent;
 import com.android.tools.adtui.TabularLayout;
 import com.android.tools.adtui.chart.linechart.LineChart;
 import com.android.tools.adtui.chart.linechart.LineConfig;
+import com.android.tools.adtui.flat.FlatSeparator;
 import com.android.tools.adtui.instructions.InstructionsPanel;
 import com.android.tools.adtui.instructions.NewRowInstruction;
 import com.android.tools.adtui.instructions.TextInstruction;
@@ -42,6 +47,7 @@ import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.SelectionListener;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.adtui.stdui.CommonTabbedPane;
+import com.android.tools.adtui.stdui.CommonToggleButton;
 import com.android.tools.profilers.ProfilerColors;
 import com.android.tools.profilers.ProfilerFonts;
 import com.android.tools.profilers.ProfilerLayeredPane;
@@ -107,7 +113,7 @@ public class NetworkProfilerStageView extends StageView<NetworkProfilerStage> {
     leftSplitter.getDivider().setBorder(DEFAULT_HORIZONTAL_BORDERS);
     leftSplitter.setFirstComponent(buildMonitorUi());
 
-    myConnectionsPanel = new JPanel(new TabularLayout("*,Fit-", "Fit-,*"));
+    myConnectionsPanel = new JPanel(new TabularLayout("*,Fit-", "Fit-,*,Fit-"));
     JPanel connectionsPanel = new JPanel(new CardLayout());
 
     JTabbedPane connectionsTab = new CommonTabbedPane();
@@ -154,8 +160,19 @@ public class NetworkProfilerStageView extends StageView<NetworkProfilerStage> {
     selectionTimeLabel.setBorder(JBUI.Borders.empty(8, 0, 0, 8));
     toolbar.add(selectionTimeLabel);
 
+    CommonToggleButton filterButton = FilterComponent.createFilterToggleButton();
+    toolbar.add(new FlatSeparator());
+    toolbar.add(filterButton);
+    FilterComponent filterComponent =
+      new FilterComponent(FILTER_TEXT_FIELD_WIDTH, FILTER_TEXT_HISTORY_SIZE, FILTER_TEXT_FIELD_TRIGGER_DELAY_MS);
+    filterComponent.getModel().setFilterHandler(getStage().getFilterHandler());
+    filterComponent.setVisible(false);
+    filterComponent.setBorder(JBUI.Borders.emptyLeft(4));
+    FilterComponent.configureKeyBindingAndFocusBehaviors(myConnectionsPanel, filterComponent, filterButton);
+
     myConnectionsPanel.add(toolbar, new TabularLayout.Constraint(0, 1));
     myConnectionsPanel.add(connectionsPanel, new TabularLayout.Constraint(0, 0, 2, 2));
+    myConnectionsPanel.add(filterComponent, new TabularLayout.Constraint(2, 0, 1, 2));
     myConnectionsPanel.setVisible(false);
     leftSplitter.setSecondComponent(myConnectionsPanel);
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the results of parsing captures, e.g. the call trees of CPU traces or the index of heap dumps, in files which outlive the
+ * profilers, so a capture opened again, e.g. in a session reopened after studio restarts, doesn't have to be parsed again.
+ * <p>
+ * Files are cached by key, which must identify the capture and be usable as a file name. The least recently used files are deleted
+ * when the cache takes more than {@link #getMaxSize()} bytes.
+ */
+public final class CaptureCache {
+  public static final long DEFAULT_MAX_SIZE = 2L << 30;
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  @NotNull private final File myDirectory;
+  private final long myMaxSize;
+
+  public CaptureCache(@NotNull File directory) {
+    this(directory, DEFAULT_MAX_SIZE);
+  }
+
+  public CaptureCache(@NotNull File directory, long maxSize) {
+    myDirectory = directory;
+    myMaxSize = maxSize;
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(CaptureCache.class);
+  }
+
+  public long getMaxSize() {
+    return myMaxSize;
+  }
+
+  /**
+   * @return the file cached with the key, now the most recently used one, or null if there is none.
+   */
+  @Nullable
+  public synchronized File get(@NotNull String key) {
+    File file = new File(myDirectory, key);
+    if (!file.isFile()) {
+      return null;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.setLastModified(System.currentTimeMillis());
+    return file;
+  }
+
+  /**
+   * Caches the file written by {@code writer} with the key, replacing the previous one, if any. The file is only cached once completely
+   * written, so a failed write leaves the cache as it was.
+   */
+  public void put(@NotNull String key, @NotNull Writer writer) throws IOException {
+    if (!myDirectory.isDirectory() && !myDirectory.mkdirs()) {
+      throw new IOException("Unable to create " + myDirectory);
+    }
+    File tempFile = FileUtil.createTempFile(myDirectory, key, TEMP_SUFFIX, true, true);
+    try {
+      writer.write(tempFile);
+      synchronized (this) {
+        File file = new File(myDirectory, key);
+        FileUtil.delete(file);
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Unable to create " + file);
+        }
+        prune();
+      }
+    }
+    finally {
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * Removes the file cached with the key, e.g. when it can't be read.
+   */
+  public synchronized void remove(@NotNull String key) {
+    FileUtil.delete(new File(myDirectory, key));
+  }
+
+  /**
+   * Deletes the least recently used files until the cache takes at most {@link #getMaxSize()} bytes.
+   */
+  private void prune() {
+    File[] files = myDirectory.listFiles(file -> file.isFile() && !file.getName().endsWith(TEMP_SUFFIX));
+    if (files == null) {
+      return;
+    }
+    List<File> newestFirst = new ArrayList<>(Arrays.asList(files));
+    newestFirst.sort(Comparator.comparingLong(File::lastModified).reversed());
+    long size = 0;
+    for (File file : newestFirst) {
+      size += file.length();
+      if (size > myMaxSize && !FileUtil.delete(file)) {
+        getLogger().warn("Unable to delete " + file);
+      }
+    }
+  }
+
+  public interface Writer {
+    void write(@NotNull File file) throws IOException;
+  }
+}
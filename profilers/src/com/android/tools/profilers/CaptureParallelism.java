@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the CPU intensive steps of turning a trace into what the capture views display (building per-thread call trees, top-down and
+ * bottom-up trees, and their totals over a range) on a fork-join pool shared by all captures. Heap dumps indexed off the Java heap use it
+ * as well, to build their reference graph. The parallelism of the pool is bounded, so processing a capture with many threads doesn't
+ * starve the rest of the IDE.
+ * <p>
+ * Work submitted from a task already running on the pool is forked in the same pool, so nested calls are safe and don't block workers.
+ */
+public final class CaptureParallelism {
+  private static final int MAX_PARALLELISM = 8;
+
+  @NotNull private static ForkJoinPool ourPool = createPool(defaultParallelism());
+
+  private CaptureParallelism() {
+  }
+
+  private static int defaultParallelism() {
+    // Leave one core for the UI.
+    return Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  @NotNull
+  private static ForkJoinPool createPool(int parallelism) {
+    return new ForkJoinPool(parallelism, pool -> {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("Profiler capture worker " + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * Changes the parallelism of the pool, e.g. to 1 in order to compare against sequential processing. Tasks already submitted keep running
+   * on the previous pool.
+   */
+  @VisibleForTesting
+  public static synchronized void setParallelism(int parallelism) {
+    ForkJoinPool previous = ourPool;
+    ourPool = createPool(parallelism);
+    previous.shutdown();
+  }
+
+  @VisibleForTesting
+  public static synchronized void resetParallelism() {
+    setParallelism(defaultParallelism());
+  }
+
+  @NotNull
+  private static synchronized ForkJoinPool getPool() {
+    return ourPool;
+  }
+
+  /**
+   * @return the results of applying {@code function} to each of the {@code items}, in the same order.
+   */
+  @NotNull
+  public static <T, R> List<R> map(@NotNull Collection<T> items, @NotNull Function<? super T, ? extends R> function) {
+    ForkJoinPool pool = getPool();
+    if (items.size() < 2 || pool.getParallelism() == 1) {
+      List<R> results = new ArrayList<>(items.size());
+      for (T item : items) {
+        results.add(function.apply(item));
+      }
+      return results;
+    }
+    if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool) {
+      return items.parallelStream().map(function).collect(Collectors.toList());
+    }
+    return pool.submit(() -> items.parallelStream().map(function).collect(Collectors.<R>toList())).join();
+  }
+
+  /**
+   * Applies {@code action} to each of the {@code items} and waits for all of them to be done.
+   */
+  public static <T> void forEach(@NotNull Collection<T> items, @NotNull Consumer<? super T> action) {
+    map(items, item -> {
+      action.accept(item);
+      return null;
+    });
+  }
+}
@@ -104,6 +104,12 @@ public interface IdeProfilerServices {
   @NotNull
   ProfilerPreferences getPersistentProfilerPreferences();
 
+  /**
+   * Returns the cache of parsed captures, which are kept across studio sessions, or null if parsed captures shouldn't be cached.
+   */
+  @Nullable
+  CaptureCache getCaptureCache();
+
   /**
    * Displays a yes/no dialog warning the user the trace file is too large to be parsed and asking them if parsing should proceed.
    *
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profiler.proto.CpuProfiler;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the call trees of an ART capture from a file written by {@link #write(TraceParser, File)} once the trace was parsed, so the
+ * capture can be opened again without parsing its trace again.
+ * <p>
+ * Only the captures whose nodes are {@link JavaMethodModel}s and {@link SingleNameModel}s, i.e. the ART captures, can be written.
+ */
+public final class CachedTraceParser implements TraceParser {
+  /**
+   * Version of the file format, written first. Files of another version are not read.
+   */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final byte JAVA_METHOD_MODEL = 0;
+  private static final byte SINGLE_NAME_MODEL = 1;
+
+  @NotNull private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees = new LinkedHashMap<>();
+  @NotNull private Range myRange = new Range();
+  private boolean mySupportsDualClock;
+
+  /**
+   * @return whether {@link #write(TraceParser, File)} supports the parser's capture.
+   */
+  public static boolean canWrite(@NotNull TraceParser parser) {
+    Deque<CaptureNode> nodes = new ArrayDeque<>(parser.getCaptureTrees().values());
+    while (!nodes.isEmpty()) {
+      CaptureNode node = nodes.pop();
+      Class<?> modelClass = node.getData().getClass();
+      if (modelClass != JavaMethodModel.class && modelClass != SingleNameModel.class) {
+        return false;
+      }
+      nodes.addAll(node.getChildren());
+    }
+    return true;
+  }
+
+  /**
+   * Writes the range and call trees of the capture parsed by {@code parser}, which {@link #canWrite(TraceParser)} must support.
+   */
+  public static void write(@NotNull TraceParser parser, @NotNull File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(FORMAT_VERSION);
+      out.writeDouble(parser.getRange().getMin());
+      out.writeDouble(parser.getRange().getMax());
+      out.writeBoolean(parser.supportsDualClock());
+
+      // The models are shared by the nodes calling the same method, so they are written once and referenced by index.
+      Map<CaptureNodeModel, Integer> models = new IdentityHashMap<>();
+      List<CaptureNode> preorder = new ArrayList<>();
+      for (CaptureNode root : parser.getCaptureTrees().values()) {
+        Deque<CaptureNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+          CaptureNode node = stack.pop();
+          preorder.add(node);
+          models.putIfAbsent(node.getData(), models.size());
+          for (int i = node.getChildCount() - 1; i >= 0; i--) {
+            stack.push(node.getChildAt(i));
+          }
+        }
+      }
+      CaptureNodeModel[] modelsByIndex = new CaptureNodeModel[models.size()];
+      models.forEach((model, index) -> modelsByIndex[index] = model);
+      out.writeInt(modelsByIndex.length);
+      for (CaptureNodeModel model : modelsByIndex) {
+        writeModel(model, out);
+      }
+
+      out.writeInt(parser.getCaptureTrees().size());
+      for (Map.Entry<CpuThreadInfo, CaptureNode> tree : parser.getCaptureTrees().entrySet()) {
+        out.writeInt(tree.getKey().getId());
+        out.writeUTF(tree.getKey().getName());
+        out.writeBoolean(tree.getKey().isMainThread());
+      }
+      // The nodes of all the trees, in the same order as the threads, each followed by its descendants.
+      out.writeInt(preorder.size());
+      for (CaptureNode node : preorder) {
+        out.writeInt(models.get(node.getData()));
+        out.writeLong(node.getStartGlobal());
+        out.writeLong(node.getEndGlobal());
+        out.writeLong(node.getStartThread());
+        out.writeLong(node.getEndThread());
+        out.writeByte(node.getClockType().ordinal());
+        out.writeInt(node.getDepth());
+        out.writeInt(node.getChildCount());
+      }
+    }
+  }
+
+  private static void writeModel(@NotNull CaptureNodeModel model, @NotNull DataOutputStream out) throws IOException {
+    if (model.getClass() == JavaMethodModel.class) {
+      JavaMethodModel method = (JavaMethodModel)model;
+      out.writeByte(JAVA_METHOD_MODEL);
+      out.writeUTF(method.getName());
+      out.writeUTF(method.getClassName());
+      out.writeUTF(method.getSignature());
+    }
+    else if (model.getClass() == SingleNameModel.class) {
+      out.writeByte(SINGLE_NAME_MODEL);
+      out.writeUTF(model.getName());
+    }
+    else {
+      throw new IllegalArgumentException("Unsupported node model: " + model.getClass().getName());
+    }
+  }
+
+  @Override
+  public CpuCapture parse(File file, int traceId) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int version = in.readInt();
+      if (version != FORMAT_VERSION) {
+        throw new IOException("Unsupported parsed capture version: " + version);
+      }
+      myRange = new Range(in.readDouble(), in.readDouble());
+      mySupportsDualClock = in.readBoolean();
+
+      CaptureNodeModel[] models = new CaptureNodeModel[in.readInt()];
+      for (int i = 0; i < models.length; i++) {
+        models[i] = readModel(in);
+      }
+
+      List<CpuThreadInfo> threads = new ArrayList<>();
+      int threadCount = in.readInt();
+      for (int i = 0; i < threadCount; i++) {
+        threads.add(new CpuThreadInfo(in.readInt(), in.readUTF(), in.readBoolean()));
+      }
+
+      int nodeCount = in.readInt();
+      ClockType[] clockTypes = ClockType.values();
+      // The nodes whose children are being read, with the number of children left to read.
+      Deque<CaptureNode> parents = new ArrayDeque<>();
+      Deque<Integer> childrenLeft = new ArrayDeque<>();
+      int thread = 0;
+      for (int i = 0; i < nodeCount; i++) {
+        int model = in.readInt();
+        if (model < 0 || model >= models.length) {
+          throw new IOException("Invalid node model: " + model);
+        }
+        CaptureNode node = new CaptureNode(models[model]);
+        node.setStartGlobal(in.readLong());
+        node.setEndGlobal(in.readLong());
+        node.setStartThread(in.readLong());
+        node.setEndThread(in.readLong());
+        node.setClockType(clockTypes[in.readUnsignedByte() % clockTypes.length]);
+        node.setDepth(in.readInt());
+        int childCount = in.readInt();
+
+        if (parents.isEmpty()) {
+          if (thread == threads.size()) {
+            throw new IOException("More call trees than threads.");
+          }
+          myCaptureTrees.put(threads.get(thread++), node);
+        }
+        else {
+          parents.peek().addChild(node);
+          childrenLeft.push(childrenLeft.pop() - 1);
+        }
+        if (childCount > 0) {
+          parents.push(node);
+          childrenLeft.push(childCount);
+        }
+        while (!childrenLeft.isEmpty() && childrenLeft.peek() == 0) {
+          parents.pop();
+          childrenLeft.pop();
+        }
+      }
+      if (thread != threads.size() || !parents.isEmpty()) {
+        throw new IOException("Truncated parsed capture.");
+      }
+    }
+    return new CpuCapture(this, traceId, CpuProfiler.CpuProfilerType.ART);
+  }
+
+  @NotNull
+  private static CaptureNodeModel readModel(@NotNull DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case JAVA_METHOD_MODEL:
+        String name = in.readUTF();
+        String className = in.readUTF();
+        return new JavaMethodModel(name, className, in.readUTF());
+      case SINGLE_NAME_MODEL:
+        return new SingleNameModel(in.readUTF());
+      default:
+        throw new IOException("Unknown node model: " + type);
+    }
+  }
+
+  @Override
+  public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
+    return myCaptureTrees;
+  }
+
+  @Override
+  public Range getRange() {
+    return myRange;
+  }
+
+  @Override
+  public boolean supportsDualClock() {
+    return mySupportsDualClock;
+  }
+}
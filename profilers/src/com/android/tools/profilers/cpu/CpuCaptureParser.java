@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler.CpuProfilerType;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.android.tools.profilers.CaptureCache;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.cpu.art.ArtTraceParser;
 import com.android.tools.profilers.cpu.atrace.AtraceDecompressor;
@@ -88,6 +89,11 @@ public class CpuCaptureParser {
    */
   private long myParsingStartTimeMs;
 
+  /**
+   * Percentage of the trace being parsed read so far, or -1 if the parser doesn't report its progress. Updated from the parsing thread.
+   */
+  private volatile int myParsingProgress = -1;
+
   public CpuCaptureParser(@NotNull IdeProfilerServices services) {
     myServices = services;
     myCaptures = new HashMap<>();
@@ -135,6 +141,14 @@ public class CpuCaptureParser {
     return System.currentTimeMillis() - myParsingStartTimeMs;
   }
 
+  /**
+   * Returns the percentage of the trace read so far while parsing, or -1 if it is unknown. ART traces read by {@link ArtTraceParser}
+   * report their progress, the call trees are built once all of the trace has been read.
+   */
+  public int getParsingProgress() {
+    return myParsingProgress;
+  }
+
   /**
    * Updates {@link #myIsParsing} to false once the given {@link CompletableFuture<CpuCapture>} is done.
    */
@@ -152,6 +166,7 @@ public class CpuCaptureParser {
   @VisibleForTesting // In order to be accessible from com.android.tools.profilers.cpu.capturedetails
   public void updateParsingStateWhenStarting() {
     myParsingStartTimeMs = System.currentTimeMillis();
+    myParsingProgress = -1;
     myIsParsing = true;
     myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
   }
@@ -161,7 +176,8 @@ public class CpuCaptureParser {
    * Return null if the file doesn't exist or point to a directory.
    * <p>
    * When a trace file is considered large (see {@link #MAX_SUPPORTED_TRACE_SIZE}), a dialog should be displayed so they user can decide if
-   * they want to abort the trace parsing or continue with it.
+   * they want to abort the trace parsing or continue with it. This includes the ART traces read without loading them in memory, as their
+   * call trees are still fully built in the heap.
    */
   @Nullable
   public CompletableFuture<CpuCapture> parse(@NotNull File traceFile) {
@@ -204,6 +220,10 @@ public class CpuCaptureParser {
     return future;
   }
 
+  private void updateParsingProgress(int progress) {
+    myParsingProgress = progress;
+  }
+
   /**
    * Try parsing a given {@link File} into a {@link CpuCapture} using {@link ArtTraceParser}, then {@link SimpleperfTraceParser}
    * (if simpleperf flag is enabled), then {@link AtraceParser} (if atrace flag is enabled). Return null if the file can't be parsed by any
@@ -213,6 +233,7 @@ public class CpuCaptureParser {
     try {
       // First try parsing the trace file as an ART trace.
       ArtTraceParser artTraceParser = new ArtTraceParser();
+      artTraceParser.setProgressListener(this::updateParsingProgress);
       return artTraceParser.parse(traceFile, IMPORTED_TRACE_ID);
     }
     catch (Exception ignored) {
@@ -317,7 +338,16 @@ public class CpuCaptureParser {
 
       TraceParser parser;
       if (profilerType == CpuProfilerType.ART) {
-        parser = new ArtTraceParser();
+        String cacheKey = String.format("cpu_trace_%d_%d_%d", session.getSessionId(), traceId, traceData.size());
+        CpuCapture cachedCapture = readCachedCapture(cacheKey, traceId);
+        if (cachedCapture != null) {
+          return cachedCapture;
+        }
+        ArtTraceParser artTraceParser = new ArtTraceParser();
+        artTraceParser.setProgressListener(this::updateParsingProgress);
+        CpuCapture capture = artTraceParser.parse(trace, traceId);
+        writeCachedCapture(cacheKey, artTraceParser);
+        return capture;
       }
       else if (profilerType == CpuProfilerType.SIMPLEPERF) {
         parser = new SimpleperfTraceParser();
@@ -335,4 +365,40 @@ public class CpuCaptureParser {
       throw new IllegalStateException(e);
     }
   }
+
+  /**
+   * @return the capture parsed when the trace was opened before, e.g. in a previous studio session, or null if it isn't cached.
+   */
+  @Nullable
+  private CpuCapture readCachedCapture(@NotNull String cacheKey, int traceId) {
+    CaptureCache cache = myServices.getCaptureCache();
+    File file = cache == null ? null : cache.get(cacheKey);
+    if (file == null) {
+      return null;
+    }
+    try {
+      return new CachedTraceParser().parse(file, traceId);
+    }
+    catch (IOException | RuntimeException e) {
+      getLogger().warn("Unable to read the cached capture " + cacheKey, e);
+      cache.remove(cacheKey);
+      return null;
+    }
+  }
+
+  /**
+   * Caches the capture parsed by {@code parser}, before it is used, e.g. before its clock type is changed.
+   */
+  private void writeCachedCapture(@NotNull String cacheKey, @NotNull TraceParser parser) {
+    CaptureCache cache = myServices.getCaptureCache();
+    if (cache == null || !CachedTraceParser.canWrite(parser)) {
+      return;
+    }
+    try {
+      cache.put(cacheKey, file -> CachedTraceParser.write(parser, file));
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to cache the capture " + cacheKey, e);
+    }
+  }
 }
@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.cpu;
 
+import com.android.tools.adtui.model.CachedLongDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -28,8 +29,9 @@ public class CpuUsage extends LineChartModel {
 
   public CpuUsage(@NotNull StudioProfilers profilers) {
     myCpuRange = new Range(0, 100);
+    Range viewRange = profilers.getTimeline().getViewRange();
     CpuUsageDataSeries series = new CpuUsageDataSeries(profilers.getClient().getCpuClient(), false, profilers.getSession());
-    myCpuSeries = new RangedContinuousSeries(getCpuSeriesLabel(), profilers.getTimeline().getViewRange(), myCpuRange, series);
+    myCpuSeries = new RangedContinuousSeries(getCpuSeriesLabel(), viewRange, myCpuRange, new CachedLongDataSeries(series, viewRange));
     add(myCpuSeries);
   }
 
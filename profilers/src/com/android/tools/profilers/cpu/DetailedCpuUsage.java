@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.cpu;
 
+import com.android.tools.adtui.model.CachedLongDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profilers.StudioProfilers;
@@ -32,7 +33,8 @@ public class DetailedCpuUsage extends CpuUsage {
     myThreadRange = new Range(0, 8);
 
     CpuUsageDataSeries others = new CpuUsageDataSeries(profilers.getClient().getCpuClient(), true, profilers.getSession());
-    myOtherCpuSeries = new RangedContinuousSeries("Others", profilers.getTimeline().getViewRange(), getCpuRange(), others);
+    Range viewRange = profilers.getTimeline().getViewRange();
+    myOtherCpuSeries = new RangedContinuousSeries("Others", viewRange, getCpuRange(), new CachedLongDataSeries(others, viewRange));
 
     CpuThreadCountDataSeries threads = new CpuThreadCountDataSeries(profilers.getClient().getCpuClient(), profilers.getSession());
     myThreadsCountSeries = new RangedContinuousSeries("Threads", profilers.getTimeline().getViewRange(), myThreadRange, threads);
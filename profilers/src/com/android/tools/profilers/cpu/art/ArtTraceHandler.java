@@ -16,6 +16,7 @@
 package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.perflib.vmtrace.*;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
@@ -24,7 +25,9 @@ import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class ArtTraceHandler implements VmTraceHandler {
@@ -101,25 +104,28 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @NotNull
   private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
-    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(myThreads.size());
-
+    List<Map.Entry<Integer, String>> threads = new ArrayList<>(myThreads.size());
     for (Map.Entry<Integer, String> entry : myThreads.entrySet()) {
-      final int id = entry.getKey();
-      final String name = entry.getValue();
-
-      CaptureNodeConstructor constructor = myNodeConstructors.get(id);
-      if (constructor == null) {
-        continue;
+      if (myNodeConstructors.containsKey(entry.getKey())) {
+        threads.add(entry);
       }
+    }
 
-      CaptureNode topLevelCall = constructor.getTopLevel();
+    // Threads are independent from each other, so their call stacks are fixed up and adjusted in parallel.
+    List<CaptureNode> topLevelCalls = CaptureParallelism.map(threads, entry -> {
+      CaptureNode topLevelCall = myNodeConstructors.get(entry.getKey()).getTopLevel();
       assert topLevelCall != null;
-      CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
 
       long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
       adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart, 0);
-
-      threadsGraph.put(info, topLevelCall);
+      return topLevelCall;
+    });
+
+    Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(threads.size());
+    for (int i = 0; i < threads.size(); i++) {
+      final int id = threads.get(i).getKey();
+      final String name = threads.get(i).getValue();
+      threadsGraph.put(new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME)), topLevelCalls.get(i));
     }
 
     return threadsGraph;
@@ -18,36 +18,84 @@ package com.android.tools.profilers.cpu.art;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.VmTraceParser;
 import com.android.tools.profiler.proto.CpuProfiler;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * Receives a binary trace file generated by using ART and parse it into a {@link CpuCapture}
+ * <p>
+ * Traces starting with a text header (i.e. recorded in non-streaming mode, which covers the traces recorded by Studio) are read with
+ * {@link ArtTraceReader}, which maps the file in memory instead of loading it in the heap, and their call stacks are kept in
+ * {@link CompactCallTree}s until parsing is done. Other traces are parsed with {@link VmTraceParser}.
  */
 public class ArtTraceParser implements TraceParser {
+  private static final String MAIN_THREAD_NAME = "main";
+  private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
 
   private final ArtTraceHandler myTraceHandler = new ArtTraceHandler();
 
+  /**
+   * Set once a trace has been parsed by {@link ArtTraceReader}, in which case it is used instead of {@link #myTraceHandler}.
+   */
+  @Nullable private StreamingHandler myStreamingHandler;
+
+  @Nullable private IntConsumer myProgressListener;
+
+  /**
+   * Sets a listener notified, on the parsing thread, with the percentage of the trace parsed so far whenever it changes. Only traces read
+   * by {@link ArtTraceReader} report their progress.
+   */
+  public void setProgressListener(@Nullable IntConsumer listener) {
+    myProgressListener = listener;
+  }
+
   @Override
   public CpuCapture parse(File trace, int traceId) throws IOException {
-    VmTraceParser parser = new VmTraceParser(trace, myTraceHandler);
-    parser.parse();
+    if (ArtTraceReader.hasTextHeader(trace)) {
+      StreamingHandler handler = new StreamingHandler(myProgressListener);
+      new ArtTraceReader(trace).read(handler);
+      if (Thread.currentThread().isInterrupted()) {
+        throw new InterruptedIOException("Parsing of the trace was interrupted.");
+      }
+      myStreamingHandler = handler;
+    }
+    else {
+      VmTraceParser parser = new VmTraceParser(trace, myTraceHandler);
+      parser.parse();
+    }
     return new CpuCapture(this, traceId, CpuProfiler.CpuProfilerType.ART);
   }
 
   @Override
   public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
-    return myTraceHandler.getThreadsGraph();
+    return myStreamingHandler != null ? myStreamingHandler.getThreadsGraph() : myTraceHandler.getThreadsGraph();
   }
 
   @Override
   public Range getRange() {
+    if (myStreamingHandler != null) {
+      return new Range(myStreamingHandler.myStartTimeUs, myStreamingHandler.myStartTimeUs + myStreamingHandler.myElapsedTimeUs);
+    }
     return new Range(myTraceHandler.getStartTimeUs(), myTraceHandler.getStartTimeUs() + myTraceHandler.getElapsedTimeUs());
   }
 
@@ -55,4 +103,136 @@ public class ArtTraceParser implements TraceParser {
   public boolean supportsDualClock() {
     return true;
   }
+
+  /**
+   * Same as {@link ArtTraceHandler}, but with the call stacks stored in {@link CompactCallTree}s and methods looked up by primitive ids.
+   */
+  private static final class StreamingHandler implements ArtTraceReader.Handler {
+    private long myStartTimeUs;
+    private long myElapsedTimeUs;
+
+    /**
+     * Map from thread ids to thread names, in order of declaration.
+     */
+    private final Map<Integer, String> myThreads = new LinkedHashMap<>();
+
+    /**
+     * Method models, indexed by {@link #myMethodIndices}.
+     */
+    private final List<CaptureNodeModel> myModels = new ArrayList<>();
+
+    /**
+     * Map from method id to index in {@link #myModels}.
+     */
+    private final TLongIntHashMap myMethodIndices = new TLongIntHashMap();
+
+    /**
+     * Map from thread id to per thread call stacks.
+     */
+    private final TIntObjectHashMap<CompactCallTree> myTrees = new TIntObjectHashMap<>();
+
+    @Nullable private Map<CpuThreadInfo, CaptureNode> myThreadsGraph;
+
+    @Nullable private final IntConsumer myProgressListener;
+    private int myProgress = -1;
+
+    StreamingHandler(@Nullable IntConsumer progressListener) {
+      myProgressListener = progressListener;
+    }
+
+    @Override
+    public void setProperty(@NotNull String key, @NotNull String value) {
+      if (key.equals(KEY_ELAPSED_TIME_US)) {
+        myElapsedTimeUs = Long.parseLong(value);
+      }
+    }
+
+    @Override
+    public void addThread(int id, @NotNull String name) {
+      myThreads.put(id, name);
+    }
+
+    @Override
+    public void addMethod(long id, @NotNull String className, @NotNull String methodName, @NotNull String signature) {
+      myMethodIndices.put(id, addModel(new JavaMethodModel(methodName, className, signature)));
+    }
+
+    @Override
+    public void setStartTimeUs(long startTimeUs) {
+      myStartTimeUs = startTimeUs;
+    }
+
+    @Override
+    public boolean addMethodAction(int threadId, long methodId, int action, int threadTime, int globalTime) {
+      CompactCallTree tree = myTrees.get(threadId);
+      if (tree == null) {
+        // Create thread info if it doesn't exist, and the top level node of the thread.
+        String name = myThreads.computeIfAbsent(threadId, id -> String.format("Thread id: %1$d", id));
+        tree = new CompactCallTree(myModels, addModel(new SingleNameModel(name)));
+        myTrees.put(threadId, tree);
+      }
+
+      int model;
+      if (myMethodIndices.containsKey(methodId)) {
+        model = myMethodIndices.get(methodId);
+      }
+      else {
+        model = addModel(new SingleNameModel("unknown"));
+        myMethodIndices.put(methodId, model);
+      }
+
+      if (action == ArtTraceReader.METHOD_ENTER) {
+        tree.enterMethod(model, threadTime, globalTime);
+      }
+      else {
+        tree.exitMethod(model, threadTime, globalTime);
+      }
+      return !Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public void recordsRead(long readCount, long recordCount) {
+      int progress = recordCount == 0 ? 100 : (int)(readCount * 100 / recordCount);
+      if (myProgressListener != null && progress != myProgress) {
+        myProgress = progress;
+        myProgressListener.accept(progress);
+      }
+    }
+
+    private int addModel(@NotNull CaptureNodeModel model) {
+      myModels.add(model);
+      return myModels.size() - 1;
+    }
+
+    @NotNull
+    Map<CpuThreadInfo, CaptureNode> getThreadsGraph() {
+      if (myThreadsGraph == null) {
+        myThreadsGraph = createThreadsGraph();
+      }
+      return myThreadsGraph;
+    }
+
+    @NotNull
+    private Map<CpuThreadInfo, CaptureNode> createThreadsGraph() {
+      List<Integer> threadIds = new ArrayList<>(myThreads.size());
+      for (int id : myThreads.keySet()) {
+        if (myTrees.containsKey(id)) {
+          threadIds.add(id);
+        }
+      }
+      List<CompactCallTree> trees = new ArrayList<>(threadIds.size());
+      for (int id : threadIds) {
+        trees.add(myTrees.get(id));
+      }
+      List<CaptureNode> topLevelCalls = CaptureParallelism.map(trees, tree -> tree.build(myStartTimeUs));
+
+      Map<CpuThreadInfo, CaptureNode> threadsGraph = new HashMap<>(threadIds.size());
+      for (int i = 0; i < threadIds.size(); i++) {
+        int id = threadIds.get(i);
+        String name = myThreads.get(id);
+        threadsGraph.put(new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME)), topLevelCalls.get(i));
+      }
+      return threadsGraph;
+    }
+  }
 }
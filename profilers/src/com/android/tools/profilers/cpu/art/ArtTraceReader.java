@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming reader of the (non-streaming mode) ART method trace format, i.e. a text header listing the threads and methods followed by
+ * fixed size binary records. The records are read through memory-mapped windows of the file, so neither the file nor the records are
+ * ever loaded in the heap at once, and files larger than 2GB (the limit of a single {@link MappedByteBuffer}) are supported.
+ */
+final class ArtTraceReader {
+  private static final byte[] VERSION_SECTION = "*version\n".getBytes(StandardCharsets.US_ASCII);
+  private static final String THREADS_SECTION = "*threads";
+  private static final String METHODS_SECTION = "*methods";
+  private static final String END_SECTION = "*end";
+  private static final String KEY_CLOCK = "clock";
+
+  private static final int MAGIC = 0x574f4c53; // 'SLOW'
+  private static final int BINARY_HEADER_MIN_SIZE = 16;
+
+  /**
+   * Size of the regions of the file mapped at once.
+   */
+  private static final long MAPPED_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Number of records between two calls to {@link Handler#recordsRead}.
+   */
+  private static final long PROGRESS_INTERVAL = 1 << 20;
+
+  /**
+   * Method actions, stored in the lower 2 bits of the method id in each record.
+   */
+  static final int METHOD_ENTER = 0;
+  static final int METHOD_EXIT = 1;
+  static final int METHOD_EXIT_UNROLL = 2;
+  private static final long METHOD_ACTION_MASK = 0x3;
+
+  /**
+   * Receives the content of the trace, in file order.
+   */
+  interface Handler {
+    void setProperty(@NotNull String key, @NotNull String value);
+
+    void addThread(int id, @NotNull String name);
+
+    void addMethod(long id, @NotNull String className, @NotNull String methodName, @NotNull String signature);
+
+    void setStartTimeUs(long startTimeUs);
+
+    /**
+     * Called for each record. Returning false stops reading.
+     */
+    boolean addMethodAction(int threadId, long methodId, int action, int threadTime, int globalTime);
+
+    /**
+     * Called periodically while the records are read, and once all of them have been read.
+     */
+    void recordsRead(long readCount, long recordCount);
+  }
+
+  private enum ClockType {
+    THREAD_CPU,
+    WALL,
+    DUAL
+  }
+
+  @NotNull private final File myFile;
+
+  ArtTraceReader(@NotNull File file) {
+    myFile = file;
+  }
+
+  /**
+   * Whether the file starts like a trace this reader supports. Doesn't guarantee the file is well formed.
+   */
+  static boolean hasTextHeader(@NotNull File file) {
+    if (!file.isFile() || file.length() < VERSION_SECTION.length) {
+      return false;
+    }
+    byte[] start = new byte[VERSION_SECTION.length];
+    try (InputStream in = new FileInputStream(file)) {
+      int read = 0;
+      while (read < start.length) {
+        int count = in.read(start, read, start.length - read);
+        if (count < 0) {
+          return false;
+        }
+        read += count;
+      }
+    }
+    catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(start, VERSION_SECTION);
+  }
+
+  void read(@NotNull Handler handler) throws IOException {
+    long dataOffset;
+    ClockType clockType;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(myFile))) {
+      HeaderReader header = new HeaderReader(in, handler);
+      header.read();
+      dataOffset = header.myOffset;
+      clockType = header.myClockType;
+    }
+
+    try (RandomAccessFile file = new RandomAccessFile(myFile, "r")) {
+      FileChannel channel = file.getChannel();
+      long fileSize = channel.size();
+      if (fileSize - dataOffset < BINARY_HEADER_MIN_SIZE) {
+        throw new IOException("Trace file is truncated: missing the data header.");
+      }
+
+      long headerSize = Math.min(BINARY_HEADER_MIN_SIZE + 2, fileSize - dataOffset);
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, headerSize).order(ByteOrder.LITTLE_ENDIAN);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Invalid data header magic.");
+      }
+      int version = header.getShort() & 0xFFFF;
+      int headerLength = header.getShort() & 0xFFFF;
+      handler.setStartTimeUs(header.getLong());
+
+      int recordSize;
+      switch (version) {
+        case 1:
+          recordSize = 9;
+          break;
+        case 2:
+          recordSize = 10;
+          break;
+        case 3:
+          if (header.remaining() < 2) {
+            throw new IOException("Trace file is truncated: missing the record size.");
+          }
+          recordSize = header.getShort() & 0xFFFF;
+          break;
+        default:
+          throw new IOException("Unsupported data format version: " + version);
+      }
+      int threadIdSize = version == 1 ? 1 : 2;
+      if (clockType == null) {
+        clockType = recordSize >= threadIdSize + 12 ? ClockType.DUAL : ClockType.THREAD_CPU;
+      }
+      int clockSize = clockType == ClockType.DUAL ? 8 : 4;
+      if (recordSize < threadIdSize + 4 + clockSize || headerLength < BINARY_HEADER_MIN_SIZE) {
+        throw new IOException("Invalid record size: " + recordSize);
+      }
+
+      long recordsOffset = dataOffset + headerLength;
+      long recordCount = (fileSize - recordsOffset) / recordSize;
+      long recordsPerWindow = Math.max(1, MAPPED_WINDOW_SIZE / recordSize);
+      for (long first = 0; first < recordCount; first += recordsPerWindow) {
+        long count = Math.min(recordsPerWindow, recordCount - first);
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, recordsOffset + first * recordSize, count * recordSize);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        for (int position = 0; position < window.limit(); position += recordSize) {
+          int threadId = threadIdSize == 1 ? window.get(position) & 0xFF : window.getShort(position) & 0xFFFF;
+          long methodValue = window.getInt(position + threadIdSize) & 0xFFFFFFFFL;
+          int timeOffset = position + threadIdSize + 4;
+          int threadTime;
+          int globalTime;
+          switch (clockType) {
+            case WALL:
+              globalTime = window.getInt(timeOffset);
+              threadTime = globalTime;
+              break;
+            case DUAL:
+              threadTime = window.getInt(timeOffset);
+              globalTime = window.getInt(timeOffset + 4);
+              break;
+            case THREAD_CPU:
+            default:
+              threadTime = window.getInt(timeOffset);
+              globalTime = threadTime;
+              break;
+          }
+          if (!handler.addMethodAction(threadId, methodValue & ~METHOD_ACTION_MASK, (int)(methodValue & METHOD_ACTION_MASK), threadTime,
+                                       globalTime)) {
+            return;
+          }
+          long readCount = first + position / recordSize + 1;
+          if (readCount % PROGRESS_INTERVAL == 0) {
+            handler.recordsRead(readCount, recordCount);
+          }
+        }
+      }
+      handler.recordsRead(recordCount, recordCount);
+    }
+  }
+
+  /**
+   * Reads the text header line by line, keeping track of the byte offset where the binary data starts.
+   */
+  private static final class HeaderReader {
+    @NotNull private final InputStream myIn;
+    @NotNull private final Handler myHandler;
+    @NotNull private final ByteArrayOutputStream myLine = new ByteArrayOutputStream(256);
+    private long myOffset;
+    private ClockType myClockType;
+
+    HeaderReader(@NotNull InputStream in, @NotNull Handler handler) {
+      myIn = in;
+      myHandler = handler;
+    }
+
+    void read() throws IOException {
+      String line = readLine();
+      if (!"*version".equals(line)) {
+        throw new IOException("Trace file doesn't start with a version section.");
+      }
+      parseInt(readLine(), "version");
+
+      String section = "";
+      while (true) {
+        line = readLine();
+        if (line == null) {
+          throw new IOException("Trace file is truncated: missing the end of the header.");
+        }
+        if (line.startsWith("*")) {
+          section = line;
+          if (section.equals(END_SECTION)) {
+            return;
+          }
+          continue;
+        }
+        if (line.isEmpty()) {
+          continue;
+        }
+
+        switch (section) {
+          case THREADS_SECTION:
+            parseThread(line);
+            break;
+          case METHODS_SECTION:
+            parseMethod(line);
+            break;
+          default:
+            parseProperty(line);
+            break;
+        }
+      }
+    }
+
+    private void parseProperty(@NotNull String line) throws IOException {
+      int separator = line.indexOf('=');
+      if (separator < 0) {
+        throw new IOException("Invalid property: " + line);
+      }
+      String key = line.substring(0, separator);
+      String value = line.substring(separator + 1);
+      if (key.equals(KEY_CLOCK)) {
+        switch (value) {
+          case "thread-cpu":
+            myClockType = ClockType.THREAD_CPU;
+            break;
+          case "wall":
+            myClockType = ClockType.WALL;
+            break;
+          case "dual":
+            myClockType = ClockType.DUAL;
+            break;
+          default:
+            throw new IOException("Unknown clock type: " + value);
+        }
+      }
+      myHandler.setProperty(key, value);
+    }
+
+    private void parseThread(@NotNull String line) throws IOException {
+      int separator = line.indexOf('\t');
+      if (separator < 0) {
+        throw new IOException("Invalid thread: " + line);
+      }
+      myHandler.addThread(parseInt(line.substring(0, separator), "thread id"), line.substring(separator + 1));
+    }
+
+    private void parseMethod(@NotNull String line) throws IOException {
+      String[] tokens = line.split("\t");
+      if (tokens.length < 4) {
+        throw new IOException("Invalid method: " + line);
+      }
+      long id;
+      try {
+        id = Long.decode(tokens[0]);
+      }
+      catch (NumberFormatException e) {
+        throw new IOException("Invalid method id: " + tokens[0], e);
+      }
+      myHandler.addMethod(id, tokens[1], tokens[2], tokens[3]);
+    }
+
+    private static int parseInt(String value, @NotNull String name) throws IOException {
+      try {
+        return Integer.parseInt(value);
+      }
+      catch (NumberFormatException e) {
+        throw new IOException(String.format("Invalid %s: %s", name, value), e);
+      }
+    }
+
+    private String readLine() throws IOException {
+      myLine.reset();
+      int b;
+      while ((b = myIn.read()) != -1) {
+        myOffset++;
+        if (b == '\n') {
+          return myLine.toString(StandardCharsets.UTF_8.name());
+        }
+        myLine.write(b);
+      }
+      return myLine.size() > 0 ? myLine.toString(StandardCharsets.UTF_8.name()) : null;
+    }
+  }
+}
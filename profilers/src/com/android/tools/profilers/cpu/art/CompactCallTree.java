@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Same as {@link CaptureNodeConstructor}, i.e. reconstructs the call stacks of a thread from its method entry/exit events, but keeps the
+ * nodes in parallel primitive arrays (24 bytes per call) instead of {@link CaptureNode} objects while the trace is being read.
+ * {@link CaptureNode}s are only created by {@link #build}, once.
+ * <p>
+ * Nodes are identified by their index, in order of creation. Times are the relative values of the trace records.
+ */
+final class CompactCallTree {
+  private static final int NO_NODE = -1;
+  private static final int INITIAL_CAPACITY = 256;
+
+  /**
+   * Models of the methods, shared by all the threads of the trace. Nodes store indices into this list.
+   */
+  @NotNull private final List<CaptureNodeModel> myModels;
+
+  /**
+   * Index in {@link #myModels} of the top level node under which the entire call stack nests.
+   */
+  private final int myTopLevelModel;
+
+  private int mySize;
+  @NotNull private int[] myModel;
+  @NotNull private int[] myParent;
+  @NotNull private int[] myLastChild;
+  @NotNull private int[] myStartGlobal;
+  @NotNull private int[] myEndGlobal;
+  @NotNull private int[] myStartThread;
+  @NotNull private int[] myEndThread;
+
+  /**
+   * Nodes currently assumed to be at stack depth 0 (called from the top level).
+   */
+  @NotNull private final TIntArrayList myTopLevelNodes;
+
+  /**
+   * Nodes entered but not exited yet, the current node being the last one.
+   */
+  @NotNull private final TIntArrayList myStack;
+
+  private boolean myFinished;
+
+  CompactCallTree(@NotNull List<CaptureNodeModel> models, int topLevelModel) {
+    myModels = models;
+    myTopLevelModel = topLevelModel;
+    myModel = new int[INITIAL_CAPACITY];
+    myParent = new int[INITIAL_CAPACITY];
+    myLastChild = new int[INITIAL_CAPACITY];
+    myStartGlobal = new int[INITIAL_CAPACITY];
+    myEndGlobal = new int[INITIAL_CAPACITY];
+    myStartThread = new int[INITIAL_CAPACITY];
+    myEndThread = new int[INITIAL_CAPACITY];
+    myTopLevelNodes = new TIntArrayList();
+    myStack = new TIntArrayList();
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  void enterMethod(int model, int threadTime, int globalTime) {
+    assert !myFinished;
+    int parent = myStack.isEmpty() ? NO_NODE : myStack.get(myStack.size() - 1);
+    int node = addNode(model, parent);
+    myStartGlobal[node] = globalTime;
+    myStartThread[node] = threadTime;
+    if (parent == NO_NODE) {
+      myTopLevelNodes.add(node);
+    }
+    myStack.add(node);
+  }
+
+  void exitMethod(int model, int threadTime, int globalTime) {
+    assert !myFinished;
+    if (!myStack.isEmpty()) {
+      int current = myStack.get(myStack.size() - 1);
+      if (myModel[current] != model) {
+        String msg = String
+          .format("Error during call stack reconstruction. Attempt to exit from method %s while in method %s",
+                  myModels.get(myModel[current]).getId(), myModels.get(model).getId());
+        throw new RuntimeException(msg);
+      }
+
+      myEndGlobal[current] = globalTime;
+      myEndThread[current] = threadTime;
+      myStack.remove(myStack.size() - 1);
+    }
+    else {
+      // We are exiting out of a method that was entered into before tracing was started.
+      // All the previous nodes at the top level are now assumed to have been called from this method.
+      int node = addNode(model, NO_NODE);
+      int childCount = myTopLevelNodes.size();
+      for (int i = 0; i < childCount; i++) {
+        int child = myTopLevelNodes.get(i);
+        myParent[child] = node;
+        myLastChild[node] = child;
+      }
+      myEndGlobal[node] = globalTime;
+      myEndThread[node] = threadTime;
+
+      // We don't know this method's entry times, so we try to guess: just before its first child if it has one, otherwise just before
+      // its exit time.
+      if (childCount > 0) {
+        int first = myTopLevelNodes.get(0);
+        myStartThread[node] = Math.max(myStartThread[first] - 1, 0);
+        myStartGlobal[node] = Math.max(myStartGlobal[first] - 1, 0);
+      }
+      else {
+        myStartThread[node] = threadTime - 1;
+        myStartGlobal[node] = globalTime - 1;
+      }
+      myTopLevelNodes.clear();
+      myTopLevelNodes.add(node);
+    }
+  }
+
+  /**
+   * Exits the methods without exit event and nests everything under a single top level node.
+   */
+  private void finish() {
+    if (myFinished) {
+      return;
+    }
+
+    while (!myStack.isEmpty()) {
+      int current = myStack.get(myStack.size() - 1);
+      exitWithGuessedTime(myModel[current], myStartThread[current], myStartGlobal[current], myLastChild[current]);
+    }
+    exitWithGuessedTime(myTopLevelModel, 0, 0, myTopLevelNodes.isEmpty() ? NO_NODE : myTopLevelNodes.get(myTopLevelNodes.size() - 1));
+    assert myTopLevelNodes.size() == 1;
+    myFinished = true;
+  }
+
+  /**
+   * A call without children is assumed to have run for 1us, otherwise to have exited 1us after its last child.
+   */
+  private void exitWithGuessedTime(int model, int entryThreadTime, int entryGlobalTime, int lastChild) {
+    if (lastChild == NO_NODE) {
+      exitMethod(model, entryThreadTime + 1, entryGlobalTime + 1);
+    }
+    else {
+      exitMethod(model, myEndThread[lastChild] + 1, myEndGlobal[lastChild] + 1);
+    }
+  }
+
+  /**
+   * Creates the {@link CaptureNode} tree, with absolute timestamps and depths set, the same way {@link ArtTraceHandler} does.
+   * After this call no more events can be added.
+   */
+  @NotNull
+  CaptureNode build(long startTimeUs) {
+    finish();
+
+    // Children of each node, in order of creation, which is also their chronological order.
+    int[] childOffsets = new int[mySize + 1];
+    for (int i = 0; i < mySize; i++) {
+      if (myParent[i] != NO_NODE) {
+        childOffsets[myParent[i] + 1]++;
+      }
+    }
+    for (int i = 0; i < mySize; i++) {
+      childOffsets[i + 1] += childOffsets[i];
+    }
+    int[] children = new int[mySize];
+    int[] filled = new int[mySize];
+    for (int i = 0; i < mySize; i++) {
+      int parent = myParent[i];
+      if (parent != NO_NODE) {
+        children[childOffsets[parent] + filled[parent]++] = i;
+      }
+    }
+
+    int root = myTopLevelNodes.get(0);
+    long topLevelStart = startTimeUs + myStartGlobal[root];
+    CaptureNode[] nodes = new CaptureNode[mySize];
+    int[] depths = new int[mySize];
+    // Iterative pre-order traversal, deep call stacks could overflow the thread stack otherwise.
+    TIntArrayList toVisit = new TIntArrayList();
+    toVisit.add(root);
+    while (!toVisit.isEmpty()) {
+      int index = toVisit.remove(toVisit.size() - 1);
+      CaptureNode node = new CaptureNode(myModels.get(myModel[index]));
+      node.setStartGlobal(startTimeUs + myStartGlobal[index]);
+      node.setEndGlobal(startTimeUs + myEndGlobal[index]);
+      // Thread timestamps are relative to the first event on the thread, which we align (in wall clock time) with the start of the
+      // top-level call.
+      node.setStartThread(topLevelStart + myStartThread[index]);
+      node.setEndThread(topLevelStart + myEndThread[index]);
+      node.setDepth(depths[index]);
+      nodes[index] = node;
+
+      // Push in reverse order so children are created, and added to their parent, in order.
+      for (int i = childOffsets[index + 1] - 1; i >= childOffsets[index]; i--) {
+        int child = children[i];
+        depths[child] = depths[index] + 1;
+        toVisit.add(child);
+      }
+      if (myParent[index] != NO_NODE) {
+        nodes[myParent[index]].addChild(node);
+      }
+    }
+    return nodes[root];
+  }
+
+  private int addNode(int model, int parent) {
+    if (mySize == myModel.length) {
+      int capacity = mySize * 2;
+      myModel = Arrays.copyOf(myModel, capacity);
+      myParent = Arrays.copyOf(myParent, capacity);
+      myLastChild = Arrays.copyOf(myLastChild, capacity);
+      myStartGlobal = Arrays.copyOf(myStartGlobal, capacity);
+      myEndGlobal = Arrays.copyOf(myEndGlobal, capacity);
+      myStartThread = Arrays.copyOf(myStartThread, capacity);
+      myEndThread = Arrays.copyOf(myEndThread, capacity);
+    }
+    int node = mySize++;
+    myModel[node] = model;
+    myParent[node] = parent;
+    myLastChild[node] = NO_NODE;
+    if (parent != NO_NODE) {
+      myLastChild[parent] = node;
+    }
+    return node;
+  }
+}
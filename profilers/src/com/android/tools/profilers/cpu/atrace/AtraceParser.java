@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.atrace;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.*;
 import com.android.tools.profilers.cpu.nodemodel.AtraceNodeModel;
 import org.jetbrains.annotations.NotNull;
@@ -302,18 +303,27 @@ public class AtraceParser implements TraceParser {
    */
   private void buildCaptureTreeNodes() {
     Range range = getRange();
-    for (ThreadModel thread : myProcessModel.getThreads()) {
+    List<ThreadModel> threads = myProcessModel.getThreads();
+    // Threads are independent, so their trees are built in parallel.
+    List<CaptureNode> roots = CaptureParallelism.map(threads, thread -> buildCaptureTree(thread, range));
+    for (int i = 0; i < threads.size(); i++) {
+      ThreadModel thread = threads.get(i);
       CpuThreadSliceInfo threadInfo =
         new CpuThreadSliceInfo(thread.getId(), thread.getName(), thread.getProcess().getId(), thread.getProcess().getName());
-      CaptureNode root = new CaptureNode(new AtraceNodeModel(thread.getName()));
-      root.setStartGlobal((long)range.getMin());
-      root.setEndGlobal((long)range.getMax());
-      myCaptureTreeNodes.put(threadInfo, root);
-      for (SliceGroup slice : thread.getSlices()) {
-        CaptureNode node = populateCaptureNode(slice, 1);
-        root.addChild(node);
-      }
+      myCaptureTreeNodes.put(threadInfo, roots.get(i));
+    }
+  }
+
+  @NotNull
+  private CaptureNode buildCaptureTree(@NotNull ThreadModel thread, @NotNull Range range) {
+    CaptureNode root = new CaptureNode(new AtraceNodeModel(thread.getName()));
+    root.setStartGlobal((long)range.getMin());
+    root.setEndGlobal((long)range.getMax());
+    for (SliceGroup slice : thread.getSlices()) {
+      CaptureNode node = populateCaptureNode(slice, 1);
+      root.addChild(node);
     }
+    return root;
   }
 
   /**
@@ -340,19 +350,26 @@ public class AtraceParser implements TraceParser {
    * Builds a map of thread id to a list of {@link CpuProfilerStage.ThreadState} series.
    */
   private void buildThreadStateData() {
-    for (ThreadModel thread : myProcessModel.getThreads()) {
-      List<SeriesData<CpuProfilerStage.ThreadState>> states = new ArrayList<>();
-      myThreadStateData.put(thread.getId(), states);
-      CpuProfilerStage.ThreadState lastState = CpuProfilerStage.ThreadState.UNKNOWN;
-      for (SchedSlice slice : thread.getSchedSlices()) {
-        long startTimeUs = convertToUserTimeUs(slice.getStartTime());
-        CpuProfilerStage.ThreadState state = getState(slice);
-        if (state != lastState) {
-          states.add(new SeriesData<>(startTimeUs, state));
-          lastState = state;
-        }
+    List<ThreadModel> threads = myProcessModel.getThreads();
+    List<List<SeriesData<CpuProfilerStage.ThreadState>>> states = CaptureParallelism.map(threads, this::buildThreadStates);
+    for (int i = 0; i < threads.size(); i++) {
+      myThreadStateData.put(threads.get(i).getId(), states.get(i));
+    }
+  }
+
+  @NotNull
+  private List<SeriesData<CpuProfilerStage.ThreadState>> buildThreadStates(@NotNull ThreadModel thread) {
+    List<SeriesData<CpuProfilerStage.ThreadState>> states = new ArrayList<>();
+    CpuProfilerStage.ThreadState lastState = CpuProfilerStage.ThreadState.UNKNOWN;
+    for (SchedSlice slice : thread.getSchedSlices()) {
+      long startTimeUs = convertToUserTimeUs(slice.getStartTime());
+      CpuProfilerStage.ThreadState state = getState(slice);
+      if (state != lastState) {
+        states.add(new SeriesData<>(startTimeUs, state));
+        lastState = state;
       }
     }
+    return states;
   }
 
   /**
@@ -17,10 +17,12 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -30,6 +32,12 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
+  /**
+   * Index of the nodes at the top of the call stack, see {@link #update}, and the clock type they were determined with.
+   */
+  @Nullable private IntervalSums myOuterSums;
+  @Nullable private ClockType myOuterSumsClockType;
+
   private BottomUpNode(String id) {
     super(id);
     myIsRoot = false;
@@ -81,9 +89,14 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
     addNode(node);
 
-    for (BottomUpNode child : getChildren()) {
-      child.buildChildren();
-    }
+    // Each child only reads the capture nodes and creates its own children, so they are built in parallel.
+    CaptureParallelism.forEach(getChildren(), BottomUpNode::buildChildren);
+  }
+
+  @Override
+  protected void addNode(@NotNull CaptureNode node) {
+    super.addNode(node);
+    myOuterSumsClockType = null;
   }
 
   private void addPathNode(@NotNull CaptureNode node) {
@@ -129,6 +142,16 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
   @Override
   public void update(@NotNull Range range) {
+    if (isIndexed()) {
+      IntervalSums outerSums = getOuterSums();
+      if (outerSums != null) {
+        myGlobalTotal = outerSums.getIntersectionLength(range);
+        double self = getNodesIntersection(range, ClockType.GLOBAL) - getChildrenIntersection(range, ClockType.GLOBAL);
+        myGlobalChildrenTotal = myGlobalTotal - self;
+        return;
+      }
+    }
+
     // how much time was spent in this call stack path, and in the functions it called
     myGlobalTotal = 0;
     // how much time was spent doing work directly in this call stack path
@@ -164,6 +187,33 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     myGlobalChildrenTotal = myGlobalTotal - self;
   }
 
+  /**
+   * @return the index of the nodes which are at the top of the call stack, which only depends on the clock type, so it's built once per
+   * clock type rather than determined on every {@link #update}.
+   */
+  @Nullable
+  private IntervalSums getOuterSums() {
+    ClockType clockType = myNodes.get(0).getClockType();
+    if (myOuterSumsClockType != clockType) {
+      List<CaptureNode> outerNodes = new ArrayList<>();
+      CaptureNode outerSoFar = null;
+      for (CaptureNode node : myNodes) {
+        if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
+          if (outerSoFar != null) {
+            outerNodes.add(outerSoFar);
+          }
+          outerSoFar = node;
+        }
+      }
+      if (outerSoFar != null) {
+        outerNodes.add(outerSoFar);
+      }
+      myOuterSums = IntervalSums.of(outerNodes, ClockType.GLOBAL);
+      myOuterSumsClockType = clockType;
+    }
+    return myOuterSums;
+  }
+
   @NotNull
   @Override
   public CaptureNodeModel getMethodModel() {
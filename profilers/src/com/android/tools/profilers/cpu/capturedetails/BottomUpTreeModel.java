@@ -16,6 +16,7 @@
 package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profilers.CaptureParallelism;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -41,9 +42,7 @@ public class BottomUpTreeModel extends CpuTreeModel<BottomUpNode> {
     }
 
     // Some children of the |bottomUpNode| may be invisible in the current range, so build their children too
-    for (BottomUpNode child: bottomUpNode.getChildren()) {
-      child.buildChildren();
-    }
+    CaptureParallelism.forEach(bottomUpNode.getChildren(), BottomUpNode::buildChildren);
     if (treeChanged) {
       getAspect().changed(Aspect.TREE_MODEL);
     }
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profilers.CaptureParallelism;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -62,7 +63,14 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     // Add the ranges we don't have anymore
     diffs.addAll(myCurrentRange.subtract(myRange));
 
-    update(root, myRange, diffs);
+    // The tree structure is updated first, on this thread, collecting the nodes whose totals need to be recomputed. Recomputing them is
+    // the expensive part and only reads the capture, so it's done in parallel before notifying the listeners.
+    List<DefaultMutableTreeNode> changed = new ArrayList<>();
+    update(root, myRange, diffs, changed);
+    CaptureParallelism.forEach(changed, node -> ((T)node.getUserObject()).update(myRange));
+    for (DefaultMutableTreeNode node : changed) {
+      nodeChanged(node);
+    }
 
     myCurrentRange.set(myRange);
     myAspectModel.changed(Aspect.TREE_MODEL);
@@ -77,7 +85,11 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     return false;
   }
 
-  private void update(DefaultMutableTreeNode node, Range range, List<Range> ranges) {
+  /**
+   * Updates the children of {@code node} to the ones in {@code range}, and adds the nodes whose totals need to be updated to
+   * {@code changed}, descendants first.
+   */
+  private void update(DefaultMutableTreeNode node, Range range, List<Range> ranges, List<DefaultMutableTreeNode> changed) {
     T data = (T)node.getUserObject();
 
     if (changes(data, ranges)) {
@@ -96,7 +108,7 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
             existing = new DefaultMutableTreeNode(child);
             insertNodeInto(existing, node, node.getChildCount());
           }
-          update(existing, range, ranges);
+          update(existing, range, ranges, changed);
         } else {
           child.reset();
         }
@@ -106,8 +118,7 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
           removeNodeFromParent(entry.getValue());
         }
       }
-      data.update(range);
-      nodeChanged(node);
+      changed.add(node);
     }
   }
 
@@ -20,11 +20,18 @@ import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class CpuTreeNode<T extends CpuTreeNode> {
+  /**
+   * Number of nodes from which {@link #update} and {@link #inRange} use {@link IntervalSums} instead of iterating over the nodes, which
+   * makes changing the range of the trees of large captures independent from their size.
+   */
+  static final int MIN_INDEXED_NODE_COUNT = 64;
+
   /**
    * References to {@link CaptureNode} that are used to extract information from to represent this CpuTreeNode,
    * such as {@link #getGlobalTotal()}, {@link #getGlobalChildrenTotal()}, etc...
@@ -38,6 +45,15 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myThreadTotal = 0;
   protected double myThreadChildrenTotal = 0;
 
+  /**
+   * Indices of the intervals of {@link #myNodes} and of their children, in both clocks. Built on demand, see {@link #isIndexed()}.
+   */
+  @Nullable private IntervalSums myGlobalSums;
+  @Nullable private IntervalSums myThreadSums;
+  @Nullable private IntervalSums myGlobalChildrenSums;
+  @Nullable private IntervalSums myThreadChildrenSums;
+  private boolean myIndexBuilt;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -48,6 +64,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myIndexBuilt = false;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -84,6 +101,14 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public void update(@NotNull Range range) {
+    if (isIndexed()) {
+      myGlobalTotal = getNodesIntersection(range, ClockType.GLOBAL);
+      myThreadTotal = getNodesIntersection(range, ClockType.THREAD);
+      myGlobalChildrenTotal = getChildrenIntersection(range, ClockType.GLOBAL);
+      myThreadChildrenTotal = getChildrenIntersection(range, ClockType.THREAD);
+      return;
+    }
+
     myGlobalTotal = 0.0;
     myGlobalChildrenTotal = 0;
     myThreadTotal = 0.0;
@@ -99,6 +124,46 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
     }
   }
 
+  /**
+   * Whether there are enough nodes for the intervals to be indexed, in which case the index is built if needed and
+   * {@link #getNodesIntersection} and {@link #getChildrenIntersection} can be used.
+   */
+  protected boolean isIndexed() {
+    if (myNodes.size() < MIN_INDEXED_NODE_COUNT) {
+      return false;
+    }
+    if (!myIndexBuilt) {
+      List<CaptureNode> children = new ArrayList<>();
+      for (CaptureNode node : myNodes) {
+        children.addAll(node.getChildren());
+      }
+      myGlobalSums = IntervalSums.of(myNodes, ClockType.GLOBAL);
+      myThreadSums = IntervalSums.of(myNodes, ClockType.THREAD);
+      myGlobalChildrenSums = IntervalSums.of(children, ClockType.GLOBAL);
+      myThreadChildrenSums = IntervalSums.of(children, ClockType.THREAD);
+      myIndexBuilt = true;
+    }
+    return myGlobalSums != null && myThreadSums != null && myGlobalChildrenSums != null && myThreadChildrenSums != null;
+  }
+
+  /**
+   * @return the sum of the intersections of {@link #myNodes} with {@code range}. Requires {@link #isIndexed()}.
+   */
+  protected double getNodesIntersection(@NotNull Range range, @NotNull ClockType type) {
+    IntervalSums sums = type == ClockType.GLOBAL ? myGlobalSums : myThreadSums;
+    assert sums != null;
+    return sums.getIntersectionLength(range);
+  }
+
+  /**
+   * @return the sum of the intersections of the children of {@link #myNodes} with {@code range}. Requires {@link #isIndexed()}.
+   */
+  protected double getChildrenIntersection(@NotNull Range range, @NotNull ClockType type) {
+    IntervalSums sums = type == ClockType.GLOBAL ? myGlobalChildrenSums : myThreadChildrenSums;
+    assert sums != null;
+    return sums.getIntersectionLength(range);
+  }
+
   protected static double getIntersection(@NotNull Range range, @NotNull CaptureNode node, @NotNull ClockType type) {
     Range intersection;
     if (type == ClockType.GLOBAL) {
@@ -111,6 +176,12 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public boolean inRange(Range range) {
+    if (range.getMin() < range.getMax() && isIndexed()) {
+      // All the nodes of a capture use the same clock.
+      IntervalSums sums = myNodes.get(0).getClockType() == ClockType.THREAD ? myThreadSums : myGlobalSums;
+      assert sums != null;
+      return sums.overlaps(range.getMin(), range.getMax());
+    }
     return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
   }
 
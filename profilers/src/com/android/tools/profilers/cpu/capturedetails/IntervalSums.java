@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.CaptureNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index over the [start, end] intervals of a fixed list of {@link CaptureNode}s, answering in O(log n) the sum of the lengths of their
+ * intersections with a range, and whether any of them overlaps a range.
+ * <p>
+ * The length of the intersection of [s, e] with [a, b] is g(b) - g(a), where g(x) = (x - s)+ - (x - e)+. Summed over all the intervals,
+ * each term only depends on the number of starts (or ends) before x and their sum, i.e. a binary search in the sorted starts (or ends) and
+ * a lookup in their prefix sums. Sums are kept in longs, relative to the smallest start, so the result is exact.
+ */
+final class IntervalSums {
+  private final long myBase;
+  private final long myMaxEnd;
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myStartPrefixSums;
+  @NotNull private final long[] myEnds;
+  @NotNull private final long[] myEndPrefixSums;
+
+  private IntervalSums(@NotNull long[] starts, @NotNull long[] ends) {
+    Arrays.sort(starts);
+    Arrays.sort(ends);
+    myBase = starts.length == 0 ? 0 : starts[0];
+    myMaxEnd = ends.length == 0 ? 0 : ends[ends.length - 1];
+    myStarts = starts;
+    myEnds = ends;
+    myStartPrefixSums = prefixSums(starts, myBase);
+    myEndPrefixSums = prefixSums(ends, myBase);
+  }
+
+  /**
+   * @return the index of the intervals of the given nodes in the given clock, or null if one of them ends before it starts, in which
+   * case it can't be indexed.
+   */
+  @Nullable
+  static IntervalSums of(@NotNull List<CaptureNode> nodes, @NotNull ClockType clockType) {
+    long[] starts = new long[nodes.size()];
+    long[] ends = new long[nodes.size()];
+    for (int i = 0; i < nodes.size(); i++) {
+      CaptureNode node = nodes.get(i);
+      starts[i] = clockType == ClockType.GLOBAL ? node.getStartGlobal() : node.getStartThread();
+      ends[i] = clockType == ClockType.GLOBAL ? node.getEndGlobal() : node.getEndThread();
+      if (ends[i] < starts[i]) {
+        return null;
+      }
+    }
+    return new IntervalSums(starts, ends);
+  }
+
+  int size() {
+    return myStarts.length;
+  }
+
+  /**
+   * @return the sum of the lengths of the intersections of the intervals with {@code range}.
+   */
+  double getIntersectionLength(@NotNull Range range) {
+    if (myStarts.length == 0 || range.isEmpty()) {
+      return 0;
+    }
+    // Nothing changes outside of [base, max end], and clamping keeps the values small enough for the arithmetic to be exact.
+    double min = Math.min(Math.max(range.getMin(), myBase), myMaxEnd);
+    double max = Math.min(Math.max(range.getMax(), myBase), myMaxEnd);
+    long minFloor = (long)Math.floor(min);
+    long maxFloor = (long)Math.floor(max);
+
+    int startsBeforeMin = countAtMost(myStarts, minFloor);
+    int endsBeforeMin = countAtMost(myEnds, minFloor);
+    int startsBeforeMax = countAtMost(myStarts, maxFloor);
+    int endsBeforeMax = countAtMost(myEnds, maxFloor);
+
+    long whole = (partialSum(myStartPrefixSums, startsBeforeMax, maxFloor)
+                  - partialSum(myEndPrefixSums, endsBeforeMax, maxFloor))
+                 - (partialSum(myStartPrefixSums, startsBeforeMin, minFloor)
+                    - partialSum(myEndPrefixSums, endsBeforeMin, minFloor));
+    double fraction = (startsBeforeMax - endsBeforeMax) * (max - maxFloor) - (startsBeforeMin - endsBeforeMin) * (min - minFloor);
+    return whole + fraction;
+  }
+
+  /**
+   * @return whether any interval satisfies start < max && min < end. Requires min < max.
+   */
+  boolean overlaps(double min, double max) {
+    assert min < max;
+    // Every interval ending at or before min starts before max, so the difference is the number of intervals overlapping.
+    return countBefore(myStarts, max) - countAtMost(myEnds, min) > 0;
+  }
+
+  /**
+   * Sum of (x - v) over the first {@code count} values, which are the ones at most x.
+   */
+  private long partialSum(@NotNull long[] prefixSums, int count, long x) {
+    return count * (x - myBase) - prefixSums[count];
+  }
+
+  @NotNull
+  private static long[] prefixSums(@NotNull long[] values, long base) {
+    long[] sums = new long[values.length + 1];
+    for (int i = 0; i < values.length; i++) {
+      sums[i + 1] = sums[i] + (values[i] - base);
+    }
+    return sums;
+  }
+
+  /**
+   * @return the number of values <= x.
+   */
+  private static int countAtMost(@NotNull long[] values, double x) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] <= x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the number of values < x.
+   */
+  private static int countBefore(@NotNull long[] values, double x) {
+    int low = 0;
+    int high = values.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
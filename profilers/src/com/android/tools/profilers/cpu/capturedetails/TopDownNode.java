@@ -15,10 +15,13 @@
  */
 package com.android.tools.profilers.cpu.capturedetails;
 
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -29,22 +32,44 @@ import java.util.TreeMap;
 public class TopDownNode extends CpuTreeNode<TopDownNode> {
   private static final String INVALID_ID = "";
 
+  /**
+   * Number of levels, from the node the tree is built from, whose children are built in parallel. Deeper subtrees are built on the thread
+   * which builds their ancestor, which keeps the tasks large enough to be worth forking.
+   */
+  private static final int PARALLEL_DEPTH = 3;
+
   public TopDownNode(@NotNull CaptureNode node) {
+    this(node, PARALLEL_DEPTH);
+  }
+
+  private TopDownNode(@NotNull CaptureNode node, int parallelDepth) {
     super(node.getData() == null ? INVALID_ID : node.getData().getId());
     addNode(node);
 
+    List<TopDownNode> children;
+    if (parallelDepth > 0) {
+      children = CaptureParallelism.map(node.getChildren(), child -> new TopDownNode(child, parallelDepth - 1));
+    }
+    else {
+      children = new ArrayList<>(node.getChildCount());
+      for (CaptureNode child : node.getChildren()) {
+        children.add(new TopDownNode(child, 0));
+      }
+    }
+
     // We're adding unmatched children separately, because we don't want to merge unmatched with matched,
     // i.e all merged children should have the same {@link CaptureNode.FilterType}.
-    addChildren(node, false);
-    addChildren(node, true);
+    addChildren(node, children, false);
+    addChildren(node, children, true);
   }
 
   /**
-   * Adds children of {@param node} whose filter type matches to the flag {@param unmatched}.
+   * Adds the nodes built from the children of {@param node} whose filter type matches to the flag {@param unmatched}.
    */
-  private void addChildren(@NotNull CaptureNode node, boolean unmatched) {
+  private void addChildren(@NotNull CaptureNode node, @NotNull List<TopDownNode> built, boolean unmatched) {
     Map<String, TopDownNode> children = new TreeMap<>();
-    for (CaptureNode child : node.getChildren()) {
+    for (int i = 0; i < built.size(); i++) {
+      CaptureNode child = node.getChildren().get(i);
       assert child.getData() != null;
 
       if (unmatched != child.isUnmatched()) {
@@ -52,7 +77,7 @@ public class TopDownNode extends CpuTreeNode<TopDownNode> {
       }
 
       TopDownNode prev = children.get(child.getData().getId());
-      TopDownNode other = new TopDownNode(child);
+      TopDownNode other = built.get(i);
       if (prev == null) {
         children.put(child.getData().getId(), other);
         addChild(other);
@@ -19,6 +19,9 @@ import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.SimpleperfReport;
+import com.android.tools.profiler.protobuf3jarjar.CodedInputStream;
+import com.android.tools.profiler.protobuf3jarjar.WireFormat;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
@@ -26,8 +29,9 @@ import com.android.tools.profilers.cpu.TraceParser;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
-import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -38,10 +42,17 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
+ * <p>
+ * The file is memory-mapped and read in two passes. The first one decodes the records describing the files, threads and the trace itself,
+ * but only indexes the samples, by their position in the file, time and thread. The second one folds the call chains of each thread into
+ * its call tree, the threads in parallel, decoding the call chains straight from the mapped file into primitive arrays. The models of the
+ * methods are shared by all the nodes calling the same method, in all the threads.
  */
 public class SimpleperfTraceParser implements TraceParser {
 
@@ -78,10 +89,20 @@ public class SimpleperfTraceParser implements TraceParser {
   private final Map<Integer, SimpleperfReport.Thread> myThreads;
 
   /**
-   * List of samples containing method trace data.
+   * Samples containing method trace data, in file order.
    */
   @VisibleForTesting
-  final List<SimpleperfReport.Sample> mySamples;
+  final SampleIndex mySamples;
+
+  /**
+   * Content of the trace file, only kept while parsing.
+   */
+  private ByteBuffer myBuffer;
+
+  /**
+   * Models of the methods found in the call chains, shared by all the threads.
+   */
+  private final ConcurrentMap<MethodKey, CaptureNodeModel> myMethodModels;
 
   /**
    * Maps a {@link CpuThreadInfo} to its correspondent method call tree.
@@ -118,9 +139,10 @@ public class SimpleperfTraceParser implements TraceParser {
 
   public SimpleperfTraceParser() {
     myFiles = new HashMap<>();
-    mySamples = new ArrayList<>();
+    mySamples = new SampleIndex();
     myCaptureTrees = new HashMap<>();
     myThreads = new HashMap<>();
+    myMethodModels = new ConcurrentHashMap<>();
   }
 
   /**
@@ -131,20 +153,6 @@ public class SimpleperfTraceParser implements TraceParser {
     return splitPath[splitPath.length - 1];
   }
 
-  private static boolean equals(SimpleperfReport.Sample.CallChainEntry c1, SimpleperfReport.Sample.CallChainEntry c2) {
-    boolean isSameFileAndSymbolId = c1.getFileId() == c2.getFileId() && c1.getSymbolId() == c2.getSymbolId();
-    if (!isSameFileAndSymbolId) {
-      // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
-      return false;
-    }
-    if (c1.getSymbolId() == -1) {
-      // Symbol is invalid, fallback to vaddress
-      return c1.getVaddrInFile() == c2.getVaddrInFile();
-    }
-    // Both file and symbol id match, and symbol is valid
-    return true;
-  }
-
   private static Logger getLog() {
     return Logger.getInstance(SimpleperfTraceParser.class);
   }
@@ -157,10 +165,26 @@ public class SimpleperfTraceParser implements TraceParser {
     }
   }
 
+  /**
+   * @return a protobuf input reading {@code length} bytes of the given buffer from {@code offset}, without copying them.
+   */
+  @NotNull
+  private static CodedInputStream codedInput(@NotNull ByteBuffer buffer, int offset, int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.limit(offset + length);
+    slice.position(offset);
+    return CodedInputStream.newInstance(slice.slice());
+  }
+
   @Override
   public CpuCapture parse(File trace, int traceId) throws IOException {
-    parseTraceFile(trace);
-    parseSampleData();
+    try {
+      parseTraceFile(trace);
+      parseSampleData();
+    }
+    finally {
+      myBuffer = null;
+    }
     return new CpuCapture(this, traceId, CpuProfiler.CpuProfilerType.SIMPLEPERF);
   }
 
@@ -208,11 +232,12 @@ public class SimpleperfTraceParser implements TraceParser {
    * message Record(record_N) (having record_size_N bytes)
    * LittleEndian32(0)
    *
-   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}.
+   * Parsed data is stored in {@link #myFiles} and {@link #mySamples}. Samples are only indexed, see {@link #indexSample}.
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
     ByteBuffer buffer = byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN);
+    myBuffer = buffer;
     verifyMagicNumber(buffer);
     parseVersionNumber(buffer);
 
@@ -222,9 +247,14 @@ public class SimpleperfTraceParser implements TraceParser {
     // 0 is used to indicate the end of the trace
     while (recordSize != 0) {
       // The next recordSize bytes should represent the record
-      byte[] recordBytes = new byte[recordSize];
-      buffer.get(recordBytes);
-      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(recordBytes);
+      int recordOffset = buffer.position();
+      if (indexSample(codedInput(buffer, recordOffset, recordSize), recordOffset)) {
+        buffer.position(recordOffset + recordSize);
+        recordSize = buffer.getInt();
+        continue;
+      }
+      SimpleperfReport.Record record = SimpleperfReport.Record.parseFrom(codedInput(buffer, recordOffset, recordSize));
+      buffer.position(recordOffset + recordSize);
 
       switch (record.getRecordDataCase()) {
         case FILE:
@@ -237,10 +267,6 @@ public class SimpleperfTraceParser implements TraceParser {
           mySampleCount = situation.getSampleCount();
           myLostSampleCount = situation.getLostCount();
           break;
-        case SAMPLE:
-          SimpleperfReport.Sample sample = record.getSample();
-          mySamples.add(sample);
-          break;
         case THREAD:
           SimpleperfReport.Thread thread = record.getThread();
           myThreads.put(thread.getThreadId(), thread);
@@ -265,6 +291,40 @@ public class SimpleperfTraceParser implements TraceParser {
     }
   }
 
+  /**
+   * If the given record is a sample, adds it to {@link #mySamples} without decoding its call chain.
+   *
+   * @param recordOffset offset of the record in the trace file
+   * @return whether the record is a sample
+   */
+  private boolean indexSample(@NotNull CodedInputStream record, int recordOffset) throws IOException {
+    int tag = record.readTag();
+    if (WireFormat.getTagFieldNumber(tag) != SimpleperfReport.Record.SAMPLE_FIELD_NUMBER ||
+        WireFormat.getTagWireType(tag) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+      return false;
+    }
+    int sampleSize = record.readRawVarint32();
+    int sampleOffset = recordOffset + record.getTotalBytesRead();
+    int limit = record.pushLimit(sampleSize);
+    long time = 0;
+    int threadId = 0;
+    for (tag = record.readTag(); tag != 0; tag = record.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case SimpleperfReport.Sample.TIME_FIELD_NUMBER:
+          time = record.readUInt64();
+          break;
+        case SimpleperfReport.Sample.THREAD_ID_FIELD_NUMBER:
+          threadId = record.readInt32();
+          break;
+        default:
+          record.skipField(tag);
+      }
+    }
+    record.popLimit(limit);
+    mySamples.add(sampleOffset, sampleSize, time, threadId);
+    return true;
+  }
+
   /**
    * Parses the next 16-bit number of the given {@link ByteBuffer} as the trace version.
    */
@@ -288,34 +348,40 @@ public class SimpleperfTraceParser implements TraceParser {
    * Parses the data from {@link #mySamples} into a map of tid -> {@link CaptureNode}.
    */
   private void parseSampleData() {
-    if (mySamples.isEmpty()) {
+    if (mySamples.size() == 0) {
       return;
     }
     // Set the capture range
-    long startTimestamp = mySamples.get(0).getTime();
-    long endTimestamp = mySamples.get(mySamples.size() - 1).getTime();
+    long startTimestamp = mySamples.getTime(0);
+    long endTimestamp = mySamples.getTime(mySamples.size() - 1);
     myRange = new Range(TimeUnit.NANOSECONDS.toMicros(startTimestamp), TimeUnit.NANOSECONDS.toMicros(endTimestamp));
 
     // Split the samples per thread.
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
+    Map<Integer, TIntArrayList> threadSamples = splitSamplesPerThread();
+    for (int threadId : threadSamples.keySet()) {
+      if (!myThreads.containsKey(threadId)) {
+        throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
+      }
+    }
 
     // Process the samples for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+    List<Map.Entry<Integer, TIntArrayList>> threads = new ArrayList<>(threadSamples.entrySet());
+    List<CaptureNode> trees =
+      CaptureParallelism.map(threads, threadSamplesEntry -> parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue()));
+    for (int i = 0; i < threads.size(); i++) {
+      int threadId = threads.get(i).getKey();
+      SimpleperfReport.Thread thread = myThreads.get(threadId);
+      myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), trees.get(i));
     }
   }
 
   /**
-   * Group the samples collected by thread.
+   * Group the indices of the samples collected by thread.
    */
-  private Map<Integer, List<SimpleperfReport.Sample>> splitSamplesPerThread() {
-    Map<Integer, List<SimpleperfReport.Sample>> threadSamples = new HashMap<>();
-    for (SimpleperfReport.Sample sample : mySamples) {
-      int threadId = sample.getThreadId();
-      if (!threadSamples.containsKey(threadId)) {
-        threadSamples.put(threadId, new ArrayList<>());
-      }
-      threadSamples.get(threadId).add(sample);
+  private Map<Integer, TIntArrayList> splitSamplesPerThread() {
+    Map<Integer, TIntArrayList> threadSamples = new HashMap<>();
+    for (int i = 0; i < mySamples.size(); i++) {
+      threadSamples.computeIfAbsent(mySamples.getThreadId(i), threadId -> new TIntArrayList()).add(i);
     }
     return threadSamples;
   }
@@ -333,47 +399,42 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Parses the samples of a thread, given by their indices in {@link #mySamples}, into a {@link CaptureNode} tree.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
-    if (threadSamples.isEmpty()) {
-      getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
-    }
-
-    if (!myThreads.containsKey(threadId)) {
-      throw new IllegalStateException("Malformed trace file: thread with id " + threadId + " not found.");
-    }
-
+  @NotNull
+  private CaptureNode parseThreadSamples(int threadId, @NotNull TIntArrayList threadSamples) {
     // Add a root node to represent the thread itself.
-    long firstTimestamp = threadSamples.get(0).getTime();
+    long firstTimestamp = mySamples.getTime(threadSamples.get(0));
     SimpleperfReport.Thread thread = myThreads.get(threadId);
     CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp);
     root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
-
-    // Parse the first call chain so we have a value for lastCallchain
-    List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
-    // Node used to traverse the tree. In the first traversal we pass an empty list as previous call chain and root as last visited node.
-    CaptureNode lastVisitedNode = parseCallChain(previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
-
-    // Now parse all the rest of the samples collected for this thread
-    for (int i = 1; i < threadSamples.size(); i++) {
-      SimpleperfReport.Sample sample = threadSamples.get(i);
-      // Reverse the call chain order because simpleperf returns the call chains ordered from leaf to root,
-      // so reversing it makes the traversal easier.
-      List<SimpleperfReport.Sample.CallChainEntry> callChain = Lists.reverse(sample.getCallchainList());
+
+    // In the first traversal the previous call chain is empty and root is the last visited node.
+    CallChain previousCallChain = new CallChain();
+    CallChain callChain = new CallChain();
+    CaptureNode lastVisitedNode = root;
+    for (int i = 0; i < threadSamples.size(); i++) {
+      int sample = threadSamples.get(i);
+      try {
+        callChain.decode(codedInput(myBuffer, mySamples.getOffset(sample), mySamples.getSize(sample)));
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("Malformed trace file: sample of thread " + threadId + " can't be read.", e);
+      }
       // TODO: when --trace-offcpu is supported, we will need to call updateAncestorsEndTime if sample has a "schedule" out event.
-      lastVisitedNode = parseCallChain(callChain, previousCallChain, sample.getTime(), lastVisitedNode);
+      lastVisitedNode = parseCallChain(callChain, previousCallChain, mySamples.getTime(sample), lastVisitedNode);
+      CallChain swap = previousCallChain;
       previousCallChain = callChain;
+      callChain = swap;
     }
 
     // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
     // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
-    long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
+    long lastTimestamp = mySamples.getTime(mySamples.size() - 1);
     updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
     // update the root timestamp
     setNodeEndTime(root, lastTimestamp);
+    return root;
   }
 
   /**
@@ -389,21 +450,19 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Given a {@link SimpleperfReport.Sample.CallChainEntry} and the previous one, add the new method calls as nodes to the tree and set
+   * Given a call chain and the previous one, add the new method calls as nodes to the tree and set
    * their start time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
    * Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
    * last visited node.
    */
-  private CaptureNode parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
-                                     long sampleTimestamp, CaptureNode lastVisitedNode) {
+  private CaptureNode parseCallChain(CallChain callChain, CallChain previousCallChain, long sampleTimestamp, CaptureNode lastVisitedNode) {
     // Node used to traverse the tree when adding new nodes or going up to find the divergent node ancestor.
     CaptureNode traversalNode = lastVisitedNode;
 
     // Find the node whre the current call chain diverge from the previous one
     int divergenceIndex = 0;
     while (divergenceIndex < callChain.size() && divergenceIndex < previousCallChain.size() &&
-           equals(previousCallChain.get(divergenceIndex), callChain.get(divergenceIndex))) {
+           previousCallChain.isSameMethod(divergenceIndex, callChain, divergenceIndex)) {
       divergenceIndex ++;
     }
 
@@ -437,14 +496,13 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
+   * Given a call chain and a start index, convert its entries to {@link CaptureNode} and add them as descendants of a given node.
    * Returns the last visited (added) node.
    */
-  private CaptureNode addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                  CaptureNode node, int startIndex, long startTimestamp) {
+  private CaptureNode addNewNodes(CallChain callChain, CaptureNode node, int startIndex, long startTimestamp) {
     assert node != null;
     for (int i = startIndex; i < callChain.size(); i++) {
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i)), startTimestamp);
+      CaptureNode child = createCaptureNode(getMethodModel(callChain, i), startTimestamp);
       node.addChild(child);
       child.setDepth(node.getDepth() + 1);
       node = child;
@@ -453,15 +511,27 @@ public class SimpleperfTraceParser implements TraceParser {
     return node;
   }
 
-  private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry) {
-    int symbolId = callChainEntry.getSymbolId();
-    SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
+  /**
+   * Returns the model of the method of the given call chain entry, creating it the first time the method is found in the trace.
+   */
+  @NotNull
+  private CaptureNodeModel getMethodModel(@NotNull CallChain callChain, int index) {
+    int fileId = callChain.getFileId(index);
+    int symbolId = callChain.getSymbolId(index);
+    // Entries without symbol are identified by their address instead.
+    long vaddrInFile = symbolId == INVALID_SYMBOL_ID ? callChain.getVaddrInFile(index) : 0;
+    return myMethodModels.computeIfAbsent(new MethodKey(fileId, symbolId, vaddrInFile), key -> createMethodModel(fileId, symbolId, vaddrInFile));
+  }
+
+  @NotNull
+  private CaptureNodeModel createMethodModel(int fileId, int symbolId, long vaddrInFile) {
+    SimpleperfReport.File symbolFile = myFiles.get(fileId);
     if (symbolFile == null) {
-      throw new IllegalStateException("Symbol file with id \"" + callChainEntry.getFileId() + "\" not found.");
+      throw new IllegalStateException("Symbol file with id \"" + fileId + "\" not found.");
     }
     if (symbolId == INVALID_SYMBOL_ID) {
       // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
-      String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
+      String hexAddress = "0x" + Long.toHexString(vaddrInFile);
       String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
       return new NoSymbolModel(methodName);
     }
@@ -470,4 +540,174 @@ public class SimpleperfTraceParser implements TraceParser {
     boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
     return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten);
   }
+
+  /**
+   * Position in the trace file, time and thread of each sample, in parallel primitive arrays.
+   */
+  @VisibleForTesting
+  static final class SampleIndex {
+    private final TIntArrayList myOffsets = new TIntArrayList();
+    private final TIntArrayList mySizes = new TIntArrayList();
+    private final TLongArrayList myTimes = new TLongArrayList();
+    private final TIntArrayList myThreadIds = new TIntArrayList();
+
+    void add(int offset, int size, long time, int threadId) {
+      myOffsets.add(offset);
+      mySizes.add(size);
+      myTimes.add(time);
+      myThreadIds.add(threadId);
+    }
+
+    int size() {
+      return myTimes.size();
+    }
+
+    int getOffset(int index) {
+      return myOffsets.get(index);
+    }
+
+    int getSize(int index) {
+      return mySizes.get(index);
+    }
+
+    long getTime(int index) {
+      return myTimes.get(index);
+    }
+
+    int getThreadId(int index) {
+      return myThreadIds.get(index);
+    }
+  }
+
+  /**
+   * Entries of the call chain of a sample, ordered from root to leaf. Meant to be reused for all the samples of a thread.
+   */
+  private static final class CallChain {
+    private int mySize;
+    @NotNull private long[] myVaddrsInFile = new long[64];
+    @NotNull private int[] myFileIds = new int[64];
+    @NotNull private int[] mySymbolIds = new int[64];
+
+    /**
+     * Replaces the entries with the call chain of the given {@link SimpleperfReport.Sample}.
+     */
+    void decode(@NotNull CodedInputStream sample) throws IOException {
+      mySize = 0;
+      for (int tag = sample.readTag(); tag != 0; tag = sample.readTag()) {
+        if (WireFormat.getTagFieldNumber(tag) != SimpleperfReport.Sample.CALLCHAIN_FIELD_NUMBER) {
+          sample.skipField(tag);
+          continue;
+        }
+        int limit = sample.pushLimit(sample.readRawVarint32());
+        long vaddrInFile = 0;
+        int fileId = 0;
+        int symbolId = 0;
+        for (int entryTag = sample.readTag(); entryTag != 0; entryTag = sample.readTag()) {
+          switch (WireFormat.getTagFieldNumber(entryTag)) {
+            case SimpleperfReport.Sample.CallChainEntry.VADDR_IN_FILE_FIELD_NUMBER:
+              vaddrInFile = sample.readUInt64();
+              break;
+            case SimpleperfReport.Sample.CallChainEntry.FILE_ID_FIELD_NUMBER:
+              fileId = sample.readUInt32();
+              break;
+            case SimpleperfReport.Sample.CallChainEntry.SYMBOL_ID_FIELD_NUMBER:
+              symbolId = sample.readInt32();
+              break;
+            default:
+              sample.skipField(entryTag);
+          }
+        }
+        sample.popLimit(limit);
+        add(vaddrInFile, fileId, symbolId);
+      }
+      // Simpleperf orders the call chains from leaf to root, reversing them makes the traversal easier.
+      for (int i = 0, j = mySize - 1; i < j; i++, j--) {
+        swap(i, j);
+      }
+    }
+
+    int size() {
+      return mySize;
+    }
+
+    long getVaddrInFile(int index) {
+      return myVaddrsInFile[index];
+    }
+
+    int getFileId(int index) {
+      return myFileIds[index];
+    }
+
+    int getSymbolId(int index) {
+      return mySymbolIds[index];
+    }
+
+    boolean isSameMethod(int index, @NotNull CallChain other, int otherIndex) {
+      boolean isSameFileAndSymbolId = myFileIds[index] == other.myFileIds[otherIndex] && mySymbolIds[index] == other.mySymbolIds[otherIndex];
+      if (!isSameFileAndSymbolId) {
+        // Call chain entries need to be obtained from the same file and have the same symbol id in order to be equal.
+        return false;
+      }
+      if (mySymbolIds[index] == INVALID_SYMBOL_ID) {
+        // Symbol is invalid, fallback to vaddress
+        return myVaddrsInFile[index] == other.myVaddrsInFile[otherIndex];
+      }
+      // Both file and symbol id match, and symbol is valid
+      return true;
+    }
+
+    private void add(long vaddrInFile, int fileId, int symbolId) {
+      if (mySize == myFileIds.length) {
+        int capacity = mySize * 2;
+        myVaddrsInFile = Arrays.copyOf(myVaddrsInFile, capacity);
+        myFileIds = Arrays.copyOf(myFileIds, capacity);
+        mySymbolIds = Arrays.copyOf(mySymbolIds, capacity);
+      }
+      myVaddrsInFile[mySize] = vaddrInFile;
+      myFileIds[mySize] = fileId;
+      mySymbolIds[mySize] = symbolId;
+      mySize++;
+    }
+
+    private void swap(int i, int j) {
+      long vaddrInFile = myVaddrsInFile[i];
+      myVaddrsInFile[i] = myVaddrsInFile[j];
+      myVaddrsInFile[j] = vaddrInFile;
+      int fileId = myFileIds[i];
+      myFileIds[i] = myFileIds[j];
+      myFileIds[j] = fileId;
+      int symbolId = mySymbolIds[i];
+      mySymbolIds[i] = mySymbolIds[j];
+      mySymbolIds[j] = symbolId;
+    }
+  }
+
+  /**
+   * Identifies a method of the trace: a symbol of a file, or an address in a file when the symbol is unknown.
+   */
+  private static final class MethodKey {
+    private final int myFileId;
+    private final int mySymbolId;
+    private final long myVaddrInFile;
+
+    MethodKey(int fileId, int symbolId, long vaddrInFile) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVaddrInFile = vaddrInFile;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof MethodKey)) {
+        return false;
+      }
+      MethodKey other = (MethodKey)o;
+      return myFileId == other.myFileId && mySymbolId == other.mySymbolId && myVaddrInFile == other.myVaddrInFile;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myFileId, mySymbolId, myVaddrInFile);
+    }
+  }
 }
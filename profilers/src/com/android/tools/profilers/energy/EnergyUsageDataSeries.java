@@ -13,7 +13,8 @@
 // limitations under the License.
 package com.android.tools.profilers.energy;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BufferedDataSeries;
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -28,7 +29,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class EnergyUsageDataSeries implements DataSeries<Long> {
+public class EnergyUsageDataSeries implements BufferedDataSeries {
 
   @NotNull private final ProfilerClient myClient;
   private final Common.Session mySession;
@@ -53,14 +54,26 @@ public class EnergyUsageDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForXRange(Range range) {
+    return getSamples(range).stream()
+      .map(data -> new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(data.getTimestamp()), (long)mySampleToUsage.apply(data)))
+      .collect(Collectors.toList());
+  }
+
+  @Override
+  public void getDataForXRange(@NotNull Range range, @NotNull LongSeriesBuffer buffer) {
+    buffer.clear();
+    for (EnergySample sample : getSamples(range)) {
+      buffer.add(TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp()), mySampleToUsage.apply(sample));
+    }
+  }
+
+  @NotNull
+  private List<EnergySample> getSamples(@NotNull Range range) {
     EnergyRequest.Builder builder = EnergyRequest.newBuilder().setSession(mySession);
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     builder.setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long) range.getMin()) - bufferNs);
     builder.setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long) range.getMax()) + bufferNs);
     EnergyProfiler.EnergySamplesResponse samples = myClient.getEnergyClient().getSamples(builder.build());
-
-    return samples.getSamplesList().stream()
-      .map(data -> new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(data.getTimestamp()), (long)mySampleToUsage.apply(data)))
-      .collect(Collectors.toList());
+    return samples.getSamplesList();
   }
 }
@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.memory;
 
+import com.android.tools.adtui.model.CachedLongDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -43,7 +44,8 @@ public class MemoryUsage extends LineChartModel {
                                                       Function<MemorySample, Long> getter) {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     MemoryDataSeries series = new MemoryDataSeries(client, profilers.getSession(), getter);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series);
+    Range viewRange = profilers.getTimeline().getViewRange();
+    return new RangedContinuousSeries(name, viewRange, range, new CachedLongDataSeries(series, viewRange));
   }
 
   @NotNull
@@ -130,6 +130,21 @@ public interface CaptureObject extends MemoryObject {
     return false;
   }
 
+  /**
+   * @return false while the retained sizes of the instances are computed in the background, in which case they are
+   * {@link MemoryObject#INVALID_VALUE} and the totals of the heap sets are incomplete.
+   */
+  default boolean isRetainedSizeReady() {
+    return true;
+  }
+
+  /**
+   * @return true if the background computation of the retained sizes failed, in which case they are never ready.
+   */
+  default boolean isRetainedSizeError() {
+    return false;
+  }
+
   @Nullable
   String getExportableExtension();
 
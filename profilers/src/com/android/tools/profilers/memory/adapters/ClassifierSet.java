@@ -52,6 +52,8 @@ public abstract class ClassifierSet implements MemoryObject {
   private long myTotalNativeSize = 0L;
   private long myTotalShallowSize = 0L;
   private long myTotalRetainedSize = 0L;
+  // Whether some of the instances are groups whose total retained size is not computed yet, see hasPendingRetainedSize().
+  private boolean myHasPendingRetainedSize;
   private int myInstancesWithStackInfoCount = 0;
 
   // Number of ClassifierSet that match the filter.
@@ -110,6 +112,14 @@ public abstract class ClassifierSet implements MemoryObject {
     return myTotalRetainedSize;
   }
 
+  /**
+   * @return true if {@link #getTotalRetainedSize()} doesn't account for all the instances yet, because the total retained size of some
+   * {@link InstanceGroup}s is still computed (see {@link CaptureObject#isRetainedSizeReady()}).
+   */
+  public boolean hasPendingRetainedSize() {
+    return myHasPendingRetainedSize;
+  }
+
   public long getTotalShallowSize() {
     return myTotalShallowSize;
   }
@@ -134,10 +144,11 @@ public abstract class ClassifierSet implements MemoryObject {
       mySnapshotInstances.add(instanceObject);
     }
 
-    mySnapshotObjectCount++;
+    mySnapshotObjectCount += getInstanceCount(instanceObject);
     myTotalNativeSize += instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
-    myTotalShallowSize += instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
-    myTotalRetainedSize += instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
+    myTotalShallowSize += getShallowSize(instanceObject);
+    myTotalRetainedSize += getRetainedSize(instanceObject);
+    myHasPendingRetainedSize |= isRetainedSizePending(instanceObject);
     if (instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount++;
     }
@@ -158,10 +169,10 @@ public abstract class ClassifierSet implements MemoryObject {
       mySnapshotInstances.remove(instanceObject);
     }
 
-    mySnapshotObjectCount--;
+    mySnapshotObjectCount -= getInstanceCount(instanceObject);
     myTotalNativeSize -= instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize();
-    myTotalShallowSize -= instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize();
-    myTotalRetainedSize -= instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize();
+    myTotalShallowSize -= getShallowSize(instanceObject);
+    myTotalRetainedSize -= getRetainedSize(instanceObject);
     if (instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount--;
     }
@@ -210,19 +221,18 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     if (isAllocation) {
-      myDeltaAllocations++;
+      myDeltaAllocations += getInstanceCount(instanceObject);
     }
     else {
-      myDeltaDeallocations++;
+      myDeltaDeallocations += getInstanceCount(instanceObject);
     }
 
     // TODO update deltas instead.
     myTotalNativeSize +=
       (isAllocation ? 1 : -1) * (instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize());
-    myTotalShallowSize +=
-      (isAllocation ? 1 : -1) * (instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize());
-    myTotalRetainedSize +=
-      (isAllocation ? 1 : -1) * (instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize());
+    myTotalShallowSize += (isAllocation ? 1 : -1) * getShallowSize(instanceObject);
+    myTotalRetainedSize += (isAllocation ? 1 : -1) * getRetainedSize(instanceObject);
+    myHasPendingRetainedSize |= isRetainedSizePending(instanceObject);
 
     if (instanceAdded && instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount++;
@@ -249,19 +259,17 @@ public abstract class ClassifierSet implements MemoryObject {
     }
 
     if (isAllocation) {
-      myDeltaAllocations--;
+      myDeltaAllocations -= getInstanceCount(instanceObject);
     }
     else {
-      myDeltaDeallocations--;
+      myDeltaDeallocations -= getInstanceCount(instanceObject);
     }
 
     // TODO update deltas instead.
     myTotalNativeSize -=
       (isAllocation ? 1 : -1) * (instanceObject.getNativeSize() == INVALID_VALUE ? 0 : instanceObject.getNativeSize());
-    myTotalShallowSize -=
-      (isAllocation ? 1 : -1) * (instanceObject.getShallowSize() == INVALID_VALUE ? 0 : instanceObject.getShallowSize());
-    myTotalRetainedSize -=
-      (isAllocation ? 1 : -1) * (instanceObject.getRetainedSize() == INVALID_VALUE ? 0 : instanceObject.getRetainedSize());
+    myTotalShallowSize -= (isAllocation ? 1 : -1) * getShallowSize(instanceObject);
+    myTotalRetainedSize -= (isAllocation ? 1 : -1) * getRetainedSize(instanceObject);
     if (instanceRemoved && instanceObject.getCallStackDepth() > 0) {
       myInstancesWithStackInfoCount--;
       myNeedsRefiltering = true;
@@ -279,34 +287,72 @@ public abstract class ClassifierSet implements MemoryObject {
     myDeltaDeallocations = 0;
     myTotalShallowSize = 0;
     myTotalRetainedSize = 0;
+    myHasPendingRetainedSize = false;
     myInstancesWithStackInfoCount = 0;
     myObjectSetCount = 0;
     myFilteredObjectSetCount = 0;
     myFilterMatchCount = 0;
   }
 
+  /**
+   * Recomputes the total retained size of this set and its descendants from their instances, for captures where the retained sizes
+   * become known after the instances were added (see {@link CaptureObject#isRetainedSizeReady()}). As in {@link #applyFilter}, filtered
+   * out children are not counted.
+   */
+  public void refreshRetainedSize() {
+    myTotalRetainedSize = 0;
+    myHasPendingRetainedSize = false;
+    for (InstanceObject instance : mySnapshotInstances) {
+      myTotalRetainedSize += getRetainedSize(instance);
+      myHasPendingRetainedSize |= isRetainedSizePending(instance);
+    }
+    for (InstanceObject instance : myDeltaInstances) {
+      myTotalRetainedSize += getRetainedSize(instance);
+      myHasPendingRetainedSize |= isRetainedSizePending(instance);
+    }
+    if (myClassifier != null) {
+      for (ClassifierSet classifierSet : myClassifier.getAllClassifierSets()) {
+        classifierSet.refreshRetainedSize();
+        if (!classifierSet.getIsFiltered()) {
+          myTotalRetainedSize += classifierSet.myTotalRetainedSize;
+          myHasPendingRetainedSize |= classifierSet.myHasPendingRetainedSize;
+        }
+      }
+    }
+  }
+
   public int getInstancesCount() {
     if (myClassifier == null) {
       Set<InstanceObject> total = new HashSet<>(mySnapshotInstances);
       total.addAll(myDeltaInstances);
-      return total.size();
+      return total.stream().mapToInt(ClassifierSet::getInstanceCount).sum();
     }
     else {
-      return (int)getInstancesStream().count();
+      return getMemberStream().mapToInt(ClassifierSet::getInstanceCount).sum();
     }
   }
 
   /**
-   * Gets a stream of all instances (including all descendants) in this ClassifierSet.
+   * Gets a stream of all instances (including all descendants) in this ClassifierSet. The instances of {@link InstanceGroup}s are created
+   * as the stream is consumed.
    */
   @NotNull
   public Stream<InstanceObject> getInstancesStream() {
+    return getMemberStream()
+      .flatMap(instance -> instance instanceof InstanceGroup ? ((InstanceGroup)instance).getInstances() : Stream.of(instance));
+  }
+
+  /**
+   * Same as {@link #getInstancesStream()}, with {@link InstanceGroup}s as they were added instead of their instances.
+   */
+  @NotNull
+  private Stream<InstanceObject> getMemberStream() {
     Stream<InstanceObject> total = Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).distinct();
     if (myClassifier == null) {
       return total;
     }
     else {
-      return Stream.concat(myClassifier.getAllClassifierSets().stream().flatMap(ClassifierSet::getInstancesStream), total);
+      return Stream.concat(myClassifier.getAllClassifierSets().stream().flatMap(ClassifierSet::getMemberStream), total);
     }
   }
 
@@ -362,7 +408,7 @@ public abstract class ClassifierSet implements MemoryObject {
   @Nullable
   public ClassifierSet findContainingClassifierSet(@NotNull InstanceObject target) {
     boolean instancesContainsTarget =
-      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
+      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> contains(instance, target)).findAny()
         .isPresent();
     if (instancesContainsTarget && myClassifier != null) {
       return this;
@@ -371,7 +417,7 @@ public abstract class ClassifierSet implements MemoryObject {
       List<ClassifierSet> childrenClassifierSets = getChildrenClassifierSets();
       // mySnapshotInstances/myDeltaInstances can be updated after getChildrenClassiferSets so rebuild the stream.
       boolean stillContainsTarget =
-        Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
+        Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> contains(instance, target)).findAny()
           .isPresent();
       if (instancesContainsTarget && stillContainsTarget) {
         return this; // If after the partition the target still falls within the instances within this set, then return this set.
@@ -397,8 +443,32 @@ public abstract class ClassifierSet implements MemoryObject {
       return false;
     }
 
-    Set<InstanceObject> instances = getInstancesStream().collect(Collectors.toSet());
-    return targetSet.getInstancesStream().allMatch(instances::contains);
+    Set<InstanceObject> instances = getMemberStream().collect(Collectors.toSet());
+    return targetSet.getMemberStream().allMatch(instances::contains);
+  }
+
+  private static boolean contains(@NotNull InstanceObject instance, @NotNull InstanceObject target) {
+    return target.equals(instance) || instance instanceof InstanceGroup && ((InstanceGroup)instance).contains(target);
+  }
+
+  private static int getInstanceCount(@NotNull InstanceObject instance) {
+    return instance instanceof InstanceGroup ? ((InstanceGroup)instance).getInstanceCount() : 1;
+  }
+
+  private static long getShallowSize(@NotNull InstanceObject instance) {
+    if (instance instanceof InstanceGroup) {
+      return ((InstanceGroup)instance).getTotalShallowSize();
+    }
+    return instance.getShallowSize() == INVALID_VALUE ? 0 : instance.getShallowSize();
+  }
+
+  private static long getRetainedSize(@NotNull InstanceObject instance) {
+    long retainedSize = instance instanceof InstanceGroup ? ((InstanceGroup)instance).getTotalRetainedSize() : instance.getRetainedSize();
+    return retainedSize == INVALID_VALUE ? 0 : retainedSize;
+  }
+
+  private static boolean isRetainedSizePending(@NotNull InstanceObject instance) {
+    return instance instanceof InstanceGroup && ((InstanceGroup)instance).getTotalRetainedSize() == INVALID_VALUE;
   }
 
   /**
@@ -441,6 +511,7 @@ public abstract class ClassifierSet implements MemoryObject {
     myTotalShallowSize = 0;
     myTotalNativeSize = 0;
     myTotalRetainedSize = 0;
+    myHasPendingRetainedSize = false;
     myInstancesWithStackInfoCount = 0;
     myObjectSetCount = myClassifier.getAllClassifierSets().size();
     myFilteredObjectSetCount = 0;
@@ -460,6 +531,7 @@ public abstract class ClassifierSet implements MemoryObject {
         myTotalShallowSize += classifierSet.myTotalShallowSize;
         myTotalNativeSize += classifierSet.myTotalNativeSize;
         myTotalRetainedSize += classifierSet.myTotalRetainedSize;
+        myHasPendingRetainedSize |= classifierSet.myHasPendingRetainedSize;
         myInstancesWithStackInfoCount += classifierSet.myInstancesWithStackInfoCount;
         myFilterMatchCount += classifierSet.myFilterMatchCount;
         myFilteredObjectSetCount++;
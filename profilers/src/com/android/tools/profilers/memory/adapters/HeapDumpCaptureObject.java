@@ -27,23 +27,48 @@ import com.android.tools.profiler.proto.MemoryProfiler.DumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profiler.proto.MemoryServiceGrpc.MemoryServiceBlockingStub;
+import com.android.tools.profilers.CaptureCache;
+import com.android.tools.profilers.CaptureParallelism;
+import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.memory.MemoryProfiler;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
+import com.android.tools.profilers.memory.adapters.hprof.HprofGraph;
+import com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump;
 import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.MapMaker;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.*;
+import static com.android.tools.profilers.memory.adapters.MemoryObject.INVALID_VALUE;
 
 public class HeapDumpCaptureObject implements CaptureObject {
+  /**
+   * Dumps larger than this are indexed by a {@link HprofHeapDump}, outside of the Java heap, instead of being loaded in a perflib
+   * {@link Snapshot}, which takes several times the size of the dump in the heap.
+   */
+  private static final long DEFAULT_MAPPED_HEAP_DUMP_THRESHOLD = Runtime.getRuntime().maxMemory() / 8;
+
+  /**
+   * Number of classes of a mapped dump whose total retained size is computed before the heap sets are updated with them.
+   */
+  private static final int RETAINED_SIZE_BATCH_SIZE = 1000;
 
   @NotNull
   private final MemoryServiceBlockingStub myClient;
@@ -79,6 +104,38 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private boolean myHasNativeAllocations;
 
+  private long myMappedHeapDumpThreshold = DEFAULT_MAPPED_HEAP_DUMP_THRESHOLD;
+
+  /**
+   * The dump and its index, when loaded in a {@link HprofHeapDump}, in which case {@link #mySnapshot} stays null.
+   */
+  @Nullable private File myMappedFile;
+  @Nullable private volatile HprofHeapDump myMappedHeapDump;
+  @Nullable private HprofGraph myMappedGraph;
+  private int myMappedJavaLangClass = HprofHeapDump.NO_CLASS;
+  /**
+   * Class entries of the instances of each class of the mapped dump, and of the class objects of each class, which are all instances of
+   * java.lang.Class but are classified by the class loader of the class they describe. Set when the dump is loaded.
+   */
+  @NotNull private ClassDb.ClassEntry[] myMappedClassEntries = new ClassDb.ClassEntry[0];
+  @NotNull private ClassDb.ClassEntry[] myMappedClassObjectEntries = new ClassDb.ClassEntry[0];
+  /**
+   * The instance objects of the mapped dump which are in use, by instance index. The heap sets hold {@link MappedHeapDumpInstanceGroup}s
+   * rather than instance objects, which are created when browsed and can be garbage collected afterwards.
+   */
+  @NotNull private final ConcurrentMap<Integer, InstanceObject> myMappedInstanceObjects = new MapMaker().weakValues().makeMap();
+
+  /**
+   * Whether the retained sizes of the mapped dump are known. They are computed in the background once the graph is built, and the
+   * totals of the heap sets updated as the totals of their classes are done.
+   */
+  private volatile boolean myMappedRetainedSizesReady;
+  private volatile boolean myMappedRetainedSizesError;
+  /**
+   * The background computation of the retained sizes of the mapped dump, which has to be done before the dump is closed by {@link #unload()}.
+   */
+  @Nullable private CompletableFuture<Void> myMappedRetainedSizes;
+
   @NotNull
   private final MemoryProfilerStage myStage;
 
@@ -124,11 +181,15 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myClassDb;
   }
 
+  @VisibleForTesting
+  void setMappedHeapDumpThreshold(long sizeBytes) {
+    myMappedHeapDumpThreshold = sizeBytes;
+  }
+
   @NotNull
   @Override
   public Collection<HeapSet> getHeapSets() {
-    Snapshot snapshot = mySnapshot;
-    if (snapshot == null) {
+    if (!isLoaded()) {
       return Collections.emptyList();
     }
     return myHeapSets.values();
@@ -143,8 +204,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
   @NotNull
   @Override
   public Stream<InstanceObject> getInstances() {
-    Snapshot snapshot = mySnapshot;
-    if (snapshot == null) {
+    if (!isLoaded()) {
       return Stream.empty();
     }
     return getHeapSets().stream().map(ClassifierSet::getInstancesStream).flatMap(Function.identity());
@@ -190,6 +250,24 @@ public class HeapDumpCaptureObject implements CaptureObject {
       return false;
     }
 
+    if (response.getData().size() > myMappedHeapDumpThreshold) {
+      File file;
+      try {
+        file = FileUtil.createTempFile(String.format("heap_dump_%d", myHeapDumpInfo.getStartTime()), ".hprof", true);
+        try (OutputStream out = new FileOutputStream(file)) {
+          response.getData().writeTo(out);
+        }
+      }
+      catch (IOException e) {
+        getLogger().warn("Unable to write the heap dump to a temporary file", e);
+        myIsLoadingError = true;
+        return false;
+      }
+      // Let the dump be garbage collected before indexing it.
+      response = null;
+      return loadMapped(file);
+    }
+
     InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
@@ -256,9 +334,181 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return true;
   }
 
+  /**
+   * Opens the dump with the index cached when it was opened before, e.g. in a previous studio session, if any. Otherwise indexes the dump
+   * and caches its index.
+   */
+  @NotNull
+  private HprofHeapDump openMapped(@NotNull File file) throws IOException {
+    CaptureCache cache = myStage.getStudioProfilers().getIdeServices().getCaptureCache();
+    if (cache == null) {
+      return HprofHeapDump.open(file);
+    }
+
+    String cacheKey = String.format("heap_dump_%d_%d_%d", mySession.getSessionId(), myHeapDumpInfo.getStartTime(), file.length());
+    File index = cache.get(cacheKey);
+    if (index != null) {
+      try {
+        return HprofHeapDump.open(file, index);
+      }
+      catch (IOException e) {
+        getLogger().warn("Unable to read the cached heap dump index " + cacheKey, e);
+        cache.remove(cacheKey);
+      }
+    }
+    HprofHeapDump heapDump = HprofHeapDump.open(file);
+    try {
+      cache.put(cacheKey, heapDump::writeIndex);
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to cache the heap dump index " + cacheKey, e);
+    }
+    return heapDump;
+  }
+
+  /**
+   * Indexes the dump with a {@link HprofHeapDump} and creates one {@link MappedHeapDumpInstanceGroup} per class and heap. Instance objects
+   * are only created when a class's instances are listed; native sizes and allocation stacks, which perflib's post processors provide,
+   * are not available on this path.
+   */
+  private boolean loadMapped(@NotNull File file) {
+    myMappedFile = file;
+    HprofHeapDump heapDump;
+    try {
+      heapDump = openMapped(file);
+      myMappedGraph = heapDump.getGraph();
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to read the heap dump", e);
+      myIsLoadingError = true;
+      FileUtil.delete(file);
+      return false;
+    }
+    myMappedJavaLangClass = heapDump.findClass(ClassDb.JAVA_LANG_CLASS);
+    myMappedClassEntries = new ClassDb.ClassEntry[heapDump.getClassCount()];
+    myMappedClassObjectEntries = new ClassDb.ClassEntry[heapDump.getClassCount()];
+
+    // The dominators take about as long to compute as everything below, so they are computed meanwhile. Until they are done, retained
+    // sizes are reported as unknown.
+    IdeProfilerServices services = myStage.getStudioProfilers().getIdeServices();
+    HprofGraph graph = myMappedGraph;
+    CompletableFuture<Void> dominators = CompletableFuture.runAsync(() -> {
+      try {
+        graph.computeDominators();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, services.getPoolExecutor());
+
+    // Set before reading the class entries of the instances.
+    myMappedHeapDump = heapDump;
+
+    // Only the instances of each class are counted here, their instance objects are created when the class is browsed.
+    List<Map<ClassDb.ClassEntry, MappedHeapDumpInstanceGroup>> groups = new ArrayList<>(heapDump.getHeapCount());
+    for (int heap = 0; heap < heapDump.getHeapCount(); heap++) {
+      groups.add(new LinkedHashMap<>());
+    }
+    for (int instance = 0; instance < heapDump.getInstanceCount(); instance++) {
+      int classIndex = heapDump.getClass(instance);
+      ClassDb.ClassEntry classEntry;
+      if (heapDump.getKind(instance) == HprofHeapDump.Kind.CLASS) {
+        int describedClass = heapDump.getDescribedClass(instance);
+        if (myMappedClassObjectEntries[describedClass] == null) {
+          myMappedClassObjectEntries[describedClass] =
+            myClassDb.registerClass(heapDump.getClassLoaderId(describedClass), ClassDb.JAVA_LANG_CLASS);
+        }
+        classEntry = myMappedClassObjectEntries[describedClass];
+      }
+      else {
+        if (myMappedClassEntries[classIndex] == null) {
+          myMappedClassEntries[classIndex] =
+            myClassDb.registerClass(heapDump.getClassLoaderId(classIndex), heapDump.getClassName(classIndex));
+        }
+        classEntry = myMappedClassEntries[classIndex];
+      }
+      int heap = heapDump.getHeap(instance);
+      groups.get(heap).computeIfAbsent(classEntry, entry -> new MappedHeapDumpInstanceGroup(this, classIndex, heap, entry))
+        .add(heapDump.getShallowSize(instance));
+    }
+
+    List<MappedHeapDumpInstanceGroup> allGroups = new ArrayList<>();
+    for (int heap = 0; heap < heapDump.getHeapCount(); heap++) {
+      allGroups.addAll(groups.get(heap).values());
+      if (!HprofHeapDump.DEFAULT_HEAP_NAME.equals(heapDump.getHeapName(heap)) ||
+          heapDump.getHeapCount() == 1 ||
+          !groups.get(heap).isEmpty()) {
+        HeapSet heapSet = new HeapSet(this, heapDump.getHeapName(heap), heapDump.getHeapId(heap));
+        groups.get(heap).values().forEach(heapSet::addDeltaInstanceObject);
+        myHeapSets.put(heapDump.getHeapId(heap), heapSet);
+      }
+    }
+
+    myStage.refreshSelectedHeap();
+
+    // The total retained size of each class reads the retained size of all its instances. The classes with the largest shallow sizes,
+    // which are likely to retain the most, are done first, and the heap sets updated after each batch, so the totals fill in as they are
+    // computed.
+    allGroups.sort(Comparator.comparingLong(MappedHeapDumpInstanceGroup::getTotalShallowSize).reversed());
+    myMappedRetainedSizes = dominators.thenCompose(result -> computeRetainedSizes(allGroups, 0));
+    myMappedRetainedSizes.whenCompleteAsync((result, error) -> {
+      if (myMappedHeapDump == null) {
+        // Unloaded meanwhile, which cancels the computation.
+        return;
+      }
+      if (error != null) {
+        getLogger().warn("Unable to compute the retained sizes", error);
+        myMappedRetainedSizesError = true;
+      }
+      else {
+        myHeapSets.values().forEach(ClassifierSet::refreshRetainedSize);
+        myMappedRetainedSizesReady = true;
+      }
+      myStage.refreshSelectedHeap();
+    }, services.getMainExecutor());
+
+    return true;
+  }
+
+  /**
+   * Computes the total retained sizes of the groups from {@code start}, a batch at a time on {@link CaptureParallelism}'s pool, and
+   * updates the heap sets after each batch.
+   */
+  @NotNull
+  private CompletableFuture<Void> computeRetainedSizes(@NotNull List<MappedHeapDumpInstanceGroup> groups, int start) {
+    if (start >= groups.size() || myMappedHeapDump == null) {
+      return CompletableFuture.completedFuture(null);
+    }
+    IdeProfilerServices services = myStage.getStudioProfilers().getIdeServices();
+    List<MappedHeapDumpInstanceGroup> batch = groups.subList(start, Math.min(groups.size(), start + RETAINED_SIZE_BATCH_SIZE));
+    return CompletableFuture
+      .runAsync(() -> CaptureParallelism.forEach(batch, MappedHeapDumpInstanceGroup::computeTotalRetainedSize), services.getPoolExecutor())
+      .thenRunAsync(() -> {
+        if (myMappedHeapDump != null) {
+          myHeapSets.values().forEach(ClassifierSet::refreshRetainedSize);
+          myStage.refreshSelectedHeap();
+        }
+      }, services.getMainExecutor())
+      .thenCompose(result -> computeRetainedSizes(groups, start + batch.size()));
+  }
+
+  private boolean isLoaded() {
+    return mySnapshot != null || myMappedHeapDump != null;
+  }
+
+  @Override
+  public boolean isRetainedSizeReady() {
+    return myMappedHeapDump == null || myMappedRetainedSizesReady;
+  }
+
+  @Override
+  public boolean isRetainedSizeError() {
+    return myMappedRetainedSizesError;
+  }
+
   @Override
   public boolean isDoneLoading() {
-    return mySnapshot != null || myIsLoadingError;
+    return isLoaded() || myIsLoadingError;
   }
 
   @Override
@@ -268,7 +518,43 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public void unload() {
+    HprofHeapDump heapDump = myMappedHeapDump;
+    File mappedFile = myMappedFile;
+    if (heapDump == null) {
+      if (mappedFile != null) {
+        FileUtil.delete(mappedFile);
+      }
+      return;
+    }
+
+    // Drop everything which reads from the dump, and stop computing the retained sizes, before closing it.
+    myMappedHeapDump = null;
+    myHeapSets.clear();
+    myMappedInstanceObjects.clear();
+    CompletableFuture<Void> retainedSizes = myMappedRetainedSizes;
+    if (retainedSizes == null) {
+      closeMapped(heapDump, mappedFile);
+      return;
+    }
+    assert myMappedGraph != null;
+    myMappedGraph.cancelDominators();
+    // The computation reads the dump until it notices it is cancelled, so the dump is closed once it is done, without waiting for it here.
+    retainedSizes.whenComplete((result, error) -> closeMapped(heapDump, mappedFile));
+  }
 
+  /**
+   * Closes the dump, which unmaps the file, then deletes the file, which can't be deleted while mapped on Windows.
+   */
+  private static void closeMapped(@NotNull HprofHeapDump heapDump, @Nullable File file) {
+    try {
+      heapDump.close();
+    }
+    catch (IOException e) {
+      getLogger().warn(e);
+    }
+    if (file != null) {
+      FileUtil.delete(file);
+    }
   }
 
   @NotNull
@@ -298,6 +584,81 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myInstanceIndex.get(instance);
   }
 
+  /**
+   * @return the instance object of an instance of the mapped dump, which is created if no other object currently uses it.
+   */
+  @Nullable
+  InstanceObject findInstanceObject(int mappedInstance) {
+    if (mappedInstance == HprofHeapDump.NO_INSTANCE) {
+      return null;
+    }
+    InstanceObject instanceObject = myMappedInstanceObjects.get(mappedInstance);
+    if (instanceObject == null) {
+      // Not computeIfAbsent, as creating the instance object also finds the object of its class.
+      instanceObject = createMappedInstanceObject(mappedInstance);
+      InstanceObject existing = myMappedInstanceObjects.putIfAbsent(mappedInstance, instanceObject);
+      if (existing != null) {
+        instanceObject = existing;
+      }
+    }
+    return instanceObject;
+  }
+
+  @NotNull
+  private InstanceObject createMappedInstanceObject(int mappedInstance) {
+    HprofHeapDump heapDump = getMappedHeapDump();
+    InstanceObject classObject;
+    if (heapDump.getKind(mappedInstance) == HprofHeapDump.Kind.CLASS) {
+      // As in the perflib path, java.lang.Class itself has no class object.
+      classObject = heapDump.getDescribedClass(mappedInstance) == myMappedJavaLangClass
+                    ? null
+                    : findInstanceObject(heapDump.getClassObject(myMappedJavaLangClass));
+    }
+    else {
+      classObject = findInstanceObject(heapDump.getClassObject(heapDump.getClass(mappedInstance)));
+    }
+    return new MappedHeapDumpInstanceObject(this, mappedInstance, classObject, getMappedClassEntry(mappedInstance));
+  }
+
+  /**
+   * @return the class entry under which an instance of the mapped dump is classified.
+   */
+  @NotNull
+  ClassDb.ClassEntry getMappedClassEntry(int mappedInstance) {
+    HprofHeapDump heapDump = getMappedHeapDump();
+    return heapDump.getKind(mappedInstance) == HprofHeapDump.Kind.CLASS
+           ? myMappedClassObjectEntries[heapDump.getDescribedClass(mappedInstance)]
+           : myMappedClassEntries[heapDump.getClass(mappedInstance)];
+  }
+
+  @NotNull
+  HprofHeapDump getMappedHeapDump() {
+    HprofHeapDump heapDump = myMappedHeapDump;
+    assert heapDump != null;
+    return heapDump;
+  }
+
+  @NotNull
+  HprofGraph getMappedGraph() {
+    assert myMappedGraph != null;
+    return myMappedGraph;
+  }
+
+  /**
+   * @return the retained size of an instance of the mapped dump, {@link MemoryObject#INVALID_VALUE} while the dominators are computed.
+   */
+  long getMappedRetainedSize(int mappedInstance) {
+    return hasMappedRetainedSizes() ? getMappedGraph().getRetainedSize(mappedInstance) : INVALID_VALUE;
+  }
+
+  /**
+   * @return whether the dominators of the mapped dump are computed, and the dump not unloaded yet.
+   */
+  boolean hasMappedRetainedSizes() {
+    HprofGraph graph = myMappedGraph;
+    return myMappedHeapDump != null && graph != null && graph.hasDominators();
+  }
+
   @NotNull
   InstanceObject createClassObjectInstance(@Nullable InstanceObject javaLangClass, @NotNull ClassObj classObj) {
     if (javaLangClass == null) {
@@ -323,4 +684,8 @@ public class HeapDumpCaptureObject implements CaptureObject {
     ClassObj classObj = instance.getClassObj();
     return myClassObjectIndex.get(classObj);
   }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.stream.Stream;
+
+/**
+ * Stands for several instances of the same class and heap, for captures that don't create an {@link InstanceObject} per instance up front.
+ * {@link ClassifierSet}s classify and count a group as a whole, and only create its instances when they are listed, see
+ * {@link ClassifierSet#getInstancesStream()}.
+ */
+public interface InstanceGroup extends InstanceObject {
+  int getInstanceCount();
+
+  long getTotalShallowSize();
+
+  /**
+   * @return the sum of the retained sizes of the instances, {@link #INVALID_VALUE} while they are unknown.
+   */
+  long getTotalRetainedSize();
+
+  /**
+   * @return the instances of the group, created as the stream is consumed.
+   */
+  @NotNull
+  Stream<InstanceObject> getInstances();
+
+  boolean contains(@NotNull InstanceObject instance);
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.NULL;
+
+/**
+ * Same as {@link HeapDumpFieldObject}, for a field of a {@link HprofHeapDump} instance.
+ */
+final class MappedHeapDumpFieldObject implements FieldObject {
+  @NotNull private final HprofHeapDump.Field myField;
+  @NotNull private final ValueObject.ValueType myValueType;
+  @Nullable private final InstanceObject myInstanceObject;
+  private final int myDepth;
+  @NotNull private final HeapDumpCaptureObject myCaptureObject;
+  private final int myShallowSize;
+  /**
+   * Retained size of primitive values, and of null references.
+   */
+  private final long myValueRetainedSize;
+
+  private final int myHashCode;
+
+  MappedHeapDumpFieldObject(@NotNull HeapDumpCaptureObject captureObject, int parentInstance, @NotNull HprofHeapDump.Field field) {
+    myCaptureObject = captureObject;
+    myField = field;
+    HprofHeapDump heapDump = captureObject.getMappedHeapDump();
+    HprofHeapDump.Type type = field.getType();
+    if (type == HprofHeapDump.Type.OBJECT) {
+      int instance = field.getInstance();
+      if (instance == HprofHeapDump.NO_INSTANCE) {
+        myValueType = NULL;
+        myInstanceObject = null;
+        myShallowSize = 0;
+        myValueRetainedSize = 0;
+        myDepth = Integer.MAX_VALUE;
+      }
+      else {
+        myInstanceObject = captureObject.findInstanceObject(instance);
+        myValueType = MappedHeapDumpInstanceObject.getValueType(heapDump, instance);
+        myShallowSize = heapDump.getShallowSize(instance);
+        myValueRetainedSize = INVALID_VALUE;
+        myDepth = captureObject.getMappedGraph().getDepth(instance);
+      }
+    }
+    else {
+      myValueType = MappedHeapDumpInstanceObject.VALUE_TYPE_MAP.getOrDefault(type, NULL);
+      myInstanceObject = null;
+      myShallowSize = type.getSize();
+      myValueRetainedSize = type.getSize();
+      myDepth = captureObject.getMappedGraph().getDepth(parentInstance);
+    }
+
+    myHashCode = Arrays.hashCode(new Object[]{myInstanceObject, getFieldName(), getValueType(), myField.getValue()});
+  }
+
+  @Override
+  public int hashCode() {
+    return myHashCode;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof MappedHeapDumpFieldObject)) {
+      return false;
+    }
+
+    MappedHeapDumpFieldObject other = (MappedHeapDumpFieldObject)obj;
+    return other.myInstanceObject == myInstanceObject &&
+           getFieldName().equals(other.getFieldName()) &&
+           getValueType() == other.getValueType() &&
+           Objects.equals(myField.getValue(), other.myField.getValue());
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return getFieldName();
+  }
+
+  @Override
+  public long getNativeSize() {
+    return 0;
+  }
+
+  @Override
+  public int getShallowSize() {
+    return myShallowSize;
+  }
+
+  @Override
+  public long getRetainedSize() {
+    // Read on each call, as the retained sizes may not be computed yet when the field is created.
+    return myInstanceObject == null ? myValueRetainedSize : myCaptureObject.getMappedRetainedSize(myField.getInstance());
+  }
+
+  @Override
+  public int getDepth() {
+    return myDepth;
+  }
+
+  @NotNull
+  @Override
+  public String getFieldName() {
+    return myField.getName();
+  }
+
+  @Nullable
+  @Override
+  public InstanceObject getAsInstance() {
+    return myInstanceObject;
+  }
+
+  @Nullable
+  @Override
+  public Object getValue() {
+    if (myField.getType() == HprofHeapDump.Type.OBJECT) {
+      return myInstanceObject;
+    }
+    return myField.getValue();
+  }
+
+  @NotNull
+  @Override
+  public ValueObject.ValueType getValueType() {
+    return myValueType;
+  }
+
+  @NotNull
+  @Override
+  public String getValueText() {
+    if (getValueType().getIsPrimitive()) {
+      return "";
+    }
+    else if (getValueType() == NULL || myInstanceObject == null) {
+      return "null";
+    }
+    else {
+      return String.format("{%s}", myInstanceObject.getClassEntry().getSimpleClassName());
+    }
+  }
+
+  @NotNull
+  @Override
+  public String getToStringText() {
+    if (getValueType() == NULL) {
+      return "";
+    }
+    else if (getValueType().getIsPrimitive()) {
+      return myField.getValue().toString();
+    }
+    else {
+      return myInstanceObject == null ? "" : myInstanceObject.getToStringText();
+    }
+  }
+}
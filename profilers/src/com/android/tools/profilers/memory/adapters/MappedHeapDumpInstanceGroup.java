@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profilers.memory.adapters.hprof.HprofGraph;
+import com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * The instances of a class in a heap of a {@link HprofHeapDump}. Only their count and total shallow size are kept, the
+ * {@link MappedHeapDumpInstanceObject}s are created when the instances are listed, e.g. for the class selected in the UI.
+ */
+final class MappedHeapDumpInstanceGroup implements InstanceGroup {
+  @NotNull private final HeapDumpCaptureObject myCaptureObject;
+  private final int myClassIndex;
+  private final int myHeap;
+  @NotNull private final ClassDb.ClassEntry myClassEntry;
+  private int myInstanceCount;
+  private long myTotalShallowSize;
+  private volatile long myTotalRetainedSize = INVALID_VALUE;
+
+  /**
+   * @param classIndex the class of the instances in the dump, which is java.lang.Class for class objects. Class objects are grouped by
+   *                   {@code classEntry}, i.e. by class loader.
+   */
+  MappedHeapDumpInstanceGroup(@NotNull HeapDumpCaptureObject captureObject,
+                              int classIndex,
+                              int heap,
+                              @NotNull ClassDb.ClassEntry classEntry) {
+    myCaptureObject = captureObject;
+    myClassIndex = classIndex;
+    myHeap = heap;
+    myClassEntry = classEntry;
+  }
+
+  /**
+   * Adds an instance of the dump to the group, while the dump is loaded.
+   */
+  void add(int shallowSize) {
+    myInstanceCount++;
+    myTotalShallowSize += shallowSize;
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return myClassEntry.getClassName();
+  }
+
+  @Override
+  public int getHeapId() {
+    return myCaptureObject.getMappedHeapDump().getHeapId(myHeap);
+  }
+
+  @NotNull
+  @Override
+  public ClassDb.ClassEntry getClassEntry() {
+    return myClassEntry;
+  }
+
+  @Nullable
+  @Override
+  public InstanceObject getClassObject() {
+    return null;
+  }
+
+  @NotNull
+  @Override
+  public ValueType getValueType() {
+    return ValueType.OBJECT;
+  }
+
+  @Override
+  public int getInstanceCount() {
+    return myInstanceCount;
+  }
+
+  @Override
+  public long getTotalShallowSize() {
+    return myTotalShallowSize;
+  }
+
+  /**
+   * @return the total retained size of the instances, {@link #INVALID_VALUE} until {@link #computeTotalRetainedSize()} is done.
+   */
+  @Override
+  public long getTotalRetainedSize() {
+    return myTotalRetainedSize;
+  }
+
+  /**
+   * Sums the retained sizes of the instances once the dominators of the dump are computed. This reads every instance of the class, so it is
+   * done in the background rather than when the total is displayed.
+   */
+  void computeTotalRetainedSize() {
+    if (myTotalRetainedSize == INVALID_VALUE && myCaptureObject.hasMappedRetainedSizes()) {
+      HprofGraph graph = myCaptureObject.getMappedGraph();
+      myTotalRetainedSize = getInstanceIndices().mapToLong(graph::getRetainedSize).sum();
+    }
+  }
+
+  @NotNull
+  @Override
+  public Stream<InstanceObject> getInstances() {
+    return getInstanceIndices().mapToObj(myCaptureObject::findInstanceObject);
+  }
+
+  @Override
+  public boolean contains(@NotNull InstanceObject instance) {
+    if (!(instance instanceof MappedHeapDumpInstanceObject) || ((MappedHeapDumpInstanceObject)instance).getCaptureObject() != myCaptureObject) {
+      return false;
+    }
+    int index = ((MappedHeapDumpInstanceObject)instance).getInstance();
+    HprofHeapDump heapDump = myCaptureObject.getMappedHeapDump();
+    return heapDump.getClass(index) == myClassIndex && heapDump.getHeap(index) == myHeap && instance.getClassEntry() == myClassEntry;
+  }
+
+  @NotNull
+  private IntStream getInstanceIndices() {
+    HprofHeapDump heapDump = myCaptureObject.getMappedHeapDump();
+    return IntStream.range(0, heapDump.getInstanceCountOfClass(myClassIndex))
+      .map(i -> heapDump.getInstanceOfClass(myClassIndex, i))
+      .filter(instance -> heapDump.getHeap(instance) == myHeap && myCaptureObject.getMappedClassEntry(instance) == myClassEntry);
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profilers.memory.adapters.hprof.HprofGraph;
+import com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump;
+import com.google.common.collect.ImmutableMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static com.android.tools.profilers.memory.adapters.ValueObject.ValueType.*;
+
+/**
+ * Same as {@link HeapDumpInstanceObject}, for an instance of a {@link HprofHeapDump}. Only the instance index is kept, everything else is
+ * read from the dump when needed. These are only created for the instances being browsed, see {@link MappedHeapDumpInstanceGroup}.
+ */
+final class MappedHeapDumpInstanceObject implements InstanceObject {
+  private static final String NAME_FORMATTER = "%s@%d (0x%x)";
+  private static final int MAX_VALUE_TEXT_LENGTH = 1024;
+  private static final String INVALID_STRING_VALUE = " ...<invalid string value>...";
+  static final Map<HprofHeapDump.Type, ValueType> VALUE_TYPE_MAP = ImmutableMap.<HprofHeapDump.Type, ValueType>builder()
+    .put(HprofHeapDump.Type.BOOLEAN, BOOLEAN)
+    .put(HprofHeapDump.Type.BYTE, BYTE)
+    .put(HprofHeapDump.Type.CHAR, CHAR)
+    .put(HprofHeapDump.Type.SHORT, SHORT)
+    .put(HprofHeapDump.Type.INT, INT)
+    .put(HprofHeapDump.Type.LONG, LONG)
+    .put(HprofHeapDump.Type.FLOAT, FLOAT)
+    .put(HprofHeapDump.Type.DOUBLE, DOUBLE)
+    .put(HprofHeapDump.Type.OBJECT, OBJECT)
+    .build();
+
+  @NotNull private final HeapDumpCaptureObject myCaptureObject;
+  private final int myInstance;
+  @Nullable private final InstanceObject myClassInstanceObject;
+  @NotNull private final ClassDb.ClassEntry myClassEntry;
+  @NotNull private final ValueType myValueType;
+
+  MappedHeapDumpInstanceObject(@NotNull HeapDumpCaptureObject captureObject,
+                               int instance,
+                               @Nullable InstanceObject classInstanceObject,
+                               @NotNull ClassDb.ClassEntry classEntry) {
+    myCaptureObject = captureObject;
+    myInstance = instance;
+    myClassInstanceObject = classInstanceObject;
+    myClassEntry = classEntry;
+    myValueType = getValueType(captureObject.getMappedHeapDump(), instance);
+  }
+
+  @NotNull
+  static ValueType getValueType(@NotNull HprofHeapDump heapDump, int instance) {
+    switch (heapDump.getKind(instance)) {
+      case CLASS:
+        return CLASS;
+      case OBJECT_ARRAY:
+      case PRIMITIVE_ARRAY:
+        return ARRAY;
+      default:
+        return ClassDb.JAVA_LANG_STRING.equals(heapDump.getClassName(heapDump.getClass(instance))) ? STRING : OBJECT;
+    }
+  }
+
+  int getInstance() {
+    return myInstance;
+  }
+
+  @NotNull
+  HeapDumpCaptureObject getCaptureObject() {
+    return myCaptureObject;
+  }
+
+  @NotNull
+  private HprofHeapDump getHeapDump() {
+    return myCaptureObject.getMappedHeapDump();
+  }
+
+  @NotNull
+  private HprofGraph getGraph() {
+    return myCaptureObject.getMappedGraph();
+  }
+
+  @NotNull
+  @Override
+  public String getName() {
+    return "";
+  }
+
+  @NotNull
+  @Override
+  public String getValueText() {
+    long id = getHeapDump().getId(myInstance);
+    return String.format(NAME_FORMATTER, myClassEntry.getSimpleClassName(), id, id);
+  }
+
+  @NotNull
+  @Override
+  public String getToStringText() {
+    if (myValueType == STRING) {
+      String text = getHeapDump().getStringValue(myInstance, MAX_VALUE_TEXT_LENGTH);
+      if (text != null) {
+        int textLength = text.length();
+        StringBuilder builder = new StringBuilder(6 + textLength);
+        builder.append("\"");
+        if (textLength == MAX_VALUE_TEXT_LENGTH) {
+          builder.append(text, 0, textLength - 1).append("...");
+        }
+        else {
+          builder.append(text);
+        }
+        builder.append("\"");
+        return builder.toString();
+      }
+      else {
+        return INVALID_STRING_VALUE;
+      }
+    }
+    return "";
+  }
+
+  @Override
+  public int getHeapId() {
+    HprofHeapDump heapDump = getHeapDump();
+    return heapDump.getHeapId(heapDump.getHeap(myInstance));
+  }
+
+  @NotNull
+  @Override
+  public ClassDb.ClassEntry getClassEntry() {
+    return myClassEntry;
+  }
+
+  @Nullable
+  @Override
+  public InstanceObject getClassObject() {
+    return myClassInstanceObject;
+  }
+
+  @Override
+  public int getDepth() {
+    return getGraph().getDepth(myInstance);
+  }
+
+  @Override
+  public long getNativeSize() {
+    return 0;
+  }
+
+  @Override
+  public int getShallowSize() {
+    return getHeapDump().getShallowSize(myInstance);
+  }
+
+  @Override
+  public long getRetainedSize() {
+    return myCaptureObject.getMappedRetainedSize(myInstance);
+  }
+
+  @Override
+  public int getFieldCount() {
+    return getHeapDump().getFieldCount(myInstance);
+  }
+
+  @NotNull
+  @Override
+  public List<FieldObject> getFields() {
+    HprofHeapDump heapDump = getHeapDump();
+    List<HprofHeapDump.Field> values =
+      myValueType == ARRAY ? heapDump.getArrayElements(myInstance) : heapDump.getFields(myInstance);
+    List<FieldObject> fields = new ArrayList<>(values.size());
+    for (HprofHeapDump.Field field : values) {
+      fields.add(new MappedHeapDumpFieldObject(myCaptureObject, myInstance, field));
+    }
+    return fields;
+  }
+
+  @Nullable
+  @Override
+  public ArrayObject getArrayObject() {
+    HprofHeapDump heapDump = getHeapDump();
+    HprofHeapDump.Type arrayType = heapDump.getArrayType(myInstance);
+    if (arrayType == null) {
+      return null;
+    }
+
+    return new ArrayObject() {
+      @NotNull
+      @Override
+      public ValueType getArrayElementType() {
+        return VALUE_TYPE_MAP.get(arrayType);
+      }
+
+      @Nullable
+      @Override
+      public byte[] getAsByteArray() {
+        return arrayType == HprofHeapDump.Type.BYTE ? heapDump.getArrayBytes(myInstance) : null;
+      }
+
+      @Nullable
+      @Override
+      public char[] getAsCharArray() {
+        return heapDump.getArrayChars(myInstance, Integer.MAX_VALUE);
+      }
+
+      @NotNull
+      @Override
+      public Object[] getAsArray() {
+        Object[] values = heapDump.getArrayValues(myInstance);
+        if (arrayType == HprofHeapDump.Type.OBJECT) {
+          for (int i = 0; i < values.length; i++) {
+            values[i] = myCaptureObject.findInstanceObject((Integer)values[i]);
+          }
+        }
+        return values;
+      }
+
+      @Override
+      public int getArrayLength() {
+        return heapDump.getArrayLength(myInstance);
+      }
+    };
+  }
+
+  @Override
+  @NotNull
+  public ValueType getValueType() {
+    return myValueType;
+  }
+
+  /**
+   * Instance objects are created on demand and may be created again for the same instance, see
+   * {@link HeapDumpCaptureObject#findInstanceObject(int)}.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof MappedHeapDumpInstanceObject)) {
+      return false;
+    }
+    MappedHeapDumpInstanceObject other = (MappedHeapDumpInstanceObject)obj;
+    return myCaptureObject == other.myCaptureObject && myInstance == other.myInstance;
+  }
+
+  @Override
+  public int hashCode() {
+    return myInstance;
+  }
+
+  @NotNull
+  @Override
+  public List<ReferenceObject> getReferences() {
+    HprofGraph graph = getGraph();
+    // Hard referrers first, then soft referrers, each sorted by depth.
+    List<ReferenceObject> referrers = new ArrayList<>();
+    addReferences(graph.getReferrers(myInstance), referrers);
+    addReferences(graph.getWeakReferrers(myInstance), referrers);
+    return referrers;
+  }
+
+  private void addReferences(@NotNull int[] referrers, @NotNull List<ReferenceObject> references) {
+    HprofHeapDump heapDump = getHeapDump();
+    HprofGraph graph = getGraph();
+    List<Integer> order = new ArrayList<>(referrers.length);
+    for (int referrer : referrers) {
+      order.add(referrer);
+    }
+    order.sort(Comparator.comparingInt(graph::getDepth));
+
+    for (int referrer : order) {
+      // Note that each instance can have multiple references to the same object.
+      List<String> referencingFieldNames = new ArrayList<>(3);
+      List<HprofHeapDump.Field> fields = heapDump.getKind(referrer) == HprofHeapDump.Kind.OBJECT_ARRAY
+                                         ? heapDump.getArrayElements(referrer)
+                                         : heapDump.getFields(referrer);
+      for (HprofHeapDump.Field field : fields) {
+        if (field.getInstance() == myInstance) {
+          referencingFieldNames.add(field.getName());
+        }
+      }
+      InstanceObject referencingInstance = myCaptureObject.findInstanceObject(referrer);
+      assert referencingInstance != null;
+      references.add(new ReferenceObject(referencingFieldNames, referencingInstance));
+    }
+  }
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import com.android.tools.profilers.CaptureParallelism;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump.NO_INSTANCE;
+
+/**
+ * The reference graph of a {@link HprofHeapDump}, in compressed sparse row form (an array of offsets into an array of targets, per
+ * direction), with the distance of each instance to the GC roots. Building the graph, the traversal from the roots and the dominators
+ * run on {@link CaptureParallelism}'s pool. Dominators and retained sizes are computed by {@link #computeDominators()}, or on first
+ * access.
+ * All the arrays are allocated in the heap dump's {@link ScratchFile}.
+ * <p>
+ * Like perflib, weak references (the referent of {@link java.lang.ref.Reference} instances) are not part of the graph: they don't
+ * retain anything and are only reported as "soft" referrers.
+ */
+public final class HprofGraph {
+  public static final int UNREACHABLE_DEPTH = Integer.MAX_VALUE;
+
+  /**
+   * Number of instances, or of nodes of a level of the traversal, processed by each parallel task.
+   */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @NotNull private final HprofHeapDump myHeapDump;
+  private final int myInstanceCount;
+
+  /**
+   * Strong references, including the ones from a virtual root (the node at index {@link #myInstanceCount}) to the GC roots.
+   */
+  @NotNull private final IntBuffer myOutOffsets;
+  @NotNull private final IntBuffer myOutTargets;
+  @NotNull private final IntBuffer myInOffsets;
+  @NotNull private final IntBuffer myInTargets;
+  @NotNull private final IntBuffer myWeakInOffsets;
+  @NotNull private final IntBuffer myWeakInTargets;
+  @NotNull private final IntBuffer myDepths;
+
+  @Nullable private volatile Dominators myDominators;
+  private volatile boolean myIsCancelled;
+
+  private HprofGraph(@NotNull HprofHeapDump heapDump, @NotNull IntBuffer outOffsets, @NotNull IntBuffer outTargets,
+                     @NotNull IntBuffer inOffsets, @NotNull IntBuffer inTargets,
+                     @NotNull IntBuffer weakInOffsets, @NotNull IntBuffer weakInTargets, @NotNull IntBuffer depths) {
+    myHeapDump = heapDump;
+    myInstanceCount = heapDump.getInstanceCount();
+    myOutOffsets = outOffsets;
+    myOutTargets = outTargets;
+    myInOffsets = inOffsets;
+    myInTargets = inTargets;
+    myWeakInOffsets = weakInOffsets;
+    myWeakInTargets = weakInTargets;
+    myDepths = depths;
+  }
+
+  @NotNull
+  static HprofGraph build(@NotNull HprofHeapDump heapDump) throws IOException {
+    ScratchFile scratch = heapDump.getScratchFile();
+    int instanceCount = heapDump.getInstanceCount();
+    int nodeCount = instanceCount + 1;
+    int[] roots = heapDump.getRoots();
+    List<Integer> chunks = chunks(instanceCount);
+
+    // Count the references of each instance, then fill them in. Reading the references is what's expensive (each one is a lookup in the
+    // id table), so both passes run in parallel on ranges of instances, which write to disjoint parts of the buffers.
+    IntBuffer outOffsets = scratch.allocateInts(nodeCount + 1);
+    IntBuffer referents = scratch.allocateInts(instanceCount);
+    List<Long> chunkEdgeCounts = CaptureParallelism.map(chunks, start -> {
+      int[] count = new int[1];
+      long chunkEdgeCount = 0;
+      for (int i = start, end = Math.min(instanceCount, start + CHUNK_SIZE); i < end; i++) {
+        count[0] = 0;
+        heapDump.forEachReference(i, target -> count[0]++);
+        outOffsets.put(i + 1, count[0]);
+        chunkEdgeCount += count[0];
+        referents.put(i, heapDump.getReferent(i));
+      }
+      return chunkEdgeCount;
+    });
+    long edgeCount = roots.length;
+    for (long chunkEdgeCount : chunkEdgeCounts) {
+      edgeCount += chunkEdgeCount;
+    }
+    outOffsets.put(instanceCount + 1, roots.length);
+
+    IntBuffer weakInOffsets = scratch.allocateInts(nodeCount + 1);
+    long weakEdgeCount = 0;
+    for (int i = 0; i < instanceCount; i++) {
+      int referent = referents.get(i);
+      if (referent != NO_INSTANCE) {
+        weakInOffsets.put(referent + 1, weakInOffsets.get(referent + 1) + 1);
+        weakEdgeCount++;
+      }
+    }
+    if (edgeCount > Integer.MAX_VALUE || weakEdgeCount > Integer.MAX_VALUE) {
+      throw new IOException("Heap dump too large: " + edgeCount + " references.");
+    }
+    toOffsets(outOffsets);
+    toOffsets(weakInOffsets);
+
+    IntBuffer outTargets = scratch.allocateInts((int)edgeCount);
+    CaptureParallelism.forEach(chunks, start -> {
+      for (int i = start, end = Math.min(instanceCount, start + CHUNK_SIZE); i < end; i++) {
+        int[] position = {outOffsets.get(i)};
+        heapDump.forEachReference(i, target -> outTargets.put(position[0]++, target));
+      }
+    });
+    for (int i = 0; i < roots.length; i++) {
+      outTargets.put(outOffsets.get(instanceCount) + i, roots[i]);
+    }
+    IntBuffer weakInTargets = scratch.allocateInts((int)weakEdgeCount);
+    IntBuffer weakFilled = scratch.allocateInts(nodeCount);
+    for (int i = 0; i < instanceCount; i++) {
+      int referent = referents.get(i);
+      if (referent != NO_INSTANCE) {
+        int filled = weakFilled.get(referent);
+        weakInTargets.put(weakInOffsets.get(referent) + filled, i);
+        weakFilled.put(referent, filled + 1);
+      }
+    }
+
+    // Transpose the strong references. This only reads and writes the buffers, sequentially, which is cheap compared to the above.
+    IntBuffer inOffsets = scratch.allocateInts(nodeCount + 1);
+    for (int i = 0; i < edgeCount; i++) {
+      int target = outTargets.get(i);
+      inOffsets.put(target + 1, inOffsets.get(target + 1) + 1);
+    }
+    toOffsets(inOffsets);
+    IntBuffer inTargets = scratch.allocateInts((int)edgeCount);
+    IntBuffer inFilled = scratch.allocateInts(nodeCount);
+    for (int source = 0; source < nodeCount; source++) {
+      for (int e = outOffsets.get(source), end = outOffsets.get(source + 1); e < end; e++) {
+        int target = outTargets.get(e);
+        int filled = inFilled.get(target);
+        inTargets.put(inOffsets.get(target) + filled, source);
+        inFilled.put(target, filled + 1);
+      }
+    }
+
+    IntBuffer depths = computeDepths(scratch, outOffsets, outTargets, roots, instanceCount);
+    return new HprofGraph(heapDump, outOffsets, outTargets, inOffsets, inTargets, weakInOffsets, weakInTargets, depths);
+  }
+
+  /**
+   * Level by level breadth first traversal from the GC roots, which are at depth 0. The edges leaving a large level are scanned in
+   * parallel, the newly reached instances are then claimed sequentially so each one is queued once.
+   */
+  @NotNull
+  private static IntBuffer computeDepths(@NotNull ScratchFile scratch, @NotNull IntBuffer outOffsets, @NotNull IntBuffer outTargets,
+                                         @NotNull int[] roots, int instanceCount) throws IOException {
+    IntBuffer depths = scratch.allocateInts(instanceCount);
+    for (int i = 0; i < instanceCount; i++) {
+      depths.put(i, UNREACHABLE_DEPTH);
+    }
+    IntBuffer queue = scratch.allocateInts(instanceCount);
+    int tail = 0;
+    for (int root : roots) {
+      depths.put(root, 0);
+      queue.put(tail++, root);
+    }
+    for (int levelStart = 0, depth = 1; levelStart < tail; depth++) {
+      int levelEnd = tail;
+      if (levelEnd - levelStart < CHUNK_SIZE) {
+        for (int head = levelStart; head < levelEnd; head++) {
+          int node = queue.get(head);
+          for (int e = outOffsets.get(node), end = outOffsets.get(node + 1); e < end; e++) {
+            int target = outTargets.get(e);
+            if (depths.get(target) == UNREACHABLE_DEPTH) {
+              depths.put(target, depth);
+              queue.put(tail++, target);
+            }
+          }
+        }
+      }
+      else {
+        List<Integer> levelChunks = new ArrayList<>();
+        for (int start = levelStart; start < levelEnd; start += CHUNK_SIZE) {
+          levelChunks.add(start);
+        }
+        // Candidates may contain duplicates, depths are only read here.
+        List<TIntArrayList> candidates = CaptureParallelism.map(levelChunks, start -> {
+          TIntArrayList reached = new TIntArrayList();
+          for (int head = start, end = Math.min(levelEnd, start + CHUNK_SIZE); head < end; head++) {
+            int node = queue.get(head);
+            for (int e = outOffsets.get(node), edgeEnd = outOffsets.get(node + 1); e < edgeEnd; e++) {
+              int target = outTargets.get(e);
+              if (depths.get(target) == UNREACHABLE_DEPTH) {
+                reached.add(target);
+              }
+            }
+          }
+          return reached;
+        });
+        for (TIntArrayList reached : candidates) {
+          for (int i = 0; i < reached.size(); i++) {
+            int target = reached.get(i);
+            if (depths.get(target) == UNREACHABLE_DEPTH) {
+              depths.put(target, depth);
+              queue.put(tail++, target);
+            }
+          }
+        }
+      }
+      levelStart = levelEnd;
+    }
+    return depths;
+  }
+
+  /**
+   * @return the first index of each range of {@link #CHUNK_SIZE} instances processed by a single task.
+   */
+  @NotNull
+  private static List<Integer> chunks(int instanceCount) {
+    List<Integer> chunks = new ArrayList<>(instanceCount / CHUNK_SIZE + 1);
+    for (int start = 0; start < instanceCount; start += CHUNK_SIZE) {
+      chunks.add(start);
+    }
+    return chunks;
+  }
+
+  /**
+   * Turns per-node counts, stored at index + 1, into offsets.
+   */
+  private static void toOffsets(@NotNull IntBuffer offsets) {
+    for (int i = 1; i < offsets.limit(); i++) {
+      offsets.put(i, offsets.get(i) + offsets.get(i - 1));
+    }
+  }
+
+  /**
+   * @return the number of strong references from GC roots to the instance, 0 for roots, {@link #UNREACHABLE_DEPTH} if unreachable.
+   */
+  public int getDepth(int instance) {
+    return myDepths.get(instance);
+  }
+
+  /**
+   * @return the instances holding a strong reference to the given one, once each, in index order.
+   */
+  @NotNull
+  public int[] getReferrers(int instance) {
+    int start = myInOffsets.get(instance);
+    int end = myInOffsets.get(instance + 1);
+    int[] referrers = new int[end - start];
+    int count = 0;
+    // Sources were added in increasing order, so multiple references from the same instance are adjacent.
+    for (int e = start; e < end; e++) {
+      int source = myInTargets.get(e);
+      if (source != myInstanceCount && (count == 0 || referrers[count - 1] != source)) {
+        referrers[count++] = source;
+      }
+    }
+    return count == referrers.length ? referrers : Arrays.copyOf(referrers, count);
+  }
+
+  /**
+   * @return the {@link java.lang.ref.Reference} instances whose referent is the given instance.
+   */
+  @NotNull
+  public int[] getWeakReferrers(int instance) {
+    int start = myWeakInOffsets.get(instance);
+    int[] referrers = new int[myWeakInOffsets.get(instance + 1) - start];
+    for (int i = 0; i < referrers.length; i++) {
+      referrers[i] = myWeakInTargets.get(start + i);
+    }
+    return referrers;
+  }
+
+  /**
+   * @return the immediate dominator of the instance, {@link HprofHeapDump#NO_INSTANCE} for GC roots and unreachable instances.
+   */
+  public int getImmediateDominator(int instance) {
+    int dominator = getDominators().myIdoms.get(instance);
+    return dominator == myInstanceCount ? NO_INSTANCE : dominator;
+  }
+
+  /**
+   * @return the size of the instances only reachable through the given one, itself included. 0 for unreachable instances.
+   */
+  public long getRetainedSize(int instance) {
+    return getDominators().myRetainedSizes.get(instance);
+  }
+
+  /**
+   * @return whether the dominators were computed, i.e. whether {@link #getImmediateDominator} and {@link #getRetainedSize} return
+   * without blocking.
+   */
+  public boolean hasDominators() {
+    return myDominators != null;
+  }
+
+  /**
+   * Computes the dominators and retained sizes if not done yet, e.g. in the background before they are first needed.
+   *
+   * @throws CancellationException if {@link #cancelDominators()} was called.
+   */
+  public void computeDominators() throws IOException {
+    if (myDominators == null) {
+      synchronized (this) {
+        if (myDominators == null) {
+          myDominators = buildDominators();
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes the computation of the dominators stop, e.g. before closing the dump. It can't be restarted.
+   */
+  public void cancelDominators() {
+    myIsCancelled = true;
+  }
+
+  @NotNull
+  private Dominators getDominators() {
+    Dominators dominators = myDominators;
+    if (dominators == null) {
+      try {
+        computeDominators();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      dominators = myDominators;
+      assert dominators != null;
+    }
+    return dominators;
+  }
+
+  private static final class Dominators {
+    @NotNull private final IntBuffer myIdoms;
+    @NotNull private final LongBuffer myRetainedSizes;
+
+    private Dominators(@NotNull IntBuffer idoms, @NotNull LongBuffer retainedSizes) {
+      myIdoms = idoms;
+      myRetainedSizes = retainedSizes;
+    }
+  }
+
+  /**
+   * Iterative dominators (Cooper, Harvey and Kennedy) over the breadth first order of the traversal from the roots, in rounds which run in
+   * parallel on chunks of instances. Starting from the breadth first tree, each round replaces the dominator of every instance by the
+   * nearest common ancestor of that dominator and of the instance's referrers, until a round changes nothing. The ancestors only ever
+   * move up towards the dominator, so a chunk reading the dominators another one is updating sees either their previous or their next
+   * value, which are both correct approximations.
+   * <p>
+   * Dominators come before the instances they dominate in breadth first order, which is the order in which the retained sizes are then
+   * accumulated, in reverse.
+   */
+  @NotNull
+  private Dominators buildDominators() throws IOException {
+    checkCancelled();
+    ScratchFile scratch = myHeapDump.getScratchFile();
+    int nodeCount = myInstanceCount + 1;
+    int root = myInstanceCount;
+
+    // Number the reachable instances by depth, after the virtual root, with a counting sort.
+    int maxDepth = -1;
+    for (int i = 0; i < myInstanceCount; i++) {
+      int depth = myDepths.get(i);
+      if (depth != UNREACHABLE_DEPTH) {
+        maxDepth = Math.max(maxDepth, depth);
+      }
+    }
+    int[] depthStarts = new int[maxDepth + 2];
+    depthStarts[0] = 1;
+    for (int i = 0; i < myInstanceCount; i++) {
+      int depth = myDepths.get(i);
+      if (depth != UNREACHABLE_DEPTH) {
+        depthStarts[depth + 1]++;
+      }
+    }
+    for (int depth = 1; depth < depthStarts.length; depth++) {
+      depthStarts[depth] += depthStarts[depth - 1];
+    }
+    int visited = depthStarts[depthStarts.length - 1];
+    IntBuffer order = scratch.allocateInts(nodeCount);
+    IntBuffer vertex = scratch.allocateInts(nodeCount);
+    IntBuffer idoms = scratch.allocateInts(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      order.put(i, -1);
+      idoms.put(i, NO_INSTANCE);
+    }
+    order.put(root, 0);
+    vertex.put(0, root);
+    for (int i = 0; i < myInstanceCount; i++) {
+      int depth = myDepths.get(i);
+      if (depth != UNREACHABLE_DEPTH) {
+        int position = depthStarts[depth]++;
+        order.put(i, position);
+        vertex.put(position, i);
+      }
+    }
+    List<Integer> chunks = new ArrayList<>(visited / CHUNK_SIZE + 1);
+    for (int start = 1; start < visited; start += CHUNK_SIZE) {
+      chunks.add(start);
+    }
+
+    // The breadth first tree: any referrer one level closer to the roots.
+    CaptureParallelism.forEach(chunks, start -> {
+      checkCancelled();
+      for (int i = start, end = Math.min(visited, start + CHUNK_SIZE); i < end; i++) {
+        int w = vertex.get(i);
+        int depth = myDepths.get(w);
+        int parent = root;
+        for (int e = myInOffsets.get(w), edgeEnd = myInOffsets.get(w + 1); depth > 0 && e < edgeEnd; e++) {
+          int v = myInTargets.get(e);
+          if (v != root && myDepths.get(v) == depth - 1) {
+            parent = v;
+            break;
+          }
+        }
+        idoms.put(w, parent);
+      }
+    });
+
+    for (boolean changed = true; changed; ) {
+      List<Boolean> chunkChanges = CaptureParallelism.map(chunks, start -> {
+        checkCancelled();
+        boolean chunkChanged = false;
+        for (int i = start, end = Math.min(visited, start + CHUNK_SIZE); i < end; i++) {
+          int w = vertex.get(i);
+          int idom = idoms.get(w);
+          int dominator = idom;
+          for (int e = myInOffsets.get(w), edgeEnd = myInOffsets.get(w + 1); dominator != root && e < edgeEnd; e++) {
+            int v = myInTargets.get(e);
+            if (order.get(v) >= 0) {
+              dominator = intersect(dominator, v, idoms, order);
+            }
+          }
+          if (dominator != idom) {
+            idoms.put(w, dominator);
+            chunkChanged = true;
+          }
+        }
+        return chunkChanged;
+      });
+      changed = chunkChanges.contains(true);
+    }
+
+    LongBuffer retainedSizes = scratch.allocateLongs(nodeCount);
+    CaptureParallelism.forEach(chunks, start -> {
+      checkCancelled();
+      for (int i = start, end = Math.min(visited, start + CHUNK_SIZE); i < end; i++) {
+        int w = vertex.get(i);
+        retainedSizes.put(w, myHeapDump.getShallowSize(w));
+      }
+    });
+    for (int i = visited - 1; i > 0; i--) {
+      if (i % CHUNK_SIZE == 0) {
+        checkCancelled();
+      }
+      int w = vertex.get(i);
+      int idom = idoms.get(w);
+      retainedSizes.put(idom, retainedSizes.get(idom) + retainedSizes.get(w));
+    }
+    return new Dominators(idoms, retainedSizes);
+  }
+
+  /**
+   * Checks for cancellation once per chunk of the loops of {@link #buildDominators()}.
+   */
+  private void checkCancelled() {
+    if (myIsCancelled) {
+      throw new CancellationException();
+    }
+  }
+
+  /**
+   * @return the nearest common ancestor of {@code a} and {@code b} in the tree of the current dominators.
+   */
+  private static int intersect(int a, int b, @NotNull IntBuffer idoms, @NotNull IntBuffer order) {
+    while (a != b) {
+      while (order.get(a) > order.get(b)) {
+        a = idoms.get(a);
+      }
+      while (order.get(b) > order.get(a)) {
+        b = idoms.get(b);
+      }
+    }
+    return a;
+  }
+}
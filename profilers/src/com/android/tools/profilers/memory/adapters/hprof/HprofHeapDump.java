@@ -0,0 +1,1428 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongLongHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of an HPROF heap dump file which, unlike perflib's {@code Snapshot}, doesn't create an object per instance: the file is
+ * memory-mapped and the instances are described by primitive columns (id, class, heap, size and file offset) allocated in a
+ * {@link ScratchFile}, so dumps larger than the Java heap can be browsed. Field values are decoded from the file on demand, and the
+ * reference graph, dominators and retained sizes are only computed when first needed (see {@link HprofGraph}).
+ * <p>
+ * Instances, including class objects, are identified by their index in [0, {@link #getInstanceCount()}), in file order. Classes are
+ * identified by their index in [0, {@link #getClassCount()}).
+ */
+public final class HprofHeapDump implements Closeable {
+  public static final int NO_INSTANCE = -1;
+  public static final int NO_CLASS = -1;
+
+  /**
+   * Name of the heap of the instances dumped before any heap info record.
+   */
+  public static final String DEFAULT_HEAP_NAME = "default";
+
+  private static final String JAVA_LANG_CLASS = "java.lang.Class";
+  private static final String JAVA_LANG_STRING = "java.lang.String";
+  private static final String JAVA_LANG_OBJECT_ARRAY = "java.lang.Object[]";
+  private static final String JAVA_LANG_REF_REFERENCE = "java.lang.ref.Reference";
+  private static final String REFERENT_FIELD = "referent";
+
+  // Top level record tags.
+  private static final int TAG_STRING = 0x01;
+  private static final int TAG_LOAD_CLASS = 0x02;
+  private static final int TAG_HEAP_DUMP = 0x0C;
+  private static final int TAG_HEAP_DUMP_SEGMENT = 0x1C;
+  private static final int RECORD_HEADER_SIZE = 9;
+
+  // Heap dump sub-record tags.
+  private static final int ROOT_UNKNOWN = 0xFF;
+  private static final int ROOT_JNI_GLOBAL = 0x01;
+  private static final int ROOT_JNI_LOCAL = 0x02;
+  private static final int ROOT_JAVA_FRAME = 0x03;
+  private static final int ROOT_NATIVE_STACK = 0x04;
+  private static final int ROOT_STICKY_CLASS = 0x05;
+  private static final int ROOT_THREAD_BLOCK = 0x06;
+  private static final int ROOT_MONITOR_USED = 0x07;
+  private static final int ROOT_THREAD_OBJECT = 0x08;
+  private static final int ROOT_INTERNED_STRING = 0x89;
+  private static final int ROOT_FINALIZING = 0x8A;
+  private static final int ROOT_DEBUGGER = 0x8B;
+  private static final int ROOT_REFERENCE_CLEANUP = 0x8C;
+  private static final int ROOT_VM_INTERNAL = 0x8D;
+  private static final int ROOT_JNI_MONITOR = 0x8E;
+  private static final int ROOT_UNREACHABLE = 0x90;
+  private static final int HEAP_DUMP_INFO = 0xFE;
+  private static final int CLASS_DUMP = 0x20;
+  private static final int INSTANCE_DUMP = 0x21;
+  private static final int OBJECT_ARRAY_DUMP = 0x22;
+  private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+  private static final int PRIMITIVE_ARRAY_NODATA = 0xC3;
+
+  /**
+   * Version of the files written by {@link #writeIndex(File)}. Indexes of another version are not read.
+   */
+  private static final int INDEX_FORMAT_VERSION = 1;
+
+  private static final int ROOT_FLAG = 0x80;
+  private static final int KIND_MASK = 0x7F;
+
+  public enum Type {
+    OBJECT(2, 0, "Object"),
+    BOOLEAN(4, 1, "boolean"),
+    CHAR(5, 2, "char"),
+    FLOAT(6, 4, "float"),
+    DOUBLE(7, 8, "double"),
+    BYTE(8, 1, "byte"),
+    SHORT(9, 2, "short"),
+    INT(10, 4, "int"),
+    LONG(11, 8, "long");
+
+    private final int myCode;
+    private final int mySize;
+    @NotNull private final String myName;
+
+    Type(int code, int size, @NotNull String name) {
+      myCode = code;
+      mySize = size;
+      myName = name;
+    }
+
+    /**
+     * @return the basic type code of the HPROF format.
+     */
+    public int getCode() {
+      return myCode;
+    }
+
+    /**
+     * @return the size of a value of this type. 0 for {@link #OBJECT}, whose size is the identifier size of the dump.
+     */
+    public int getSize() {
+      return mySize;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    private static final Type[] BY_CODE = new Type[LONG.myCode + 1];
+
+    static {
+      for (Type type : values()) {
+        BY_CODE[type.myCode] = type;
+      }
+    }
+
+    @NotNull
+    static Type fromCode(int code) throws IOException {
+      Type type = code < BY_CODE.length ? BY_CODE[code] : null;
+      if (type == null) {
+        throw new IOException("Unknown value type: " + code);
+      }
+      return type;
+    }
+  }
+
+  public enum Kind {
+    CLASS,
+    INSTANCE,
+    OBJECT_ARRAY,
+    PRIMITIVE_ARRAY;
+
+    private static final Kind[] VALUES = values();
+  }
+
+  /**
+   * A field, static or not, and its value. Values of reference fields are instance indices, or {@link #NO_INSTANCE} for null (or
+   * references to instances missing from the dump); other values are boxed primitives.
+   */
+  public static final class Field {
+    @NotNull private final String myName;
+    @NotNull private final Type myType;
+    @NotNull private final Object myValue;
+
+    Field(@NotNull String name, @NotNull Type type, @NotNull Object value) {
+      myName = name;
+      myType = type;
+      myValue = value;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    @NotNull
+    public Type getType() {
+      return myType;
+    }
+
+    @NotNull
+    public Object getValue() {
+      return myValue;
+    }
+
+    /**
+     * @return the index of the referenced instance, or {@link #NO_INSTANCE} for null and primitive fields.
+     */
+    public int getInstance() {
+      return myType == Type.OBJECT ? (Integer)myValue : NO_INSTANCE;
+    }
+  }
+
+  private static final class Heap {
+    private final int myId;
+    @NotNull private final String myName;
+
+    private Heap(int id, @NotNull String name) {
+      myId = id;
+      myName = name;
+    }
+  }
+
+  private static final class ClassInfo {
+    private final long myId;
+    @NotNull private final String myName;
+    private final long mySuperId;
+    private final long myLoaderId;
+    private final int myInstanceSize;
+    private final long myPosition;
+    @NotNull private final String[] myFieldNames;
+    @NotNull private final Type[] myFieldTypes;
+    @NotNull private final String[] myStaticNames;
+    @NotNull private final Type[] myStaticTypes;
+    @NotNull private final long[] myStaticPositions;
+    private int mySuperIndex = NO_CLASS;
+    /**
+     * Offsets, in the instance data, of the reference fields of this class and its super classes, excluding weak references.
+     */
+    @NotNull private int[] myReferenceOffsets = new int[0];
+    /**
+     * Offset, in the instance data, of the referent of {@link java.lang.ref.Reference} instances, -1 for other classes.
+     */
+    private int myReferentOffset = -1;
+
+    private ClassInfo(long id, @NotNull String name, long superId, long loaderId, int instanceSize, long position,
+                      @NotNull String[] fieldNames, @NotNull Type[] fieldTypes,
+                      @NotNull String[] staticNames, @NotNull Type[] staticTypes, @NotNull long[] staticPositions) {
+      myId = id;
+      myName = name;
+      mySuperId = superId;
+      myLoaderId = loaderId;
+      myInstanceSize = instanceSize;
+      myPosition = position;
+      myFieldNames = fieldNames;
+      myFieldTypes = fieldTypes;
+      myStaticNames = staticNames;
+      myStaticTypes = staticTypes;
+      myStaticPositions = staticPositions;
+    }
+
+    /**
+     * A class of which the dump contains instances, but no class object, e.g. primitive arrays in some dumps.
+     */
+    private static ClassInfo synthetic(@NotNull String name) {
+      return new ClassInfo(0, name, 0, 0, 0, -1, new String[0], new Type[0], new String[0], new Type[0], new long[0]);
+    }
+  }
+
+  @NotNull private final MappedHprofFile myFile;
+  @NotNull private final ScratchFile myScratchFile;
+  private int myIdSize;
+  private long myRecordsPosition;
+
+  /**
+   * Positions of the string records' content, by string id. Strings are only decoded when needed.
+   */
+  @NotNull private final TLongLongHashMap myStringPositions = new TLongLongHashMap();
+  @NotNull private final TLongLongHashMap myClassNameIds = new TLongLongHashMap();
+  @NotNull private final List<Heap> myHeaps = new ArrayList<>();
+  @NotNull private final List<ClassInfo> myClasses = new ArrayList<>();
+  @NotNull private final TLongIntHashMap myClassIndices = new TLongIntHashMap();
+  @NotNull private final TObjectIntHashMap<String> myClassIndicesByName = new TObjectIntHashMap<>();
+  @NotNull private final TLongArrayList myRootIds = new TLongArrayList();
+
+  private int myInstanceCount;
+  private LongBuffer myIds;
+  private LongBuffer myPositions;
+  private IntBuffer myClassColumn;
+  private IntBuffer myShallowSizes;
+  private ByteBuffer myKinds;
+  private ByteBuffer myHeapColumn;
+  /**
+   * Open addressing hash table from instance id to instance index. Ids are never 0, which marks empty slots.
+   */
+  private LongBuffer myHashIds;
+  private IntBuffer myHashIndices;
+  private int myHashMask;
+  /**
+   * Instance indices ordered by class, the instances of class {@code c} being at {@code [myClassInstanceOffsets[c],
+   * myClassInstanceOffsets[c + 1])}.
+   */
+  private IntBuffer myInstancesByClass;
+  @NotNull private int[] myClassInstanceOffsets = new int[1];
+  @NotNull private int[] myRoots = new int[0];
+
+  @Nullable private volatile HprofGraph myGraph;
+
+  private HprofHeapDump(@NotNull File file) throws IOException {
+    myFile = new MappedHprofFile(file);
+    myScratchFile = new ScratchFile("hprof_index");
+    myHeaps.add(new Heap(0, DEFAULT_HEAP_NAME));
+  }
+
+  /**
+   * Indexes the given HPROF file, which must not be modified or deleted until this heap dump is closed.
+   */
+  @NotNull
+  public static HprofHeapDump open(@NotNull File file) throws IOException {
+    HprofHeapDump heapDump = new HprofHeapDump(file);
+    try {
+      heapDump.index();
+      return heapDump;
+    }
+    catch (IOException | RuntimeException e) {
+      heapDump.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Same as {@link #open(File)}, but reads the index written by {@link #writeIndex(File)} when the file was opened before instead of
+   * indexing the file again.
+   */
+  @NotNull
+  public static HprofHeapDump open(@NotNull File file, @NotNull File index) throws IOException {
+    HprofHeapDump heapDump = new HprofHeapDump(file);
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+      heapDump.readIndex(in);
+      return heapDump;
+    }
+    catch (IOException | RuntimeException e) {
+      heapDump.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the index of the file, to be read by {@link #open(File, File)}. The graph is not included.
+   */
+  public void writeIndex(@NotNull File index) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index)))) {
+      out.writeInt(INDEX_FORMAT_VERSION);
+      out.writeLong(myFile.size());
+      out.writeInt(myIdSize);
+      out.writeLong(myRecordsPosition);
+      writeMap(myStringPositions, out);
+      writeMap(myClassNameIds, out);
+
+      out.writeInt(myHeaps.size());
+      for (Heap heap : myHeaps) {
+        out.writeInt(heap.myId);
+        out.writeUTF(heap.myName);
+      }
+      out.writeInt(myClasses.size());
+      for (ClassInfo info : myClasses) {
+        writeClass(info, out);
+      }
+      long[] classIds = myClassIndices.keys();
+      out.writeInt(classIds.length);
+      for (long id : classIds) {
+        out.writeLong(id);
+        out.writeInt(myClassIndices.get(id));
+      }
+      Object[] classNames = myClassIndicesByName.keys();
+      out.writeInt(classNames.length);
+      for (Object name : classNames) {
+        out.writeUTF((String)name);
+        out.writeInt(myClassIndicesByName.get((String)name));
+      }
+      writeInts(myRoots, out);
+      writeInts(myClassInstanceOffsets, out);
+
+      // The hash table is rebuilt from the ids, which is faster than reading it.
+      out.writeInt(myInstanceCount);
+      for (int instance = 0; instance < myInstanceCount; instance++) {
+        out.writeLong(myIds.get(instance));
+        out.writeLong(myPositions.get(instance));
+        out.writeInt(myClassColumn.get(instance));
+        out.writeInt(myShallowSizes.get(instance));
+        out.writeByte(myKinds.get(instance));
+        out.writeByte(myHeapColumn.get(instance));
+        out.writeInt(myInstancesByClass.get(instance));
+      }
+    }
+  }
+
+  /**
+   * Unmaps the HPROF file and deletes the index. Nothing may read from the heap dump, or from its graph, afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      myFile.close();
+    }
+    finally {
+      myScratchFile.close();
+    }
+  }
+
+  int getIdSize() {
+    return myIdSize;
+  }
+
+  @NotNull
+  ScratchFile getScratchFile() {
+    return myScratchFile;
+  }
+
+  public int getHeapCount() {
+    return myHeaps.size();
+  }
+
+  public int getHeapId(int heap) {
+    return myHeaps.get(heap).myId;
+  }
+
+  @NotNull
+  public String getHeapName(int heap) {
+    return myHeaps.get(heap).myName;
+  }
+
+  public int getClassCount() {
+    return myClasses.size();
+  }
+
+  @NotNull
+  public String getClassName(int classIndex) {
+    return myClasses.get(classIndex).myName;
+  }
+
+  public long getClassLoaderId(int classIndex) {
+    return myClasses.get(classIndex).myLoaderId;
+  }
+
+  public int getSuperClass(int classIndex) {
+    return myClasses.get(classIndex).mySuperIndex;
+  }
+
+  /**
+   * @return the instance index of the class object of the given class, {@link #NO_INSTANCE} if the dump has no class object for it.
+   */
+  public int getClassObject(int classIndex) {
+    ClassInfo info = myClasses.get(classIndex);
+    return info.myPosition < 0 ? NO_INSTANCE : findInstance(info.myId);
+  }
+
+  /**
+   * @return the class index of the given name, {@link #NO_CLASS} if there is no such class.
+   */
+  public int findClass(@NotNull String name) {
+    return myClassIndicesByName.containsKey(name) ? myClassIndicesByName.get(name) : NO_CLASS;
+  }
+
+  public int getInstanceCount() {
+    return myInstanceCount;
+  }
+
+  public int getInstanceCountOfClass(int classIndex) {
+    return myClassInstanceOffsets[classIndex + 1] - myClassInstanceOffsets[classIndex];
+  }
+
+  /**
+   * @return the i-th instance of the given class, in instance index order. Class objects are instances of java.lang.Class.
+   */
+  public int getInstanceOfClass(int classIndex, int i) {
+    assert i >= 0 && i < getInstanceCountOfClass(classIndex);
+    return myInstancesByClass.get(myClassInstanceOffsets[classIndex] + i);
+  }
+
+  /**
+   * @return the instance index of the given id, {@link #NO_INSTANCE} if the dump doesn't contain it.
+   */
+  public int findInstance(long id) {
+    if (id == 0) {
+      return NO_INSTANCE;
+    }
+    for (int slot = hash(id) & myHashMask; ; slot = (slot + 1) & myHashMask) {
+      long slotId = myHashIds.get(slot);
+      if (slotId == id) {
+        return myHashIndices.get(slot);
+      }
+      if (slotId == 0) {
+        return NO_INSTANCE;
+      }
+    }
+  }
+
+  public long getId(int instance) {
+    return myIds.get(instance);
+  }
+
+  @NotNull
+  public Kind getKind(int instance) {
+    return Kind.VALUES[myKinds.get(instance) & KIND_MASK];
+  }
+
+  /**
+   * @return the class of the instance, which is java.lang.Class for class objects.
+   */
+  public int getClass(int instance) {
+    return myClassColumn.get(instance);
+  }
+
+  /**
+   * @return for class objects, the class they describe, otherwise {@link #NO_CLASS}.
+   */
+  public int getDescribedClass(int instance) {
+    return getKind(instance) == Kind.CLASS ? myClassIndices.get(getId(instance)) : NO_CLASS;
+  }
+
+  public int getHeap(int instance) {
+    return myHeapColumn.get(instance);
+  }
+
+  public int getShallowSize(int instance) {
+    return myShallowSizes.get(instance);
+  }
+
+  public boolean isRoot(int instance) {
+    return (myKinds.get(instance) & ROOT_FLAG) != 0;
+  }
+
+  /**
+   * @return the GC roots, as instance indices, without duplicates.
+   */
+  @NotNull
+  int[] getRoots() {
+    return myRoots;
+  }
+
+  /**
+   * @return the reference graph of the dump, computed on first call.
+   */
+  @NotNull
+  public HprofGraph getGraph() throws IOException {
+    HprofGraph graph = myGraph;
+    if (graph == null) {
+      synchronized (this) {
+        graph = myGraph;
+        if (graph == null) {
+          graph = HprofGraph.build(this);
+          myGraph = graph;
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * @return the graph if {@link #getGraph()} was already called, otherwise null.
+   */
+  @Nullable
+  public HprofGraph getGraphIfBuilt() {
+    return myGraph;
+  }
+
+  /**
+   * @return the fields of an instance, including the inherited ones, or the static fields of a class object. Arrays have no fields.
+   */
+  @NotNull
+  public List<Field> getFields(int instance) {
+    switch (getKind(instance)) {
+      case INSTANCE: {
+        List<Field> fields = new ArrayList<>();
+        long position = getInstanceDataPosition(instance);
+        for (ClassInfo info = myClasses.get(getClass(instance)); info != null; info = superClass(info)) {
+          for (int i = 0; i < info.myFieldTypes.length; i++) {
+            Type type = info.myFieldTypes[i];
+            fields.add(new Field(info.myFieldNames[i], type, readValue(position, type)));
+            position += typeSize(type);
+          }
+        }
+        return fields;
+      }
+      case CLASS: {
+        ClassInfo info = myClasses.get(getDescribedClass(instance));
+        List<Field> fields = new ArrayList<>(info.myStaticTypes.length);
+        for (int i = 0; i < info.myStaticTypes.length; i++) {
+          fields.add(new Field(info.myStaticNames[i], info.myStaticTypes[i], readValue(info.myStaticPositions[i], info.myStaticTypes[i])));
+        }
+        return fields;
+      }
+      default:
+        return Collections.emptyList();
+    }
+  }
+
+  public int getFieldCount(int instance) {
+    switch (getKind(instance)) {
+      case INSTANCE: {
+        int count = 0;
+        for (ClassInfo info = myClasses.get(getClass(instance)); info != null; info = superClass(info)) {
+          count += info.myFieldTypes.length;
+        }
+        return count;
+      }
+      case CLASS:
+        return myClasses.get(getDescribedClass(instance)).myStaticTypes.length;
+      case OBJECT_ARRAY:
+      case PRIMITIVE_ARRAY:
+        return getArrayLength(instance);
+      default:
+        return 0;
+    }
+  }
+
+  public int getArrayLength(int instance) {
+    switch (getKind(instance)) {
+      case OBJECT_ARRAY:
+      case PRIMITIVE_ARRAY:
+        return myFile.getInt(myPositions.get(instance) + 1 + myIdSize + 4);
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return the element type of an array, null if the instance isn't an array.
+   */
+  @Nullable
+  public Type getArrayType(int instance) {
+    switch (getKind(instance)) {
+      case OBJECT_ARRAY:
+        return Type.OBJECT;
+      case PRIMITIVE_ARRAY:
+        try {
+          return Type.fromCode(myFile.getUnsignedByte(myPositions.get(instance) + 1 + myIdSize + 8));
+        }
+        catch (IOException e) {
+          throw new IllegalStateException(e); // Already validated while indexing.
+        }
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * @return the values of an array, boxed like {@link Field#getValue()}, or an empty array if the instance isn't an array or if the dump
+   * doesn't contain its data.
+   */
+  @NotNull
+  public Object[] getArrayValues(int instance) {
+    Type type = getArrayType(instance);
+    long position = getArrayDataPosition(instance);
+    if (type == null || position < 0) {
+      return new Object[0];
+    }
+    Object[] values = new Object[getArrayLength(instance)];
+    int size = typeSize(type);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = readValue(position + (long)i * size, type);
+    }
+    return values;
+  }
+
+  /**
+   * @return the elements of an array as fields named after their index, empty if the instance isn't an array.
+   */
+  @NotNull
+  public List<Field> getArrayElements(int instance) {
+    Type type = getArrayType(instance);
+    Object[] values = getArrayValues(instance);
+    List<Field> elements = new ArrayList<>(values.length);
+    for (int i = 0; i < values.length; i++) {
+      elements.add(new Field(Integer.toString(i), type, values[i]));
+    }
+    return elements;
+  }
+
+  /**
+   * @return the raw content of a primitive array, null if the instance isn't a primitive array with data.
+   */
+  @Nullable
+  public byte[] getArrayBytes(int instance) {
+    Type type = getArrayType(instance);
+    long position = getArrayDataPosition(instance);
+    if (type == null || type == Type.OBJECT || position < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[getArrayLength(instance) * type.getSize()];
+    myFile.getBytes(position, bytes, bytes.length);
+    return bytes;
+  }
+
+  @Nullable
+  public char[] getArrayChars(int instance, int maxLength) {
+    if (getArrayType(instance) != Type.CHAR || getArrayDataPosition(instance) < 0) {
+      return null;
+    }
+    long position = getArrayDataPosition(instance);
+    char[] chars = new char[Math.min(maxLength, getArrayLength(instance))];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = myFile.getChar(position + 2L * i);
+    }
+    return chars;
+  }
+
+  /**
+   * @return the value of a java.lang.String instance, truncated to {@code maxLength} characters, null if it cannot be decoded.
+   */
+  @Nullable
+  public String getStringValue(int instance, int maxLength) {
+    if (getKind(instance) != Kind.INSTANCE || !JAVA_LANG_STRING.equals(getClassName(getClass(instance)))) {
+      return null;
+    }
+    int valueArray = NO_INSTANCE;
+    int count = -1;
+    int offset = 0;
+    for (Field field : getFields(instance)) {
+      switch (field.getName()) {
+        case "value":
+          valueArray = field.getInstance();
+          break;
+        case "count":
+          count = field.getType() == Type.INT ? (Integer)field.getValue() : -1;
+          break;
+        case "offset":
+          offset = field.getType() == Type.INT ? (Integer)field.getValue() : 0;
+          break;
+      }
+    }
+    if (valueArray == NO_INSTANCE) {
+      return null;
+    }
+    Type type = getArrayType(valueArray);
+    long position = getArrayDataPosition(valueArray);
+    int arrayLength = getArrayLength(valueArray);
+    if (count < 0 || offset + count > arrayLength) {
+      count = arrayLength - offset;
+    }
+    if (position < 0 || offset < 0 || count < 0) {
+      return null;
+    }
+    int length = Math.min(count, maxLength);
+    if (type == Type.CHAR) {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = myFile.getChar(position + 2L * (offset + i));
+      }
+      return new String(chars);
+    }
+    if (type == Type.BYTE) {
+      // Compressed strings.
+      byte[] bytes = new byte[length];
+      myFile.getBytes(position + offset, bytes, length);
+      return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    return null;
+  }
+
+  /**
+   * Calls the consumer with the index of each instance strongly referenced by the given one, i.e. excluding references held by
+   * {@link java.lang.ref.Reference#referent} fields. References to instances missing from the dump are skipped.
+   */
+  void forEachReference(int instance, @NotNull ReferenceConsumer consumer) {
+    switch (getKind(instance)) {
+      case INSTANCE: {
+        long position = getInstanceDataPosition(instance);
+        for (int offset : myClasses.get(getClass(instance)).myReferenceOffsets) {
+          acceptReference(position + offset, consumer);
+        }
+        break;
+      }
+      case OBJECT_ARRAY: {
+        long position = getArrayDataPosition(instance);
+        int length = getArrayLength(instance);
+        for (int i = 0; i < length; i++) {
+          acceptReference(position + (long)i * myIdSize, consumer);
+        }
+        break;
+      }
+      case CLASS: {
+        ClassInfo info = myClasses.get(getDescribedClass(instance));
+        for (int i = 0; i < info.myStaticTypes.length; i++) {
+          if (info.myStaticTypes[i] == Type.OBJECT) {
+            acceptReference(info.myStaticPositions[i], consumer);
+          }
+        }
+        break;
+      }
+      default:
+        break;
+    }
+  }
+
+  /**
+   * @return the referent of a {@link java.lang.ref.Reference} instance, {@link #NO_INSTANCE} if there is none.
+   */
+  int getReferent(int instance) {
+    if (getKind(instance) != Kind.INSTANCE) {
+      return NO_INSTANCE;
+    }
+    int offset = myClasses.get(getClass(instance)).myReferentOffset;
+    return offset < 0 ? NO_INSTANCE : findInstance(myFile.getId(getInstanceDataPosition(instance) + offset, myIdSize));
+  }
+
+  interface ReferenceConsumer {
+    void accept(int instance);
+  }
+
+  private void acceptReference(long position, @NotNull ReferenceConsumer consumer) {
+    int target = findInstance(myFile.getId(position, myIdSize));
+    if (target != NO_INSTANCE) {
+      consumer.accept(target);
+    }
+  }
+
+  private long getInstanceDataPosition(int instance) {
+    // tag, id, stack serial number, class id, data length.
+    return myPositions.get(instance) + 1 + 2L * myIdSize + 8;
+  }
+
+  /**
+   * @return the position of the elements of an array, -1 if the array has no data.
+   */
+  private long getArrayDataPosition(int instance) {
+    long position = myPositions.get(instance);
+    switch (myFile.getUnsignedByte(position)) {
+      case OBJECT_ARRAY_DUMP:
+        // tag, id, stack serial number, length, class id.
+        return position + 1 + 2L * myIdSize + 8;
+      case PRIMITIVE_ARRAY_DUMP:
+        // tag, id, stack serial number, length, type.
+        return position + 1 + myIdSize + 9;
+      default:
+        return -1;
+    }
+  }
+
+  @Nullable
+  private ClassInfo superClass(@NotNull ClassInfo info) {
+    return info.mySuperIndex == NO_CLASS ? null : myClasses.get(info.mySuperIndex);
+  }
+
+  private int typeSize(@NotNull Type type) {
+    return type == Type.OBJECT ? myIdSize : type.getSize();
+  }
+
+  @NotNull
+  private Object readValue(long position, @NotNull Type type) {
+    switch (type) {
+      case OBJECT:
+        return findInstance(myFile.getId(position, myIdSize));
+      case BOOLEAN:
+        return myFile.getByte(position) != 0;
+      case CHAR:
+        return myFile.getChar(position);
+      case FLOAT:
+        return myFile.getFloat(position);
+      case DOUBLE:
+        return myFile.getDouble(position);
+      case BYTE:
+        return myFile.getByte(position);
+      case SHORT:
+        return myFile.getShort(position);
+      case INT:
+        return myFile.getInt(position);
+      case LONG:
+        return myFile.getLong(position);
+      default:
+        throw new IllegalArgumentException(type.toString());
+    }
+  }
+
+  @NotNull
+  private String getString(long id) {
+    if (!myStringPositions.containsKey(id)) {
+      return String.format("<unknown string 0x%x>", id);
+    }
+    long position = myStringPositions.get(id);
+    // The string content follows its id, and the record length precedes both.
+    int length = (int)(myFile.getUnsignedInt(position - 4) - myIdSize);
+    byte[] bytes = new byte[length];
+    myFile.getBytes(position + myIdSize, bytes, length);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int hash(long id) {
+    long hash = id * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32));
+  }
+
+  private void index() throws IOException {
+    readHeader();
+    // The first pass reads the strings and classes, and counts the instances.
+    scan(false);
+    resolveClasses();
+
+    // The second pass fills the instance columns, now that their size is known.
+    allocateColumns();
+    int count = myInstanceCount;
+    myInstanceCount = 0;
+    scan(true);
+    assert myInstanceCount == count;
+
+    TIntArrayList roots = new TIntArrayList();
+    for (int i = 0; i < myRootIds.size(); i++) {
+      int root = findInstance(myRootIds.get(i));
+      if (root != NO_INSTANCE && !isRoot(root)) {
+        myKinds.put(root, (byte)(myKinds.get(root) | ROOT_FLAG));
+        roots.add(root);
+      }
+    }
+    myRoots = roots.toNativeArray();
+    myRootIds.clear();
+
+    indexInstancesByClass();
+  }
+
+  /**
+   * Allocates the instance columns and the hash table for {@link #myInstanceCount} instances.
+   */
+  private void allocateColumns() throws IOException {
+    myIds = myScratchFile.allocateLongs(myInstanceCount);
+    myPositions = myScratchFile.allocateLongs(myInstanceCount);
+    myClassColumn = myScratchFile.allocateInts(myInstanceCount);
+    myShallowSizes = myScratchFile.allocateInts(myInstanceCount);
+    myKinds = myScratchFile.allocateBytes(myInstanceCount);
+    myHeapColumn = myScratchFile.allocateBytes(myInstanceCount);
+    int capacity = Integer.highestOneBit(Math.max(myInstanceCount, 1)) * 4;
+    myHashIds = myScratchFile.allocateLongs(capacity);
+    myHashIndices = myScratchFile.allocateInts(capacity);
+    myHashMask = capacity - 1;
+  }
+
+  private void readIndex(@NotNull DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != INDEX_FORMAT_VERSION) {
+      throw new IOException("Unsupported index version: " + version);
+    }
+    if (in.readLong() != myFile.size()) {
+      throw new IOException("The index was written for another file.");
+    }
+    myIdSize = in.readInt();
+    myRecordsPosition = in.readLong();
+    readMap(in, myStringPositions);
+    readMap(in, myClassNameIds);
+
+    myHeaps.clear();
+    int heapCount = in.readInt();
+    for (int i = 0; i < heapCount; i++) {
+      myHeaps.add(new Heap(in.readInt(), in.readUTF()));
+    }
+    int classCount = in.readInt();
+    for (int i = 0; i < classCount; i++) {
+      myClasses.add(readClass(in));
+    }
+    int classIdCount = in.readInt();
+    for (int i = 0; i < classIdCount; i++) {
+      myClassIndices.put(in.readLong(), in.readInt());
+    }
+    int classNameCount = in.readInt();
+    for (int i = 0; i < classNameCount; i++) {
+      myClassIndicesByName.put(in.readUTF(), in.readInt());
+    }
+    myRoots = readInts(in);
+    myClassInstanceOffsets = readInts(in);
+    if (myClassInstanceOffsets.length != myClasses.size() + 1) {
+      throw new IOException("Invalid class instance offsets.");
+    }
+
+    myInstanceCount = in.readInt();
+    allocateColumns();
+    myInstancesByClass = myScratchFile.allocateInts(myInstanceCount);
+    for (int instance = 0; instance < myInstanceCount; instance++) {
+      long id = in.readLong();
+      long position = in.readLong();
+      myIds.put(instance, id);
+      myPositions.put(instance, position);
+      myClassColumn.put(instance, in.readInt());
+      myShallowSizes.put(instance, in.readInt());
+      myKinds.put(instance, in.readByte());
+      myHeapColumn.put(instance, in.readByte());
+      myInstancesByClass.put(instance, in.readInt());
+      addToHashTable(id, instance, position);
+    }
+  }
+
+  private static void writeClass(@NotNull ClassInfo info, @NotNull DataOutputStream out) throws IOException {
+    out.writeLong(info.myId);
+    out.writeUTF(info.myName);
+    out.writeLong(info.mySuperId);
+    out.writeLong(info.myLoaderId);
+    out.writeInt(info.myInstanceSize);
+    out.writeLong(info.myPosition);
+    out.writeInt(info.myFieldNames.length);
+    for (int i = 0; i < info.myFieldNames.length; i++) {
+      out.writeUTF(info.myFieldNames[i]);
+      out.writeByte(info.myFieldTypes[i].getCode());
+    }
+    out.writeInt(info.myStaticNames.length);
+    for (int i = 0; i < info.myStaticNames.length; i++) {
+      out.writeUTF(info.myStaticNames[i]);
+      out.writeByte(info.myStaticTypes[i].getCode());
+      out.writeLong(info.myStaticPositions[i]);
+    }
+    out.writeInt(info.mySuperIndex);
+    writeInts(info.myReferenceOffsets, out);
+    out.writeInt(info.myReferentOffset);
+  }
+
+  @NotNull
+  private static ClassInfo readClass(@NotNull DataInputStream in) throws IOException {
+    long id = in.readLong();
+    String name = in.readUTF();
+    long superId = in.readLong();
+    long loaderId = in.readLong();
+    int instanceSize = in.readInt();
+    long position = in.readLong();
+    int fieldCount = in.readInt();
+    String[] fieldNames = new String[fieldCount];
+    Type[] fieldTypes = new Type[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      fieldNames[i] = in.readUTF();
+      fieldTypes[i] = Type.fromCode(in.readUnsignedByte());
+    }
+    int staticCount = in.readInt();
+    String[] staticNames = new String[staticCount];
+    Type[] staticTypes = new Type[staticCount];
+    long[] staticPositions = new long[staticCount];
+    for (int i = 0; i < staticCount; i++) {
+      staticNames[i] = in.readUTF();
+      staticTypes[i] = Type.fromCode(in.readUnsignedByte());
+      staticPositions[i] = in.readLong();
+    }
+    ClassInfo info = new ClassInfo(id, name, superId, loaderId, instanceSize, position, fieldNames, fieldTypes, staticNames, staticTypes,
+                                   staticPositions);
+    info.mySuperIndex = in.readInt();
+    info.myReferenceOffsets = readInts(in);
+    info.myReferentOffset = in.readInt();
+    return info;
+  }
+
+  private static void writeMap(@NotNull TLongLongHashMap map, @NotNull DataOutputStream out) throws IOException {
+    long[] keys = map.keys();
+    out.writeInt(keys.length);
+    for (long key : keys) {
+      out.writeLong(key);
+      out.writeLong(map.get(key));
+    }
+  }
+
+  private static void readMap(@NotNull DataInputStream in, @NotNull TLongLongHashMap map) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      map.put(in.readLong(), in.readLong());
+    }
+  }
+
+  private static void writeInts(@NotNull int[] values, @NotNull DataOutputStream out) throws IOException {
+    out.writeInt(values.length);
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  @NotNull
+  private static int[] readInts(@NotNull DataInputStream in) throws IOException {
+    int[] values = new int[in.readInt()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = in.readInt();
+    }
+    return values;
+  }
+
+  private void indexInstancesByClass() throws IOException {
+    int[] offsets = new int[myClasses.size() + 1];
+    for (int instance = 0; instance < myInstanceCount; instance++) {
+      offsets[myClassColumn.get(instance) + 1]++;
+    }
+    for (int classIndex = 0; classIndex < myClasses.size(); classIndex++) {
+      offsets[classIndex + 1] += offsets[classIndex];
+    }
+    int[] next = Arrays.copyOf(offsets, myClasses.size());
+    myInstancesByClass = myScratchFile.allocateInts(myInstanceCount);
+    for (int instance = 0; instance < myInstanceCount; instance++) {
+      myInstancesByClass.put(next[myClassColumn.get(instance)]++, instance);
+    }
+    myClassInstanceOffsets = offsets;
+  }
+
+  private void readHeader() throws IOException {
+    long position = 0;
+    while (position < myFile.size() && myFile.getByte(position) != 0) {
+      position++;
+    }
+    if (position + 13 > myFile.size()) {
+      throw new IOException("Invalid HPROF header.");
+    }
+    myIdSize = myFile.getInt(position + 1);
+    if (myIdSize != 4 && myIdSize != 8) {
+      throw new IOException("Unsupported identifier size: " + myIdSize);
+    }
+    // Skip the null terminator, the identifier size and the timestamp.
+    myRecordsPosition = position + 13;
+  }
+
+  private void scan(boolean fill) throws IOException {
+    long position = myRecordsPosition;
+    int heap = 0;
+    while (position + RECORD_HEADER_SIZE <= myFile.size()) {
+      int tag = myFile.getUnsignedByte(position);
+      long length = myFile.getUnsignedInt(position + 5);
+      long body = position + RECORD_HEADER_SIZE;
+      if (body + length > myFile.size()) {
+        throw new IOException(String.format("Truncated record 0x%02x at offset %d", tag, position));
+      }
+      switch (tag) {
+        case TAG_STRING:
+          if (!fill) {
+            myStringPositions.put(myFile.getId(body, myIdSize), body);
+          }
+          break;
+        case TAG_LOAD_CLASS:
+          if (!fill) {
+            // Class serial number, class id, stack serial number, class name id.
+            myClassNameIds.put(myFile.getId(body + 4, myIdSize), myFile.getId(body + 8 + myIdSize, myIdSize));
+          }
+          break;
+        case TAG_HEAP_DUMP:
+        case TAG_HEAP_DUMP_SEGMENT:
+          heap = scanHeapDump(body, body + length, heap, fill);
+          break;
+        default:
+          break;
+      }
+      position = body + length;
+    }
+  }
+
+  /**
+   * @return the heap of the last instance read, which is the heap of the following records.
+   */
+  private int scanHeapDump(long position, long end, int heap, boolean fill) throws IOException {
+    int idSize = myIdSize;
+    while (position < end) {
+      long record = position;
+      int tag = myFile.getUnsignedByte(position++);
+      switch (tag) {
+        case ROOT_UNKNOWN:
+        case ROOT_STICKY_CLASS:
+        case ROOT_MONITOR_USED:
+        case ROOT_INTERNED_STRING:
+        case ROOT_FINALIZING:
+        case ROOT_DEBUGGER:
+        case ROOT_REFERENCE_CLEANUP:
+        case ROOT_VM_INTERNAL:
+        case ROOT_UNREACHABLE:
+          addRoot(position, fill);
+          position += idSize;
+          break;
+        case ROOT_JNI_GLOBAL:
+          addRoot(position, fill);
+          position += 2 * idSize;
+          break;
+        case ROOT_JNI_LOCAL:
+        case ROOT_JAVA_FRAME:
+        case ROOT_THREAD_OBJECT:
+        case ROOT_JNI_MONITOR:
+          addRoot(position, fill);
+          position += idSize + 8;
+          break;
+        case ROOT_NATIVE_STACK:
+        case ROOT_THREAD_BLOCK:
+          addRoot(position, fill);
+          position += idSize + 4;
+          break;
+        case HEAP_DUMP_INFO:
+          heap = getOrCreateHeap(myFile.getInt(position), myFile.getId(position + 4, idSize));
+          position += 4 + idSize;
+          break;
+        case CLASS_DUMP:
+          position = readClassDump(record, fill);
+          if (fill) {
+            ClassInfo info = myClasses.get(myClassIndices.get(myFile.getId(record + 1, idSize)));
+            int size = 0;
+            for (Type type : info.myStaticTypes) {
+              size += typeSize(type);
+            }
+            addInstance(record, info.myId, Kind.CLASS, getOrCreateClass(JAVA_LANG_CLASS), size, heap);
+          }
+          else {
+            myInstanceCount++;
+          }
+          break;
+        case INSTANCE_DUMP: {
+          // Id, stack serial number, class id, data length, data.
+          long dataLength = myFile.getUnsignedInt(position + 2 * idSize + 4);
+          if (fill) {
+            long classId = myFile.getId(position + idSize + 4, idSize);
+            if (!myClassIndices.containsKey(classId)) {
+              throw new IOException(String.format("Unknown class 0x%x of instance at offset %d", classId, record));
+            }
+            int classIndex = myClassIndices.get(classId);
+            addInstance(record, myFile.getId(position, idSize), Kind.INSTANCE, classIndex, myClasses.get(classIndex).myInstanceSize, heap);
+          }
+          else {
+            myInstanceCount++;
+          }
+          position += 2 * idSize + 8 + dataLength;
+          break;
+        }
+        case OBJECT_ARRAY_DUMP: {
+          // Id, stack serial number, length, array class id, elements.
+          int length = myFile.getInt(position + idSize + 4);
+          if (fill) {
+            long classId = myFile.getId(position + idSize + 8, idSize);
+            int classIndex = myClassIndices.containsKey(classId) ? myClassIndices.get(classId) : getOrCreateClass(JAVA_LANG_OBJECT_ARRAY);
+            addInstance(record, myFile.getId(position, idSize), Kind.OBJECT_ARRAY, classIndex, length * idSize, heap);
+          }
+          else {
+            myInstanceCount++;
+          }
+          position += 2 * idSize + 8 + (long)length * idSize;
+          break;
+        }
+        case PRIMITIVE_ARRAY_DUMP:
+        case PRIMITIVE_ARRAY_NODATA: {
+          // Id, stack serial number, length, element type, elements.
+          int length = myFile.getInt(position + idSize + 4);
+          Type type = Type.fromCode(myFile.getUnsignedByte(position + idSize + 8));
+          if (type == Type.OBJECT) {
+            throw new IOException("Invalid primitive array type at offset " + record);
+          }
+          if (fill) {
+            int classIndex = getOrCreateClass(type.getName() + "[]");
+            addInstance(record, myFile.getId(position, idSize), Kind.PRIMITIVE_ARRAY, classIndex, length * type.getSize(), heap);
+          }
+          else {
+            myInstanceCount++;
+          }
+          position += idSize + 9 + (tag == PRIMITIVE_ARRAY_DUMP ? (long)length * type.getSize() : 0);
+          break;
+        }
+        default:
+          throw new IOException(String.format("Unknown heap dump record 0x%02x at offset %d", tag, record));
+      }
+    }
+    return heap;
+  }
+
+  private void addRoot(long position, boolean fill) {
+    if (!fill) {
+      myRootIds.add(myFile.getId(position, myIdSize));
+    }
+  }
+
+  private void addInstance(long position, long id, @NotNull Kind kind, int classIndex, int shallowSize, int heap) throws IOException {
+    int instance = myInstanceCount++;
+    myIds.put(instance, id);
+    myPositions.put(instance, position);
+    myClassColumn.put(instance, classIndex);
+    myShallowSizes.put(instance, shallowSize);
+    myKinds.put(instance, (byte)kind.ordinal());
+    myHeapColumn.put(instance, (byte)heap);
+    addToHashTable(id, instance, position);
+  }
+
+  private void addToHashTable(long id, int instance, long position) throws IOException {
+    int slot = hash(id) & myHashMask;
+    while (myHashIds.get(slot) != 0) {
+      if (myHashIds.get(slot) == id) {
+        throw new IOException(String.format("Duplicate instance 0x%x at offset %d", id, position));
+      }
+      slot = (slot + 1) & myHashMask;
+    }
+    myHashIds.put(slot, id);
+    myHashIndices.put(slot, instance);
+  }
+
+  private int getOrCreateHeap(int id, long nameId) throws IOException {
+    for (int i = 0; i < myHeaps.size(); i++) {
+      if (myHeaps.get(i).myId == id) {
+        return i;
+      }
+    }
+    if (myHeaps.size() > Byte.MAX_VALUE) {
+      throw new IOException("Too many heaps.");
+    }
+    myHeaps.add(new Heap(id, getString(nameId)));
+    return myHeaps.size() - 1;
+  }
+
+  private int getOrCreateClass(@NotNull String name) {
+    int classIndex = findClass(name);
+    if (classIndex == NO_CLASS) {
+      classIndex = myClasses.size();
+      myClasses.add(ClassInfo.synthetic(name));
+      myClassIndicesByName.put(name, classIndex);
+    }
+    return classIndex;
+  }
+
+  /**
+   * Reads a class dump sub-record, creating its {@link ClassInfo} during the first pass.
+   *
+   * @return the position of the next sub-record.
+   */
+  private long readClassDump(long record, boolean fill) throws IOException {
+    int idSize = myIdSize;
+    long position = record + 1;
+    long id = myFile.getId(position, idSize);
+    long superId = myFile.getId(position + idSize + 4, idSize);
+    long loaderId = myFile.getId(position + 2 * idSize + 4, idSize);
+    // Skip the signers, protection domain and reserved ids.
+    int instanceSize = myFile.getInt(position + 7 * idSize + 4);
+    position += 7 * idSize + 8;
+
+    int constantCount = myFile.getShort(position) & 0xFFFF;
+    position += 2;
+    for (int i = 0; i < constantCount; i++) {
+      position += 3 + typeSize(Type.fromCode(myFile.getUnsignedByte(position + 2)));
+    }
+
+    int staticCount = myFile.getShort(position) & 0xFFFF;
+    position += 2;
+    String[] staticNames = new String[fill ? 0 : staticCount];
+    Type[] staticTypes = new Type[fill ? 0 : staticCount];
+    long[] staticPositions = new long[fill ? 0 : staticCount];
+    for (int i = 0; i < staticCount; i++) {
+      Type type = Type.fromCode(myFile.getUnsignedByte(position + idSize));
+      if (!fill) {
+        staticNames[i] = getString(myFile.getId(position, idSize));
+        staticTypes[i] = type;
+        staticPositions[i] = position + idSize + 1;
+      }
+      position += idSize + 1 + typeSize(type);
+    }
+
+    int fieldCount = myFile.getShort(position) & 0xFFFF;
+    position += 2;
+    String[] fieldNames = new String[fill ? 0 : fieldCount];
+    Type[] fieldTypes = new Type[fill ? 0 : fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      Type type = Type.fromCode(myFile.getUnsignedByte(position + idSize));
+      if (!fill) {
+        fieldNames[i] = getString(myFile.getId(position, idSize));
+        fieldTypes[i] = type;
+      }
+      position += idSize + 1;
+    }
+
+    if (!fill) {
+      String name = myClassNameIds.containsKey(id) ? normalizeClassName(getString(myClassNameIds.get(id)))
+                                                   : String.format("<unknown class 0x%x>", id);
+      ClassInfo info = new ClassInfo(id, name, superId, loaderId, instanceSize, record, fieldNames, fieldTypes, staticNames, staticTypes,
+                                     staticPositions);
+      myClassIndices.put(id, myClasses.size());
+      if (!myClassIndicesByName.containsKey(name)) {
+        myClassIndicesByName.put(name, myClasses.size());
+      }
+      myClasses.add(info);
+    }
+    return position;
+  }
+
+  /**
+   * Links the classes to their super class and computes the layout of their reference fields.
+   */
+  private void resolveClasses() {
+    for (ClassInfo info : myClasses) {
+      info.mySuperIndex = myClassIndices.containsKey(info.mySuperId) ? myClassIndices.get(info.mySuperId) : NO_CLASS;
+    }
+    for (ClassInfo info : myClasses) {
+      TIntArrayList offsets = new TIntArrayList();
+      int offset = 0;
+      for (ClassInfo current = info; current != null; current = superClass(current)) {
+        boolean isReferenceClass = JAVA_LANG_REF_REFERENCE.equals(current.myName);
+        for (int i = 0; i < current.myFieldTypes.length; i++) {
+          Type type = current.myFieldTypes[i];
+          if (type == Type.OBJECT) {
+            if (isReferenceClass && REFERENT_FIELD.equals(current.myFieldNames[i])) {
+              info.myReferentOffset = offset;
+            }
+            else {
+              offsets.add(offset);
+            }
+          }
+          offset += typeSize(type);
+        }
+      }
+      info.myReferenceOffsets = offsets.toNativeArray();
+    }
+  }
+
+  /**
+   * Converts JVM class names (e.g. "java/lang/String" or "[Ljava/lang/Object;") to the Java names used by Android dumps.
+   */
+  @NotNull
+  static String normalizeClassName(@NotNull String name) {
+    int dimensions = 0;
+    while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+      dimensions++;
+    }
+    String element = name.substring(dimensions);
+    if (dimensions > 0) {
+      switch (element) {
+        case "Z": element = "boolean"; break;
+        case "C": element = "char"; break;
+        case "F": element = "float"; break;
+        case "D": element = "double"; break;
+        case "B": element = "byte"; break;
+        case "S": element = "short"; break;
+        case "I": element = "int"; break;
+        case "J": element = "long"; break;
+        default:
+          if (element.startsWith("L") && element.endsWith(";")) {
+            element = element.substring(1, element.length() - 1);
+          }
+          break;
+      }
+    }
+    StringBuilder builder = new StringBuilder(element.replace('/', '.'));
+    for (int i = 0; i < dimensions; i++) {
+      builder.append("[]");
+    }
+    return builder.toString();
+  }
+}
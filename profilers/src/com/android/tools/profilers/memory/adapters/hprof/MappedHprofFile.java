@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only, big-endian (as HPROF files are) absolute reads of a file mapped in memory. The file is mapped in chunks, so files larger than
+ * 2GB are supported, and consecutive chunks overlap by 8 bytes so that any primitive value can be read from a single chunk.
+ * <p>
+ * A mapping otherwise lasts until its buffer is garbage collected, and a mapped file can't be deleted on Windows, so {@link #close()}
+ * unmaps the chunks right away. Nothing may read from the file once it is closed.
+ */
+final class MappedHprofFile implements Closeable {
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int CHUNK_OVERLAP = 8;
+
+  @NotNull private final MappedByteBuffer[] myChunks;
+  private final long mySize;
+  private volatile boolean myIsClosed;
+
+  MappedHprofFile(@NotNull File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      mySize = channel.size();
+      int chunkCount = (int)((mySize + CHUNK_SIZE - 1) >> CHUNK_SHIFT);
+      myChunks = new MappedByteBuffer[Math.max(1, chunkCount)];
+      for (int i = 0; i < myChunks.length; i++) {
+        long start = (long)i << CHUNK_SHIFT;
+        long length = Math.min(CHUNK_SIZE + CHUNK_OVERLAP, mySize - start);
+        myChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+        myChunks[i].order(ByteOrder.BIG_ENDIAN);
+      }
+    }
+  }
+
+  long size() {
+    return mySize;
+  }
+
+  byte getByte(long position) {
+    return chunk(position).get(offset(position));
+  }
+
+  int getUnsignedByte(long position) {
+    return getByte(position) & 0xFF;
+  }
+
+  short getShort(long position) {
+    return chunk(position).getShort(offset(position));
+  }
+
+  char getChar(long position) {
+    return chunk(position).getChar(offset(position));
+  }
+
+  int getInt(long position) {
+    return chunk(position).getInt(offset(position));
+  }
+
+  long getUnsignedInt(long position) {
+    return getInt(position) & 0xFFFFFFFFL;
+  }
+
+  long getLong(long position) {
+    return chunk(position).getLong(offset(position));
+  }
+
+  float getFloat(long position) {
+    return chunk(position).getFloat(offset(position));
+  }
+
+  double getDouble(long position) {
+    return chunk(position).getDouble(offset(position));
+  }
+
+  /**
+   * Reads an identifier, which is either 4 or 8 bytes long depending on the dump.
+   */
+  long getId(long position, int idSize) {
+    return idSize == 4 ? getUnsignedInt(position) : getLong(position);
+  }
+
+  void getBytes(long position, @NotNull byte[] destination, int length) {
+    for (int i = 0; i < length; ) {
+      MappedByteBuffer chunk = chunk(position + i);
+      int offset = offset(position + i);
+      int count = (int)Math.min(length - i, CHUNK_SIZE - offset);
+      for (int j = 0; j < count; j++) {
+        destination[i + j] = chunk.get(offset + j);
+      }
+      i += count;
+    }
+  }
+
+  /**
+   * Unmaps the file. Reads made afterwards throw an {@link IllegalStateException}, rather than accessing memory which isn't mapped anymore.
+   */
+  @Override
+  public void close() {
+    if (myIsClosed) {
+      return;
+    }
+    myIsClosed = true;
+    for (MappedByteBuffer chunk : myChunks) {
+      unmap(chunk);
+    }
+  }
+
+  @NotNull
+  private MappedByteBuffer chunk(long position) {
+    if (myIsClosed) {
+      throw new IllegalStateException("The heap dump is closed.");
+    }
+    return myChunks[(int)(position >> CHUNK_SHIFT)];
+  }
+
+  /**
+   * Releases the mapping of {@code buffer}, through sun.misc.Unsafe#invokeCleaner on Java 9 and later, and the buffer's cleaner on Java 8.
+   * If neither is available, the mapping is released when the buffer is garbage collected.
+   */
+  private static void unmap(@NotNull ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      }
+      catch (NoSuchMethodException e) {
+        // Java 8.
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    }
+    catch (ReflectiveOperationException | RuntimeException e) {
+      Logger.getInstance(MappedHprofFile.class).warn("Unable to unmap the heap dump", e);
+    }
+  }
+
+  private static int offset(long position) {
+    return (int)(position & CHUNK_MASK);
+  }
+}
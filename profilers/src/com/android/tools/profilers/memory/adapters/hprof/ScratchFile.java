@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Allocates primitive arrays in a temporary file mapped in memory, so they live outside of the Java heap and the OS can page them out.
+ * Each array is a single mapping, so it is limited to 2GB. Arrays are zero-initialized. Thread-safe.
+ */
+final class ScratchFile implements Closeable {
+  @NotNull private final File myFile;
+  @NotNull private final RandomAccessFile myRandomAccessFile;
+  @NotNull private final FileChannel myChannel;
+  private long mySize;
+
+  ScratchFile(@NotNull String prefix) throws IOException {
+    myFile = FileUtil.createTempFile(prefix, ".tmp", true);
+    myRandomAccessFile = new RandomAccessFile(myFile, "rw");
+    myChannel = myRandomAccessFile.getChannel();
+  }
+
+  @NotNull
+  IntBuffer allocateInts(int count) throws IOException {
+    return allocate(count, Integer.BYTES).asIntBuffer();
+  }
+
+  @NotNull
+  LongBuffer allocateLongs(int count) throws IOException {
+    return allocate(count, Long.BYTES).asLongBuffer();
+  }
+
+  @NotNull
+  ByteBuffer allocateBytes(int count) throws IOException {
+    return allocate(count, Byte.BYTES);
+  }
+
+  /**
+   * @return the number of bytes allocated so far.
+   */
+  synchronized long size() {
+    return mySize;
+  }
+
+  @NotNull
+  private synchronized ByteBuffer allocate(int count, int elementSize) throws IOException {
+    long byteCount = (long)Math.max(count, 0) * elementSize;
+    if (byteCount > Integer.MAX_VALUE) {
+      throw new IOException("Heap dump too large: cannot allocate " + count + " elements.");
+    }
+    ByteBuffer buffer = myChannel.map(FileChannel.MapMode.READ_WRITE, mySize, byteCount).order(ByteOrder.nativeOrder());
+    // Keep the arrays aligned on their element size.
+    mySize += (byteCount + Long.BYTES - 1) & ~(Long.BYTES - 1);
+    return buffer;
+  }
+
+  /**
+   * Deletes the file. The arrays must not be used afterwards.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      myRandomAccessFile.close();
+    }
+    finally {
+      // On platforms where mapped files cannot be deleted, the file is deleted on exit instead (see createTempFile).
+      FileUtil.delete(myFile);
+    }
+  }
+}
@@ -22,12 +22,21 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * A class which handles querying for a list of {@link HttpData} requests within a specified range.
  * When the range changes, the list will automatically be updated, and this class will notify any
  * listeners.
+ * <p>
+ * Only the requests matching the {@link HttpDataFilter} are listed. Listeners are also given a {@link Diff} of what changed since their
+ * previous update, so views of large lists can update the rows which changed instead of all of them.
  */
 public final class HttpDataFetcher {
   // myAspectObserver cannot be local to prevent early GC
@@ -43,6 +52,8 @@ public final class HttpDataFetcher {
    */
   @Nullable private List<HttpData> myDataList;
 
+  @NotNull private HttpDataFilter myFilter = HttpDataFilter.NONE;
+
   public HttpDataFetcher(@NotNull NetworkConnectionsModel connectionsModel, @NotNull Range range) {
     myConnectionsModel = connectionsModel;
     myRange = range;
@@ -54,27 +65,131 @@ public final class HttpDataFetcher {
   public void addListener(@NotNull Listener listener) {
     myListeners.add(listener);
     if (myDataList != null) {
-      fireListeners(myDataList);
+      listener.onUpdated(myDataList, Diff.between(null, myDataList));
+    }
+  }
+
+  /**
+   * @return the requests currently listed, i.e. the ones in range which match the filter.
+   */
+  @NotNull
+  public List<HttpData> getDataList() {
+    return myDataList != null ? myDataList : Collections.emptyList();
+  }
+
+  @NotNull
+  public HttpDataFilter getFilter() {
+    return myFilter;
+  }
+
+  public void setFilter(@NotNull HttpDataFilter filter) {
+    if (myFilter.equals(filter)) {
+      return;
     }
+    myFilter = filter;
+    handleRangeUpdated();
   }
 
   private void handleRangeUpdated() {
     List<HttpData> dataList = !myRange.isEmpty() ? myConnectionsModel.getData(myRange) : new ArrayList<>();
-    if (myDataList != null && myDataList.equals(dataList)) {
+    if (!myFilter.isEmpty()) {
+      HttpDataFilter filter = myFilter;
+      dataList = dataList.stream().filter(filter::matches).collect(Collectors.toList());
+    }
+    Diff diff = Diff.between(myDataList, dataList);
+    if (myDataList != null && diff.isEmpty()) {
       return;
     }
 
     myDataList = dataList;
-    fireListeners(myDataList);
+    fireListeners(myDataList, diff);
   }
 
-  private void fireListeners(@NotNull List<HttpData> dataList) {
+  private void fireListeners(@NotNull List<HttpData> dataList, @NotNull Diff diff) {
     for (Listener l : myListeners) {
-      l.onUpdated(dataList);
+      l.onUpdated(dataList, diff);
     }
   }
 
   public interface Listener {
     void onUpdated(@NotNull List<HttpData> httpDataList);
+
+    /**
+     * Called instead of {@link #onUpdated(List)} when the list changes, for listeners which can apply the {@code diff} to what they
+     * were given previously.
+     */
+    default void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull Diff diff) {
+      onUpdated(httpDataList);
+    }
+  }
+
+  /**
+   * Requests added to, removed from or changed in the list. A request changed if it is listed with a different {@link HttpData} instance,
+   * e.g. because it completed.
+   */
+  public static final class Diff {
+    @NotNull private final List<HttpData> myAdded;
+    @NotNull private final List<HttpData> myUpdated;
+    @NotNull private final List<HttpData> myRemoved;
+
+    private Diff(@NotNull List<HttpData> added, @NotNull List<HttpData> updated, @NotNull List<HttpData> removed) {
+      myAdded = added;
+      myUpdated = updated;
+      myRemoved = removed;
+    }
+
+    @NotNull
+    static Diff between(@Nullable List<HttpData> previous, @NotNull List<HttpData> current) {
+      if (previous == null || previous.isEmpty()) {
+        return new Diff(current, Collections.emptyList(), Collections.emptyList());
+      }
+
+      Map<Long, HttpData> previousById = new HashMap<>(previous.size());
+      for (HttpData data : previous) {
+        previousById.put(data.getId(), data);
+      }
+      List<HttpData> added = new ArrayList<>();
+      List<HttpData> updated = new ArrayList<>();
+      Set<Long> currentIds = new HashSet<>(current.size());
+      for (HttpData data : current) {
+        currentIds.add(data.getId());
+        HttpData previousData = previousById.get(data.getId());
+        if (previousData == null) {
+          added.add(data);
+        }
+        else if (previousData != data) {
+          updated.add(data);
+        }
+      }
+      List<HttpData> removed = new ArrayList<>();
+      for (HttpData data : previous) {
+        if (!currentIds.contains(data.getId())) {
+          removed.add(data);
+        }
+      }
+      return new Diff(added, updated, removed);
+    }
+
+    /**
+     * @return the requests which weren't listed before, in list order.
+     */
+    @NotNull
+    public List<HttpData> getAdded() {
+      return myAdded;
+    }
+
+    @NotNull
+    public List<HttpData> getUpdated() {
+      return myUpdated;
+    }
+
+    @NotNull
+    public List<HttpData> getRemoved() {
+      return myRemoved;
+    }
+
+    public boolean isEmpty() {
+      return myAdded.isEmpty() && myUpdated.isEmpty() && myRemoved.isEmpty();
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import com.android.tools.adtui.model.filter.Filter;
+import com.android.tools.profilers.network.httpdata.HttpData;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * Criteria the connections listed by {@link HttpDataFetcher} must meet. A criterion left to its default value matches every connection.
+ */
+public final class HttpDataFilter {
+  public static final int ANY_STATUS_CODE = HttpData.ResponseHeader.NO_STATUS_CODE;
+  public static final long ANY_THREAD = -1;
+
+  public static final HttpDataFilter NONE = new Builder().build();
+
+  @NotNull private final Filter myUrlFilter;
+  private final int myStatusCode;
+  private final int myMinResponseSize;
+  private final long myThreadId;
+
+  private HttpDataFilter(@NotNull Builder builder) {
+    myUrlFilter = builder.myUrlFilter;
+    myStatusCode = builder.myStatusCode;
+    myMinResponseSize = builder.myMinResponseSize;
+    myThreadId = builder.myThreadId;
+  }
+
+  @NotNull
+  public Filter getUrlFilter() {
+    return myUrlFilter;
+  }
+
+  public int getStatusCode() {
+    return myStatusCode;
+  }
+
+  public int getMinResponseSize() {
+    return myMinResponseSize;
+  }
+
+  public long getThreadId() {
+    return myThreadId;
+  }
+
+  public boolean isEmpty() {
+    return myUrlFilter.isEmpty() && myStatusCode == ANY_STATUS_CODE && myMinResponseSize <= 0 && myThreadId == ANY_THREAD;
+  }
+
+  public boolean matches(@NotNull HttpData data) {
+    if (myStatusCode != ANY_STATUS_CODE && data.getResponseHeader().getStatusCode() != myStatusCode) {
+      return false;
+    }
+    if (data.getResponsePayloadSize() < myMinResponseSize) {
+      return false;
+    }
+    if (myThreadId != ANY_THREAD && data.getJavaThreads().stream().noneMatch(thread -> thread.getId() == myThreadId)) {
+      return false;
+    }
+    return myUrlFilter.matches(data.getUrl());
+  }
+
+  @NotNull
+  public Builder toBuilder() {
+    return new Builder()
+      .setUrlFilter(myUrlFilter)
+      .setStatusCode(myStatusCode)
+      .setMinResponseSize(myMinResponseSize)
+      .setThreadId(myThreadId);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof HttpDataFilter)) {
+      return false;
+    }
+    HttpDataFilter other = (HttpDataFilter)obj;
+    return myUrlFilter.getFilterString().equals(other.myUrlFilter.getFilterString()) &&
+           myUrlFilter.isMatchCase() == other.myUrlFilter.isMatchCase() &&
+           myUrlFilter.isRegex() == other.myUrlFilter.isRegex() &&
+           myStatusCode == other.myStatusCode &&
+           myMinResponseSize == other.myMinResponseSize &&
+           myThreadId == other.myThreadId;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(myUrlFilter.getFilterString(), myUrlFilter.isMatchCase(), myUrlFilter.isRegex(), myStatusCode, myMinResponseSize,
+                        myThreadId);
+  }
+
+  public static final class Builder {
+    @NotNull private Filter myUrlFilter = Filter.EMPTY_FILTER;
+    private int myStatusCode = ANY_STATUS_CODE;
+    private int myMinResponseSize;
+    private long myThreadId = ANY_THREAD;
+
+    /**
+     * Matches the connections whose URL contains the filter's string, or matches its regex.
+     */
+    @NotNull
+    public Builder setUrlFilter(@NotNull Filter urlFilter) {
+      myUrlFilter = urlFilter;
+      return this;
+    }
+
+    @NotNull
+    public Builder setStatusCode(int statusCode) {
+      myStatusCode = statusCode;
+      return this;
+    }
+
+    /**
+     * Matches the connections which received at least {@code minResponseSize} bytes.
+     */
+    @NotNull
+    public Builder setMinResponseSize(int minResponseSize) {
+      myMinResponseSize = minResponseSize;
+      return this;
+    }
+
+    /**
+     * Matches the connections accessed by the given thread.
+     */
+    @NotNull
+    public Builder setThreadId(long threadId) {
+      myThreadId = threadId;
+      return this;
+    }
+
+    @NotNull
+    public HttpDataFilter build() {
+      return new HttpDataFilter(this);
+    }
+  }
+}
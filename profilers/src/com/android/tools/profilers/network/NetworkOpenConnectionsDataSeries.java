@@ -15,11 +15,11 @@
  */
 package com.android.tools.profilers.network;
 
-import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.BufferedDataSeries;
+import com.android.tools.adtui.model.LongSeriesBuffer;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
-import com.android.tools.profiler.proto.NetworkProfiler.ConnectionData;
 import com.android.tools.profiler.proto.NetworkProfiler.NetworkDataRequest;
 import com.android.tools.profiler.proto.NetworkProfiler.NetworkDataResponse;
 import com.android.tools.profiler.proto.NetworkProfiler.NetworkProfilerData;
@@ -35,7 +35,7 @@ import java.util.concurrent.TimeUnit;
  *
  * It is responsible for making an RPC call to perfd/datastore and converting the resulting proto into UI data.
  */
-public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
+public class NetworkOpenConnectionsDataSeries implements BufferedDataSeries {
   @NotNull private NetworkServiceGrpc.NetworkServiceBlockingStub myClient;
   private final Common.Session mySession;
 
@@ -47,7 +47,23 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
     List<SeriesData<Long>> seriesData = new ArrayList<>();
+    for (NetworkProfilerData data : getData(timeCurrentRangeUs)) {
+      seriesData.add(new SeriesData<>(TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp()),
+                                      (long)data.getConnectionData().getConnectionNumber()));
+    }
+    return seriesData;
+  }
 
+  @Override
+  public void getDataForXRange(@NotNull Range timeCurrentRangeUs, @NotNull LongSeriesBuffer buffer) {
+    buffer.clear();
+    for (NetworkProfilerData data : getData(timeCurrentRangeUs)) {
+      buffer.add(TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp()), data.getConnectionData().getConnectionNumber());
+    }
+  }
+
+  @NotNull
+  private List<NetworkProfilerData> getData(@NotNull Range timeCurrentRangeUs) {
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
     NetworkDataRequest.Builder dataRequestBuilder = NetworkDataRequest.newBuilder()
@@ -56,11 +72,6 @@ public class NetworkOpenConnectionsDataSeries implements DataSeries<Long> {
       .setStartTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMin()) - bufferNs)
       .setEndTimestamp(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     NetworkDataResponse response = myClient.getData(dataRequestBuilder.build());
-    for (NetworkProfilerData data : response.getDataList()) {
-      long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp());
-      ConnectionData connectionData = data.getConnectionData();
-      seriesData.add(new SeriesData<>(xTimestamp, (long)connectionData.getConnectionNumber()));
-    }
-    return seriesData;
+    return response.getDataList();
   }
 }
@@ -27,6 +27,9 @@ import com.android.tools.adtui.model.SelectionListener;
 import com.android.tools.adtui.model.SelectionModel;
 import com.android.tools.adtui.model.axis.AxisComponentModel;
 import com.android.tools.adtui.model.axis.ClampedAxisComponentModel;
+import com.android.tools.adtui.model.filter.Filter;
+import com.android.tools.adtui.model.filter.FilterHandler;
+import com.android.tools.adtui.model.filter.FilterResult;
 import com.android.tools.adtui.model.formatter.BaseAxisFormatter;
 import com.android.tools.adtui.model.formatter.NetworkTrafficFormatter;
 import com.android.tools.adtui.model.formatter.SingleUnitAxisFormatter;
@@ -74,6 +77,7 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
   private final StackTraceModel myStackTraceModel;
   private final SelectionModel mySelectionModel;
   private final HttpDataFetcher myHttpDataFetcher;
+  private final FilterHandler myFilterHandler;
   private final EaseOutModel myInstructionsEaseOutModel;
 
   public NetworkProfilerStage(StudioProfilers profilers) {
@@ -114,6 +118,14 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
     });
 
     myHttpDataFetcher = new HttpDataFetcher(myConnectionsModel, timeline.getSelectionRange());
+    myFilterHandler = new FilterHandler() {
+      @Override
+      @NotNull
+      protected FilterResult applyFilter(@NotNull Filter filter) {
+        myHttpDataFetcher.setFilter(myHttpDataFetcher.getFilter().toBuilder().setUrlFilter(filter).build());
+        return new FilterResult(myHttpDataFetcher.getDataList().size(), !filter.isEmpty());
+      }
+    };
     myInstructionsEaseOutModel = new EaseOutModel(profilers.getUpdater(), PROFILING_INSTRUCTIONS_EASE_OUT_NS);
   }
 
@@ -141,6 +153,14 @@ public class NetworkProfilerStage extends Stage implements CodeNavigator.Listene
     return myHttpDataFetcher;
   }
 
+  /**
+   * Filters the connections listed by the {@link HttpDataFetcher} by URL.
+   */
+  @NotNull
+  public FilterHandler getFilterHandler() {
+    return myFilterHandler;
+  }
+
   /**
    * Sets the active connection, or clears the previously selected active connection if given data is null.
    */
@@ -28,19 +28,29 @@ import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * A {@link NetworkConnectionsModel} that uses an RPC mechanism to complete its queries. It sent queries to datastore, adding or removing
  * data queries may need change datastore.
+ * <p>
+ * The details of a connection are only requested when it is first seen and when its state changes (e.g. it completes). Otherwise the
+ * {@link HttpData} built previously is returned, the same instance, so callers can tell which connections changed.
  */
 public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
   @NotNull private final ProfilerServiceGrpc.ProfilerServiceBlockingStub myProfilerService;
   @NotNull private final NetworkServiceGrpc.NetworkServiceBlockingStub myNetworkService;
   @NotNull private final Common.Session mySession;
 
+  /**
+   * The connections built so far, by id, with the state they were built from.
+   */
+  @NotNull private final Map<Long, CachedConnection> myConnections = new HashMap<>();
+
   public RpcNetworkConnectionsModel(@NotNull ProfilerServiceGrpc.ProfilerServiceBlockingStub profilerService,
                                     @NotNull NetworkServiceGrpc.NetworkServiceBlockingStub networkService,
                                     @NotNull Common.Session session) {
@@ -59,36 +69,48 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
     NetworkProfiler.HttpRangeResponse response = myNetworkService.getHttpRange(request);
 
     List<HttpData> httpDataList = new ArrayList<>(response.getDataList().size());
-    for (NetworkProfiler.HttpConnectionData connection : response.getDataList()) {
-      long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
-      long uploadedTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getUploadedTimestamp());
-      long downloadingTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
-      long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
-
-      HttpData.Builder httpBuilder =
-        new HttpData.Builder(
-          connection.getConnId(),
-          startTimeUs,
-          uploadedTimeUs,
-          downloadingTimeUs,
-          endTimeUs,
-          requestAccessingThreads(connection.getConnId()));
-
-      requestHttpRequest(connection.getConnId(), httpBuilder);
-
-      if (connection.getUploadedTimestamp() != 0) {
-        requestHttpRequestBody(connection.getConnId(), httpBuilder);
-      }
-      if (connection.getEndTimestamp() != 0) {
-        requestHttpResponse(connection.getConnId(), httpBuilder);
-        requestHttpResponseBody(connection.getConnId(), httpBuilder);
+    synchronized (myConnections) {
+      for (NetworkProfiler.HttpConnectionData connection : response.getDataList()) {
+        CachedConnection cached = myConnections.get(connection.getConnId());
+        if (cached == null || !cached.myConnection.equals(connection)) {
+          cached = new CachedConnection(connection, buildHttpData(connection));
+          myConnections.put(connection.getConnId(), cached);
+        }
+        httpDataList.add(cached.myHttpData);
       }
-      httpDataList.add(httpBuilder.build());
     }
 
     return httpDataList;
   }
 
+  @NotNull
+  private HttpData buildHttpData(@NotNull NetworkProfiler.HttpConnectionData connection) {
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getStartTimestamp());
+    long uploadedTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getUploadedTimestamp());
+    long downloadingTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getDownloadingTimestamp());
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros(connection.getEndTimestamp());
+
+    HttpData.Builder httpBuilder =
+      new HttpData.Builder(
+        connection.getConnId(),
+        startTimeUs,
+        uploadedTimeUs,
+        downloadingTimeUs,
+        endTimeUs,
+        requestAccessingThreads(connection.getConnId()));
+
+    requestHttpRequest(connection.getConnId(), httpBuilder);
+
+    if (connection.getUploadedTimestamp() != 0) {
+      requestHttpRequestBody(connection.getConnId(), httpBuilder);
+    }
+    if (connection.getEndTimestamp() != 0) {
+      requestHttpResponse(connection.getConnId(), httpBuilder);
+      requestHttpResponseBody(connection.getConnId(), httpBuilder);
+    }
+    return httpBuilder.build();
+  }
+
   private void requestHttpRequest(long connectionId, @NotNull HttpData.Builder httpBuilder) {
     NetworkProfiler.HttpDetailsResponse.Request result =
       getDetails(connectionId, NetworkProfiler.HttpDetailsRequest.Type.REQUEST).getRequest();
@@ -142,4 +164,14 @@ public class RpcNetworkConnectionsModel implements NetworkConnectionsModel {
     return myNetworkService.getHttpDetails(
       NetworkProfiler.HttpDetailsRequest.newBuilder().setConnId(connectionId).setSession(mySession).setType(type).build());
   }
+
+  private static final class CachedConnection {
+    @NotNull private final NetworkProfiler.HttpConnectionData myConnection;
+    @NotNull private final HttpData myHttpData;
+
+    private CachedConnection(@NotNull NetworkProfiler.HttpConnectionData connection, @NotNull HttpData httpData) {
+      myConnection = connection;
+      myHttpData = httpData;
+    }
+  }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class CaptureCacheTest {
+  private File myDirectory;
+
+  @Before
+  public void setUp() throws IOException {
+    myDirectory = FileUtil.createTempDirectory("CaptureCacheTest", null);
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myDirectory);
+  }
+
+  @Test
+  public void cachedFilesAreFoundByKey() throws IOException {
+    CaptureCache cache = new CaptureCache(myDirectory);
+    assertThat(cache.get("trace")).isNull();
+    cache.put("trace", file -> Files.write(file.toPath(), new byte[]{1, 2, 3}));
+    File file = cache.get("trace");
+    assertThat(file).isNotNull();
+    assertThat(Files.readAllBytes(file.toPath())).isEqualTo(new byte[]{1, 2, 3});
+
+    cache.remove("trace");
+    assertThat(cache.get("trace")).isNull();
+  }
+
+  @Test
+  public void failedWritesAreNotCached() {
+    CaptureCache cache = new CaptureCache(myDirectory);
+    try {
+      cache.put("trace", file -> {
+        Files.write(file.toPath(), new byte[]{1, 2, 3});
+        throw new IOException("Write failed");
+      });
+      fail();
+    }
+    catch (IOException expected) {
+    }
+    assertThat(cache.get("trace")).isNull();
+    assertThat(myDirectory.list()).isEmpty();
+  }
+
+  @Test
+  public void leastRecentlyUsedFilesAreDeletedPastTheMaximumSize() throws IOException {
+    CaptureCache cache = new CaptureCache(myDirectory, 10);
+    cache.put("a", file -> Files.write(file.toPath(), new byte[4]));
+    cache.put("b", file -> Files.write(file.toPath(), new byte[4]));
+    assertThat(new File(myDirectory, "a").setLastModified(1000)).isTrue();
+    assertThat(new File(myDirectory, "b").setLastModified(2000)).isTrue();
+
+    // Using a makes b the least recently used file.
+    assertThat(cache.get("a")).isNotNull();
+    cache.put("c", file -> Files.write(file.toPath(), new byte[4]));
+    assertThat(cache.get("a")).isNotNull();
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isNotNull();
+  }
+}
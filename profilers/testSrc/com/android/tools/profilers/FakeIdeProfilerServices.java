@@ -158,6 +158,8 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
 
   @Nullable private Notification myNotification;
 
+  @Nullable private CaptureCache myCaptureCache;
+
   public FakeIdeProfilerServices() {
     myPersistentPreferences = new FakeProfilerPreferences();
     myTemporaryPreferences = new FakeProfilerPreferences();
@@ -312,6 +314,16 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
     return myPersistentPreferences;
   }
 
+  @Nullable
+  @Override
+  public CaptureCache getCaptureCache() {
+    return myCaptureCache;
+  }
+
+  public void setCaptureCache(@Nullable CaptureCache captureCache) {
+    myCaptureCache = captureCache;
+  }
+
   @Override
   public void openParseLargeTracesDialog(Runnable yesCallback, Runnable noCallback) {
     if (myShouldParseLongTraces) {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.profilers.cpu.art.ArtTraceParser;
+import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser;
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CachedTraceParserTest {
+  @Test
+  public void artCapturesAreReadBackAsWritten() throws IOException {
+    ArtTraceParser parser = new ArtTraceParser();
+    parser.parse(CpuProfilerTestUtils.getTraceFile("valid_trace.trace"), 1);
+    assertThat(CachedTraceParser.canWrite(parser)).isTrue();
+
+    File file = FileUtil.createTempFile("parsed_capture", ".bin", true);
+    CachedTraceParser.write(parser, file);
+    CachedTraceParser cached = new CachedTraceParser();
+    CpuCapture capture = cached.parse(file, 2);
+
+    assertThat(capture.getTraceId()).isEqualTo(2);
+    assertThat(cached.getRange().getMin()).isEqualTo(parser.getRange().getMin());
+    assertThat(cached.getRange().getMax()).isEqualTo(parser.getRange().getMax());
+    assertThat(cached.supportsDualClock()).isEqualTo(parser.supportsDualClock());
+    assertThat(cached.getCaptureTrees()).hasSize(parser.getCaptureTrees().size());
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : parser.getCaptureTrees().entrySet()) {
+      assertSameTree(entry.getValue(), findThread(cached.getCaptureTrees(), entry.getKey()));
+    }
+  }
+
+  @Test
+  public void simpleperfCapturesCannotBeWritten() throws IOException {
+    SimpleperfTraceParser parser = new SimpleperfTraceParser();
+    parser.parse(CpuProfilerTestUtils.getTraceFile("simpleperf.trace"), 1);
+    assertThat(CachedTraceParser.canWrite(parser)).isFalse();
+  }
+
+  private static CaptureNode findThread(Map<CpuThreadInfo, CaptureNode> trees, CpuThreadInfo thread) {
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : trees.entrySet()) {
+      if (entry.getKey().getId() == thread.getId()) {
+        assertThat(entry.getKey().getName()).isEqualTo(thread.getName());
+        assertThat(entry.getKey().isMainThread()).isEqualTo(thread.isMainThread());
+        return entry.getValue();
+      }
+    }
+    throw new AssertionError("Missing thread " + thread.getName());
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertThat(actual.getData().getFullName()).isEqualTo(expected.getData().getFullName());
+    assertThat(actual.getData().getClass()).isEqualTo(expected.getData().getClass());
+    assertThat(actual.getStartGlobal()).isEqualTo(expected.getStartGlobal());
+    assertThat(actual.getEndGlobal()).isEqualTo(expected.getEndGlobal());
+    assertThat(actual.getStartThread()).isEqualTo(expected.getStartThread());
+    assertThat(actual.getEndThread()).isEqualTo(expected.getEndThread());
+    assertThat(actual.getClockType()).isEqualTo(expected.getClockType());
+    assertThat(actual.getDepth()).isEqualTo(expected.getDepth());
+    assertThat(actual.getChildCount()).isEqualTo(expected.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+      assertThat(actual.getChildren().get(i).getParent()).isSameAs(actual);
+    }
+  }
+}
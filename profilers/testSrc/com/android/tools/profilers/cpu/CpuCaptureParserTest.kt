@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu
 import com.android.testutils.TestUtils
 import com.android.tools.profiler.proto.CpuProfiler
 import com.android.tools.profiler.protobuf3jarjar.ByteString
+import com.android.tools.profilers.CaptureCache
 import com.android.tools.profilers.FakeIdeProfilerServices
 import com.android.tools.profilers.ProfilersTestData
 import com.google.common.truth.Truth.assertThat
@@ -94,6 +95,26 @@ class CpuCaptureParserTest {
     assertThat(secondParsedCapture).isEqualTo(firstParsedCapture)
   }
 
+  @Test
+  fun parsedArtCapturesAreCached() {
+    val cacheDirectory = TestUtils.createTempDirDeletedOnExit()
+    val services = FakeIdeProfilerServices()
+    services.setCaptureCache(CaptureCache(cacheDirectory))
+    val traceBytes = CpuProfilerTestUtils.traceFileToByteString("valid_trace.trace")
+    val parsed = CpuCaptureParser(services).parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, traceBytes,
+                                                  CpuProfiler.CpuProfilerType.ART)!!.get()
+    assertThat(cacheDirectory.list()).hasLength(1)
+
+    // E.g. when the session is opened again after studio restarts.
+    val cached = CpuCaptureParser(services).parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, traceBytes,
+                                                  CpuProfiler.CpuProfilerType.ART)!!.get()
+    checkValidCapture(cached)
+    assertThat(cached.range.min).isEqualTo(parsed.range.min)
+    assertThat(cached.range.max).isEqualTo(parsed.range.max)
+    assertThat(cached.mainThreadId).isEqualTo(parsed.mainThreadId)
+    assertThat(cached.getCaptureNode(cached.mainThreadId)!!.duration).isEqualTo(parsed.getCaptureNode(parsed.mainThreadId)!!.duration)
+  }
+
   @Test
   fun parsingAValidSimpleperfTraceShouldProduceCpuCapture() {
     val parser = CpuCaptureParser(FakeIdeProfilerServices())
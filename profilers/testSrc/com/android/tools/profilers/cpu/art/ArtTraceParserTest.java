@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.perflib.vmtrace.VmTraceParser;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CpuCapture;
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
+import com.android.tools.profilers.cpu.CpuThreadInfo;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class ArtTraceParserTest {
+  @Test
+  public void streamingParserMatchesVmTraceParser() throws IOException {
+    assertSameAsVmTraceParser("basic.trace");
+    assertSameAsVmTraceParser("valid_trace.trace");
+  }
+
+  @Test
+  public void rangeIsReadFromHeader() throws IOException {
+    ArtTraceParser parser = new ArtTraceParser();
+    CpuCapture capture = parser.parse(CpuProfilerTestUtils.getTraceFile("basic.trace"), 1);
+
+    ArtTraceHandler handler = parseWithVmTraceParser("basic.trace");
+    assertThat(capture.getRange().getMin()).isWithin(0).of(handler.getStartTimeUs());
+    assertThat(capture.getRange().getLength()).isWithin(0).of(handler.getElapsedTimeUs());
+  }
+
+  @Test
+  public void corruptedTraceThrowsIOException() {
+    File trace = CpuProfilerTestUtils.getTraceFile("corrupted_trace.trace");
+    assertThat(ArtTraceReader.hasTextHeader(trace)).isTrue();
+    try {
+      new ArtTraceParser().parse(trace, 1);
+      fail("Parsing a corrupted trace should throw an IOException");
+    }
+    catch (IOException expected) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void nonArtFilesHaveNoTextHeader() {
+    assertThat(ArtTraceReader.hasTextHeader(CpuProfilerTestUtils.getTraceFile("empty_trace.trace"))).isFalse();
+    assertThat(ArtTraceReader.hasTextHeader(CpuProfilerTestUtils.getTraceFile("atrace.ctrace"))).isFalse();
+  }
+
+  @Test
+  public void progressIsReportedUpToTheEnd() throws IOException {
+    List<Integer> progress = new ArrayList<>();
+    ArtTraceParser parser = new ArtTraceParser();
+    parser.setProgressListener(progress::add);
+    parser.parse(CpuProfilerTestUtils.getTraceFile("basic.trace"), 1);
+    assertThat(progress).isNotEmpty();
+    assertThat(progress).isInStrictOrder();
+    assertThat(progress.get(progress.size() - 1)).isEqualTo(100);
+  }
+
+  private static void assertSameAsVmTraceParser(String traceName) throws IOException {
+    ArtTraceParser parser = new ArtTraceParser();
+    parser.parse(CpuProfilerTestUtils.getTraceFile(traceName), 1);
+    Map<CpuThreadInfo, CaptureNode> actual = parser.getCaptureTrees();
+    Map<CpuThreadInfo, CaptureNode> expected = parseWithVmTraceParser(traceName).getThreadsGraph();
+
+    assertThat(actual.size()).isEqualTo(expected.size());
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : expected.entrySet()) {
+      CaptureNode actualTree = findThread(actual, entry.getKey());
+      assertSameTree(entry.getValue(), actualTree);
+    }
+  }
+
+  private static ArtTraceHandler parseWithVmTraceParser(String traceName) throws IOException {
+    ArtTraceHandler handler = new ArtTraceHandler();
+    new VmTraceParser(CpuProfilerTestUtils.getTraceFile(traceName), handler).parse();
+    return handler;
+  }
+
+  private static CaptureNode findThread(Map<CpuThreadInfo, CaptureNode> trees, CpuThreadInfo thread) {
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : trees.entrySet()) {
+      if (entry.getKey().getId() == thread.getId()) {
+        assertThat(entry.getKey().getName()).isEqualTo(thread.getName());
+        assertThat(entry.getKey().isMainThread()).isEqualTo(thread.isMainThread());
+        return entry.getValue();
+      }
+    }
+    throw new AssertionError("Missing thread " + thread.getName());
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertThat(actual.getData().getId()).isEqualTo(expected.getData().getId());
+    assertThat(actual.getStartGlobal()).isEqualTo(expected.getStartGlobal());
+    assertThat(actual.getEndGlobal()).isEqualTo(expected.getEndGlobal());
+    assertThat(actual.getStartThread()).isEqualTo(expected.getStartThread());
+    assertThat(actual.getEndThread()).isEqualTo(expected.getEndThread());
+    assertThat(actual.getDepth()).isEqualTo(expected.getDepth());
+    assertThat(actual.getChildCount()).isEqualTo(expected.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntervalSumsTest {
+  @Test
+  public void intersectionLengthMatchesBruteForce() {
+    Random random = new Random(42);
+    List<CaptureNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      long start = 1_000_000_000L + random.nextInt(10_000);
+      nodes.add(newNode(start, start + random.nextInt(500)));
+    }
+    IntervalSums sums = IntervalSums.of(nodes, ClockType.GLOBAL);
+    assertNotNull(sums);
+
+    for (int i = 0; i < 1000; i++) {
+      double min = 1_000_000_000L - 100 + random.nextInt(10_800) + (random.nextBoolean() ? 0.5 : 0);
+      double max = min + random.nextInt(2_000) + (random.nextBoolean() ? 0.25 : 0);
+      Range range = new Range(min, max);
+
+      double expected = 0;
+      boolean overlaps = false;
+      for (CaptureNode node : nodes) {
+        expected += CpuTreeNode.getIntersection(range, node, ClockType.GLOBAL);
+        overlaps |= node.getStartGlobal() < max && min < node.getEndGlobal();
+      }
+      assertEquals(expected, sums.getIntersectionLength(range), 0);
+      assertEquals(overlaps, sums.overlaps(min, max));
+    }
+  }
+
+  @Test
+  public void emptyRangeHasNoIntersection() {
+    IntervalSums sums = IntervalSums.of(Collections.singletonList(newNode(0, 10)), ClockType.GLOBAL);
+    assertNotNull(sums);
+    assertEquals(0, sums.getIntersectionLength(new Range()), 0);
+    assertEquals(0, sums.getIntersectionLength(new Range(5, 5)), 0);
+    assertEquals(10, sums.getIntersectionLength(new Range(-Double.MAX_VALUE, Double.MAX_VALUE)), 0);
+  }
+
+  @Test
+  public void invalidIntervalsAreNotIndexed() {
+    assertNull(IntervalSums.of(Collections.singletonList(newNode(10, 0)), ClockType.GLOBAL));
+  }
+
+  /**
+   * The structure of the tree:
+   * main [0..1000]
+   * -> A [10 * i..10 * i + 5] -> A [10 * i + 1..10 * i + 3], for i in [0, 100)
+   * The bottom-up node of A has enough nodes to be indexed, and only the outer calls count in its total.
+   */
+  @Test
+  public void indexedBottomUpNodeOnlyCountsOuterCalls() {
+    CaptureNode main = newNode(0, 1000);
+    SingleNameModel a = new SingleNameModel("A");
+    for (int i = 0; i < 100; i++) {
+      CaptureNode outer = newNode(a, 10 * i, 10 * i + 5);
+      outer.addChild(newNode(a, 10 * i + 1, 10 * i + 3));
+      main.addChild(outer);
+    }
+    BottomUpNode root = new BottomUpNode(main);
+    BottomUpNode nodeA = root.getChildren().stream().filter(child -> child.getId().equals("A")).findFirst().get();
+    assertTrue(nodeA.getNodes().size() >= CpuTreeNode.MIN_INDEXED_NODE_COUNT);
+
+    nodeA.update(new Range(0, 1000));
+    assertEquals(500, nodeA.getGlobalTotal(), 0);
+    assertEquals(0, nodeA.getGlobalChildrenTotal(), 0);
+
+    nodeA.update(new Range(0, 502));
+    assertEquals(252, nodeA.getGlobalTotal(), 0);
+    assertTrue(nodeA.inRange(new Range(494, 496)));
+    assertFalse(nodeA.inRange(new Range(1995, 2000)));
+  }
+
+  private static CaptureNode newNode(long start, long end) {
+    return newNode(new SingleNameModel("main"), start, end);
+  }
+
+  private static CaptureNode newNode(SingleNameModel model, long start, long end) {
+    CaptureNode node = new CaptureNode(model);
+    node.setStartGlobal(start);
+    node.setEndGlobal(end);
+    node.setStartThread(start);
+    node.setEndThread(end);
+    return node;
+  }
+}
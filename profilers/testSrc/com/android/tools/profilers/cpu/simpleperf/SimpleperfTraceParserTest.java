@@ -17,9 +17,11 @@ package com.android.tools.profilers.cpu.simpleperf;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.android.tools.profilers.CaptureParallelism;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.intellij.openapi.util.io.FileUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,7 +29,11 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
@@ -169,13 +175,67 @@ public class SimpleperfTraceParserTest {
   @Test
   public void rangeShouldBeFromFirstToLastTimestamp() throws IOException {
     myParser.parse(myTraceFile, 0);
-    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.get(0).getTime());
-    long endTimeUs = TimeUnit.NANOSECONDS.toMicros( myParser.mySamples.get(myParser.mySamples.size() - 1).getTime());
+    long startTimeUs = TimeUnit.NANOSECONDS.toMicros(myParser.mySamples.getTime(0));
+    long endTimeUs = TimeUnit.NANOSECONDS.toMicros( myParser.mySamples.getTime(myParser.mySamples.size() - 1));
     Range expected = new Range(startTimeUs, endTimeUs);
     assertEquals(expected.getMin(), myParser.getRange().getMin(), 0);
     assertEquals(expected.getMax(), myParser.getRange().getMax(), 0);
   }
 
+  @Test
+  public void parallelParsingMatchesSequentialParsing() throws IOException {
+    myParser.parse(myTraceFile, 0);
+    Map<Integer, CaptureNode> parallelTrees = treesByThreadId(myParser);
+
+    SimpleperfTraceParser sequentialParser = new SimpleperfTraceParser();
+    CaptureParallelism.setParallelism(1);
+    try {
+      sequentialParser.parse(myTraceFile, 0);
+    }
+    finally {
+      CaptureParallelism.resetParallelism();
+    }
+
+    Map<Integer, CaptureNode> sequentialTrees = treesByThreadId(sequentialParser);
+    assertEquals(sequentialTrees.keySet(), parallelTrees.keySet());
+    for (Map.Entry<Integer, CaptureNode> entry : sequentialTrees.entrySet()) {
+      assertSameTree(entry.getValue(), parallelTrees.get(entry.getKey()));
+    }
+  }
+
+  @Test
+  public void methodModelsAreSharedAcrossThreads() throws IOException {
+    myParser.parse(myTraceFile, 0);
+    // Every thread starts with __start_thread, which should be the same model everywhere.
+    Set<CaptureNodeModel> startThreadModels = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (CaptureNode tree : myParser.getCaptureTrees().values()) {
+      CaptureNode first = tree.getFirstChild();
+      if (first != null && first.getData().getFullName().startsWith("__start_thread")) {
+        startThreadModels.add(first.getData());
+      }
+    }
+    assertEquals(1, startThreadModels.size());
+  }
+
+  private static Map<Integer, CaptureNode> treesByThreadId(SimpleperfTraceParser parser) {
+    Map<Integer, CaptureNode> trees = new HashMap<>();
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : parser.getCaptureTrees().entrySet()) {
+      trees.put(entry.getKey().getId(), entry.getValue());
+    }
+    return trees;
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertEquals(expected.getData().getFullName(), actual.getData().getFullName());
+    assertEquals(expected.getStart(), actual.getStart());
+    assertEquals(expected.getEnd(), actual.getEnd());
+    assertEquals(expected.getDepth(), actual.getDepth());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
   /**
    * Checks that a {@link CaptureNode} tree starts with "__start_thread -> __pthread_start", then verifies the node just after then.
    */
@@ -63,6 +63,18 @@ public class HeapDumpCaptureObjectTest {
    */
   @Test
   public void testHeapDumpObjectsGeneration() throws Exception {
+    verifyHeapDumpObjectsGeneration(false);
+  }
+
+  /**
+   * Same as {@link #testHeapDumpObjectsGeneration()}, with the dump indexed off the Java heap instead of loaded by perflib.
+   */
+  @Test
+  public void testMappedHeapDumpObjectsGeneration() throws Exception {
+    verifyHeapDumpObjectsGeneration(true);
+  }
+
+  private void verifyHeapDumpObjectsGeneration(boolean mapped) throws Exception {
     long startTimeNs = 3;
     long endTimeNs = 8;
     MemoryProfiler.HeapDumpInfo dumpInfo =
@@ -70,6 +82,9 @@ public class HeapDumpCaptureObjectTest {
     HeapDumpCaptureObject capture =
       new HeapDumpCaptureObject(myGrpcChannel.getClient().getMemoryClient(), ProfilersTestData.SESSION_DATA,
                                 dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+    if (mapped) {
+      capture.setMappedHeapDumpThreshold(0);
+    }
 
     // Verify values associated with the HeapDumpInfo object.
     assertEquals(startTimeNs, capture.getStartTimeNs());
@@ -112,6 +127,10 @@ public class HeapDumpCaptureObjectTest {
     HeapSet testHeap = heaps.stream().filter(heap -> "testHeap" .equals(heap.getName())).findFirst().orElse(null);
     assertEquals(testHeap.getName(), "testHeap");
     assertEquals(6, testHeap.getInstancesCount());
+    // The retained sizes may be computed after the heap sets are created, their totals are updated once they are.
+    assertTrue(capture.isRetainedSizeReady());
+    assertFalse(capture.isRetainedSizeError());
+    assertEquals(testHeap.getInstancesStream().mapToLong(InstanceObject::getRetainedSize).sum(), testHeap.getTotalRetainedSize());
 
     ClassifierSet.Classifier classClassifier = ClassSet.createDefaultClassifier();
     classClassifier.partition(
@@ -132,6 +151,19 @@ public class HeapDumpCaptureObjectTest {
     assertEquals(field0.getAsInstance(), instance1);
     ReferenceObject reference1 = instance1.getReferences().get(0);
     assertEquals(reference1.getReferenceInstance(), instance0);
+
+    if (mapped) {
+      // The heap sets hold the instances of each class as a group, whose instance objects are created when listed and reused while in use.
+      ClassifierSet class0Set = testHeap.findContainingClassifierSet(instance0);
+      assertNotNull(class0Set);
+      assertEquals("Class0", class0Set.getName());
+      assertEquals(1, class0Set.getInstancesCount());
+      assertSame(instance0, class0Set.getInstancesStream().findFirst().orElse(null));
+    }
+    capture.unload();
+    if (mapped) {
+      assertTrue(capture.getHeapSets().isEmpty());
+    }
   }
 
   @Test
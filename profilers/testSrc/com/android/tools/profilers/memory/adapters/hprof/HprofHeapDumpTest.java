@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump.NO_INSTANCE;
+import static com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump.Type.*;
+import static org.junit.Assert.*;
+
+public class HprofHeapDumpTest {
+  private static final HprofHeapDump.Type[] NODE_FIELDS = {OBJECT, OBJECT, INT};
+
+  private static final long OBJECT_CLASS = 100;
+  private static final long NODE_CLASS = 101;
+  private static final long REFERENCE_CLASS = 102;
+  private static final long WEAK_REFERENCE_CLASS = 103;
+  private static final long STRING_CLASS = 104;
+  private static final long ARRAY_CLASS = 105;
+
+  private File myFile;
+  private HprofHeapDump myHeapDump;
+
+  @After
+  public void tearDown() throws IOException {
+    if (myHeapDump != null) {
+      myHeapDump.close();
+    }
+    if (myFile != null) {
+      Files.deleteIfExists(myFile.toPath());
+    }
+  }
+
+  /**
+   * root -> a, b; a -> c; b -> c; c -> d; weak -> d (weakly); unreachable -> d.
+   */
+  private static HprofWriter writeGraph(int idSize) {
+    HprofWriter writer = new HprofWriter(idSize);
+    writer.addClass(OBJECT_CLASS, "java.lang.Object", 0, new String[0], new HprofHeapDump.Type[0])
+      .addClass(NODE_CLASS, "com/example/Node", OBJECT_CLASS, new String[]{"left", "right", "value"}, NODE_FIELDS)
+      .addClass(REFERENCE_CLASS, "java.lang.ref.Reference", OBJECT_CLASS, new String[]{"referent"}, new HprofHeapDump.Type[]{OBJECT})
+      .addClass(WEAK_REFERENCE_CLASS, "java.lang.ref.WeakReference", REFERENCE_CLASS, new String[0], new HprofHeapDump.Type[0])
+      .setHeap('A', "app")
+      .addInstance(1, NODE_CLASS, NODE_FIELDS, 2L, 3L, 1)
+      .addInstance(2, NODE_CLASS, NODE_FIELDS, 4L, 0L, 2)
+      .addInstance(3, NODE_CLASS, NODE_FIELDS, 4L, 0L, 3)
+      .addInstance(4, NODE_CLASS, NODE_FIELDS, 5L, 0L, 4)
+      .addInstance(5, NODE_CLASS, NODE_FIELDS, 0L, 0L, 5)
+      .addInstance(6, WEAK_REFERENCE_CLASS, new HprofHeapDump.Type[]{OBJECT}, 5L)
+      .addInstance(7, NODE_CLASS, NODE_FIELDS, 5L, 0L, 7)
+      .addRoot(1)
+      .addRoot(6)
+      .addRoot(1);
+    return writer;
+  }
+
+  private HprofHeapDump open(HprofWriter writer) throws IOException {
+    myFile = File.createTempFile("HprofHeapDumpTest", ".hprof");
+    writer.writeTo(myFile);
+    myHeapDump = HprofHeapDump.open(myFile);
+    return myHeapDump;
+  }
+
+  @Test
+  public void indexesClassesAndInstances() throws IOException {
+    for (int idSize : new int[]{4, 8}) {
+      HprofHeapDump heapDump = open(writeGraph(idSize));
+      // 4 class objects and 7 instances.
+      assertEquals(11, heapDump.getInstanceCount());
+      int node = heapDump.findClass("com.example.Node");
+      assertNotEquals(HprofHeapDump.NO_CLASS, node);
+      assertEquals(heapDump.findClass("java.lang.Object"), heapDump.getSuperClass(node));
+
+      int instance = heapDump.findInstance(2);
+      assertEquals(HprofHeapDump.Kind.INSTANCE, heapDump.getKind(instance));
+      assertEquals(node, heapDump.getClass(instance));
+      assertEquals(2 * idSize + 4, heapDump.getShallowSize(instance));
+      assertEquals("app", heapDump.getHeapName(heapDump.getHeap(instance)));
+      assertEquals('A', heapDump.getHeapId(heapDump.getHeap(instance)));
+
+      List<HprofHeapDump.Field> fields = heapDump.getFields(instance);
+      assertEquals(3, fields.size());
+      assertEquals("left", fields.get(0).getName());
+      assertEquals(heapDump.findInstance(4), fields.get(0).getInstance());
+      assertEquals(NO_INSTANCE, fields.get(1).getInstance());
+      assertEquals(2, fields.get(2).getValue());
+
+      int classObject = heapDump.getClassObject(node);
+      assertEquals(HprofHeapDump.Kind.CLASS, heapDump.getKind(classObject));
+      assertEquals(node, heapDump.getDescribedClass(classObject));
+      assertEquals("default", heapDump.getHeapName(heapDump.getHeap(classObject)));
+
+      assertTrue(heapDump.isRoot(heapDump.findInstance(1)));
+      assertFalse(heapDump.isRoot(instance));
+      assertEquals(NO_INSTANCE, heapDump.findInstance(42));
+      tearDown();
+    }
+  }
+
+  @Test
+  public void listsInstancesByClass() throws IOException {
+    HprofHeapDump heapDump = open(writeGraph(4));
+    int node = heapDump.findClass("com.example.Node");
+    assertEquals(6, heapDump.getInstanceCountOfClass(node));
+    int previous = NO_INSTANCE;
+    for (int i = 0; i < heapDump.getInstanceCountOfClass(node); i++) {
+      int instance = heapDump.getInstanceOfClass(node, i);
+      assertEquals(node, heapDump.getClass(instance));
+      assertTrue(instance > previous);
+      previous = instance;
+    }
+    // Class objects are instances of java.lang.Class.
+    assertEquals(4, heapDump.getInstanceCountOfClass(heapDump.findClass("java.lang.Class")));
+    assertEquals(0, heapDump.getInstanceCountOfClass(heapDump.findClass("java.lang.Object")));
+  }
+
+  @Test
+  public void computesDepthsAndReferrers() throws IOException {
+    HprofHeapDump heapDump = open(writeGraph(4));
+    HprofGraph graph = heapDump.getGraph();
+    assertEquals(0, graph.getDepth(heapDump.findInstance(1)));
+    assertEquals(1, graph.getDepth(heapDump.findInstance(3)));
+    assertEquals(2, graph.getDepth(heapDump.findInstance(4)));
+    assertEquals(3, graph.getDepth(heapDump.findInstance(5)));
+    assertEquals(HprofGraph.UNREACHABLE_DEPTH, graph.getDepth(heapDump.findInstance(7)));
+
+    int[] referrers = graph.getReferrers(heapDump.findInstance(5));
+    assertEquals(2, referrers.length);
+    assertArrayEquals(new int[]{heapDump.findInstance(6)}, graph.getWeakReferrers(heapDump.findInstance(5)));
+    // Roots are not referred to by the virtual root.
+    assertEquals(0, graph.getReferrers(heapDump.findInstance(1)).length);
+  }
+
+  @Test
+  public void computesDominatorsAndRetainedSizes() throws IOException {
+    HprofHeapDump heapDump = open(writeGraph(4));
+    HprofGraph graph = heapDump.getGraph();
+    int root = heapDump.findInstance(1);
+    int c = heapDump.findInstance(4);
+    int d = heapDump.findInstance(5);
+    int nodeSize = heapDump.getShallowSize(root);
+
+    assertEquals(NO_INSTANCE, graph.getImmediateDominator(root));
+    assertEquals(root, graph.getImmediateDominator(heapDump.findInstance(2)));
+    assertEquals(root, graph.getImmediateDominator(c));
+    // The weak reference doesn't keep d alive, c does.
+    assertEquals(c, graph.getImmediateDominator(d));
+    assertEquals(NO_INSTANCE, graph.getImmediateDominator(heapDump.findInstance(7)));
+
+    assertEquals(nodeSize, graph.getRetainedSize(d));
+    assertEquals(2 * nodeSize, graph.getRetainedSize(c));
+    assertEquals(nodeSize, graph.getRetainedSize(heapDump.findInstance(2)));
+    assertEquals(5 * nodeSize, graph.getRetainedSize(root));
+    assertEquals(0, graph.getRetainedSize(heapDump.findInstance(7)));
+  }
+
+  @Test
+  public void dominatorsAreNotTheClosestReferrers() throws IOException {
+    // 4 is first reached through 2, but also through 3, and is part of a cycle with 5 and 6.
+    HprofWriter writer = new HprofWriter(4)
+      .addClass(OBJECT_CLASS, "java.lang.Object", 0, new String[0], new HprofHeapDump.Type[0])
+      .addClass(NODE_CLASS, "com/example/Node", OBJECT_CLASS, new String[]{"left", "right", "value"}, NODE_FIELDS)
+      .addInstance(1, NODE_CLASS, NODE_FIELDS, 2L, 3L, 1)
+      .addInstance(2, NODE_CLASS, NODE_FIELDS, 4L, 0L, 2)
+      .addInstance(3, NODE_CLASS, NODE_FIELDS, 4L, 0L, 3)
+      .addInstance(4, NODE_CLASS, NODE_FIELDS, 5L, 0L, 4)
+      .addInstance(5, NODE_CLASS, NODE_FIELDS, 6L, 0L, 5)
+      .addInstance(6, NODE_CLASS, NODE_FIELDS, 4L, 0L, 6)
+      .addRoot(1);
+    HprofHeapDump heapDump = open(writer);
+    HprofGraph graph = heapDump.getGraph();
+    int nodeSize = heapDump.getShallowSize(heapDump.findInstance(1));
+
+    assertEquals(heapDump.findInstance(1), graph.getImmediateDominator(heapDump.findInstance(4)));
+    assertEquals(heapDump.findInstance(4), graph.getImmediateDominator(heapDump.findInstance(5)));
+    assertEquals(heapDump.findInstance(5), graph.getImmediateDominator(heapDump.findInstance(6)));
+    assertEquals(nodeSize, graph.getRetainedSize(heapDump.findInstance(2)));
+    assertEquals(3 * nodeSize, graph.getRetainedSize(heapDump.findInstance(4)));
+    assertEquals(6 * nodeSize, graph.getRetainedSize(heapDump.findInstance(1)));
+  }
+
+  @Test
+  public void cancelledDominatorsAreNotComputed() throws IOException {
+    HprofHeapDump heapDump = open(writeGraph(4));
+    HprofGraph graph = heapDump.getGraph();
+    graph.cancelDominators();
+    try {
+      graph.computeDominators();
+      fail();
+    }
+    catch (CancellationException expected) {
+    }
+    assertFalse(graph.hasDominators());
+  }
+
+  @Test
+  public void decodesStringsAndArrays() throws IOException {
+    HprofWriter writer = new HprofWriter(4)
+      .addClass(STRING_CLASS, "java.lang.String", 0, new String[]{"value", "count"}, new HprofHeapDump.Type[]{OBJECT, INT})
+      .addClass(ARRAY_CLASS, "[Ljava/lang/String;", 0, new String[0], new HprofHeapDump.Type[0])
+      .addCharArray(10, "hello world")
+      .addInstance(11, STRING_CLASS, new HprofHeapDump.Type[]{OBJECT, INT}, 10L, 5)
+      .addObjectArray(12, ARRAY_CLASS, 11L, 0L, 11L)
+      .addRoot(12);
+    HprofHeapDump heapDump = open(writer);
+
+    int string = heapDump.findInstance(11);
+    assertEquals("hello", heapDump.getStringValue(string, 100));
+    assertEquals("he", heapDump.getStringValue(string, 2));
+
+    int chars = heapDump.findInstance(10);
+    assertEquals(HprofHeapDump.Kind.PRIMITIVE_ARRAY, heapDump.getKind(chars));
+    assertEquals("char[]", heapDump.getClassName(heapDump.getClass(chars)));
+    assertEquals(22, heapDump.getShallowSize(chars));
+    assertEquals(CHAR, heapDump.getArrayType(chars));
+    assertArrayEquals("hello world".toCharArray(), heapDump.getArrayChars(chars, 100));
+
+    int array = heapDump.findInstance(12);
+    assertEquals("java.lang.String[]", heapDump.getClassName(heapDump.getClass(array)));
+    assertEquals(3, heapDump.getArrayLength(array));
+    assertArrayEquals(new Object[]{string, NO_INSTANCE, string}, heapDump.getArrayValues(array));
+    assertEquals("2", heapDump.getArrayElements(array).get(2).getName());
+    assertArrayEquals(new int[]{array}, heapDump.getGraph().getReferrers(string));
+    assertEquals(3 * 4 + 4 + 4 + 22, heapDump.getGraph().getRetainedSize(array));
+  }
+
+  @Test
+  public void normalizesJvmClassNames() {
+    assertEquals("java.lang.String", HprofHeapDump.normalizeClassName("java/lang/String"));
+    assertEquals("java.lang.String[][]", HprofHeapDump.normalizeClassName("[[Ljava/lang/String;"));
+    assertEquals("int[]", HprofHeapDump.normalizeClassName("[I"));
+    assertEquals("byte[]", HprofHeapDump.normalizeClassName("byte[]"));
+  }
+
+  @Test
+  public void closeUnmapsTheFile() throws IOException {
+    myFile = File.createTempFile("HprofHeapDumpTest", ".hprof");
+    Files.write(myFile.toPath(), writeGraph(4).toByteArray());
+    MappedHprofFile file = new MappedHprofFile(myFile);
+    assertEquals('J', file.getByte(0));
+    file.close();
+    try {
+      file.getByte(0);
+      fail("Reading a closed file should throw");
+    }
+    catch (IllegalStateException expected) {
+      // Expected.
+    }
+    // Closing twice is fine.
+    file.close();
+  }
+
+  @Test
+  public void reopensWithTheWrittenIndex() throws IOException {
+    HprofHeapDump indexed = open(writeGraph(8));
+    File index = File.createTempFile("HprofHeapDumpTest", ".index");
+    try {
+      indexed.writeIndex(index);
+      int node = indexed.findClass("com.example.Node");
+      int instance = indexed.findInstance(2);
+      int instanceCount = indexed.getInstanceCount();
+      indexed.close();
+
+      myHeapDump = HprofHeapDump.open(myFile, index);
+      assertEquals(instanceCount, myHeapDump.getInstanceCount());
+      assertEquals(node, myHeapDump.findClass("com.example.Node"));
+      assertEquals(instance, myHeapDump.findInstance(2));
+      assertEquals(node, myHeapDump.getClass(instance));
+      assertEquals("app", myHeapDump.getHeapName(myHeapDump.getHeap(instance)));
+      assertEquals(myHeapDump.findInstance(4), myHeapDump.getFields(instance).get(0).getInstance());
+      assertEquals(6, myHeapDump.getInstanceCountOfClass(node));
+      assertTrue(myHeapDump.isRoot(myHeapDump.findInstance(1)));
+
+      HprofGraph graph = myHeapDump.getGraph();
+      graph.computeDominators();
+      assertEquals(myHeapDump.findInstance(4), graph.getImmediateDominator(myHeapDump.findInstance(5)));
+    }
+    finally {
+      Files.deleteIfExists(index.toPath());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void indexOfAnotherFileIsNotRead() throws IOException {
+    HprofHeapDump indexed = open(writeGraph(4));
+    File index = File.createTempFile("HprofHeapDumpTest", ".index");
+    try {
+      indexed.writeIndex(index);
+      indexed.close();
+      myHeapDump = null;
+      Files.write(myFile.toPath(), writeGraph(8).toByteArray());
+      myHeapDump = HprofHeapDump.open(myFile, index);
+    }
+    finally {
+      Files.deleteIfExists(index.toPath());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedDumpFails() throws IOException {
+    byte[] bytes = writeGraph(4).toByteArray();
+    myFile = File.createTempFile("HprofHeapDumpTest", ".hprof");
+    Files.write(myFile.toPath(), Arrays.copyOf(bytes, bytes.length - 40));
+    myHeapDump = HprofHeapDump.open(myFile);
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.hprof;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes synthetic HPROF heap dumps for tests. Heap dump records are buffered and written as segments of up to 1MB.
+ */
+public final class HprofWriter {
+  private static final int SEGMENT_SIZE = 1024 * 1024;
+
+  private final int myIdSize;
+  @NotNull private final ByteArrayOutputStream myRecordBytes = new ByteArrayOutputStream();
+  @NotNull private final DataOutputStream myRecords = new DataOutputStream(myRecordBytes);
+  @NotNull private final ByteArrayOutputStream mySegmentBytes = new ByteArrayOutputStream();
+  @NotNull private final DataOutputStream mySegment = new DataOutputStream(mySegmentBytes);
+  @NotNull private final Map<String, Long> myStrings = new HashMap<>();
+  private long myNextStringId;
+  private int myNextClassSerial = 1;
+
+  public HprofWriter(int idSize) {
+    assert idSize == 4 || idSize == 8;
+    myIdSize = idSize;
+    // Out of the way of the object ids used by tests, which makes mix-ups fail.
+    myNextStringId = idSize == 4 ? 0x40000000L : 1L << 40;
+  }
+
+  /**
+   * Writes a class, i.e. its name and its class dump. Static values are ids for references and boxed primitives otherwise.
+   */
+  @NotNull
+  public HprofWriter addClass(long id, @NotNull String name, long superId, int instanceSize,
+                              @NotNull String[] staticNames, @NotNull HprofHeapDump.Type[] staticTypes, @NotNull Object[] staticValues,
+                              @NotNull String[] fieldNames, @NotNull HprofHeapDump.Type[] fieldTypes) {
+    try {
+      long nameId = string(name);
+      myRecords.writeByte(0x02);
+      myRecords.writeInt(0);
+      myRecords.writeInt(8 + 2 * myIdSize);
+      myRecords.writeInt(myNextClassSerial++);
+      writeId(myRecords, id);
+      myRecords.writeInt(0);
+      writeId(myRecords, nameId);
+
+      long[] staticNameIds = new long[staticNames.length];
+      for (int i = 0; i < staticNames.length; i++) {
+        staticNameIds[i] = string(staticNames[i]);
+      }
+      long[] fieldNameIds = new long[fieldNames.length];
+      for (int i = 0; i < fieldNames.length; i++) {
+        fieldNameIds[i] = string(fieldNames[i]);
+      }
+
+      mySegment.writeByte(0x20);
+      writeId(mySegment, id);
+      mySegment.writeInt(0);
+      writeId(mySegment, superId);
+      for (int i = 0; i < 5; i++) {
+        // Class loader, signers, protection domain and reserved ids.
+        writeId(mySegment, 0);
+      }
+      mySegment.writeInt(instanceSize);
+      mySegment.writeShort(0);
+      mySegment.writeShort(staticNames.length);
+      for (int i = 0; i < staticNames.length; i++) {
+        writeId(mySegment, staticNameIds[i]);
+        mySegment.writeByte(staticTypes[i].getCode());
+        writeValue(mySegment, staticTypes[i], staticValues[i]);
+      }
+      mySegment.writeShort(fieldNames.length);
+      for (int i = 0; i < fieldNames.length; i++) {
+        writeId(mySegment, fieldNameIds[i]);
+        mySegment.writeByte(fieldTypes[i].getCode());
+      }
+      flushSegmentIfFull();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  @NotNull
+  public HprofWriter addClass(long id, @NotNull String name, long superId, @NotNull String[] fieldNames,
+                              @NotNull HprofHeapDump.Type[] fieldTypes) {
+    int instanceSize = 0;
+    for (HprofHeapDump.Type type : fieldTypes) {
+      instanceSize += type == HprofHeapDump.Type.OBJECT ? myIdSize : type.getSize();
+    }
+    return addClass(id, name, superId, instanceSize, new String[0], new HprofHeapDump.Type[0], new Object[0], fieldNames, fieldTypes);
+  }
+
+  /**
+   * Writes an instance. Values are in the order of the fields of its class, then of its super classes, ids for references and boxed
+   * primitives otherwise.
+   */
+  @NotNull
+  public HprofWriter addInstance(long id, long classId, @NotNull HprofHeapDump.Type[] types, @NotNull Object... values) {
+    try {
+      ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(dataBytes);
+      for (int i = 0; i < values.length; i++) {
+        writeValue(data, types[i], values[i]);
+      }
+      mySegment.writeByte(0x21);
+      writeId(mySegment, id);
+      mySegment.writeInt(0);
+      writeId(mySegment, classId);
+      mySegment.writeInt(dataBytes.size());
+      dataBytes.writeTo(mySegment);
+      flushSegmentIfFull();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  @NotNull
+  public HprofWriter addObjectArray(long id, long classId, @NotNull long... elements) {
+    try {
+      mySegment.writeByte(0x22);
+      writeId(mySegment, id);
+      mySegment.writeInt(0);
+      mySegment.writeInt(elements.length);
+      writeId(mySegment, classId);
+      for (long element : elements) {
+        writeId(mySegment, element);
+      }
+      flushSegmentIfFull();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  @NotNull
+  public HprofWriter addCharArray(long id, @NotNull String value) {
+    try {
+      mySegment.writeByte(0x23);
+      writeId(mySegment, id);
+      mySegment.writeInt(0);
+      mySegment.writeInt(value.length());
+      mySegment.writeByte(HprofHeapDump.Type.CHAR.getCode());
+      mySegment.writeChars(value);
+      flushSegmentIfFull();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Adds a GC root of unknown type.
+   */
+  @NotNull
+  public HprofWriter addRoot(long id) {
+    try {
+      mySegment.writeByte(0xFF);
+      writeId(mySegment, id);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  /**
+   * Switches the heap of the following instances (an Android extension).
+   */
+  @NotNull
+  public HprofWriter setHeap(int heapId, @NotNull String name) {
+    try {
+      long nameId = string(name);
+      mySegment.writeByte(0xFE);
+      mySegment.writeInt(heapId);
+      writeId(mySegment, nameId);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this;
+  }
+
+  @NotNull
+  public byte[] toByteArray() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeTo(out);
+    return out.toByteArray();
+  }
+
+  public void writeTo(@NotNull File file) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      writeTo(out);
+    }
+  }
+
+  private void writeTo(@NotNull OutputStream out) {
+    try {
+      flushSegment();
+      DataOutputStream data = new DataOutputStream(out);
+      data.write("JAVA PROFILE 1.0.3".getBytes(StandardCharsets.US_ASCII));
+      data.writeByte(0);
+      data.writeInt(myIdSize);
+      data.writeLong(0);
+      myRecordBytes.writeTo(data);
+      // Heap dump end.
+      data.writeByte(0x2C);
+      data.writeInt(0);
+      data.writeInt(0);
+      data.flush();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private long string(@NotNull String value) throws IOException {
+    Long id = myStrings.get(value);
+    if (id == null) {
+      id = myNextStringId++;
+      myStrings.put(value, id);
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      myRecords.writeByte(0x01);
+      myRecords.writeInt(0);
+      myRecords.writeInt(myIdSize + bytes.length);
+      writeId(myRecords, id);
+      myRecords.write(bytes);
+    }
+    return id;
+  }
+
+  private void flushSegmentIfFull() throws IOException {
+    if (mySegmentBytes.size() >= SEGMENT_SIZE) {
+      flushSegment();
+    }
+  }
+
+  private void flushSegment() throws IOException {
+    if (mySegmentBytes.size() == 0) {
+      return;
+    }
+    myRecords.writeByte(0x1C);
+    myRecords.writeInt(0);
+    myRecords.writeInt(mySegmentBytes.size());
+    mySegmentBytes.writeTo(myRecords);
+    mySegmentBytes.reset();
+  }
+
+  private void writeId(@NotNull DataOutputStream out, long id) throws IOException {
+    if (myIdSize == 4) {
+      out.writeInt((int)id);
+    }
+    else {
+      out.writeLong(id);
+    }
+  }
+
+  private void writeValue(@NotNull DataOutputStream out, @NotNull HprofHeapDump.Type type, @NotNull Object value) throws IOException {
+    switch (type) {
+      case OBJECT:
+        writeId(out, ((Number)value).longValue());
+        break;
+      case BOOLEAN:
+        out.writeBoolean((Boolean)value);
+        break;
+      case CHAR:
+        out.writeChar((Character)value);
+        break;
+      case FLOAT:
+        out.writeFloat((Float)value);
+        break;
+      case DOUBLE:
+        out.writeDouble((Double)value);
+        break;
+      case BYTE:
+        out.writeByte((Byte)value);
+        break;
+      case SHORT:
+        out.writeShort((Short)value);
+        break;
+      case INT:
+        out.writeInt((Integer)value);
+        break;
+      case LONG:
+        out.writeLong((Long)value);
+        break;
+    }
+  }
+}
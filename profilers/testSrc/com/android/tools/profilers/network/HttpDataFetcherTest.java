@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.network;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.filter.Filter;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.android.tools.profilers.network.httpdata.HttpData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpDataFetcherTest {
+  private final FakeConnectionsModel myModel = new FakeConnectionsModel();
+  private final Range myRange = new Range(0, 10);
+  private final List<HttpDataFetcher.Diff> myDiffs = new ArrayList<>();
+  private HttpDataFetcher myFetcher;
+
+  @Before
+  public void setUp() {
+    myModel.myData = Arrays.asList(TestHttpData.newBuilder(1).build(), TestHttpData.newBuilder(2).build());
+    myFetcher = new HttpDataFetcher(myModel, myRange);
+    myFetcher.addListener(new HttpDataFetcher.Listener() {
+      @Override
+      public void onUpdated(@NotNull List<HttpData> httpDataList) {
+        throw new AssertionError("Expected to be given a diff");
+      }
+
+      @Override
+      public void onUpdated(@NotNull List<HttpData> httpDataList, @NotNull HttpDataFetcher.Diff diff) {
+        myDiffs.add(diff);
+      }
+    });
+  }
+
+  @Test
+  public void listenerIsGivenEverythingAsAddedWhenAdded() {
+    assertThat(myDiffs).hasSize(1);
+    assertThat(myDiffs.get(0).getAdded()).containsExactlyElementsIn(myModel.myData).inOrder();
+    assertThat(myDiffs.get(0).getUpdated()).isEmpty();
+    assertThat(myDiffs.get(0).getRemoved()).isEmpty();
+  }
+
+  @Test
+  public void diffOnlyListsTheRequestsWhichChanged() {
+    HttpData unchanged = myModel.myData.get(0);
+    HttpData removed = myModel.myData.get(1);
+    HttpData added = TestHttpData.newBuilder(3).build();
+    myModel.myData = Arrays.asList(unchanged, added);
+    myRange.set(0, 20);
+
+    assertThat(myDiffs).hasSize(2);
+    assertThat(myDiffs.get(1).getAdded()).containsExactly(added);
+    assertThat(myDiffs.get(1).getUpdated()).isEmpty();
+    assertThat(myDiffs.get(1).getRemoved()).containsExactly(removed);
+    assertThat(myFetcher.getDataList()).containsExactly(unchanged, added).inOrder();
+  }
+
+  @Test
+  public void requestWithNewInstanceIsUpdated() {
+    HttpData completed = TestHttpData.newBuilder(2, 1, 5).build();
+    myModel.myData = Arrays.asList(myModel.myData.get(0), completed);
+    myRange.set(0, 20);
+
+    assertThat(myDiffs).hasSize(2);
+    assertThat(myDiffs.get(1).getAdded()).isEmpty();
+    assertThat(myDiffs.get(1).getUpdated()).containsExactly(completed);
+    assertThat(myDiffs.get(1).getRemoved()).isEmpty();
+  }
+
+  @Test
+  public void listenerIsNotNotifiedWhenNothingChanged() {
+    myRange.set(0, 20);
+    assertThat(myDiffs).hasSize(1);
+  }
+
+  @Test
+  public void filterByUrl() {
+    myFetcher.setFilter(myFetcher.getFilter().toBuilder().setUrlFilter(new Filter(TestHttpData.fakeUrl(2))).build());
+    assertThat(myFetcher.getDataList()).containsExactly(myModel.myData.get(1));
+    assertThat(myDiffs.get(myDiffs.size() - 1).getRemoved()).containsExactly(myModel.myData.get(0));
+
+    myFetcher.setFilter(HttpDataFilter.NONE);
+    assertThat(myFetcher.getDataList()).containsExactlyElementsIn(myModel.myData).inOrder();
+  }
+
+  @Test
+  public void filterByResponseSize() {
+    HttpData small = TestHttpData.newBuilder(1).setResponsePayloadSize(100).build();
+    HttpData large = TestHttpData.newBuilder(2).setResponsePayloadSize(200).build();
+    myModel.myData = Arrays.asList(small, large);
+    myFetcher.setFilter(new HttpDataFilter.Builder().setMinResponseSize(150).build());
+    assertThat(myFetcher.getDataList()).containsExactly(large);
+  }
+
+  private static final class FakeConnectionsModel implements NetworkConnectionsModel {
+    @NotNull private List<HttpData> myData = new ArrayList<>();
+
+    @NotNull
+    @Override
+    public List<HttpData> getData(@NotNull Range timeCurrentRangeUs) {
+      return myData;
+    }
+
+    @NotNull
+    @Override
+    public ByteString requestBytes(@NotNull String id) {
+      return ByteString.EMPTY;
+    }
+  }
+}
@@ -127,6 +127,17 @@ public class RpcNetworkConnectionsModelTest {
     checkGetData(6, 8, 1, 3, 4, 5);
   }
 
+  @Test
+  public void unchangedConnectionsAreNotRebuilt() {
+    Range range = new Range(0, TimeUnit.SECONDS.toMicros(10));
+    List<HttpData> first = myModel.getData(range);
+    List<HttpData> second = myModel.getData(range);
+    assertThat(second).hasSize(first.size());
+    for (int i = 0; i < first.size(); ++i) {
+      assertThat(second.get(i)).isSameAs(first.get(i));
+    }
+  }
+
   private void checkGetData(long startTimeS, long endTimeS, long... expectedIds) {
     Range range = new Range(TimeUnit.SECONDS.toMicros(startTimeS), TimeUnit.SECONDS.toMicros(endTimeS));
     List<HttpData> actualData = myModel.getData(range);
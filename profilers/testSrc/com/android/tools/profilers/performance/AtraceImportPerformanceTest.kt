@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import trebuchet.importers.ImportParallelism
+import trebuchet.io.BufferProducer
+import trebuchet.io.DataSlice
+import trebuchet.model.Model
+import trebuchet.model.base.SliceGroup
+import trebuchet.task.ImportTask
+import trebuchet.util.PrintlnImportFeedback
+import java.util.Locale
+import java.util.Random
+
+/**
+ * Measures importing a large systrace, sequentially and with [ImportParallelism]'s default parallelism.
+ */
+class AtraceImportPerformanceTest {
+  companion object {
+    private const val LINE_COUNT = 1_000_000
+    private const val CPU_COUNT = 8
+    private const val PROCESS_COUNT = 32
+    private const val THREADS_PER_PROCESS = 8
+    private const val MAX_DEPTH = 12
+    private const val BUFFER_SIZE = 64 * 1024
+    private const val ITERATIONS = 3
+  }
+
+  private val benchmark = Benchmark.Builder("Atrace Import (millis)").setProject("Android Studio Profilers").build()
+
+  @After
+  fun tearDown() {
+    ImportParallelism.resetParallelism()
+  }
+
+  @Test
+  fun runPerformanceTest() {
+    val trace = generateTrace()
+
+    ImportParallelism.setParallelism(1)
+    // The first import warms up the JIT, and its model is compared with the parallel one.
+    val sequentialSummary = summarize(import(trace))
+    val sequentialMs = measure { import(trace) }
+
+    ImportParallelism.resetParallelism()
+    val parallelSummary = summarize(import(trace))
+    val parallelMs = measure { import(trace) }
+
+    assertThat(parallelSummary).isEqualTo(sequentialSummary)
+    benchmark.log("Sequential-Import", sequentialMs)
+    benchmark.log("Parallel-Import", parallelMs)
+    benchmark.log("Parallel-Import-Lines-Per-Millisecond", LINE_COUNT / maxOf(1L, parallelMs))
+  }
+
+  private fun measure(block: () -> Unit): Long {
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { block() }
+    return (System.nanoTime() - start) / ITERATIONS / 1_000_000
+  }
+
+  private fun import(trace: ByteArray): Model {
+    var offset = 0
+    return ImportTask(PrintlnImportFeedback()).importBuffer(object : BufferProducer {
+      override fun next(): DataSlice? {
+        if (offset >= trace.size) {
+          return null
+        }
+        val end = minOf(trace.size, offset + BUFFER_SIZE)
+        val slice = DataSlice(trace.copyOfRange(offset, end))
+        offset = end
+        return slice
+      }
+    })
+  }
+
+  /**
+   * Everything the importer builds, flattened into strings, so two models can be compared.
+   */
+  private fun summarize(model: Model): List<String> {
+    val summary = mutableListOf("${model.beginTimestamp} ${model.endTimestamp}")
+    for (process in model.processes.values.sortedBy { it.id }) {
+      summary.add("Process ${process.id} ${process.name} ${process.counters.map { "${it.name}:${it.events.size}" }}")
+      for (thread in process.threads) {
+        summary.add("Thread ${thread.id} ${thread.name} ${thread.schedSlices.map { "${it.state}@${it.startTime}" }}")
+        fun addSlices(slices: List<SliceGroup>) {
+          for (slice in slices) {
+            summary.add("${slice.name} ${slice.startTime} ${slice.endTime} ${slice.cpuTime}")
+            addSlices(slice.children)
+          }
+        }
+        addSlices(thread.slices)
+      }
+    }
+    for (cpu in model.cpus) {
+      summary.add("Cpu ${cpu.id} ${cpu.slices.map { "${it.threadId}@${it.startTime}" }}")
+    }
+    return summary
+  }
+
+  /**
+   * Generates ftrace text with scheduling events on every CPU, and nested slices and counters written by the threads that run.
+   */
+  private fun generateTrace(): ByteArray {
+    val random = Random(0x123456789)
+    val threadCount = PROCESS_COUNT * THREADS_PER_PROCESS
+    val depths = IntArray(threadCount)
+    val running = IntArray(CPU_COUNT) { it }
+    val trace = StringBuilder(LINE_COUNT * 120)
+    trace.append("# tracer: nop\n#\n")
+    trace.append("#           TASK-PID    TGID   CPU#  ||||    TIMESTAMP  FUNCTION\n")
+    trace.append("#              | |        |      |   ||||       |         |\n")
+    fun pid(thread: Int) = 1000 + thread
+    fun tgid(thread: Int) = pid(thread - thread % THREADS_PER_PROCESS)
+    fun name(thread: Int) = "thread-${pid(thread)}"
+    var time = 10_000.0
+    for (i in 0 until LINE_COUNT) {
+      time += 0.000001 * (1 + random.nextInt(50))
+      val cpu = random.nextInt(CPU_COUNT)
+      val thread = running[cpu]
+      val prefix = String.format(Locale.US, "%16s-%-5d (%5d) [%03d] ...1 %.6f: ", name(thread), pid(thread), tgid(thread), cpu, time)
+      trace.append(prefix)
+      when (random.nextInt(10)) {
+        0 -> {
+          val next = random.nextInt(threadCount)
+          trace.append("sched_switch: prev_comm=${name(thread)} prev_pid=${pid(thread)} prev_prio=120 prev_state=S ==> ")
+            .append("next_comm=${name(next)} next_pid=${pid(next)} next_prio=120\n")
+          running[cpu] = next
+        }
+        1 -> {
+          val woken = random.nextInt(threadCount)
+          trace.append("sched_wakeup: comm=${name(woken)} pid=${pid(woken)} prio=120 success=1 target_cpu=00$cpu\n")
+        }
+        2 -> trace.append("tracing_mark_write: C|${tgid(thread)}|counter${random.nextInt(4)}|${random.nextInt(1000)}\n")
+        else -> {
+          if (depths[thread] == MAX_DEPTH || (depths[thread] > 0 && random.nextBoolean())) {
+            depths[thread]--
+            trace.append("tracing_mark_write: E\n")
+          }
+          else {
+            depths[thread]++
+            trace.append("tracing_mark_write: B|${tgid(thread)}|slice${random.nextInt(100)}\n")
+          }
+        }
+      }
+    }
+    return trace.toString().toByteArray()
+  }
+}
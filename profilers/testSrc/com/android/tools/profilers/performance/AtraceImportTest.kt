@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import trebuchet.importers.ImportParallelism
+import trebuchet.io.BufferProducer
+import trebuchet.io.DataSlice
+import trebuchet.model.Model
+import trebuchet.task.ImportTask
+import trebuchet.util.PrintlnImportFeedback
+
+/**
+ * Checks the lines that don't fit the buffers [AtraceImportPerformanceTest] streams the trace in, or the chunks they are parsed in.
+ */
+class AtraceImportTest {
+  companion object {
+    // Larger than the chunks the ftrace importer parses lines in.
+    private const val LONG_NAME_LENGTH = 1024 * 1024 + 100
+    private const val BUFFER_SIZE = 64 * 1024
+  }
+
+  @After
+  fun tearDown() {
+    ImportParallelism.resetParallelism()
+  }
+
+  @Test
+  fun lineLongerThanAChunkIsParsed() {
+    val longName = "x".repeat(LONG_NAME_LENGTH)
+    val trace = ("# tracer: nop\n#\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000000: tracing_mark_write: B|1000|outer\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000001: tracing_mark_write: B|1000|$longName\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000002: tracing_mark_write: E\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000003: tracing_mark_write: E\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000004: tracing_mark_write: B|1000|after\n" +
+                 "           app-1000  ( 1000) [000] ...1 10.000005: tracing_mark_write: E\n").toByteArray()
+
+    for (parallelism in listOf(1, 4)) {
+      ImportParallelism.setParallelism(parallelism)
+      val slices = import(trace).processes.getValue(1000).threads.single().slices
+      assertThat(slices.map { it.name }).containsExactly("outer", "after").inOrder()
+      val longSlice = slices[0].children.single()
+      assertThat(longSlice.name).isEqualTo(longName)
+      assertThat(longSlice.startTime).isWithin(1e-9).of(10.000001)
+      assertThat(longSlice.endTime).isWithin(1e-9).of(10.000002)
+    }
+  }
+
+  private fun import(trace: ByteArray): Model {
+    var offset = 0
+    return ImportTask(PrintlnImportFeedback()).importBuffer(object : BufferProducer {
+      override fun next(): DataSlice? {
+        if (offset >= trace.size) {
+          return null
+        }
+        val end = minOf(trace.size, offset + BUFFER_SIZE)
+        val slice = DataSlice(trace.copyOfRange(offset, end))
+        offset = end
+        return slice
+      }
+    })
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profilers.CaptureParallelism
+import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.capturedetails.BottomUpNode
+import com.android.tools.profilers.cpu.capturedetails.BottomUpTreeModel
+import com.android.tools.profilers.cpu.capturedetails.TopDownNode
+import com.android.tools.profilers.cpu.capturedetails.TopDownTreeModel
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import java.util.Random
+import javax.swing.tree.DefaultMutableTreeNode
+
+/**
+ * Measures building the top-down and bottom-up trees of a large capture, and updating them for a new selection, sequentially and with
+ * [CaptureParallelism]'s default parallelism.
+ */
+class CaptureTreePerformanceTest {
+  companion object {
+    private const val THREAD_COUNT = 64
+    private const val NODES_PER_THREAD = 20_000
+    private const val METHOD_COUNT = 500
+    private const val MAX_DEPTH = 16
+    private const val ITERATIONS = 5
+  }
+
+  private val benchmark = Benchmark.Builder("Capture Tree Building (millis)").setProject("Android Studio Profilers").build()
+
+  @After
+  fun tearDown() {
+    CaptureParallelism.resetParallelism()
+  }
+
+  @Test
+  fun runPerformanceTest() {
+    val trees = generateCapture()
+    val range = Range(0.0, trees.maxBy { it.endGlobal }!!.endGlobal.toDouble())
+    val selection = Range(range.min + range.length / 4, range.max - range.length / 4)
+
+    CaptureParallelism.setParallelism(1)
+    // The first run warms up the JIT, and its results are compared with the parallel ones.
+    val sequentialTotals = buildAndUpdate(trees, range, selection)
+    val sequentialMs = measure { buildAndUpdate(trees, range, selection) }
+
+    CaptureParallelism.resetParallelism()
+    val parallelTotals = buildAndUpdate(trees, range, selection)
+    val parallelMs = measure { buildAndUpdate(trees, range, selection) }
+
+    assertThat(parallelTotals).isEqualTo(sequentialTotals)
+    benchmark.log("Sequential-Build-And-Update", sequentialMs)
+    benchmark.log("Parallel-Build-And-Update", parallelMs)
+  }
+
+  private fun measure(block: () -> Unit): Long {
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { block() }
+    return (System.nanoTime() - start) / ITERATIONS / 1_000_000
+  }
+
+  /**
+   * Builds the top-down and bottom-up models of every thread, selects [selection] and returns the totals of the roots.
+   */
+  private fun buildAndUpdate(trees: List<CaptureNode>, range: Range, selection: Range): List<Double> {
+    val totals = mutableListOf<Double>()
+    for (tree in trees) {
+      val modelRange = Range(range)
+      val topDown = TopDownTreeModel(modelRange, TopDownNode(tree))
+      val bottomUp = BottomUpTreeModel(modelRange, BottomUpNode(tree))
+      modelRange.set(selection)
+      totals.add(topDown.rootNode().globalTotal)
+      totals.add(bottomUp.rootNode().globalChildrenTotal)
+    }
+    return totals
+  }
+
+  private fun TopDownTreeModel.rootNode() = (root as DefaultMutableTreeNode).userObject as TopDownNode
+
+  private fun BottomUpTreeModel.rootNode() = (root as DefaultMutableTreeNode).userObject as BottomUpNode
+
+  private fun generateCapture(): List<CaptureNode> {
+    val random = Random(0x123456789)
+    val methods = (0 until METHOD_COUNT).map { SingleNameModel("method$it") }
+    return (0 until THREAD_COUNT).map { thread ->
+      val root = CaptureNode(SingleNameModel("Thread $thread"))
+      root.depth = 0
+      var remaining = NODES_PER_THREAD
+      var time = 0L
+      fun addChildren(parent: CaptureNode) {
+        while (remaining > 0 && random.nextInt(4) != 0) {
+          remaining--
+          val child = CaptureNode(methods[random.nextInt(METHOD_COUNT)])
+          child.depth = parent.depth + 1
+          child.startGlobal = ++time
+          child.startThread = time
+          parent.addChild(child)
+          if (child.depth < MAX_DEPTH) {
+            addChildren(child)
+          }
+          time += 1 + random.nextInt(10)
+          child.endGlobal = time
+          child.endThread = time
+        }
+      }
+      while (remaining > 0) {
+        addChildren(root)
+      }
+      root.endGlobal = ++time
+      root.endThread = time
+      root
+    }
+  }
+}
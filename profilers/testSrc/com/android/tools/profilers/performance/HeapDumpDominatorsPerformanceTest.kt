@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profilers.CaptureParallelism
+import com.android.tools.profilers.memory.adapters.hprof.HprofHeapDump
+import com.android.tools.profilers.memory.adapters.hprof.HprofWriter
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Test
+import java.io.File
+import java.util.Random
+
+/**
+ * Measures indexing a large synthetic heap dump and computing its dominators and retained sizes, sequentially and with
+ * [CaptureParallelism]'s default parallelism.
+ */
+class HeapDumpDominatorsPerformanceTest {
+  companion object {
+    private const val INSTANCE_COUNT = 1_000_000
+    private const val FIELD_COUNT = 4
+    private const val ROOT_COUNT = 100
+    private const val CLASS_ID = 1L
+    private const val FIRST_INSTANCE_ID = 0x1000L
+    private const val ITERATIONS = 3
+  }
+
+  private val benchmark = Benchmark.Builder("Heap Dump Dominators (millis)").setProject("Android Studio Profilers").build()
+
+  private val file = File.createTempFile("heapDumpDominators", ".hprof")
+
+  @After
+  fun tearDown() {
+    CaptureParallelism.resetParallelism()
+    file.delete()
+  }
+
+  @Test
+  fun runPerformanceTest() {
+    generateHeapDump().writeTo(file)
+
+    CaptureParallelism.setParallelism(1)
+    // The first run warms up the JIT, and its results are compared with the parallel ones.
+    val sequentialSizes = computeRetainedSizes()
+    val sequentialMs = measure { computeRetainedSizes() }
+
+    CaptureParallelism.resetParallelism()
+    val parallelSizes = computeRetainedSizes()
+    val parallelMs = measure { computeRetainedSizes() }
+
+    assertThat(parallelSizes).isEqualTo(sequentialSizes)
+    benchmark.log("Sequential-Graph-And-Dominators", sequentialMs)
+    benchmark.log("Parallel-Graph-And-Dominators", parallelMs)
+  }
+
+  private fun measure(block: () -> Unit): Long {
+    val start = System.nanoTime()
+    repeat(ITERATIONS) { block() }
+    return (System.nanoTime() - start) / ITERATIONS / 1_000_000
+  }
+
+  private fun computeRetainedSizes(): LongArray {
+    HprofHeapDump.open(file).use { heapDump ->
+      val graph = heapDump.graph
+      graph.computeDominators()
+      return LongArray(heapDump.instanceCount) { graph.getRetainedSize(it) }
+    }
+  }
+
+  /**
+   * A random tree of instances, so that most of them are reachable and retain others, with random references across its branches.
+   */
+  private fun generateHeapDump(): HprofWriter {
+    val random = Random(0x123456789)
+    val references = Array(INSTANCE_COUNT) { LongArray(FIELD_COUNT) }
+    val referenceCounts = IntArray(INSTANCE_COUNT)
+    for (i in 1 until INSTANCE_COUNT) {
+      val parent = random.nextInt(i)
+      if (referenceCounts[parent] < FIELD_COUNT) {
+        references[parent][referenceCounts[parent]++] = FIRST_INSTANCE_ID + i
+      }
+    }
+    for (i in 0 until INSTANCE_COUNT) {
+      if (referenceCounts[i] < FIELD_COUNT && random.nextInt(8) == 0) {
+        references[i][referenceCounts[i]++] = FIRST_INSTANCE_ID + random.nextInt(INSTANCE_COUNT)
+      }
+    }
+
+    val types = Array(FIELD_COUNT) { HprofHeapDump.Type.OBJECT }
+    val writer = HprofWriter(4).addClass(CLASS_ID, "com.example.Node", 0, Array(FIELD_COUNT) { "field$it" }, types)
+    for (i in 0 until INSTANCE_COUNT) {
+      writer.addInstance(FIRST_INSTANCE_ID + i, CLASS_ID, types, *references[i].toTypedArray())
+    }
+    writer.addRoot(FIRST_INSTANCE_ID)
+    repeat(ROOT_COUNT) { writer.addRoot(FIRST_INSTANCE_ID + random.nextInt(INSTANCE_COUNT)) }
+    return writer
+  }
+}